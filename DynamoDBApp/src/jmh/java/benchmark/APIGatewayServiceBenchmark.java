@@ -0,0 +1,64 @@
+package benchmark;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.google.gson.Gson;
+import layer.service.APIGatewayService;
+import layer.service.APIGatewayServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wrapping an already serialized user list into the API Gateway response,
+ * and streaming it into the envelope with and without gzip.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class APIGatewayServiceBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int listSize;
+
+    private APIGatewayService apiGatewayService;
+    private String output;
+
+    @Setup
+    public void setUp() {
+        apiGatewayService = new APIGatewayServiceImpl();
+        output = new Gson().toJson(UserFixtures.users(listSize));
+    }
+
+    @Benchmark
+    public APIGatewayProxyResponseEvent getApiGatewayProxyResponseEvent() {
+        return apiGatewayService.getApiGatewayProxyResponseEvent(output, 200);
+    }
+
+    @Benchmark
+    public void writeApiGatewayProxyResponseEvent() throws IOException {
+        apiGatewayService.writeApiGatewayProxyResponseEvent(OutputStream.nullOutputStream(),
+                writer -> writer.write(output), 200, Collections.emptyMap(), null);
+    }
+
+    @Benchmark
+    public void writeCompressedApiGatewayProxyResponseEvent() throws IOException {
+        apiGatewayService.writeApiGatewayProxyResponseEvent(OutputStream.nullOutputStream(),
+                writer -> writer.write(output), 200, Collections.emptyMap(), "gzip");
+    }
+}
@@ -0,0 +1,99 @@
+package benchmark;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import handler.GetUserFunction;
+import layer.service.AmazonDynamoDBConnect;
+import layer.service.DynamoDBServiceImpl;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measures what a Lambda cold start pays, with and without priming. Every
+ * sample is a fresh JVM on the in-process engine that records the handler's
+ * class initialization (the init phase), the first invocation and a second,
+ * warm invocation. Medians of each are printed per mode.
+ *
+ * <pre>
+ * mvn -Pjmh compile exec:exec -Djmh.main=benchmark.ColdStartMeasurement -Djmh.args=20
+ * </pre>
+ */
+public final class ColdStartMeasurement {
+
+    private static final String CHILD_ARGUMENT = "--child";
+    private static final int DEFAULT_SAMPLES = 10;
+
+    private ColdStartMeasurement() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && CHILD_ARGUMENT.equals(args[0])) {
+            measureOnce();
+            return;
+        }
+        int samples = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SAMPLES;
+        report("priming on ", sample(samples, true));
+        report("priming off", sample(samples, false));
+    }
+
+    private static void measureOnce() throws Exception {
+        long start = System.nanoTime();
+        Class.forName(GetUserFunction.class.getName(), true, ColdStartMeasurement.class.getClassLoader());
+        long initialized = System.nanoTime();
+
+        GetUserFunction function = new GetUserFunction();
+        APIGatewayProxyRequestEvent event = new APIGatewayProxyRequestEvent()
+                .withPathParameters(Map.of(DynamoDBServiceImpl.TABLE_PARTITION_KEY, UserFixtures.email(1)));
+        function.handleRequest(event, null);
+        long firstInvoked = System.nanoTime();
+        function.handleRequest(event, null);
+        long secondInvoked = System.nanoTime();
+
+        System.out.println((initialized - start) + " " + (firstInvoked - initialized) + " "
+                + (secondInvoked - firstInvoked));
+    }
+
+    private static List<long[]> sample(int samples, boolean priming) throws IOException, InterruptedException {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        List<long[]> results = new ArrayList<>();
+        for (int i = 0; i < samples; i++) {
+            ProcessBuilder processBuilder = new ProcessBuilder(java,
+                    "-D" + AmazonDynamoDBConnect.STORAGE_ENGINE_PROPERTY + "=" + AmazonDynamoDBConnect.LOCAL_STORAGE_ENGINE,
+                    "-cp", System.getProperty("java.class.path"),
+                    ColdStartMeasurement.class.getName(), CHILD_ARGUMENT);
+            processBuilder.environment().put(DynamoDBServiceImpl.PRIMING_VARIABLE, String.valueOf(priming));
+            processBuilder.redirectError(ProcessBuilder.Redirect.INHERIT);
+            Process process = processBuilder.start();
+            String line;
+            try (BufferedReader reader = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                line = reader.readLine();
+            }
+            if (process.waitFor() != 0 || line == null) {
+                throw new IllegalStateException("Measurement process failed with exit code " + process.exitValue());
+            }
+            results.add(Arrays.stream(line.trim().split(" ")).mapToLong(Long::parseLong).toArray());
+        }
+        return results;
+    }
+
+    private static void report(String mode, List<long[]> results) {
+        System.out.printf("%s  init %8.2f ms  first invoke %8.2f ms  second invoke %8.2f ms  (median of %d)%n",
+                mode, median(results, 0), median(results, 1), median(results, 2), results.size());
+    }
+
+    private static double median(List<long[]> results, int column) {
+        long[] values = results.stream().mapToLong(result -> result[column]).sorted().toArray();
+        long middle = values.length % 2 == 1
+                ? values[values.length / 2]
+                : (values[values.length / 2 - 1] + values[values.length / 2]) / 2;
+        return middle / 1_000_000.0;
+    }
+}
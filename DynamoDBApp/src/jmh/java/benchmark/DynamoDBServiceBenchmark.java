@@ -0,0 +1,146 @@
+package benchmark;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.google.gson.Gson;
+import layer.model.RequestBody;
+import layer.service.DynamoDBService;
+import layer.service.DynamoDBServiceImpl;
+import layer.service.LocalMetricsSink;
+import layer.service.Metrics;
+import layer.service.UserCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Service-layer hot paths over the in-process engine, so the numbers show
+ * our own Gson, mapper and expression-building costs without the network.
+ * The user cache is off except in {@link #findUserCached()}.
+ * Run with {@code -prof gc} to get the allocation rate per operation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class DynamoDBServiceBenchmark {
+
+    private static final int NEW_USER_INDEX = Integer.MAX_VALUE / 2;
+    private static final int FIND_USER_KEYS = 1024;
+
+    @Param({"10", "100", "1000", "10000"})
+    public int listSize;
+
+    private LocalUserTable table;
+    private DynamoDBService dynamoDBService;
+    private DynamoDBService cachedDynamoDBService;
+    private String newUserBody;
+    private Map<String, AttributeValue> newUserKey;
+    private List<Map<String, String>> findUserPaths;
+    private String nameBody;
+    private String locationBody;
+    private String ageBody;
+    private Map<String, String> suggestionParameters;
+    private int cursor;
+
+    @Setup
+    public void setUp() {
+        table = new LocalUserTable(listSize);
+        Metrics metrics = new Metrics(new LocalMetricsSink());
+        DynamoDBServiceImpl uncachedDynamoDBService = new DynamoDBServiceImpl(table.getAmazonDynamoDBConnect(),
+                new UserCache(0, 0, 0), metrics);
+        dynamoDBService = uncachedDynamoDBService;
+        cachedDynamoDBService = new DynamoDBServiceImpl(table.getAmazonDynamoDBConnect(),
+                new UserCache(2 * FIND_USER_KEYS, TimeUnit.HOURS.toMillis(1), TimeUnit.HOURS.toMillis(1)), metrics);
+
+        newUserBody = UserFixtures.json(UserFixtures.user(NEW_USER_INDEX));
+        newUserKey = Map.of("email", new AttributeValue().withS(UserFixtures.email(NEW_USER_INDEX)));
+        findUserPaths = new ArrayList<>();
+        for (int i = 0; i < Math.min(listSize, FIND_USER_KEYS); i++) {
+            findUserPaths.add(Map.of("email", UserFixtures.email(i)));
+        }
+
+        Gson gson = new Gson();
+        nameBody = gson.toJson(RequestBody.builder().name(UserFixtures.FIRST_NAMES[0]).build());
+        locationBody = gson.toJson(RequestBody.builder()
+                .location(UserFixtures.COUNTRY + ", " + UserFixtures.CITIES[0]).build());
+        ageBody = gson.toJson(RequestBody.builder().ageLimits(List.of("25", "40")).build());
+
+        suggestionParameters = Map.of("prefix", UserFixtures.FIRST_NAMES[15].substring(0, 2).toLowerCase(),
+                "limit", "10");
+        dynamoDBService.getNameSuggestions(suggestionParameters);
+        while (!uncachedDynamoDBService.getNameAutocomplete().isReady()) {
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Creates one user and removes it again through the engine directly, so
+     * the table size stays fixed and every call takes the "created" path.
+     */
+    @Benchmark
+    public String createUser() {
+        String output = dynamoDBService.createUser(newUserBody);
+        table.getLocalDynamoDB().deleteItem("it-marathon-v3-user-db", newUserKey);
+        return output;
+    }
+
+    @Benchmark
+    public String findUser() {
+        cursor = (cursor + 1) % findUserPaths.size();
+        return dynamoDBService.findUser(findUserPaths.get(cursor));
+    }
+
+    /**
+     * Same lookups through a cache large enough for all of them, i.e. the
+     * hit path once warmed up.
+     */
+    @Benchmark
+    public String findUserCached() {
+        cursor = (cursor + 1) % findUserPaths.size();
+        return cachedDynamoDBService.findUser(findUserPaths.get(cursor));
+    }
+
+    @Benchmark
+    public String getUsersList() {
+        return dynamoDBService.getUsersListResponse(null);
+    }
+
+    @Benchmark
+    public String getUsersListByName() {
+        return dynamoDBService.getUsersListByQueryResponse(null, nameBody);
+    }
+
+    @Benchmark
+    public String getUsersListByLocation() {
+        return dynamoDBService.getUsersListByQueryResponse(null, locationBody);
+    }
+
+    /**
+     * Lower case prefix of a first name through the in-memory name index,
+     * built in the setup; compare with {@link #getUsersListByName()}.
+     */
+    @Benchmark
+    public String getNameSuggestions() {
+        return dynamoDBService.getNameSuggestions(suggestionParameters);
+    }
+
+    @Benchmark
+    public String getUsersListByAge() {
+        return dynamoDBService.getUsersListByQueryResponse(null, ageBody);
+    }
+}
@@ -0,0 +1,88 @@
+package benchmark;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperTableModel;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import layer.engine.LocalDynamoDB;
+import layer.model.CompactUserEncoding;
+import layer.model.User;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compares the stored size of the fixture users in the mapper's default
+ * encoding with {@link CompactUserEncoding}: average, median and largest
+ * item, and the capacity units a write and a strongly consistent read of
+ * every user take.
+ *
+ * <pre>
+ * mvn -Pjmh compile exec:exec -Djmh.main=benchmark.ItemSizeReport -Djmh.args=10000
+ * </pre>
+ */
+public final class ItemSizeReport {
+
+    private static final int DEFAULT_USERS = 10_000;
+    private static final int WRITE_UNIT_BYTES = 1_024;
+    private static final int READ_UNIT_BYTES = 4_096;
+
+    private ItemSizeReport() {
+    }
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_USERS;
+        DynamoDBMapperTableModel<User> tableModel = new DynamoDBMapper(new LocalDynamoDB()).getTableModel(User.class);
+        int[] legacySizes = new int[count];
+        int[] compactSizes = new int[count];
+        for (int i = 0; i < count; i++) {
+            User user = UserFixtures.user(i);
+            Map<String, AttributeValue> item = tableModel.convert(user);
+            legacySizes[i] = LocalDynamoDB.getItemSize(legacy(item, user));
+            compactSizes[i] = LocalDynamoDB.getItemSize(compact(item, user));
+        }
+        System.out.printf("%-8s %8s %8s %8s %10s %10s%n", "encoding", "avg B", "p50 B", "max B", "WCU", "RCU");
+        report("default", legacySizes);
+        report("compact", compactSizes);
+    }
+
+    private static Map<String, AttributeValue> legacy(Map<String, AttributeValue> item, User user) {
+        Map<String, AttributeValue> legacy = new HashMap<>(item);
+        legacy.put("about", CompactUserEncoding.TextConverter.toLegacy(user.getAbout()));
+        legacy.put("interests", CompactUserEncoding.StringListConverter.toLegacy(user.getInterests()));
+        legacy.put("social_media", CompactUserEncoding.SocialMediaConverter.toLegacy(user.getSocialMedia()));
+        legacy.put("privacy", CompactUserEncoding.PrivacyConverter.toLegacy(user.getPrivacy()));
+        return legacy;
+    }
+
+    private static Map<String, AttributeValue> compact(Map<String, AttributeValue> item, User user) {
+        Map<String, AttributeValue> compact = legacy(item, user);
+        putIfPresent(compact, "about", CompactUserEncoding.TextConverter.toCompact(user.getAbout()));
+        putIfPresent(compact, "interests", CompactUserEncoding.StringListConverter.toCompact(user.getInterests()));
+        putIfPresent(compact, "social_media",
+                CompactUserEncoding.SocialMediaConverter.toCompact(user.getSocialMedia()));
+        putIfPresent(compact, "privacy", CompactUserEncoding.PrivacyConverter.toCompact(user.getPrivacy()));
+        return compact;
+    }
+
+    private static void putIfPresent(Map<String, AttributeValue> item, String name, AttributeValue value) {
+        if (value != null) {
+            item.put(name, value);
+        }
+    }
+
+    private static void report(String encoding, int[] sizes) {
+        int[] sorted = sizes.clone();
+        Arrays.sort(sorted);
+        long total = 0;
+        long writeUnits = 0;
+        long readUnits = 0;
+        for (int size : sizes) {
+            total += size;
+            writeUnits += (size + WRITE_UNIT_BYTES - 1) / WRITE_UNIT_BYTES;
+            readUnits += (size + READ_UNIT_BYTES - 1) / READ_UNIT_BYTES;
+        }
+        System.out.printf("%-8s %8d %8d %8d %10d %10d%n", encoding, total / sizes.length,
+                sorted[sorted.length / 2], sorted[sorted.length - 1], writeUnits, readUnits);
+    }
+}
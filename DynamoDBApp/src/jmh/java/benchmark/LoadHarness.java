@@ -0,0 +1,364 @@
+package benchmark;
+
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import handler.CreateUserFunction;
+import handler.CreateUsersFunction;
+import handler.DeleteUserFunction;
+import handler.GetNameSuggestionsFunction;
+import handler.GetUserFunction;
+import handler.GetUserListByQueryFunction;
+import handler.GetUserListFunction;
+import handler.GetUserStatsFunction;
+import handler.GetUsersFunction;
+import handler.UpdateUserFunction;
+import layer.engine.LocalDynamoDB;
+import layer.service.AmazonDynamoDBConnect;
+import layer.service.Configuration;
+import layer.service.Metrics;
+import layer.service.RequestRouter;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Puts the handler classes under load on the in-process engine, fully
+ * offline, to compare builds before deploying. The user table is filled
+ * with {@link UserFixtures} users and a {@link RequestMix} is sent to the
+ * {@code RequestHandler} of each route from a number of threads, after a
+ * warm-up that is not measured. Reported are throughput, latency
+ * percentiles per route and overall (HdrHistogram), the GC pauses of the
+ * run and the bytes allocated per request by all threads.
+ * <p>
+ * Without {@code rate} every thread sends its next request as soon as the
+ * last one is answered. With a {@code rate} in requests per second the
+ * requests are sent on a schedule and latency is measured from when a
+ * request was due, so a stall counts against every request it delays.
+ * Arguments are {@code name=value}:
+ * <ul>
+ * <li>{@code source} - {@code synthetic} (default) or the path of a Postman
+ * collection to replay;</li>
+ * <li>{@code mix} - {@code read:write:match} of a synthetic run, default
+ * {@code 80:15:5};</li>
+ * <li>{@code users} - fixture users in the table, default 10000;</li>
+ * <li>{@code requests}, {@code warmup} - measured and warm-up requests,
+ * default 50000 and 10000;</li>
+ * <li>{@code threads} - default 8; {@code rate} - default 0, closed
+ * loop;</li>
+ * <li>{@code seed} - of the request mix, default 1;</li>
+ * <li>{@code histograms} - a directory for the percentile distribution of
+ * every route, as {@code .hgrm} files to plot and compare.</li>
+ * </ul>
+ *
+ * <pre>
+ * mvn -Pjmh compile exec:exec -Djmh.main=benchmark.LoadHarness -Djmh.args="requests=50000 threads=8 mix=70:20:10"
+ * mvn -Pjmh compile exec:exec -Djmh.main=benchmark.LoadHarness \
+ *     -Djmh.args="source='../api-definition/Upamers API collection.postman_collection.json' rate=2000"
+ * </pre>
+ */
+public final class LoadHarness {
+
+    static final Map<String, RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent>> HANDLERS =
+            new HashMap<>();
+
+    private static final long HIGHEST_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+    private static final int SIGNIFICANT_DIGITS = 3;
+    private static final String ALL_ROUTES = "all";
+
+    private LoadHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        // before any handler is loaded: the handlers pick their engine and metrics once
+        System.setProperty(AmazonDynamoDBConnect.STORAGE_ENGINE_PROPERTY, AmazonDynamoDBConnect.LOCAL_STORAGE_ENGINE);
+        if (System.getProperty(Configuration.getPropertyName(Metrics.ENABLED_VARIABLE)) == null) {
+            System.setProperty(Configuration.getPropertyName(Metrics.ENABLED_VARIABLE), "false");
+        }
+        registerHandlers();
+
+        int users = getInt(options, "users", 10_000);
+        int requests = getInt(options, "requests", 50_000);
+        int warmup = getInt(options, "warmup", 10_000);
+        int threads = getInt(options, "threads", 8);
+        int rate = getInt(options, "rate", 0);
+        long seed = getInt(options, "seed", 1);
+        String source = options.getOrDefault("source", "synthetic");
+
+        System.out.printf("Filling the table with %d users%n", users);
+        LocalDynamoDB localDynamoDB = AmazonDynamoDBConnect.createLocalClient();
+        new AmazonDynamoDBConnect(localDynamoDB).getDynamoDBMapper().batchSave(UserFixtures.users(users));
+
+        List<RequestMix.Request> run = getMix(source, warmup + requests, users, options, seed).getRequests();
+        System.out.printf("Warming up with %d requests%n", warmup);
+        execute(run.subList(0, warmup), threads, rate, null);
+
+        Map<String, Histogram> histograms = new TreeMap<>();
+        histograms.put(ALL_ROUTES, newHistogram());
+        for (RequestMix.Request request : run) {
+            histograms.computeIfAbsent(request.getRouteKey(), key -> newHistogram());
+        }
+        GcPauses gcPauses = new GcPauses();
+        long allocatedBefore = getAllocatedBytes();
+        System.out.printf("Sending %d %s requests from %d threads%s%n", requests, source, threads,
+                rate > 0 ? " at " + rate + " requests/s" : "");
+        System.gc();
+        gcPauses.start();
+        long start = System.nanoTime();
+        Result result = execute(run.subList(warmup, run.size()), threads, rate, histograms);
+        long elapsedNanos = System.nanoTime() - start;
+        gcPauses.stop();
+        long allocated = getAllocatedBytes() - allocatedBefore;
+
+        report(System.out, histograms, result, elapsedNanos, gcPauses, allocated, requests);
+        if (options.containsKey("histograms")) {
+            writeHistograms(Paths.get(options.get("histograms")), histograms);
+        }
+        System.exit(0);
+    }
+
+    private static void registerHandlers() {
+        HANDLERS.put(RequestRouter.GET_USER_LIST, new GetUserListFunction());
+        HANDLERS.put(RequestRouter.CREATE_USER, new CreateUserFunction());
+        HANDLERS.put(RequestRouter.CREATE_USERS, new CreateUsersFunction());
+        HANDLERS.put(RequestRouter.GET_USERS, new GetUsersFunction());
+        HANDLERS.put(RequestRouter.GET_USER, new GetUserFunction());
+        HANDLERS.put(RequestRouter.UPDATE_USER, new UpdateUserFunction());
+        HANDLERS.put(RequestRouter.DELETE_USER, new DeleteUserFunction());
+        HANDLERS.put(RequestRouter.GET_USER_LIST_BY_QUERY, new GetUserListByQueryFunction());
+        HANDLERS.put(RequestRouter.GET_NAME_SUGGESTIONS, new GetNameSuggestionsFunction());
+        HANDLERS.put(RequestRouter.GET_USER_STATS, new GetUserStatsFunction());
+    }
+
+    private static RequestMix getMix(String source, int count, int users, Map<String, String> options, long seed)
+            throws IOException {
+        if ("synthetic".equals(source)) {
+            String[] mix = options.getOrDefault("mix", "80:15:5").split(":");
+            if (mix.length != 3) {
+                throw new IllegalArgumentException("mix must be read:write:match");
+            }
+            return RequestMix.synthetic(count, users, Integer.parseInt(mix[0]), Integer.parseInt(mix[1]),
+                    Integer.parseInt(mix[2]), seed);
+        }
+        return RequestMix.postman(Paths.get(source), count, seed);
+    }
+
+    /**
+     * Sends the requests from {@code threads} threads, recording the latency
+     * of each into the histogram of its route and the overall one, unless
+     * {@code histograms} is null.
+     */
+    private static Result execute(List<RequestMix.Request> requests, int threads, int rate,
+                                  Map<String, Histogram> histograms) throws Exception {
+        Result result = new Result();
+        AtomicInteger next = new AtomicInteger();
+        long intervalNanos = rate > 0 ? TimeUnit.SECONDS.toNanos(1) / rate : 0;
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> workers = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                workers.add(executor.submit(() -> {
+                    for (int index = next.getAndIncrement(); index < requests.size();
+                         index = next.getAndIncrement()) {
+                        long due = start + index * intervalNanos;
+                        if (intervalNanos > 0) {
+                            for (long wait = due - System.nanoTime(); wait > 0; wait = due - System.nanoTime()) {
+                                LockSupport.parkNanos(wait);
+                            }
+                        }
+                        RequestMix.Request request = requests.get(index);
+                        long sent = intervalNanos > 0 ? due : System.nanoTime();
+                        int statusCode = send(request);
+                        long latencyMicros = (System.nanoTime() - sent) / 1_000;
+                        result.count(statusCode);
+                        if (histograms != null) {
+                            long recorded = Math.min(latencyMicros, HIGHEST_LATENCY_MICROS);
+                            histograms.get(request.getRouteKey()).recordValue(recorded);
+                            histograms.get(ALL_ROUTES).recordValue(recorded);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return result;
+    }
+
+    private static int send(RequestMix.Request request) {
+        try {
+            APIGatewayProxyResponseEvent response = HANDLERS.get(request.getRouteKey())
+                    .handleRequest(request.getEvent(), null);
+            return response.getStatusCode() == null ? 0 : response.getStatusCode();
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+
+    private static void report(PrintStream out, Map<String, Histogram> histograms, Result result, long elapsedNanos,
+                               GcPauses gcPauses, long allocatedBytes, int requests) {
+        double seconds = elapsedNanos / 1e9;
+        out.printf("%nthroughput %.0f requests/s over %.2f s; status %s%n", requests / seconds, seconds,
+                result.getStatusCounts());
+        out.printf("%-26s %8s %9s %9s %9s %9s %9s%n", "route", "count", "p50 ms", "p95 ms", "p99 ms", "p99.9 ms",
+                "max ms");
+        histograms.forEach((route, histogram) -> {
+            if (histogram.getTotalCount() > 0) {
+                out.printf("%-26s %8d %9.3f %9.3f %9.3f %9.3f %9.3f%n", route, histogram.getTotalCount(),
+                        millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(95)),
+                        millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+                        millis(histogram.getMaxValue()));
+            }
+        });
+        Histogram pauses = gcPauses.getHistogram();
+        out.printf("gc pauses %d, total %.1f ms, p99 %.1f ms, max %.1f ms (%.2f%% of the run)%n",
+                pauses.getTotalCount(), gcPauses.getTotalMillis(), (double) pauses.getValueAtPercentile(99),
+                (double) pauses.getMaxValue(), 100 * gcPauses.getTotalMillis() / (elapsedNanos / 1e6));
+        out.printf("allocated %.1f KB/request%n", allocatedBytes / 1_024.0 / requests);
+    }
+
+    private static void writeHistograms(Path directory, Map<String, Histogram> histograms) throws IOException {
+        Files.createDirectories(directory);
+        for (Map.Entry<String, Histogram> histogram : histograms.entrySet()) {
+            String name = histogram.getKey().replaceAll("[^A-Za-z0-9]+", "_").replaceAll("^_|_$", "");
+            try (PrintStream out = new PrintStream(Files.newOutputStream(directory.resolve(name + ".hgrm")), false,
+                    "UTF-8")) {
+                // values are recorded in microseconds, the distribution is printed in milliseconds
+                histogram.getValue().outputPercentileDistribution(out, 1_000.0);
+            }
+        }
+        System.out.println("Histograms written to " + directory.toAbsolutePath());
+    }
+
+    /**
+     * The bytes every live thread has allocated so far, like the gc profiler
+     * of JMH counts them; threads that ended in between are not counted.
+     */
+    private static long getAllocatedBytes() {
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (long allocated : threadMXBean.getThreadAllocatedBytes(threadMXBean.getAllThreadIds())) {
+            if (allocated > 0) {
+                total += allocated;
+            }
+        }
+        return total;
+    }
+
+    private static Histogram newHistogram() {
+        return new ConcurrentHistogram(HIGHEST_LATENCY_MICROS, SIGNIFICANT_DIGITS);
+    }
+
+    private static double millis(long micros) {
+        return micros / 1_000.0;
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected name=value: " + arg);
+            }
+            options.put(arg.substring(0, separator), arg.substring(separator + 1));
+        }
+        return options;
+    }
+
+    private static int getInt(Map<String, String> options, String name, int defaultValue) {
+        return options.containsKey(name) ? Integer.parseInt(options.get(name)) : defaultValue;
+    }
+
+    private static final class Result {
+
+        private final Map<Integer, AtomicLong> statusCounts = new TreeMap<>();
+
+        void count(int statusCode) {
+            AtomicLong count;
+            synchronized (statusCounts) {
+                count = statusCounts.computeIfAbsent(statusCode, key -> new AtomicLong());
+            }
+            count.incrementAndGet();
+        }
+
+        Map<Integer, AtomicLong> getStatusCounts() {
+            synchronized (statusCounts) {
+                return new TreeMap<>(statusCounts);
+            }
+        }
+    }
+
+    /**
+     * The stop-the-world collections between {@link #start()} and
+     * {@link #stop()}, from the collectors' notifications; concurrent cycles
+     * are not pauses and are left out.
+     */
+    private static final class GcPauses {
+
+        private final Histogram histogram = new ConcurrentHistogram(HIGHEST_LATENCY_MICROS, SIGNIFICANT_DIGITS);
+        private final AtomicLong totalMillis = new AtomicLong();
+        private final NotificationListener listener = (notification, handback) -> {
+            if (!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                return;
+            }
+            GarbageCollectionNotificationInfo info =
+                    GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+            if (!info.getGcName().contains("Cycles") && !info.getGcName().contains("Concurrent")) {
+                histogram.recordValue(Math.min(info.getGcInfo().getDuration(), HIGHEST_LATENCY_MICROS));
+                totalMillis.addAndGet(info.getGcInfo().getDuration());
+            }
+        };
+
+        void start() {
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                ((NotificationEmitter) collector).addNotificationListener(listener, null, null);
+            }
+        }
+
+        void stop() throws Exception {
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                ((NotificationEmitter) collector).removeNotificationListener(listener);
+            }
+        }
+
+        /**
+         * Pause durations in milliseconds.
+         */
+        Histogram getHistogram() {
+            return histogram;
+        }
+
+        double getTotalMillis() {
+            return totalMillis.get();
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package benchmark;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import layer.engine.LocalDynamoDB;
+import layer.model.User;
+import layer.service.AmazonDynamoDBConnect;
+
+import java.util.List;
+
+/**
+ * A fresh in-process user table filled with {@link UserFixtures} users.
+ */
+public final class LocalUserTable {
+
+    private final LocalDynamoDB localDynamoDB;
+    private final AmazonDynamoDBConnect amazonDynamoDBConnect;
+
+    public LocalUserTable(int userCount) {
+        this.localDynamoDB = AmazonDynamoDBConnect.createUserTable(new LocalDynamoDB());
+        this.amazonDynamoDBConnect = new AmazonDynamoDBConnect(localDynamoDB);
+        List<User> users = UserFixtures.users(userCount);
+        getDynamoDBMapper().batchSave(users);
+    }
+
+    public LocalDynamoDB getLocalDynamoDB() {
+        return localDynamoDB;
+    }
+
+    public AmazonDynamoDBConnect getAmazonDynamoDBConnect() {
+        return amazonDynamoDBConnect;
+    }
+
+    public DynamoDBMapper getDynamoDBMapper() {
+        return amazonDynamoDBConnect.getDynamoDBMapper();
+    }
+}
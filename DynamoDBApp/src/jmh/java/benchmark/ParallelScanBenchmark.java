@@ -0,0 +1,63 @@
+package benchmark;
+
+import layer.service.Configuration;
+import layer.service.DynamoDBService;
+import layer.service.DynamoDBServiceImpl;
+import layer.service.LocalMetricsSink;
+import layer.service.Metrics;
+import layer.service.UserCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The unfiltered user list with a fixed number of scan segments; 1 is the
+ * sequential scan. The in-process engine has no network latency, so this
+ * shows the fan-out and merge overhead rather than the service-side gain.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class ParallelScanBenchmark {
+
+    private static final String SEGMENTS_PROPERTY = Configuration.getPropertyName("SCAN_SEGMENTS");
+
+    @Param({"10000", "50000"})
+    public int listSize;
+
+    @Param({"1", "4", "8"})
+    public int segments;
+
+    private DynamoDBService dynamoDBService;
+
+    @Setup
+    public void setUp() {
+        System.setProperty(SEGMENTS_PROPERTY, String.valueOf(segments));
+        dynamoDBService = new DynamoDBServiceImpl(new LocalUserTable(listSize).getAmazonDynamoDBConnect(),
+                new UserCache(), new Metrics(new LocalMetricsSink()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.clearProperty(SEGMENTS_PROPERTY);
+    }
+
+    @Benchmark
+    public String getUsersList() {
+        return dynamoDBService.getUsersListResponse(null);
+    }
+}
@@ -0,0 +1,212 @@
+package benchmark;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import layer.service.DynamoDBServiceImpl;
+import layer.service.RequestRouter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * The requests of a load run, as API Gateway events for the route each one
+ * is for. A mix is either generated from {@link UserFixtures} with a ratio
+ * of reads, writes and matches, or captured from the requests of a Postman
+ * collection and replayed in random order. Either way the whole run is drawn
+ * from a seed before it starts, so two builds get the same requests.
+ */
+final class RequestMix {
+
+    private static final Gson gson = new Gson();
+    private static final Set<String> LITERAL_USER_PATHS = Set.of("bulk", "batch-get", "autocomplete");
+    private static final String[] AGE_LIMITS = {"18", "25", "35", "45", "60", "70"};
+
+    private final List<Request> requests;
+
+    private RequestMix(List<Request> requests) {
+        this.requests = requests;
+    }
+
+    List<Request> getRequests() {
+        return requests;
+    }
+
+    /**
+     * {@code count} requests over the first {@code users} fixture users:
+     * reads get a user, writes update the location and interests of one and
+     * matches page through {@code POST /match} by name prefix, location or
+     * age, in the ratio {@code read:write:match}.
+     */
+    static RequestMix synthetic(int count, int users, int read, int write, int match, long seed) {
+        Random random = new Random(seed);
+        int total = read + write + match;
+        if (total <= 0) {
+            throw new IllegalArgumentException("The mix needs at least one read, write or match");
+        }
+        List<Request> requests = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int kind = random.nextInt(total);
+            if (kind < read) {
+                requests.add(new Request(RequestRouter.GET_USER, new APIGatewayProxyRequestEvent()
+                        .withPathParameters(userPath(random, users))));
+            } else if (kind < read + write) {
+                Map<String, Object> update = new HashMap<>();
+                update.put(DynamoDBServiceImpl.LOCATION_BODY_PARAMETER, randomLocation(random));
+                update.put("interests", List.of("load testing", "replay " + random.nextInt(100)));
+                requests.add(new Request(RequestRouter.UPDATE_USER, new APIGatewayProxyRequestEvent()
+                        .withPathParameters(userPath(random, users))
+                        .withBody(gson.toJson(update))));
+            } else {
+                requests.add(new Request(RequestRouter.GET_USER_LIST_BY_QUERY, new APIGatewayProxyRequestEvent()
+                        .withQueryStringParameters(Map.of(DynamoDBServiceImpl.LIMIT_QUERY_PARAMETER, "10"))
+                        .withBody(randomMatch(random))));
+            }
+        }
+        return new RequestMix(requests);
+    }
+
+    /**
+     * {@code count} requests drawn from those of a Postman collection. The
+     * route is found from the method and path; requests for no known route
+     * are left out. {@code {{variables}}} in the URL are ignored.
+     */
+    static RequestMix postman(Path collection, int count, long seed) throws IOException {
+        List<Request> captured = new ArrayList<>();
+        try (Reader reader = Files.newBufferedReader(collection, StandardCharsets.UTF_8)) {
+            addPostmanRequests(JsonParser.parseReader(reader).getAsJsonObject(), captured);
+        }
+        if (captured.isEmpty()) {
+            throw new IllegalArgumentException("No request of " + collection + " is for a known route");
+        }
+        Random random = new Random(seed);
+        List<Request> requests = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            requests.add(captured.get(random.nextInt(captured.size())));
+        }
+        return new RequestMix(requests);
+    }
+
+    private static Map<String, String> userPath(Random random, int users) {
+        return Map.of(DynamoDBServiceImpl.TABLE_PARTITION_KEY, UserFixtures.email(random.nextInt(users)));
+    }
+
+    private static String randomLocation(Random random) {
+        return UserFixtures.COUNTRY + ", " + UserFixtures.CITIES[random.nextInt(UserFixtures.CITIES.length)];
+    }
+
+    private static String randomMatch(Random random) {
+        Map<String, Object> body = new HashMap<>();
+        switch (random.nextInt(3)) {
+            case 0:
+                String name = UserFixtures.FIRST_NAMES[random.nextInt(UserFixtures.FIRST_NAMES.length)];
+                body.put(DynamoDBServiceImpl.NAME_BODY_PARAMETER, name.substring(0, 1 + random.nextInt(name.length())));
+                break;
+            case 1:
+                body.put(DynamoDBServiceImpl.LOCATION_BODY_PARAMETER, randomLocation(random));
+                break;
+            default:
+                int from = random.nextInt(AGE_LIMITS.length - 1);
+                body.put("ageLimits", List.of(AGE_LIMITS[from], AGE_LIMITS[from + 1]));
+        }
+        return gson.toJson(body);
+    }
+
+    private static void addPostmanRequests(JsonObject folder, List<Request> requests) {
+        JsonArray items = folder.getAsJsonArray("item");
+        if (items == null) {
+            return;
+        }
+        for (JsonElement element : items) {
+            JsonObject item = element.getAsJsonObject();
+            if (item.has("item")) {
+                addPostmanRequests(item, requests);
+            } else if (item.has("request")) {
+                Request request = toRequest(item.getAsJsonObject("request"));
+                if (request != null) {
+                    requests.add(request);
+                } else {
+                    System.err.println("Skipping " + item.get("name") + ": no known route");
+                }
+            }
+        }
+    }
+
+    private static Request toRequest(JsonObject postmanRequest) {
+        String method = postmanRequest.get("method").getAsString();
+        JsonElement url = postmanRequest.get("url");
+        if (url == null || !url.isJsonObject() || !url.getAsJsonObject().has("path")) {
+            return null;
+        }
+        List<String> segments = new ArrayList<>();
+        for (JsonElement segment : url.getAsJsonObject().getAsJsonArray("path")) {
+            segments.add(URLDecoder.decode(segment.getAsString(), StandardCharsets.UTF_8));
+        }
+        APIGatewayProxyRequestEvent event = new APIGatewayProxyRequestEvent();
+        String resource;
+        if (segments.size() == 2 && "users".equals(segments.get(0))
+                && !LITERAL_USER_PATHS.contains(segments.get(1))) {
+            resource = "/users/{email}";
+            event.withPathParameters(Map.of(DynamoDBServiceImpl.TABLE_PARTITION_KEY, segments.get(1)));
+        } else if (segments.size() == 2 && "stats".equals(segments.get(0))) {
+            resource = "/stats/{dimension}";
+            event.withPathParameters(Map.of(DynamoDBServiceImpl.DIMENSION_PATH_PARAMETER, segments.get(1)));
+        } else {
+            resource = "/" + String.join("/", segments);
+        }
+        String routeKey = method + " " + resource;
+        if (!LoadHarness.HANDLERS.containsKey(routeKey)) {
+            return null;
+        }
+
+        JsonArray query = url.getAsJsonObject().getAsJsonArray("query");
+        if (query != null) {
+            Map<String, String> queryParameters = new HashMap<>();
+            for (JsonElement element : query) {
+                JsonObject parameter = element.getAsJsonObject();
+                boolean disabled = parameter.has("disabled") && parameter.get("disabled").getAsBoolean();
+                if (!disabled && parameter.has("key") && !parameter.get("value").isJsonNull()) {
+                    queryParameters.put(parameter.get("key").getAsString(), parameter.get("value").getAsString());
+                }
+            }
+            event.withQueryStringParameters(queryParameters.isEmpty() ? null : queryParameters);
+        }
+        JsonObject body = postmanRequest.getAsJsonObject("body");
+        if (body != null && body.has("raw")) {
+            event.withBody(body.get("raw").getAsString());
+        }
+        return new Request(routeKey, event);
+    }
+
+    static final class Request {
+
+        private final String routeKey;
+        private final APIGatewayProxyRequestEvent event;
+
+        Request(String routeKey, APIGatewayProxyRequestEvent event) {
+            this.routeKey = routeKey;
+            this.event = event;
+        }
+
+        String getRouteKey() {
+            return routeKey;
+        }
+
+        APIGatewayProxyRequestEvent getEvent() {
+            return event;
+        }
+    }
+}
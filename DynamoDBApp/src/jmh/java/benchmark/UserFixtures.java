@@ -0,0 +1,99 @@
+package benchmark;
+
+import com.google.gson.Gson;
+import layer.model.User;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Realistic user payloads: a long "about" text, many interests and fully
+ * populated social media and privacy maps, spread over names, locations and
+ * birthdays so every GSI branch has a selective but non-empty result.
+ */
+public final class UserFixtures {
+
+    public static final String COUNTRY = "Ukraine";
+    public static final String[] FIRST_NAMES = {
+            "Alan", "Alice", "Andrii", "Bohdan", "Daria", "Dmytro", "Iryna", "Ivan", "Kateryna", "Maksym",
+            "Maria", "Mykola", "Nadiia", "Oksana", "Oleh", "Olena", "Petro", "Roman", "Serhii", "Sofiia",
+            "Taras", "Viktor", "Yaroslav", "Yulia", "Zakhar", "Zoriana"
+    };
+    public static final String[] CITIES = {
+            "Kyiv", "Lviv", "Kharkiv", "Odesa", "Dnipro", "Zaporizhzhia", "Vinnytsia", "Poltava", "Chernihiv", "Uzhhorod"
+    };
+    private static final String[] INTERESTS = {
+            "hiking", "photography", "chess", "cycling", "jazz", "cooking", "board games", "running", "travel",
+            "volunteering", "painting", "reading", "yoga", "football", "coding", "gardening", "climbing", "theatre",
+            "languages", "podcasts", "skiing", "swimming", "music production", "astronomy"
+    };
+    private static final String[] SOCIAL_MEDIA = {"linkedin", "telegram", "skype", "instagram", "facebook"};
+    private static final String[] PRIVACY = {
+            "email", "birthday", "location", "avatar", "about", "interests", "socialMedia", "registration"
+    };
+    private static final String ABOUT_SENTENCE = "Curious engineer who enjoys long walks, good coffee, and "
+            + "conversations about distributed systems, open source and the best routes through the Carpathians. ";
+    private static final long YEAR_SECONDS = 31_556_952L;
+
+    private UserFixtures() {
+    }
+
+    public static String email(int index) {
+        return "user" + index + "@mail.ua";
+    }
+
+    public static User user(int index) {
+        Random random = new Random(index);
+        long now = System.currentTimeMillis() / 1000;
+
+        List<String> interests = new ArrayList<>();
+        for (int i = 0; i < 12 + random.nextInt(12); i++) {
+            interests.add(INTERESTS[(index + i) % INTERESTS.length]);
+        }
+        HashMap<String, String> socialMedia = new HashMap<>();
+        for (String name : SOCIAL_MEDIA) {
+            socialMedia.put(name, "https://" + name + ".com/" + FIRST_NAMES[index % FIRST_NAMES.length].toLowerCase()
+                    + "." + index);
+        }
+        HashMap<String, Boolean> privacy = new HashMap<>();
+        for (String name : PRIVACY) {
+            privacy.put(name, random.nextBoolean());
+        }
+        StringBuilder about = new StringBuilder();
+        for (int i = 0; i < 8 + random.nextInt(8); i++) {
+            about.append(ABOUT_SENTENCE);
+        }
+
+        return User.builder()
+                .email(email(index))
+                .country(COUNTRY)
+                .name(FIRST_NAMES[index % FIRST_NAMES.length] + " " + surname(index))
+                .location(COUNTRY + ", " + CITIES[(index / FIRST_NAMES.length) % CITIES.length])
+                .birthday(now - (18 + random.nextInt(50)) * YEAR_SECONDS - random.nextInt((int) YEAR_SECONDS))
+                .registration(now - random.nextInt(3 * 365 * 24 * 3600))
+                .avatar("https://cdn.upamers.example/avatars/" + index + ".png")
+                .about(about.toString())
+                .interests(interests)
+                .socialMedia(socialMedia)
+                .privacy(privacy)
+                .build();
+    }
+
+    public static List<User> users(int count) {
+        List<User> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            users.add(user(i));
+        }
+        return users;
+    }
+
+    public static String json(User user) {
+        return new Gson().toJson(user);
+    }
+
+    private static String surname(int index) {
+        return "Koval" + (char) ('a' + index % 26) + "enko";
+    }
+}
@@ -0,0 +1,22 @@
+package handler;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import layer.service.RequestRouter;
+
+/**
+ * Bulk variant of {@link CreateUserFunction}: takes a JSON array or NDJSON of
+ * users and answers with the outcome of each one.
+ */
+public class CreateUsersFunction implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+
+    private static final RouterFunction routerFunction = new RouterFunction();
+
+    public APIGatewayProxyResponseEvent handleRequest(final APIGatewayProxyRequestEvent input,
+                                                      final Context context) {
+        return routerFunction.handleRoute(RequestRouter.CREATE_USERS, input, context);
+    }
+
+}
@@ -4,27 +4,15 @@ import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
-import layer.service.APIGatewayService;
-import layer.service.APIGatewayServiceImpl;
-import layer.service.DynamoDBService;
-import layer.service.DynamoDBServiceImpl;
-
+import layer.service.RequestRouter;
 
 public class DeleteUserFunction implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
-    private static final DynamoDBService dynamoDBService = new DynamoDBServiceImpl();
-    private static final APIGatewayService apiGatewayService = new APIGatewayServiceImpl();
+
+    private static final RouterFunction routerFunction = new RouterFunction();
 
     public APIGatewayProxyResponseEvent handleRequest(final APIGatewayProxyRequestEvent input,
                                                       final Context context) {
-        try {
-            String output = dynamoDBService.deleteUser(input.getPathParameters());
-            return apiGatewayService.getApiGatewayProxyResponseEvent(output, 200);
-        } catch (Exception e) {
-            return apiGatewayService.getApiGatewayProxyResponseEvent(
-                            "An error occurred while executing the lambda function: "
-                            + e.getClass() + "; message: " + e.getMessage(),
-                    503);
-        }
+        return routerFunction.handleRoute(RequestRouter.DELETE_USER, input, context);
     }
 
 }
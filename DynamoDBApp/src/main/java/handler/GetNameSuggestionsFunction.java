@@ -0,0 +1,22 @@
+package handler;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import layer.service.RequestRouter;
+
+/**
+ * Suggests users by a prefix of any word of their name, for as-you-type
+ * search: {@code GET /users/autocomplete?prefix=iva&limit=10}.
+ */
+public class GetNameSuggestionsFunction implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+
+    private static final RouterFunction routerFunction = new RouterFunction();
+
+    public APIGatewayProxyResponseEvent handleRequest(final APIGatewayProxyRequestEvent input,
+                                                      final Context context) {
+        return routerFunction.handleRoute(RequestRouter.GET_NAME_SUGGESTIONS, input, context);
+    }
+
+}
@@ -0,0 +1,24 @@
+package handler;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+import layer.service.RequestRouter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Streaming variant of {@link GetUserListByQueryFunction}: users are written
+ * to the response as the query or scan iterates them.
+ */
+public class GetUserListByQueryStreamFunction implements RequestStreamHandler {
+
+    private static final RouterFunction routerFunction = new RouterFunction();
+
+    public void handleRequest(final InputStream inputStream, final OutputStream outputStream,
+                              final Context context) throws IOException {
+        routerFunction.handleRoute(RequestRouter.GET_USER_LIST_BY_QUERY, inputStream, outputStream, context);
+    }
+
+}
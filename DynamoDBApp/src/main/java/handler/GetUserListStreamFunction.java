@@ -0,0 +1,24 @@
+package handler;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+import layer.service.RequestRouter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Streaming variant of {@link GetUserListFunction}: users are written to the
+ * response as the scan iterates them instead of being built into one String.
+ */
+public class GetUserListStreamFunction implements RequestStreamHandler {
+
+    private static final RouterFunction routerFunction = new RouterFunction();
+
+    public void handleRequest(final InputStream inputStream, final OutputStream outputStream,
+                              final Context context) throws IOException {
+        routerFunction.handleRoute(RequestRouter.GET_USER_LIST, inputStream, outputStream, context);
+    }
+
+}
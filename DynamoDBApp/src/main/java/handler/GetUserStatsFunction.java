@@ -0,0 +1,22 @@
+package handler;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import layer.service.RequestRouter;
+
+/**
+ * Counts users per bucket of one dimension from the aggregates kept by
+ * {@link UserStatsStreamFunction}: {@code GET /stats/location}.
+ */
+public class GetUserStatsFunction implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+
+    private static final RouterFunction routerFunction = new RouterFunction();
+
+    public APIGatewayProxyResponseEvent handleRequest(final APIGatewayProxyRequestEvent input,
+                                                      final Context context) {
+        return routerFunction.handleRoute(RequestRouter.GET_USER_STATS, input, context);
+    }
+
+}
@@ -0,0 +1,22 @@
+package handler;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import layer.service.RequestRouter;
+
+/**
+ * Batch variant of {@link GetUserFunction}: takes a JSON array of emails and
+ * answers with one result per email, in request order.
+ */
+public class GetUsersFunction implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
+
+    private static final RouterFunction routerFunction = new RouterFunction();
+
+    public APIGatewayProxyResponseEvent handleRequest(final APIGatewayProxyRequestEvent input,
+                                                      final Context context) {
+        return routerFunction.handleRoute(RequestRouter.GET_USERS, input, context);
+    }
+
+}
@@ -0,0 +1,97 @@
+package handler;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestStreamHandler;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import layer.service.APIGatewayService;
+import layer.service.APIGatewayServiceImpl;
+import layer.service.DynamoDBServiceAsync;
+import layer.service.DynamoDBServiceImpl;
+import layer.service.ProxyRequest;
+import layer.service.RequestRouter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Serves every route from one function, so all traffic shares one pool of
+ * warm containers, one client and one user cache. The single-route handlers
+ * delegate to it for their route, so they keep working as separate
+ * functions with the same behavior. The router composes the asynchronous
+ * service calls of a request; the handler only waits for the response, for
+ * no longer than the invocation has left.
+ */
+public class RouterFunction implements RequestStreamHandler {
+
+    private static final DynamoDBServiceAsync dynamoDBService = new DynamoDBServiceImpl();
+    private static final APIGatewayService apiGatewayService = new APIGatewayServiceImpl();
+    private static final RequestRouter requestRouter = new RequestRouter(dynamoDBService);
+
+    static {
+        dynamoDBService.prime();
+    }
+
+    public void handleRequest(final InputStream inputStream, final OutputStream outputStream,
+                              final Context context) throws IOException {
+        ProxyRequest request = null;
+        RequestRouter.Response response;
+        try {
+            request = ProxyRequest.read(inputStream);
+            response = requestRouter.route(request, getRemainingTimeMillis(context)).join();
+        } catch (Exception e) {
+            response = getErrorResponse(e);
+        }
+        // Once the envelope is written a failure can no longer become a 503,
+        // so errors while streaming fail the invocation instead.
+        apiGatewayService.writeApiGatewayProxyResponseEvent(outputStream, response.getBody(),
+                response.getStatusCode(), response.getHeaders(), getAcceptEncoding(request));
+    }
+
+    void handleRoute(String routeKey, InputStream inputStream, OutputStream outputStream, Context context)
+            throws IOException {
+        ProxyRequest request = null;
+        RequestRouter.Response response;
+        try {
+            request = ProxyRequest.read(inputStream);
+            response = requestRouter.route(routeKey, request, getRemainingTimeMillis(context)).join();
+        } catch (Exception e) {
+            response = getErrorResponse(e);
+        }
+        apiGatewayService.writeApiGatewayProxyResponseEvent(outputStream, response.getBody(),
+                response.getStatusCode(), response.getHeaders(), getAcceptEncoding(request));
+    }
+
+    APIGatewayProxyResponseEvent handleRoute(String routeKey, APIGatewayProxyRequestEvent input, Context context) {
+        ProxyRequest request = ProxyRequest.of(input);
+        RequestRouter.Response response = requestRouter.route(routeKey, request,
+                getRemainingTimeMillis(context)).join();
+        try {
+            return apiGatewayService.getApiGatewayProxyResponseEvent(response.getBody(), response.getStatusCode(),
+                    response.getHeaders(), getAcceptEncoding(request));
+        } catch (Exception e) {
+            return apiGatewayService.getApiGatewayProxyResponseEvent(
+                    "An error occurred while executing the lambda function: "
+                            + e.getClass() + "; message: " + e.getMessage(),
+                    503);
+        }
+    }
+
+    /**
+     * The time the invocation has left, or 0 (no deadline) without a context.
+     */
+    private static long getRemainingTimeMillis(Context context) {
+        return context == null ? 0 : Math.max(1, context.getRemainingTimeInMillis());
+    }
+
+    private static String getAcceptEncoding(ProxyRequest request) {
+        return request == null ? null : request.getHeader("Accept-Encoding");
+    }
+
+    private static RequestRouter.Response getErrorResponse(Exception e) {
+        String output = "An error occurred while executing the lambda function: "
+                + e.getClass() + "; message: " + e.getMessage();
+        return new RequestRouter.Response(503, writer -> writer.write(output));
+    }
+}
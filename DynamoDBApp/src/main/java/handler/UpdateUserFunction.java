@@ -4,35 +4,15 @@ import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
-import layer.service.APIGatewayService;
-import layer.service.APIGatewayServiceImpl;
-import layer.service.DynamoDBService;
-import layer.service.DynamoDBServiceImpl;
-
+import layer.service.RequestRouter;
 
 public class UpdateUserFunction implements RequestHandler<APIGatewayProxyRequestEvent, APIGatewayProxyResponseEvent> {
-    private static final DynamoDBService dynamoDBService = new DynamoDBServiceImpl();
-    private static final APIGatewayService apiGatewayService = new APIGatewayServiceImpl();
+
+    private static final RouterFunction routerFunction = new RouterFunction();
 
     public APIGatewayProxyResponseEvent handleRequest(final APIGatewayProxyRequestEvent input,
                                                       final Context context) {
-        //TODO Implement a record update with help of DynamoDBService
-        /*
-        Add code that extracts parameters and body from input,
-        and uses DynamoDBService to update the record in the table.
-        The result of operation provided as HTTP 200 response.
-        In case of error return HTTP 503.
-        */
-
-		try {
-            String output = dynamoDBService.updateUser(input.getPathParameters());
-            return apiGatewayService.getApiGatewayProxyResponseEvent(output, 200);
-        } catch (Exception e) {
-            return apiGatewayService.getApiGatewayProxyResponseEvent(
-                    "An error occurred while executing the lambda function: "
-                            + e.getClass() + "; message: " + e.getMessage(),
-                    503);
-        }
+        return routerFunction.handleRoute(RequestRouter.UPDATE_USER, input, context);
     }
-}
 
+}
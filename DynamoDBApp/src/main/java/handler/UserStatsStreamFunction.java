@@ -0,0 +1,29 @@
+package handler;
+
+import com.amazonaws.services.lambda.runtime.Context;
+import com.amazonaws.services.lambda.runtime.RequestHandler;
+import com.amazonaws.services.lambda.runtime.events.DynamodbTimeWindowEvent;
+import com.amazonaws.services.lambda.runtime.events.TimeWindowEventResponse;
+import layer.service.AmazonDynamoDBConnect;
+import layer.service.StreamRecords;
+import layer.service.UserStats;
+
+import java.util.Map;
+
+/**
+ * Consumes the stream of the user table and adds every batch to the
+ * {@link UserStats} counts. A failed update fails the invocation, so the
+ * batch is retried. The stream is read with a tumbling window only because
+ * that is how the shard id of a batch is passed in; every batch is applied
+ * as it arrives and no window state is kept.
+ */
+public class UserStatsStreamFunction implements RequestHandler<DynamodbTimeWindowEvent, TimeWindowEventResponse> {
+
+    private static final UserStats userStats = new UserStats(new AmazonDynamoDBConnect());
+
+    public TimeWindowEventResponse handleRequest(final DynamodbTimeWindowEvent input, final Context context) {
+        userStats.apply(input.getShardId(), StreamRecords.of(input));
+        return TimeWindowEventResponse.builder().withState(Map.of()).build();
+    }
+
+}
@@ -0,0 +1,300 @@
+package layer.engine;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Value helpers used by the local engine: typing, ordering, copying and
+ * the item size rules DynamoDB applies when it computes capacity units.
+ */
+final class AttributeValues {
+
+    static final String STRING = "S";
+    static final String NUMBER = "N";
+    static final String BINARY = "B";
+    static final String BOOLEAN = "BOOL";
+    static final String NULL = "NULL";
+    static final String LIST = "L";
+    static final String MAP = "M";
+    static final String STRING_SET = "SS";
+    static final String NUMBER_SET = "NS";
+    static final String BINARY_SET = "BS";
+
+    private AttributeValues() {
+    }
+
+    static String typeOf(AttributeValue value) {
+        if (value == null) {
+            return null;
+        } else if (value.getS() != null) {
+            return STRING;
+        } else if (value.getN() != null) {
+            return NUMBER;
+        } else if (value.getB() != null) {
+            return BINARY;
+        } else if (value.getBOOL() != null) {
+            return BOOLEAN;
+        } else if (value.getNULL() != null) {
+            return NULL;
+        } else if (value.getL() != null) {
+            return LIST;
+        } else if (value.getM() != null) {
+            return MAP;
+        } else if (value.getSS() != null) {
+            return STRING_SET;
+        } else if (value.getNS() != null) {
+            return NUMBER_SET;
+        } else if (value.getBS() != null) {
+            return BINARY_SET;
+        }
+        return null;
+    }
+
+    /**
+     * Orders two scalar values of the same type the way DynamoDB orders key
+     * attributes: numbers numerically, strings and binaries byte-wise.
+     */
+    static int compare(AttributeValue left, AttributeValue right) {
+        String type = typeOf(left);
+        if (!type.equals(typeOf(right))) {
+            throw new IllegalArgumentException("Cannot compare " + type + " with " + typeOf(right));
+        }
+        switch (type) {
+            case NUMBER:
+                return new BigDecimal(left.getN()).compareTo(new BigDecimal(right.getN()));
+            case STRING:
+                return compareBytes(left.getS().getBytes(StandardCharsets.UTF_8),
+                        right.getS().getBytes(StandardCharsets.UTF_8));
+            case BINARY:
+                return compareBytes(toBytes(left.getB()), toBytes(right.getB()));
+            default:
+                throw new IllegalArgumentException("Type " + type + " is not comparable");
+        }
+    }
+
+    static boolean isComparable(AttributeValue left, AttributeValue right) {
+        String type = typeOf(left);
+        return type != null && type.equals(typeOf(right))
+                && (type.equals(STRING) || type.equals(NUMBER) || type.equals(BINARY));
+    }
+
+    static boolean isEqual(AttributeValue left, AttributeValue right) {
+        if (left == null || right == null) {
+            return left == right;
+        }
+        String type = typeOf(left);
+        if (type == null || !type.equals(typeOf(right))) {
+            return false;
+        }
+        switch (type) {
+            case NUMBER:
+            case STRING:
+            case BINARY:
+                return compare(left, right) == 0;
+            case NUMBER_SET:
+                return toNumberSet(left.getNS()).equals(toNumberSet(right.getNS()));
+            case LIST:
+                if (left.getL().size() != right.getL().size()) {
+                    return false;
+                }
+                for (int i = 0; i < left.getL().size(); i++) {
+                    if (!isEqual(left.getL().get(i), right.getL().get(i))) {
+                        return false;
+                    }
+                }
+                return true;
+            case MAP:
+                if (!left.getM().keySet().equals(right.getM().keySet())) {
+                    return false;
+                }
+                for (Map.Entry<String, AttributeValue> entry : left.getM().entrySet()) {
+                    if (!isEqual(entry.getValue(), right.getM().get(entry.getKey()))) {
+                        return false;
+                    }
+                }
+                return true;
+            default:
+                return left.equals(right);
+        }
+    }
+
+    static AttributeValue copy(AttributeValue value) {
+        if (value == null) {
+            return null;
+        }
+        AttributeValue copy = new AttributeValue();
+        copy.setS(value.getS());
+        copy.setN(value.getN());
+        if (value.getB() != null) {
+            copy.setB(ByteBuffer.wrap(toBytes(value.getB())));
+        }
+        copy.setBOOL(value.getBOOL());
+        copy.setNULL(value.getNULL());
+        if (value.getSS() != null) {
+            copy.setSS(new ArrayList<>(value.getSS()));
+        }
+        if (value.getNS() != null) {
+            copy.setNS(new ArrayList<>(value.getNS()));
+        }
+        if (value.getBS() != null) {
+            List<ByteBuffer> buffers = new ArrayList<>(value.getBS().size());
+            for (ByteBuffer buffer : value.getBS()) {
+                buffers.add(ByteBuffer.wrap(toBytes(buffer)));
+            }
+            copy.setBS(buffers);
+        }
+        if (value.getL() != null) {
+            List<AttributeValue> list = new ArrayList<>(value.getL().size());
+            for (AttributeValue element : value.getL()) {
+                list.add(copy(element));
+            }
+            copy.setL(list);
+        }
+        if (value.getM() != null) {
+            copy.setM(copyItem(value.getM()));
+        }
+        return copy;
+    }
+
+    static Map<String, AttributeValue> copyItem(Map<String, AttributeValue> item) {
+        if (item == null) {
+            return null;
+        }
+        Map<String, AttributeValue> copy = new LinkedHashMap<>();
+        for (Map.Entry<String, AttributeValue> entry : item.entrySet()) {
+            copy.put(entry.getKey(), copy(entry.getValue()));
+        }
+        return copy;
+    }
+
+    /**
+     * Size in bytes as DynamoDB accounts for it: attribute name length plus
+     * the encoded value, with the documented per-element overheads for
+     * documents and the per-byte approximation for numbers.
+     */
+    static int itemSize(Map<String, AttributeValue> item) {
+        int size = 0;
+        for (Map.Entry<String, AttributeValue> entry : item.entrySet()) {
+            size += utf8Length(entry.getKey()) + valueSize(entry.getValue());
+        }
+        return size;
+    }
+
+    static int valueSize(AttributeValue value) {
+        String type = typeOf(value);
+        if (type == null) {
+            return 0;
+        }
+        int size = 0;
+        switch (type) {
+            case STRING:
+                return utf8Length(value.getS());
+            case NUMBER:
+                return numberSize(value.getN());
+            case BINARY:
+                return value.getB().remaining();
+            case BOOLEAN:
+            case NULL:
+                return 1;
+            case STRING_SET:
+                for (String element : value.getSS()) {
+                    size += utf8Length(element);
+                }
+                return size;
+            case NUMBER_SET:
+                for (String element : value.getNS()) {
+                    size += numberSize(element);
+                }
+                return size;
+            case BINARY_SET:
+                for (ByteBuffer element : value.getBS()) {
+                    size += element.remaining();
+                }
+                return size;
+            case LIST:
+                size = 3;
+                for (AttributeValue element : value.getL()) {
+                    size += 1 + valueSize(element);
+                }
+                return size;
+            case MAP:
+                size = 3;
+                for (Map.Entry<String, AttributeValue> entry : value.getM().entrySet()) {
+                    size += 1 + utf8Length(entry.getKey()) + valueSize(entry.getValue());
+                }
+                return size;
+            default:
+                return 0;
+        }
+    }
+
+    static Map<String, AttributeValue> project(Map<String, AttributeValue> item, List<String> attributeNames) {
+        Map<String, AttributeValue> projected = new HashMap<>();
+        for (String attributeName : attributeNames) {
+            AttributeValue value = item.get(attributeName);
+            if (value != null) {
+                projected.put(attributeName, value);
+            }
+        }
+        return projected;
+    }
+
+    static byte[] toBytes(ByteBuffer buffer) {
+        ByteBuffer duplicate = buffer.duplicate();
+        byte[] bytes = new byte[duplicate.remaining()];
+        duplicate.get(bytes);
+        return bytes;
+    }
+
+    private static Set<BigDecimal> toNumberSet(List<String> numbers) {
+        Set<BigDecimal> set = new TreeSet<>();
+        for (String number : numbers) {
+            set.add(new BigDecimal(number));
+        }
+        return set;
+    }
+
+    private static int numberSize(String number) {
+        String digits = new BigDecimal(number).stripTrailingZeros().unscaledValue().abs().toString();
+        return (digits.length() + 1) / 2 + 1;
+    }
+
+    private static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static int compareBytes(byte[] left, byte[] right) {
+        int length = Math.min(left.length, right.length);
+        for (int i = 0; i < length; i++) {
+            int difference = (left[i] & 0xff) - (right[i] & 0xff);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return left.length - right.length;
+    }
+}
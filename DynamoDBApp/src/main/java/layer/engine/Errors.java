@@ -0,0 +1,41 @@
+package layer.engine;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodbv2.model.AmazonDynamoDBException;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.ResourceNotFoundException;
+
+/**
+ * Builds the same exception types, error codes and status codes the remote
+ * service returns, so callers cannot tell the engines apart by their errors.
+ */
+final class Errors {
+
+    private static final String SERVICE_NAME = "AmazonDynamoDBv2";
+
+    private Errors() {
+    }
+
+    static AmazonDynamoDBException validation(String message) {
+        AmazonDynamoDBException exception = new AmazonDynamoDBException(message);
+        return describe(exception, "ValidationException", 400);
+    }
+
+    static ConditionalCheckFailedException conditionalCheckFailed() {
+        return describe(new ConditionalCheckFailedException("The conditional request failed"),
+                "ConditionalCheckFailedException", 400);
+    }
+
+    static ResourceNotFoundException tableNotFound(String tableName) {
+        return describe(new ResourceNotFoundException("Requested resource not found: Table: "
+                + tableName + " not found"), "ResourceNotFoundException", 400);
+    }
+
+    private static <T extends AmazonServiceException> T describe(T exception, String errorCode, int statusCode) {
+        exception.setErrorCode(errorCode);
+        exception.setStatusCode(statusCode);
+        exception.setServiceName(SERVICE_NAME);
+        exception.setErrorType(AmazonServiceException.ErrorType.Client);
+        return exception;
+    }
+}
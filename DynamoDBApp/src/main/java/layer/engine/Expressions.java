@@ -0,0 +1,824 @@
+package layer.engine;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntPredicate;
+
+/**
+ * Parser and evaluator for the DynamoDB expression language as used by the
+ * local engine: key condition, filter and condition expressions, update
+ * expressions and projection expressions.
+ */
+final class Expressions {
+
+    private Expressions() {
+    }
+
+    interface Condition {
+        boolean test(Map<String, AttributeValue> item);
+    }
+
+    interface Operand {
+        AttributeValue resolve(Map<String, AttributeValue> item);
+    }
+
+    static Condition parseCondition(String expression, Map<String, String> names,
+                                    Map<String, AttributeValue> values) {
+        Parser parser = new Parser(expression, names, values);
+        Condition condition = parser.parseOr();
+        parser.expectEnd();
+        return condition;
+    }
+
+    /**
+     * Parses a key condition expression into its equality term on the hash key
+     * and the optional range key term, in the order they were written.
+     */
+    static List<KeyTerm> parseKeyCondition(String expression, Map<String, String> names,
+                                           Map<String, AttributeValue> values) {
+        Parser parser = new Parser(expression, names, values);
+        List<KeyTerm> terms = new ArrayList<>();
+        do {
+            terms.add(parser.parseKeyTerm());
+        } while (parser.accept("AND"));
+        parser.expectEnd();
+        if (terms.size() > 2) {
+            throw Errors.validation("Invalid KeyConditionExpression: too many conditions in " + expression);
+        }
+        return terms;
+    }
+
+    static final class KeyTerm {
+
+        final String attributeName;
+        final ComparisonOperator operator;
+        final List<AttributeValue> values;
+
+        KeyTerm(String attributeName, ComparisonOperator operator, List<AttributeValue> values) {
+            this.attributeName = attributeName;
+            this.operator = operator;
+            this.values = values;
+        }
+    }
+
+    static List<Path> parseProjection(String expression, Map<String, String> names) {
+        Parser parser = new Parser(expression, names, Collections.emptyMap());
+        List<Path> paths = new ArrayList<>();
+        do {
+            paths.add(parser.parsePath());
+        } while (parser.accept(","));
+        parser.expectEnd();
+        return paths;
+    }
+
+    static Update parseUpdate(String expression, Map<String, String> names,
+                              Map<String, AttributeValue> values) {
+        Parser parser = new Parser(expression, names, values);
+        Update update = new Update();
+        while (!parser.atEnd()) {
+            String clause = parser.identifier().toUpperCase();
+            switch (clause) {
+                case "SET":
+                    do {
+                        Path path = parser.parsePath();
+                        parser.expect("=");
+                        update.sets.add(new SetAction(path, parser.parseSetValue()));
+                    } while (parser.accept(","));
+                    break;
+                case "REMOVE":
+                    do {
+                        update.removes.add(parser.parsePath());
+                    } while (parser.accept(","));
+                    break;
+                case "ADD":
+                    do {
+                        Path path = parser.parsePath();
+                        update.adds.add(new ValueAction(path, parser.parseOperand()));
+                    } while (parser.accept(","));
+                    break;
+                case "DELETE":
+                    do {
+                        Path path = parser.parsePath();
+                        update.deletes.add(new ValueAction(path, parser.parseOperand()));
+                    } while (parser.accept(","));
+                    break;
+                default:
+                    throw Errors.validation("Invalid UpdateExpression: unknown clause " + clause);
+            }
+        }
+        return update;
+    }
+
+    /**
+     * Projects an item onto the given document paths, keeping the nesting of
+     * the original item.
+     */
+    static Map<String, AttributeValue> project(Map<String, AttributeValue> item, List<Path> paths) {
+        Map<String, AttributeValue> projected = new LinkedHashMap<>();
+        for (Path path : paths) {
+            AttributeValue value = path.resolve(item);
+            if (value != null) {
+                path.write(projected, value);
+            }
+        }
+        return projected;
+    }
+
+    static final class Path implements Operand {
+
+        private final List<Object> elements;
+
+        private Path(List<Object> elements) {
+            this.elements = elements;
+        }
+
+        String topLevelName() {
+            return (String) elements.get(0);
+        }
+
+        @Override
+        public AttributeValue resolve(Map<String, AttributeValue> item) {
+            AttributeValue current = item.get(topLevelName());
+            for (int i = 1; i < elements.size() && current != null; i++) {
+                Object element = elements.get(i);
+                if (element instanceof Integer) {
+                    List<AttributeValue> list = current.getL();
+                    int index = (Integer) element;
+                    current = list != null && index < list.size() ? list.get(index) : null;
+                } else {
+                    Map<String, AttributeValue> map = current.getM();
+                    current = map != null ? map.get(element) : null;
+                }
+            }
+            return current;
+        }
+
+        void write(Map<String, AttributeValue> item, AttributeValue value) {
+            if (elements.size() == 1) {
+                item.put(topLevelName(), value);
+                return;
+            }
+            AttributeValue parent = item.get(topLevelName());
+            if (parent == null) {
+                parent = elements.get(1) instanceof Integer
+                        ? new AttributeValue().withL(new ArrayList<>())
+                        : new AttributeValue().withM(new LinkedHashMap<>());
+                item.put(topLevelName(), parent);
+            }
+            for (int i = 1; i < elements.size(); i++) {
+                Object element = elements.get(i);
+                boolean last = i == elements.size() - 1;
+                if (element instanceof Integer) {
+                    List<AttributeValue> list = requireList(parent);
+                    int index = (Integer) element;
+                    if (last) {
+                        if (index < list.size()) {
+                            list.set(index, value);
+                        } else {
+                            list.add(value);
+                        }
+                        return;
+                    }
+                    parent = list.get(index);
+                } else {
+                    Map<String, AttributeValue> map = requireMap(parent);
+                    if (last) {
+                        map.put((String) element, value);
+                        return;
+                    }
+                    AttributeValue child = map.get(element);
+                    if (child == null) {
+                        child = elements.get(i + 1) instanceof Integer
+                                ? new AttributeValue().withL(new ArrayList<>())
+                                : new AttributeValue().withM(new LinkedHashMap<>());
+                        map.put((String) element, child);
+                    }
+                    parent = child;
+                }
+            }
+        }
+
+        void remove(Map<String, AttributeValue> item) {
+            if (elements.size() == 1) {
+                item.remove(topLevelName());
+                return;
+            }
+            AttributeValue parent = new Path(elements.subList(0, elements.size() - 1)).resolve(item);
+            Object last = elements.get(elements.size() - 1);
+            if (parent == null) {
+                return;
+            }
+            if (last instanceof Integer && parent.getL() != null && (Integer) last < parent.getL().size()) {
+                parent.getL().remove((int) (Integer) last);
+            } else if (parent.getM() != null) {
+                parent.getM().remove(last);
+            }
+        }
+
+        private static List<AttributeValue> requireList(AttributeValue value) {
+            if (value.getL() == null) {
+                throw Errors.validation("The document path provided in the update expression is invalid for update");
+            }
+            return value.getL();
+        }
+
+        private static Map<String, AttributeValue> requireMap(AttributeValue value) {
+            if (value.getM() == null) {
+                throw Errors.validation("The document path provided in the update expression is invalid for update");
+            }
+            return value.getM();
+        }
+    }
+
+    static final class Update {
+
+        private final List<SetAction> sets = new ArrayList<>();
+        private final List<Path> removes = new ArrayList<>();
+        private final List<ValueAction> adds = new ArrayList<>();
+        private final List<ValueAction> deletes = new ArrayList<>();
+
+        Set<String> updatedAttributeNames() {
+            Set<String> names = new LinkedHashSet<>();
+            sets.forEach(action -> names.add(action.path.topLevelName()));
+            removes.forEach(path -> names.add(path.topLevelName()));
+            adds.forEach(action -> names.add(action.path.topLevelName()));
+            deletes.forEach(action -> names.add(action.path.topLevelName()));
+            return names;
+        }
+
+        /**
+         * Applies every action against the pre-update image, as DynamoDB does,
+         * and writes the results into {@code target}.
+         */
+        void apply(Map<String, AttributeValue> original, Map<String, AttributeValue> target) {
+            for (SetAction action : sets) {
+                action.path.write(target, AttributeValues.copy(action.value.resolve(original)));
+            }
+            for (Path path : removes) {
+                path.remove(target);
+            }
+            for (ValueAction action : adds) {
+                AttributeValue current = action.path.resolve(target);
+                action.path.write(target, add(current, action.value.resolve(original)));
+            }
+            for (ValueAction action : deletes) {
+                AttributeValue current = action.path.resolve(target);
+                if (current != null) {
+                    AttributeValue remaining = deleteFromSet(current, action.value.resolve(original));
+                    if (remaining == null) {
+                        action.path.remove(target);
+                    } else {
+                        action.path.write(target, remaining);
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class SetAction {
+        private final Path path;
+        private final Operand value;
+
+        private SetAction(Path path, Operand value) {
+            this.path = path;
+            this.value = value;
+        }
+    }
+
+    private static final class ValueAction {
+        private final Path path;
+        private final Operand value;
+
+        private ValueAction(Path path, Operand value) {
+            this.path = path;
+            this.value = value;
+        }
+    }
+
+    static AttributeValue add(AttributeValue current, AttributeValue increment) {
+        String type = AttributeValues.typeOf(increment);
+        if (AttributeValues.NUMBER.equals(type)) {
+            BigDecimal base = current == null ? BigDecimal.ZERO : new BigDecimal(requireNumber(current).getN());
+            return new AttributeValue().withN(base.add(new BigDecimal(increment.getN())).toPlainString());
+        }
+        if (AttributeValues.STRING_SET.equals(type)) {
+            Set<String> set = new LinkedHashSet<>(current == null ? List.of() : current.getSS());
+            set.addAll(increment.getSS());
+            return new AttributeValue().withSS(new ArrayList<>(set));
+        }
+        if (AttributeValues.NUMBER_SET.equals(type)) {
+            Set<String> set = new LinkedHashSet<>(current == null ? List.of() : current.getNS());
+            set.addAll(increment.getNS());
+            return new AttributeValue().withNS(new ArrayList<>(set));
+        }
+        if (AttributeValues.BINARY_SET.equals(type)) {
+            Set<ByteBuffer> set = new LinkedHashSet<>(current == null ? List.of() : current.getBS());
+            set.addAll(increment.getBS());
+            return new AttributeValue().withBS(new ArrayList<>(set));
+        }
+        throw Errors.validation("Incorrect operand type for operator or function; operator: ADD, operand type: "
+                + type);
+    }
+
+    static AttributeValue deleteFromSet(AttributeValue current, AttributeValue removed) {
+        String type = AttributeValues.typeOf(current);
+        if (!type.equals(AttributeValues.typeOf(removed))) {
+            throw Errors.validation("An operand in the update expression has an incorrect data type");
+        }
+        switch (type) {
+            case AttributeValues.STRING_SET:
+                List<String> strings = new ArrayList<>(current.getSS());
+                strings.removeAll(removed.getSS());
+                return strings.isEmpty() ? null : new AttributeValue().withSS(strings);
+            case AttributeValues.NUMBER_SET:
+                List<String> numbers = new ArrayList<>(current.getNS());
+                numbers.removeAll(removed.getNS());
+                return numbers.isEmpty() ? null : new AttributeValue().withNS(numbers);
+            case AttributeValues.BINARY_SET:
+                List<ByteBuffer> binaries = new ArrayList<>(current.getBS());
+                binaries.removeAll(removed.getBS());
+                return binaries.isEmpty() ? null : new AttributeValue().withBS(binaries);
+            default:
+                throw Errors.validation("An operand in the update expression has an incorrect data type");
+        }
+    }
+
+    private static AttributeValue requireNumber(AttributeValue value) {
+        if (value.getN() == null) {
+            throw Errors.validation("An operand in the update expression has an incorrect data type");
+        }
+        return value;
+    }
+
+    private static final class Parser {
+
+        private final String expression;
+        private final Map<String, String> names;
+        private final Map<String, AttributeValue> values;
+        private final List<String> tokens = new ArrayList<>();
+        private int position;
+
+        private Parser(String expression, Map<String, String> names, Map<String, AttributeValue> values) {
+            this.expression = expression;
+            this.names = names != null ? names : Collections.emptyMap();
+            this.values = values != null ? values : Collections.emptyMap();
+            tokenize();
+        }
+
+        private void tokenize() {
+            int i = 0;
+            while (i < expression.length()) {
+                char c = expression.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (c == '<' || c == '>') {
+                    if (i + 1 < expression.length()
+                            && (expression.charAt(i + 1) == '=' || (c == '<' && expression.charAt(i + 1) == '>'))) {
+                        tokens.add(expression.substring(i, i + 2));
+                        i += 2;
+                    } else {
+                        tokens.add(String.valueOf(c));
+                        i++;
+                    }
+                } else if ("()[],.=+-".indexOf(c) >= 0) {
+                    tokens.add(String.valueOf(c));
+                    i++;
+                } else if (c == '#' || c == ':' || Character.isLetterOrDigit(c) || c == '_') {
+                    int start = i++;
+                    while (i < expression.length()
+                            && (Character.isLetterOrDigit(expression.charAt(i)) || expression.charAt(i) == '_')) {
+                        i++;
+                    }
+                    tokens.add(expression.substring(start, i));
+                } else {
+                    throw Errors.validation("Invalid expression: unexpected character '" + c + "' in " + expression);
+                }
+            }
+        }
+
+        private boolean atEnd() {
+            return position >= tokens.size();
+        }
+
+        private String peek() {
+            return atEnd() ? null : tokens.get(position);
+        }
+
+        private boolean peekKeyword(String keyword) {
+            return !atEnd() && tokens.get(position).equalsIgnoreCase(keyword);
+        }
+
+        private boolean accept(String token) {
+            if (!atEnd() && tokens.get(position).equalsIgnoreCase(token)) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(String token) {
+            if (!accept(token)) {
+                throw Errors.validation("Invalid expression: expected '" + token + "' in " + expression);
+            }
+        }
+
+        private void expectEnd() {
+            if (!atEnd()) {
+                throw Errors.validation("Invalid expression: unexpected token '" + peek() + "' in " + expression);
+            }
+        }
+
+        private String identifier() {
+            if (atEnd()) {
+                throw Errors.validation("Invalid expression: unexpected end of " + expression);
+            }
+            return tokens.get(position++);
+        }
+
+        private KeyTerm parseKeyTerm() {
+            if (accept("(")) {
+                KeyTerm term = parseKeyTerm();
+                expect(")");
+                return term;
+            }
+            if (peekKeyword("begins_with")) {
+                position++;
+                expect("(");
+                Path path = parsePath();
+                expect(",");
+                AttributeValue prefix = value();
+                expect(")");
+                return new KeyTerm(path.topLevelName(), ComparisonOperator.BEGINS_WITH, List.of(prefix));
+            }
+            Path path = parsePath();
+            if (accept("BETWEEN")) {
+                AttributeValue low = value();
+                expect("AND");
+                AttributeValue high = value();
+                return new KeyTerm(path.topLevelName(), ComparisonOperator.BETWEEN, List.of(low, high));
+            }
+            String comparator = identifier();
+            AttributeValue value = value();
+            switch (comparator) {
+                case "=":
+                    return new KeyTerm(path.topLevelName(), ComparisonOperator.EQ, List.of(value));
+                case "<":
+                    return new KeyTerm(path.topLevelName(), ComparisonOperator.LT, List.of(value));
+                case "<=":
+                    return new KeyTerm(path.topLevelName(), ComparisonOperator.LE, List.of(value));
+                case ">":
+                    return new KeyTerm(path.topLevelName(), ComparisonOperator.GT, List.of(value));
+                case ">=":
+                    return new KeyTerm(path.topLevelName(), ComparisonOperator.GE, List.of(value));
+                default:
+                    throw Errors.validation("Invalid KeyConditionExpression: unsupported operator " + comparator);
+            }
+        }
+
+        private AttributeValue value() {
+            String token = identifier();
+            AttributeValue value = values.get(token);
+            if (value == null) {
+                throw Errors.validation("An expression attribute value used in expression is not defined; "
+                        + "attribute value: " + token);
+            }
+            return value;
+        }
+
+        private Condition parseOr() {
+            Condition left = parseAnd();
+            while (accept("OR")) {
+                Condition first = left;
+                Condition second = parseAnd();
+                left = item -> first.test(item) || second.test(item);
+            }
+            return left;
+        }
+
+        private Condition parseAnd() {
+            Condition left = parseNot();
+            while (accept("AND")) {
+                Condition first = left;
+                Condition second = parseNot();
+                left = item -> first.test(item) && second.test(item);
+            }
+            return left;
+        }
+
+        private Condition parseNot() {
+            if (accept("NOT")) {
+                Condition negated = parseNot();
+                return item -> !negated.test(item);
+            }
+            return parsePrimary();
+        }
+
+        private Condition parsePrimary() {
+            if (accept("(")) {
+                Condition condition = parseOr();
+                expect(")");
+                return condition;
+            }
+            String token = peek();
+            if (token != null && position + 1 < tokens.size() && tokens.get(position + 1).equals("(")
+                    && !token.equalsIgnoreCase("size")) {
+                return parseFunction();
+            }
+            Operand left = parseOperand();
+            if (accept("BETWEEN")) {
+                Operand low = parseOperand();
+                expect("AND");
+                Operand high = parseOperand();
+                return item -> {
+                    AttributeValue value = left.resolve(item);
+                    AttributeValue lowValue = low.resolve(item);
+                    AttributeValue highValue = high.resolve(item);
+                    return AttributeValues.isComparable(value, lowValue)
+                            && AttributeValues.isComparable(value, highValue)
+                            && AttributeValues.compare(value, lowValue) >= 0
+                            && AttributeValues.compare(value, highValue) <= 0;
+                };
+            }
+            if (accept("IN")) {
+                expect("(");
+                List<Operand> candidates = new ArrayList<>();
+                do {
+                    candidates.add(parseOperand());
+                } while (accept(","));
+                expect(")");
+                return item -> {
+                    AttributeValue value = left.resolve(item);
+                    for (Operand candidate : candidates) {
+                        if (AttributeValues.isEqual(value, candidate.resolve(item))) {
+                            return true;
+                        }
+                    }
+                    return false;
+                };
+            }
+            String comparator = identifier();
+            Operand right = parseOperand();
+            return comparison(comparator, left, right);
+        }
+
+        private Condition comparison(String comparator, Operand left, Operand right) {
+            switch (comparator) {
+                case "=":
+                    return item -> AttributeValues.isEqual(left.resolve(item), right.resolve(item));
+                case "<>":
+                    return item -> {
+                        AttributeValue value = left.resolve(item);
+                        return value != null && !AttributeValues.isEqual(value, right.resolve(item));
+                    };
+                case "<":
+                    return ordered(left, right, difference -> difference < 0);
+                case "<=":
+                    return ordered(left, right, difference -> difference <= 0);
+                case ">":
+                    return ordered(left, right, difference -> difference > 0);
+                case ">=":
+                    return ordered(left, right, difference -> difference >= 0);
+                default:
+                    throw Errors.validation("Invalid expression: unknown comparator " + comparator);
+            }
+        }
+
+        private Condition ordered(Operand left, Operand right, IntPredicate accepted) {
+            return item -> {
+                AttributeValue leftValue = left.resolve(item);
+                AttributeValue rightValue = right.resolve(item);
+                return AttributeValues.isComparable(leftValue, rightValue)
+                        && accepted.test(AttributeValues.compare(leftValue, rightValue));
+            };
+        }
+
+        private Condition parseFunction() {
+            String function = identifier().toLowerCase();
+            expect("(");
+            Condition condition;
+            switch (function) {
+                case "attribute_exists": {
+                    Path path = parsePath();
+                    condition = item -> path.resolve(item) != null;
+                    break;
+                }
+                case "attribute_not_exists": {
+                    Path path = parsePath();
+                    condition = item -> path.resolve(item) == null;
+                    break;
+                }
+                case "attribute_type": {
+                    Path path = parsePath();
+                    expect(",");
+                    Operand type = parseOperand();
+                    condition = item -> {
+                        AttributeValue value = path.resolve(item);
+                        return value != null && AttributeValues.typeOf(value).equals(type.resolve(item).getS());
+                    };
+                    break;
+                }
+                case "begins_with": {
+                    Path path = parsePath();
+                    expect(",");
+                    Operand prefix = parseOperand();
+                    condition = item -> beginsWith(path.resolve(item), prefix.resolve(item));
+                    break;
+                }
+                case "contains": {
+                    Path path = parsePath();
+                    expect(",");
+                    Operand operand = parseOperand();
+                    condition = item -> contains(path.resolve(item), operand.resolve(item));
+                    break;
+                }
+                default:
+                    throw Errors.validation("Invalid expression: unknown function " + function);
+            }
+            expect(")");
+            return condition;
+        }
+
+        private Operand parseSetValue() {
+            Operand left = parseSetOperand();
+            if (accept("+")) {
+                Operand right = parseSetOperand();
+                return item -> Expressions.add(requireNumber(left.resolve(item)), requireNumber(right.resolve(item)));
+            }
+            if (accept("-")) {
+                Operand right = parseSetOperand();
+                return item -> {
+                    AttributeValue negated = new AttributeValue().withN(
+                            new BigDecimal(requireNumber(right.resolve(item)).getN()).negate().toPlainString());
+                    return Expressions.add(requireNumber(left.resolve(item)), negated);
+                };
+            }
+            return left;
+        }
+
+        private Operand parseSetOperand() {
+            if (peekKeyword("if_not_exists") && "(".equals(tokens.get(position + 1))) {
+                position += 2;
+                Path path = parsePath();
+                expect(",");
+                Operand fallback = parseSetValue();
+                expect(")");
+                return item -> {
+                    AttributeValue value = path.resolve(item);
+                    return value != null ? value : fallback.resolve(item);
+                };
+            }
+            if (peekKeyword("list_append") && "(".equals(tokens.get(position + 1))) {
+                position += 2;
+                Operand first = parseSetValue();
+                expect(",");
+                Operand second = parseSetValue();
+                expect(")");
+                return item -> {
+                    List<AttributeValue> list = new ArrayList<>(first.resolve(item).getL());
+                    list.addAll(second.resolve(item).getL());
+                    return new AttributeValue().withL(list);
+                };
+            }
+            return parseOperand();
+        }
+
+        private Operand parseOperand() {
+            String token = peek();
+            if (token == null) {
+                throw Errors.validation("Invalid expression: unexpected end of " + expression);
+            }
+            if (token.startsWith(":")) {
+                position++;
+                AttributeValue value = values.get(token);
+                if (value == null) {
+                    throw Errors.validation("An expression attribute value used in expression is not defined; "
+                            + "attribute value: " + token);
+                }
+                return item -> value;
+            }
+            if (token.equalsIgnoreCase("size") && "(".equals(tokens.get(position + 1))) {
+                position += 2;
+                Path path = parsePath();
+                expect(")");
+                return item -> {
+                    AttributeValue value = path.resolve(item);
+                    return value == null ? null : new AttributeValue().withN(String.valueOf(sizeOf(value)));
+                };
+            }
+            return parsePath();
+        }
+
+        private Path parsePath() {
+            List<Object> elements = new ArrayList<>();
+            elements.add(name(identifier()));
+            while (true) {
+                if (accept(".")) {
+                    elements.add(name(identifier()));
+                } else if (accept("[")) {
+                    elements.add(Integer.valueOf(identifier()));
+                    expect("]");
+                } else {
+                    break;
+                }
+            }
+            return new Path(elements);
+        }
+
+        private String name(String token) {
+            if (token.startsWith("#")) {
+                String name = names.get(token);
+                if (name == null) {
+                    throw Errors.validation("An expression attribute name used in the document path is not defined; "
+                            + "attribute name: " + token);
+                }
+                return name;
+            }
+            if (token.startsWith(":")) {
+                throw Errors.validation("Invalid expression: unexpected value " + token + " in a document path");
+            }
+            return token;
+        }
+    }
+
+    static boolean beginsWith(AttributeValue value, AttributeValue prefix) {
+        if (value == null || prefix == null) {
+            return false;
+        }
+        if (value.getS() != null && prefix.getS() != null) {
+            return value.getS().startsWith(prefix.getS());
+        }
+        if (value.getB() != null && prefix.getB() != null) {
+            byte[] bytes = AttributeValues.toBytes(value.getB());
+            byte[] prefixBytes = AttributeValues.toBytes(prefix.getB());
+            if (prefixBytes.length > bytes.length) {
+                return false;
+            }
+            for (int i = 0; i < prefixBytes.length; i++) {
+                if (bytes[i] != prefixBytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    static boolean contains(AttributeValue value, AttributeValue operand) {
+        if (value == null || operand == null) {
+            return false;
+        }
+        if (value.getS() != null && operand.getS() != null) {
+            return value.getS().contains(operand.getS());
+        }
+        if (value.getSS() != null && operand.getS() != null) {
+            return value.getSS().contains(operand.getS());
+        }
+        if (value.getNS() != null && operand.getN() != null) {
+            for (String number : value.getNS()) {
+                if (new BigDecimal(number).compareTo(new BigDecimal(operand.getN())) == 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (value.getL() != null) {
+            for (AttributeValue element : value.getL()) {
+                if (AttributeValues.isEqual(element, operand)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static int sizeOf(AttributeValue value) {
+        switch (AttributeValues.typeOf(value)) {
+            case AttributeValues.STRING:
+                return value.getS().length();
+            case AttributeValues.BINARY:
+                return value.getB().remaining();
+            case AttributeValues.LIST:
+                return value.getL().size();
+            case AttributeValues.MAP:
+                return value.getM().size();
+            case AttributeValues.STRING_SET:
+                return value.getSS().size();
+            case AttributeValues.NUMBER_SET:
+                return value.getNS().size();
+            case AttributeValues.BINARY_SET:
+                return value.getBS().size();
+            default:
+                throw Errors.validation("Invalid operand for size function: " + AttributeValues.typeOf(value));
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package layer.engine;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeAction;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.AttributeValueUpdate;
+import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
+import com.amazonaws.services.dynamodbv2.model.Condition;
+import com.amazonaws.services.dynamodbv2.model.ConditionalOperator;
+import com.amazonaws.services.dynamodbv2.model.ExpectedAttributeValue;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates the pre-expression request parameters ({@code Expected},
+ * {@code KeyConditions}, {@code QueryFilter}/{@code ScanFilter} and
+ * {@code AttributeUpdates}) that {@code DynamoDBMapper} still emits for
+ * saves, deletes and hash-key queries.
+ */
+final class LegacyConditions {
+
+    private LegacyConditions() {
+    }
+
+    static Expressions.Condition expected(Map<String, ExpectedAttributeValue> expected, String conditionalOperator) {
+        boolean any = ConditionalOperator.OR.toString().equals(conditionalOperator);
+        return item -> {
+            for (Map.Entry<String, ExpectedAttributeValue> entry : expected.entrySet()) {
+                boolean matches = matches(item.get(entry.getKey()), entry.getValue());
+                if (any && matches) {
+                    return true;
+                }
+                if (!any && !matches) {
+                    return false;
+                }
+            }
+            return !any || expected.isEmpty();
+        };
+    }
+
+    static Expressions.Condition conditions(Map<String, Condition> conditions, String conditionalOperator) {
+        boolean any = ConditionalOperator.OR.toString().equals(conditionalOperator);
+        return item -> {
+            for (Map.Entry<String, Condition> entry : conditions.entrySet()) {
+                Condition condition = entry.getValue();
+                boolean matches = matches(item.get(entry.getKey()), condition.getComparisonOperator(),
+                        condition.getAttributeValueList());
+                if (any && matches) {
+                    return true;
+                }
+                if (!any && !matches) {
+                    return false;
+                }
+            }
+            return !any || conditions.isEmpty();
+        };
+    }
+
+    static void applyUpdates(Map<String, AttributeValueUpdate> updates, Map<String, AttributeValue> item) {
+        for (Map.Entry<String, AttributeValueUpdate> entry : updates.entrySet()) {
+            AttributeValueUpdate update = entry.getValue();
+            String action = update.getAction() != null ? update.getAction() : AttributeAction.PUT.toString();
+            AttributeValue value = AttributeValues.copy(update.getValue());
+            if (AttributeAction.PUT.toString().equals(action)) {
+                item.put(entry.getKey(), value);
+            } else if (AttributeAction.ADD.toString().equals(action)) {
+                item.put(entry.getKey(), Expressions.add(item.get(entry.getKey()), value));
+            } else if (value == null) {
+                item.remove(entry.getKey());
+            } else if (item.containsKey(entry.getKey())) {
+                AttributeValue remaining = Expressions.deleteFromSet(item.get(entry.getKey()), value);
+                if (remaining == null) {
+                    item.remove(entry.getKey());
+                } else {
+                    item.put(entry.getKey(), remaining);
+                }
+            }
+        }
+    }
+
+    private static boolean matches(AttributeValue actual, ExpectedAttributeValue expected) {
+        if (expected.getComparisonOperator() != null) {
+            List<AttributeValue> arguments = expected.getAttributeValueList();
+            if (arguments == null && expected.getValue() != null) {
+                arguments = List.of(expected.getValue());
+            }
+            return matches(actual, expected.getComparisonOperator(), arguments);
+        }
+        if (Boolean.FALSE.equals(expected.getExists())) {
+            return actual == null;
+        }
+        return AttributeValues.isEqual(actual, expected.getValue());
+    }
+
+    static boolean matches(AttributeValue actual, String operator, List<AttributeValue> arguments) {
+        switch (ComparisonOperator.fromValue(operator)) {
+            case EQ:
+                return AttributeValues.isEqual(actual, arguments.get(0));
+            case NE:
+                return !AttributeValues.isEqual(actual, arguments.get(0));
+            case NULL:
+                return actual == null;
+            case NOT_NULL:
+                return actual != null;
+            case LT:
+                return AttributeValues.isComparable(actual, arguments.get(0))
+                        && AttributeValues.compare(actual, arguments.get(0)) < 0;
+            case LE:
+                return AttributeValues.isComparable(actual, arguments.get(0))
+                        && AttributeValues.compare(actual, arguments.get(0)) <= 0;
+            case GT:
+                return AttributeValues.isComparable(actual, arguments.get(0))
+                        && AttributeValues.compare(actual, arguments.get(0)) > 0;
+            case GE:
+                return AttributeValues.isComparable(actual, arguments.get(0))
+                        && AttributeValues.compare(actual, arguments.get(0)) >= 0;
+            case BETWEEN:
+                return AttributeValues.isComparable(actual, arguments.get(0))
+                        && AttributeValues.compare(actual, arguments.get(0)) >= 0
+                        && AttributeValues.compare(actual, arguments.get(1)) <= 0;
+            case BEGINS_WITH:
+                return Expressions.beginsWith(actual, arguments.get(0));
+            case CONTAINS:
+                return Expressions.contains(actual, arguments.get(0));
+            case NOT_CONTAINS:
+                return actual != null && !Expressions.contains(actual, arguments.get(0));
+            case IN:
+                for (AttributeValue argument : arguments) {
+                    if (AttributeValues.isEqual(actual, argument)) {
+                        return true;
+                    }
+                }
+                return false;
+            default:
+                throw Errors.validation("Unsupported comparison operator " + operator);
+        }
+    }
+}
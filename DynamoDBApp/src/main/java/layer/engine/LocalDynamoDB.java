@@ -0,0 +1,246 @@
+package layer.engine;
+
+import com.amazonaws.services.dynamodbv2.AbstractAmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.CreateTableResult;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemResult;
+import com.amazonaws.services.dynamodbv2.model.DeleteTableRequest;
+import com.amazonaws.services.dynamodbv2.model.DeleteTableResult;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableRequest;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableResult;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.ListTablesRequest;
+import com.amazonaws.services.dynamodbv2.model.ListTablesResult;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.ResourceInUseException;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * In-process storage engine that implements the DynamoDB client interface,
+ * so {@code DynamoDBMapper} and everything above it run unchanged. Tables,
+ * sparse GSIs, key conditions, filter/condition/update/projection
+ * expressions, {@code Limit}/{@code ExclusiveStartKey} paging, scan
+ * segments, batch operations and consumed capacity follow the service
+ * semantics; there is no network, throttling or persistence. Streams are
+ * delivered to listeners instead of being read through shards.
+ */
+public class LocalDynamoDB extends AbstractAmazonDynamoDB {
+
+    private static final int MAX_BATCH_GET_KEYS = 100;
+    private static final int MAX_BATCH_WRITE_REQUESTS = 25;
+
+    private static final LocalDynamoDB DEFAULT_INSTANCE = new LocalDynamoDB();
+
+    private final Map<String, LocalTable> tables = new ConcurrentHashMap<>();
+
+    /**
+     * Process-wide engine shared by every handler running in the same JVM.
+     */
+    public static LocalDynamoDB getDefaultInstance() {
+        return DEFAULT_INSTANCE;
+    }
+
+    public void createTableIfNotExists(CreateTableRequest request) {
+        tables.computeIfAbsent(request.getTableName(), name -> new LocalTable(request));
+    }
+
+    @Override
+    public CreateTableResult createTable(CreateTableRequest request) {
+        LocalTable table = new LocalTable(request);
+        if (tables.putIfAbsent(request.getTableName(), table) != null) {
+            throw new ResourceInUseException("Table already exists: " + request.getTableName());
+        }
+        return new CreateTableResult().withTableDescription(table.describe());
+    }
+
+    @Override
+    public DeleteTableResult deleteTable(DeleteTableRequest request) {
+        LocalTable table = tables.remove(request.getTableName());
+        if (table == null) {
+            throw Errors.tableNotFound(request.getTableName());
+        }
+        return new DeleteTableResult().withTableDescription(table.describe());
+    }
+
+    @Override
+    public DeleteTableResult deleteTable(String tableName) {
+        return deleteTable(new DeleteTableRequest().withTableName(tableName));
+    }
+
+    @Override
+    public DescribeTableResult describeTable(DescribeTableRequest request) {
+        return new DescribeTableResult().withTable(table(request.getTableName()).describe());
+    }
+
+    @Override
+    public DescribeTableResult describeTable(String tableName) {
+        return describeTable(new DescribeTableRequest().withTableName(tableName));
+    }
+
+    @Override
+    public ListTablesResult listTables(ListTablesRequest request) {
+        return new ListTablesResult().withTableNames(new ArrayList<>(new TreeSet<>(tables.keySet())));
+    }
+
+    @Override
+    public ListTablesResult listTables() {
+        return listTables(new ListTablesRequest());
+    }
+
+    @Override
+    public GetItemResult getItem(GetItemRequest request) {
+        return table(request.getTableName()).getItem(request);
+    }
+
+    @Override
+    public PutItemResult putItem(PutItemRequest request) {
+        return table(request.getTableName()).putItem(request);
+    }
+
+    @Override
+    public UpdateItemResult updateItem(UpdateItemRequest request) {
+        return table(request.getTableName()).updateItem(request);
+    }
+
+    @Override
+    public DeleteItemResult deleteItem(DeleteItemRequest request) {
+        return table(request.getTableName()).deleteItem(request);
+    }
+
+    @Override
+    public QueryResult query(QueryRequest request) {
+        return table(request.getTableName()).query(request);
+    }
+
+    @Override
+    public ScanResult scan(ScanRequest request) {
+        return table(request.getTableName()).scan(request);
+    }
+
+    @Override
+    public BatchGetItemResult batchGetItem(BatchGetItemRequest request) {
+        int keyCount = 0;
+        for (KeysAndAttributes keysAndAttributes : request.getRequestItems().values()) {
+            keyCount += keysAndAttributes.getKeys().size();
+        }
+        if (keyCount > MAX_BATCH_GET_KEYS) {
+            throw Errors.validation("Too many items requested for the BatchGetItem call");
+        }
+        Map<String, List<Map<String, AttributeValue>>> responses = new HashMap<>();
+        List<ConsumedCapacity> consumedCapacity = new ArrayList<>();
+        for (Map.Entry<String, KeysAndAttributes> entry : request.getRequestItems().entrySet()) {
+            LocalTable table = table(entry.getKey());
+            KeysAndAttributes keysAndAttributes = entry.getValue();
+            Projection projection = Projection.of(keysAndAttributes.getProjectionExpression(),
+                    keysAndAttributes.getExpressionAttributeNames(), keysAndAttributes.getAttributesToGet());
+            List<Map<String, AttributeValue>> found = new ArrayList<>();
+            double units = 0;
+            for (Map<String, AttributeValue> key : keysAndAttributes.getKeys()) {
+                Map<String, AttributeValue> item = table.getItem(key, projection);
+                if (item != null) {
+                    found.add(item);
+                }
+                units += LocalTable.readUnits(item == null ? 0 : AttributeValues.itemSize(item),
+                        Boolean.TRUE.equals(keysAndAttributes.getConsistentRead()));
+            }
+            responses.put(entry.getKey(), found);
+            ConsumedCapacity capacity = table.consumed(request.getReturnConsumedCapacity(), null, units, Map.of());
+            if (capacity != null) {
+                consumedCapacity.add(capacity);
+            }
+        }
+        return new BatchGetItemResult()
+                .withResponses(responses)
+                .withUnprocessedKeys(new HashMap<>())
+                .withConsumedCapacity(consumedCapacity.isEmpty() ? null : consumedCapacity);
+    }
+
+    @Override
+    public BatchWriteItemResult batchWriteItem(BatchWriteItemRequest request) {
+        int requestCount = 0;
+        for (List<WriteRequest> writeRequests : request.getRequestItems().values()) {
+            requestCount += writeRequests.size();
+        }
+        if (requestCount > MAX_BATCH_WRITE_REQUESTS) {
+            throw Errors.validation("Too many items requested for the BatchWriteItem call");
+        }
+        List<ConsumedCapacity> consumedCapacity = new ArrayList<>();
+        for (Map.Entry<String, List<WriteRequest>> entry : request.getRequestItems().entrySet()) {
+            LocalTable table = table(entry.getKey());
+            Map<String, Double> indexUnits = new HashMap<>();
+            double units = 0;
+            for (WriteRequest writeRequest : entry.getValue()) {
+                if (writeRequest.getPutRequest() != null) {
+                    units += table.batchWrite(writeRequest.getPutRequest().getItem(), null, indexUnits);
+                } else if (writeRequest.getDeleteRequest() != null) {
+                    units += table.batchWrite(null, writeRequest.getDeleteRequest().getKey(), indexUnits);
+                }
+            }
+            ConsumedCapacity capacity = table.consumed(request.getReturnConsumedCapacity(), null, units, indexUnits);
+            if (capacity != null) {
+                consumedCapacity.add(capacity);
+            }
+        }
+        return new BatchWriteItemResult()
+                .withUnprocessedItems(new HashMap<>())
+                .withConsumedCapacity(consumedCapacity.isEmpty() ? null : consumedCapacity);
+    }
+
+    /**
+     * Calls the listener with the stream record of every later write to the
+     * table, on the writing thread and while the item is locked, so it must
+     * not block on the table.
+     */
+    public void addStreamListener(String tableName, Consumer<Record> listener) {
+        LocalTable table = table(tableName);
+        if (!table.isStreamEnabled()) {
+            throw Errors.validation("Table has no stream enabled: " + tableName);
+        }
+        table.addStreamListener(listener);
+    }
+
+    /**
+     * The size an item is billed by: 1 KB units of it per write, 4 KB units
+     * per strongly consistent read.
+     */
+    public static int getItemSize(Map<String, AttributeValue> item) {
+        return AttributeValues.itemSize(item);
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    private LocalTable table(String tableName) {
+        LocalTable table = tables.get(tableName);
+        if (table == null) {
+            throw Errors.tableNotFound(tableName);
+        }
+        return table;
+    }
+}
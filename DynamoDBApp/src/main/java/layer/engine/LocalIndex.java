@@ -0,0 +1,257 @@
+package layer.engine;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ProjectionType;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A sparse global secondary index: only items carrying every index key
+ * attribute are present. Partitions are ordered by token like the table,
+ * and entries inside a partition by range key and then by table key.
+ */
+final class LocalIndex {
+
+    final String name;
+    final LocalTable.KeySchema keySchema;
+    private final String projectionType;
+    private final List<String> nonKeyAttributes;
+    private final ConcurrentSkipListMap<LocalTable.Key, ConcurrentSkipListMap<Entry, LocalTable.Key>> partitions =
+            new ConcurrentSkipListMap<>();
+    private final AtomicLong itemCount = new AtomicLong();
+
+    LocalIndex(String name, LocalTable.KeySchema keySchema,
+               com.amazonaws.services.dynamodbv2.model.Projection projection) {
+        this.name = name;
+        this.keySchema = keySchema;
+        this.projectionType = projection != null && projection.getProjectionType() != null
+                ? projection.getProjectionType() : ProjectionType.ALL.toString();
+        this.nonKeyAttributes = projection != null && projection.getNonKeyAttributes() != null
+                ? projection.getNonKeyAttributes() : Collections.emptyList();
+    }
+
+    long itemCount() {
+        return itemCount.get();
+    }
+
+    /**
+     * Moves the entry of one table item from its old index position to the
+     * new one and returns the write units the index consumed for it.
+     */
+    double update(LocalTable.Key tableKey, Map<String, AttributeValue> before, Map<String, AttributeValue> after,
+                  LocalTable.KeySchema tableSchema) {
+        boolean wasIndexed = before != null && keySchema.hasKey(before);
+        boolean isIndexed = after != null && keySchema.hasKey(after);
+        Map<String, AttributeValue> oldImage = wasIndexed ? project(before, tableSchema) : null;
+        Map<String, AttributeValue> newImage = isIndexed ? project(after, tableSchema) : null;
+        if (wasIndexed && isIndexed && sameIndexKey(before, after)) {
+            return imagesEqual(oldImage, newImage) ? 0 : LocalTable.writeUnits(oldImage, newImage);
+        }
+        double units = 0;
+        if (wasIndexed) {
+            remove(tableKey, before);
+            units += LocalTable.writeUnits(oldImage, null);
+        }
+        if (isIndexed) {
+            add(tableKey, after);
+            units += LocalTable.writeUnits(null, newImage);
+        }
+        return units;
+    }
+
+    Map<String, AttributeValue> project(Map<String, AttributeValue> item, LocalTable.KeySchema tableSchema) {
+        if (ProjectionType.ALL.toString().equals(projectionType)) {
+            return item;
+        }
+        List<String> attributeNames = new ArrayList<>(tableSchema.names());
+        attributeNames.addAll(keySchema.names());
+        if (ProjectionType.INCLUDE.toString().equals(projectionType)) {
+            attributeNames.addAll(nonKeyAttributes);
+        }
+        return AttributeValues.project(item, attributeNames);
+    }
+
+    Iterator<Map.Entry<LocalTable.Key, Map<String, AttributeValue>>> partition(
+            LocalTable.KeyCondition keyCondition, boolean forward, Map<String, AttributeValue> exclusiveStartKey,
+            LocalTable table) {
+        NavigableMap<Entry, LocalTable.Key> entries = partitions.get(LocalTable.Key.of(keyCondition.hashValue, null));
+        if (entries == null) {
+            return Collections.emptyIterator();
+        }
+        if (exclusiveStartKey != null) {
+            Entry start = entryOf(exclusiveStartKey, table.keySchema());
+            entries = forward ? entries.tailMap(start, false) : entries.headMap(start, false);
+        } else if (forward && keyCondition.lowerBound() != null) {
+            entries = entries.tailMap(Entry.boundary(keyCondition.lowerBound(), -1), true);
+        } else if (!forward && keyCondition.upperBound() != null) {
+            entries = entries.headMap(Entry.boundary(keyCondition.upperBound(), 1), true);
+        }
+        return items((forward ? entries : entries.descendingMap()).values().iterator(), table);
+    }
+
+    Iterator<Map.Entry<LocalTable.Key, Map<String, AttributeValue>>> scan(
+            long fromToken, long toToken, Map<String, AttributeValue> exclusiveStartKey, LocalTable table) {
+        NavigableMap<LocalTable.Key, ConcurrentSkipListMap<Entry, LocalTable.Key>> segment =
+                partitions.subMap(LocalTable.Key.token(fromToken), true, LocalTable.Key.token(toToken), false);
+        Entry start = null;
+        if (exclusiveStartKey != null) {
+            LocalTable.Key partitionKey = LocalTable.Key.of(exclusiveStartKey.get(keySchema.hashKeyName), null);
+            segment = segment.tailMap(partitionKey, true);
+            start = entryOf(exclusiveStartKey, table.keySchema());
+        }
+        Iterator<ConcurrentSkipListMap<Entry, LocalTable.Key>> partitionIterator = segment.values().iterator();
+        Entry firstExclusive = start;
+        Iterator<LocalTable.Key> tableKeys = new Iterator<LocalTable.Key>() {
+            private Iterator<LocalTable.Key> current = Collections.emptyIterator();
+            private Entry skipTo = firstExclusive;
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && partitionIterator.hasNext()) {
+                    NavigableMap<Entry, LocalTable.Key> entries = partitionIterator.next();
+                    if (skipTo != null) {
+                        entries = entries.tailMap(skipTo, false);
+                        skipTo = null;
+                    }
+                    current = entries.values().iterator();
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public LocalTable.Key next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+        return items(tableKeys, table);
+    }
+
+    private Iterator<Map.Entry<LocalTable.Key, Map<String, AttributeValue>>> items(
+            Iterator<LocalTable.Key> tableKeys, LocalTable table) {
+        return new Iterator<Map.Entry<LocalTable.Key, Map<String, AttributeValue>>>() {
+            @Override
+            public boolean hasNext() {
+                return tableKeys.hasNext();
+            }
+
+            @Override
+            public Map.Entry<LocalTable.Key, Map<String, AttributeValue>> next() {
+                LocalTable.Key tableKey = tableKeys.next();
+                return new AbstractMap.SimpleImmutableEntry<>(tableKey, table.itemAt(tableKey));
+            }
+        };
+    }
+
+    private void add(LocalTable.Key tableKey, Map<String, AttributeValue> item) {
+        partitions.computeIfAbsent(LocalTable.Key.of(item.get(keySchema.hashKeyName), null),
+                key -> new ConcurrentSkipListMap<>()).put(entryOf(item, tableKey), tableKey);
+        itemCount.incrementAndGet();
+    }
+
+    private void remove(LocalTable.Key tableKey, Map<String, AttributeValue> item) {
+        LocalTable.Key partitionKey = LocalTable.Key.of(item.get(keySchema.hashKeyName), null);
+        ConcurrentSkipListMap<Entry, LocalTable.Key> entries = partitions.get(partitionKey);
+        if (entries != null && entries.remove(entryOf(item, tableKey)) != null) {
+            itemCount.decrementAndGet();
+            if (entries.isEmpty()) {
+                partitions.remove(partitionKey);
+            }
+        }
+    }
+
+    private Entry entryOf(Map<String, AttributeValue> item, LocalTable.Key tableKey) {
+        return new Entry(keySchema.rangeKeyName == null ? null : item.get(keySchema.rangeKeyName), 0, tableKey);
+    }
+
+    private Entry entryOf(Map<String, AttributeValue> exclusiveStartKey, LocalTable.KeySchema tableSchema) {
+        if (!keySchema.hasKey(exclusiveStartKey) || !tableSchema.hasKey(exclusiveStartKey)) {
+            throw Errors.validation("The provided starting key is invalid: The provided key element does not "
+                    + "match the schema");
+        }
+        Map<String, AttributeValue> tableKey = new LinkedHashMap<>();
+        for (String keyName : tableSchema.names()) {
+            tableKey.put(keyName, exclusiveStartKey.get(keyName));
+        }
+        return entryOf(exclusiveStartKey, tableSchema.keyOf(tableKey, true));
+    }
+
+    private boolean sameIndexKey(Map<String, AttributeValue> before, Map<String, AttributeValue> after) {
+        for (String keyName : keySchema.names()) {
+            if (!AttributeValues.isEqual(before.get(keyName), after.get(keyName))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean imagesEqual(Map<String, AttributeValue> left, Map<String, AttributeValue> right) {
+        if (!left.keySet().equals(right.keySet())) {
+            return false;
+        }
+        for (Map.Entry<String, AttributeValue> entry : left.entrySet()) {
+            if (!AttributeValues.isEqual(entry.getValue(), right.get(entry.getKey()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Position of one item inside an index partition. Boundary entries have
+     * no table key and sort before (-1) or after (+1) every entry with the
+     * same range value.
+     */
+    static final class Entry implements Comparable<Entry> {
+
+        private final AttributeValue rangeValue;
+        private final int edge;
+        private final LocalTable.Key tableKey;
+
+        private Entry(AttributeValue rangeValue, int edge, LocalTable.Key tableKey) {
+            this.rangeValue = rangeValue;
+            this.edge = edge;
+            this.tableKey = tableKey;
+        }
+
+        static Entry boundary(AttributeValue rangeValue, int edge) {
+            return new Entry(rangeValue, edge, null);
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if (rangeValue != null && other.rangeValue != null) {
+                int result = AttributeValues.compare(rangeValue, other.rangeValue);
+                if (result != 0) {
+                    return result;
+                }
+            }
+            if (edge != 0 || other.edge != 0) {
+                return Integer.compare(edge, other.edge);
+            }
+            return tableKey.compareTo(other.tableKey);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Entry && compareTo((Entry) other) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return tableKey == null ? 0 : tableKey.hashCode();
+        }
+    }
+}
@@ -0,0 +1,891 @@
+package layer.engine;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.Capacity;
+import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
+import com.amazonaws.services.dynamodbv2.model.Condition;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemResult;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndex;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndexDescription;
+import com.amazonaws.services.dynamodbv2.model.IndexStatus;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputDescription;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ReturnValue;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.Select;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
+import com.amazonaws.services.dynamodbv2.model.StreamSpecification;
+import com.amazonaws.services.dynamodbv2.model.StreamViewType;
+import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import com.amazonaws.services.dynamodbv2.model.TableStatus;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * One in-process table with its global secondary indexes. Items are kept in
+ * partition-hash order so that scans, segments and {@code ExclusiveStartKey}
+ * behave like the remote service; every index keeps its own range-ordered
+ * partitions so key conditions seek instead of filtering.
+ * <p>
+ * A table created with a {@code StreamSpecification} hands a stream
+ * {@link Record} of every write to its stream listeners, in write order and
+ * on the writing thread, with the images its view type includes. There are
+ * no shards or iterators; a listener stands in for the stream's consumer.
+ */
+final class LocalTable {
+
+    static final int MAX_ITEM_SIZE = 400 * 1024;
+    static final int MAX_PAGE_SIZE = 1024 * 1024;
+    private static final int READ_UNIT_SIZE = 4 * 1024;
+    private static final int WRITE_UNIT_SIZE = 1024;
+    private static final long TOKEN_SPACE = 1L << 32;
+
+    private final String tableName;
+    private final KeySchema keySchema;
+    private final Map<String, String> attributeTypes = new HashMap<>();
+    private final Map<String, LocalIndex> indexes = new LinkedHashMap<>();
+    private final CreateTableRequest definition;
+    private final Date creationDateTime = new Date();
+    private final ConcurrentSkipListMap<Key, Map<String, AttributeValue>> items = new ConcurrentSkipListMap<>();
+    private final AtomicLong tableSizeBytes = new AtomicLong();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Consumer<Record>> streamListeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong streamSequenceNumber = new AtomicLong();
+
+    LocalTable(CreateTableRequest request) {
+        this.tableName = request.getTableName();
+        this.definition = request;
+        for (AttributeDefinition attributeDefinition : request.getAttributeDefinitions()) {
+            attributeTypes.put(attributeDefinition.getAttributeName(), attributeDefinition.getAttributeType());
+        }
+        this.keySchema = new KeySchema(request.getKeySchema());
+        if (request.getGlobalSecondaryIndexes() != null) {
+            for (GlobalSecondaryIndex index : request.getGlobalSecondaryIndexes()) {
+                indexes.put(index.getIndexName(), new LocalIndex(index.getIndexName(),
+                        new KeySchema(index.getKeySchema()), index.getProjection()));
+            }
+        }
+    }
+
+    String getTableName() {
+        return tableName;
+    }
+
+    TableDescription describe() {
+        List<GlobalSecondaryIndexDescription> indexDescriptions = new ArrayList<>();
+        if (definition.getGlobalSecondaryIndexes() != null) {
+            for (GlobalSecondaryIndex index : definition.getGlobalSecondaryIndexes()) {
+                LocalIndex localIndex = indexes.get(index.getIndexName());
+                indexDescriptions.add(new GlobalSecondaryIndexDescription()
+                        .withIndexName(index.getIndexName())
+                        .withKeySchema(index.getKeySchema())
+                        .withProjection(index.getProjection())
+                        .withIndexStatus(IndexStatus.ACTIVE)
+                        .withItemCount(localIndex.itemCount())
+                        .withProvisionedThroughput(throughput(index.getProvisionedThroughput())));
+            }
+        }
+        return new TableDescription()
+                .withTableName(tableName)
+                .withTableStatus(TableStatus.ACTIVE)
+                .withCreationDateTime(creationDateTime)
+                .withAttributeDefinitions(definition.getAttributeDefinitions())
+                .withKeySchema(definition.getKeySchema())
+                .withItemCount((long) items.size())
+                .withTableSizeBytes(tableSizeBytes.get())
+                .withProvisionedThroughput(throughput(definition.getProvisionedThroughput()))
+                .withStreamSpecification(definition.getStreamSpecification())
+                .withGlobalSecondaryIndexes(indexDescriptions.isEmpty() ? null : indexDescriptions);
+    }
+
+    GetItemResult getItem(GetItemRequest request) {
+        Key key = keySchema.keyOf(request.getKey(), true);
+        lock.readLock().lock();
+        try {
+            Map<String, AttributeValue> item = items.get(key);
+            GetItemResult result = new GetItemResult();
+            if (item != null) {
+                result.setItem(Projection.of(request.getProjectionExpression(),
+                        request.getExpressionAttributeNames(), request.getAttributesToGet()).apply(item));
+            }
+            double units = readUnits(item == null ? 0 : AttributeValues.itemSize(item),
+                    Boolean.TRUE.equals(request.getConsistentRead()));
+            result.setConsumedCapacity(consumed(request.getReturnConsumedCapacity(), null, units, Map.of()));
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    Map<String, AttributeValue> getItem(Map<String, AttributeValue> keyAttributes, Projection projection) {
+        Key key = keySchema.keyOf(keyAttributes, true);
+        lock.readLock().lock();
+        try {
+            Map<String, AttributeValue> item = items.get(key);
+            return item == null ? null : projection.apply(item);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    PutItemResult putItem(PutItemRequest request) {
+        Map<String, AttributeValue> item = AttributeValues.copyItem(request.getItem());
+        Key key = keySchema.keyOf(item, false);
+        validateItem(item);
+        Expressions.Condition condition = WriteCondition.of(request.getConditionExpression(),
+                request.getExpressionAttributeNames(), request.getExpressionAttributeValues(),
+                request.getExpected(), request.getConditionalOperator());
+        lock.writeLock().lock();
+        try {
+            Map<String, AttributeValue> existing = items.get(key);
+            if (!condition.test(existing == null ? Map.of() : existing)) {
+                throw Errors.conditionalCheckFailed();
+            }
+            Map<String, Double> indexUnits = store(key, existing, item);
+            PutItemResult result = new PutItemResult();
+            if (ReturnValue.ALL_OLD.toString().equals(request.getReturnValues()) && existing != null) {
+                result.setAttributes(AttributeValues.copyItem(existing));
+            }
+            result.setConsumedCapacity(consumed(request.getReturnConsumedCapacity(), null,
+                    writeUnits(existing, item), indexUnits));
+            return result;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    UpdateItemResult updateItem(UpdateItemRequest request) {
+        Key key = keySchema.keyOf(request.getKey(), true);
+        Expressions.Condition condition = WriteCondition.of(request.getConditionExpression(),
+                request.getExpressionAttributeNames(), request.getExpressionAttributeValues(),
+                request.getExpected(), request.getConditionalOperator());
+        Expressions.Update update = request.getUpdateExpression() == null ? null
+                : Expressions.parseUpdate(request.getUpdateExpression(),
+                request.getExpressionAttributeNames(), request.getExpressionAttributeValues());
+        lock.writeLock().lock();
+        try {
+            Map<String, AttributeValue> existing = items.get(key);
+            Map<String, AttributeValue> original = existing == null ? Map.of() : existing;
+            if (!condition.test(original)) {
+                throw Errors.conditionalCheckFailed();
+            }
+            Map<String, AttributeValue> updated = existing == null
+                    ? new LinkedHashMap<>() : AttributeValues.copyItem(existing);
+            updated.putAll(AttributeValues.copyItem(request.getKey()));
+            Set<String> updatedNames;
+            if (update != null) {
+                update.apply(original, updated);
+                updatedNames = update.updatedAttributeNames();
+            } else if (request.getAttributeUpdates() != null) {
+                LegacyConditions.applyUpdates(request.getAttributeUpdates(), updated);
+                updatedNames = request.getAttributeUpdates().keySet();
+            } else {
+                updatedNames = Set.of();
+            }
+            for (String keyName : keySchema.names()) {
+                if (updatedNames.contains(keyName)) {
+                    throw Errors.validation("One or more parameter values were invalid: Cannot update attribute "
+                            + keyName + ". This attribute is part of the key");
+                }
+            }
+            validateItem(updated);
+            Map<String, Double> indexUnits = store(key, existing, updated);
+            UpdateItemResult result = new UpdateItemResult();
+            result.setAttributes(returnValues(request.getReturnValues(), existing, updated, updatedNames));
+            result.setConsumedCapacity(consumed(request.getReturnConsumedCapacity(), null,
+                    writeUnits(existing, updated), indexUnits));
+            return result;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    DeleteItemResult deleteItem(DeleteItemRequest request) {
+        Key key = keySchema.keyOf(request.getKey(), true);
+        Expressions.Condition condition = WriteCondition.of(request.getConditionExpression(),
+                request.getExpressionAttributeNames(), request.getExpressionAttributeValues(),
+                request.getExpected(), request.getConditionalOperator());
+        lock.writeLock().lock();
+        try {
+            Map<String, AttributeValue> existing = items.get(key);
+            if (!condition.test(existing == null ? Map.of() : existing)) {
+                throw Errors.conditionalCheckFailed();
+            }
+            Map<String, Double> indexUnits = store(key, existing, null);
+            DeleteItemResult result = new DeleteItemResult();
+            if (ReturnValue.ALL_OLD.toString().equals(request.getReturnValues()) && existing != null) {
+                result.setAttributes(AttributeValues.copyItem(existing));
+            }
+            result.setConsumedCapacity(consumed(request.getReturnConsumedCapacity(), null,
+                    writeUnits(existing, null), indexUnits));
+            return result;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Unconditional put or delete as issued by {@code BatchWriteItem}.
+     * Returns the write units consumed on the table and on each index.
+     */
+    double batchWrite(Map<String, AttributeValue> putItem, Map<String, AttributeValue> deleteKey,
+                      Map<String, Double> indexUnits) {
+        Map<String, AttributeValue> item = putItem == null ? null : AttributeValues.copyItem(putItem);
+        Key key = putItem != null ? keySchema.keyOf(item, false) : keySchema.keyOf(deleteKey, true);
+        if (item != null) {
+            validateItem(item);
+        }
+        lock.writeLock().lock();
+        try {
+            Map<String, AttributeValue> existing = items.get(key);
+            store(key, existing, item).forEach((name, units) -> indexUnits.merge(name, units, Double::sum));
+            return writeUnits(existing, item);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    QueryResult query(QueryRequest request) {
+        LocalIndex index = indexFor(request.getIndexName());
+        KeySchema schema = index != null ? index.keySchema : keySchema;
+        KeyCondition keyCondition = KeyCondition.of(schema, request);
+        Expressions.Condition filter = filterOf(request.getFilterExpression(), request.getExpressionAttributeNames(),
+                request.getExpressionAttributeValues(), request.getQueryFilter(), request.getConditionalOperator());
+        Projection projection = Projection.of(request.getProjectionExpression(),
+                request.getExpressionAttributeNames(), request.getAttributesToGet());
+        boolean forward = !Boolean.FALSE.equals(request.getScanIndexForward());
+        boolean countOnly = Select.COUNT.toString().equals(request.getSelect());
+        int limit = request.getLimit() != null ? request.getLimit() : Integer.MAX_VALUE;
+
+        lock.readLock().lock();
+        try {
+            Iterator<Map.Entry<Key, Map<String, AttributeValue>>> candidates = index != null
+                    ? index.partition(keyCondition, forward, request.getExclusiveStartKey(), this)
+                    : tablePartition(keyCondition, forward, request.getExclusiveStartKey());
+            Page page = readPage(candidates, keyCondition, filter, projection, index, forward,
+                    countOnly, limit);
+            QueryResult result = new QueryResult()
+                    .withCount(page.count)
+                    .withScannedCount(page.scannedCount)
+                    .withLastEvaluatedKey(page.lastEvaluatedKey);
+            if (!countOnly) {
+                result.setItems(page.items);
+            }
+            result.setConsumedCapacity(consumed(request.getReturnConsumedCapacity(), request.getIndexName(),
+                    readUnits(page.bytesRead, Boolean.TRUE.equals(request.getConsistentRead())), Map.of()));
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    ScanResult scan(ScanRequest request) {
+        LocalIndex index = indexFor(request.getIndexName());
+        Expressions.Condition filter = filterOf(request.getFilterExpression(), request.getExpressionAttributeNames(),
+                request.getExpressionAttributeValues(), request.getScanFilter(), request.getConditionalOperator());
+        Projection projection = Projection.of(request.getProjectionExpression(),
+                request.getExpressionAttributeNames(), request.getAttributesToGet());
+        boolean countOnly = Select.COUNT.toString().equals(request.getSelect());
+        int limit = request.getLimit() != null ? request.getLimit() : Integer.MAX_VALUE;
+        long[] tokenRange = segmentRange(request.getSegment(), request.getTotalSegments());
+
+        lock.readLock().lock();
+        try {
+            Iterator<Map.Entry<Key, Map<String, AttributeValue>>> candidates = index != null
+                    ? index.scan(tokenRange[0], tokenRange[1], request.getExclusiveStartKey(), this)
+                    : tableScan(tokenRange[0], tokenRange[1], request.getExclusiveStartKey());
+            Page page = readPage(candidates, null, filter, projection, index, true, countOnly, limit);
+            ScanResult result = new ScanResult()
+                    .withCount(page.count)
+                    .withScannedCount(page.scannedCount)
+                    .withLastEvaluatedKey(page.lastEvaluatedKey);
+            if (!countOnly) {
+                result.setItems(page.items);
+            }
+            result.setConsumedCapacity(consumed(request.getReturnConsumedCapacity(), request.getIndexName(),
+                    readUnits(page.bytesRead, Boolean.TRUE.equals(request.getConsistentRead())), Map.of()));
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    Map<String, AttributeValue> itemAt(Key key) {
+        return items.get(key);
+    }
+
+    KeySchema keySchema() {
+        return keySchema;
+    }
+
+    static double readUnits(long bytes, boolean consistentRead) {
+        double units = Math.max(1, (bytes + READ_UNIT_SIZE - 1) / READ_UNIT_SIZE);
+        return consistentRead ? units : units / 2;
+    }
+
+    ConsumedCapacity consumed(String returnConsumedCapacity, String indexName, double units,
+                              Map<String, Double> indexUnits) {
+        if (returnConsumedCapacity == null || ReturnConsumedCapacity.NONE.toString().equals(returnConsumedCapacity)) {
+            return null;
+        }
+        double total = units;
+        for (double value : indexUnits.values()) {
+            total += value;
+        }
+        ConsumedCapacity capacity = new ConsumedCapacity().withTableName(tableName).withCapacityUnits(total);
+        if (ReturnConsumedCapacity.INDEXES.toString().equals(returnConsumedCapacity)) {
+            if (indexName != null) {
+                capacity.setGlobalSecondaryIndexes(Map.of(indexName, new Capacity().withCapacityUnits(units)));
+                capacity.setTable(new Capacity().withCapacityUnits(0.0));
+            } else {
+                capacity.setTable(new Capacity().withCapacityUnits(units));
+                if (!indexUnits.isEmpty()) {
+                    Map<String, Capacity> indexCapacity = new HashMap<>();
+                    indexUnits.forEach((name, value) -> indexCapacity.put(name,
+                            new Capacity().withCapacityUnits(value)));
+                    capacity.setGlobalSecondaryIndexes(indexCapacity);
+                }
+            }
+        }
+        return capacity;
+    }
+
+    private Page readPage(Iterator<Map.Entry<Key, Map<String, AttributeValue>>> candidates,
+                          KeyCondition keyCondition, Expressions.Condition filter, Projection projection,
+                          LocalIndex index, boolean forward, boolean countOnly, int limit) {
+        Page page = new Page();
+        Map<String, AttributeValue> last = null;
+        while (candidates.hasNext()) {
+            if (page.scannedCount >= limit || page.bytesRead >= MAX_PAGE_SIZE) {
+                page.lastEvaluatedKey = lastEvaluatedKey(last, index);
+                return page;
+            }
+            Map.Entry<Key, Map<String, AttributeValue>> candidate = candidates.next();
+            Map<String, AttributeValue> item = candidate.getValue();
+            if (keyCondition != null && !keyCondition.rangeMatches(item)) {
+                if (keyCondition.pastRange(item, forward)) {
+                    break;
+                }
+                continue;
+            }
+            Map<String, AttributeValue> visible = index != null ? index.project(item, keySchema) : item;
+            last = visible;
+            page.scannedCount++;
+            page.bytesRead += AttributeValues.itemSize(visible);
+            if (filter.test(visible)) {
+                page.count++;
+                if (!countOnly) {
+                    page.items.add(projection.apply(visible));
+                }
+            }
+        }
+        if (page.scannedCount >= limit && last != null) {
+            page.lastEvaluatedKey = lastEvaluatedKey(last, index);
+        }
+        return page;
+    }
+
+    private Map<String, AttributeValue> lastEvaluatedKey(Map<String, AttributeValue> item, LocalIndex index) {
+        Map<String, AttributeValue> key = new LinkedHashMap<>();
+        for (String name : keySchema.names()) {
+            key.put(name, AttributeValues.copy(item.get(name)));
+        }
+        if (index != null) {
+            for (String name : index.keySchema.names()) {
+                key.put(name, AttributeValues.copy(item.get(name)));
+            }
+        }
+        return key;
+    }
+
+    private Iterator<Map.Entry<Key, Map<String, AttributeValue>>> tablePartition(
+            KeyCondition keyCondition, boolean forward, Map<String, AttributeValue> exclusiveStartKey) {
+        Key partitionStart = Key.lowest(keyCondition.hashValue);
+        Key partitionEnd = Key.highest(keyCondition.hashValue);
+        NavigableMap<Key, Map<String, AttributeValue>> partition =
+                items.subMap(partitionStart, true, partitionEnd, true);
+        if (exclusiveStartKey != null) {
+            Key start = keySchema.keyOf(exclusiveStartKey, true);
+            partition = forward ? partition.tailMap(start, false) : partition.headMap(start, false);
+        } else if (keyCondition.lowerBound() != null && forward) {
+            partition = partition.tailMap(Key.lowest(keyCondition.hashValue, keyCondition.lowerBound()), true);
+        } else if (keyCondition.upperBound() != null && !forward) {
+            partition = partition.headMap(Key.highest(keyCondition.hashValue, keyCondition.upperBound()), true);
+        }
+        return (forward ? partition : partition.descendingMap()).entrySet().iterator();
+    }
+
+    private Iterator<Map.Entry<Key, Map<String, AttributeValue>>> tableScan(
+            long fromToken, long toToken, Map<String, AttributeValue> exclusiveStartKey) {
+        NavigableMap<Key, Map<String, AttributeValue>> segment =
+                items.subMap(Key.token(fromToken), true, Key.token(toToken), false);
+        if (exclusiveStartKey != null) {
+            segment = segment.tailMap(keySchema.keyOf(exclusiveStartKey, true), false);
+        }
+        return segment.entrySet().iterator();
+    }
+
+    boolean isStreamEnabled() {
+        StreamSpecification streamSpecification = definition.getStreamSpecification();
+        return streamSpecification != null && Boolean.TRUE.equals(streamSpecification.getStreamEnabled());
+    }
+
+    void addStreamListener(Consumer<Record> listener) {
+        streamListeners.add(listener);
+    }
+
+    private Map<String, Double> store(Key key, Map<String, AttributeValue> existing,
+                                      Map<String, AttributeValue> item) {
+        Map<String, Double> indexUnits = new HashMap<>();
+        for (LocalIndex index : indexes.values()) {
+            double units = index.update(key, existing, item, keySchema);
+            if (units > 0) {
+                indexUnits.put(index.name, units);
+            }
+        }
+        if (existing != null) {
+            tableSizeBytes.addAndGet(-AttributeValues.itemSize(existing));
+        }
+        if (item == null) {
+            items.remove(key);
+        } else {
+            items.put(key, item);
+            tableSizeBytes.addAndGet(AttributeValues.itemSize(item));
+        }
+        if (!streamListeners.isEmpty()) {
+            Record record = streamRecord(existing, item);
+            for (Consumer<Record> listener : streamListeners) {
+                listener.accept(record);
+            }
+        }
+        return indexUnits;
+    }
+
+    private Record streamRecord(Map<String, AttributeValue> existing, Map<String, AttributeValue> item) {
+        Map<String, AttributeValue> image = item != null ? item : existing;
+        Map<String, AttributeValue> keys = new LinkedHashMap<>();
+        for (String name : keySchema.names()) {
+            keys.put(name, image.get(name));
+        }
+        String viewType = definition.getStreamSpecification().getStreamViewType();
+        boolean newImage = StreamViewType.NEW_IMAGE.toString().equals(viewType)
+                || StreamViewType.NEW_AND_OLD_IMAGES.toString().equals(viewType);
+        boolean oldImage = StreamViewType.OLD_IMAGE.toString().equals(viewType)
+                || StreamViewType.NEW_AND_OLD_IMAGES.toString().equals(viewType);
+        String sequenceNumber = Long.toString(streamSequenceNumber.incrementAndGet());
+        StreamRecord streamRecord = new StreamRecord()
+                .withApproximateCreationDateTime(new Date())
+                .withKeys(keys)
+                .withNewImage(newImage && item != null ? AttributeValues.copyItem(item) : null)
+                .withOldImage(oldImage && existing != null ? AttributeValues.copyItem(existing) : null)
+                .withSequenceNumber(sequenceNumber)
+                .withSizeBytes((long) AttributeValues.itemSize(image))
+                .withStreamViewType(viewType);
+        return new Record()
+                .withEventID(tableName + "-" + sequenceNumber)
+                .withEventName(existing == null ? "INSERT" : item == null ? "REMOVE" : "MODIFY")
+                .withEventSource("aws:dynamodb")
+                .withEventVersion("1.1")
+                .withDynamodb(streamRecord);
+    }
+
+    static double writeUnits(Map<String, AttributeValue> before, Map<String, AttributeValue> after) {
+        int size = Math.max(before == null ? 0 : AttributeValues.itemSize(before),
+                after == null ? 0 : AttributeValues.itemSize(after));
+        return Math.max(1, (size + WRITE_UNIT_SIZE - 1) / WRITE_UNIT_SIZE);
+    }
+
+    private void validateItem(Map<String, AttributeValue> item) {
+        for (Map.Entry<String, AttributeValue> entry : item.entrySet()) {
+            String declaredType = attributeTypes.get(entry.getKey());
+            if (declaredType != null && !declaredType.equals(AttributeValues.typeOf(entry.getValue()))) {
+                throw Errors.validation("One or more parameter values were invalid: Type mismatch for attribute "
+                        + entry.getKey() + ", expected type " + declaredType);
+            }
+            AttributeValue value = entry.getValue();
+            if (value.getS() != null && value.getS().isEmpty() && declaredType != null) {
+                throw Errors.validation("One or more parameter values were invalid: An AttributeValue may not "
+                        + "contain an empty string. Key: " + entry.getKey());
+            }
+        }
+        if (AttributeValues.itemSize(item) > MAX_ITEM_SIZE) {
+            throw Errors.validation("Item size has exceeded the maximum allowed size");
+        }
+    }
+
+    private LocalIndex indexFor(String indexName) {
+        if (indexName == null) {
+            return null;
+        }
+        LocalIndex index = indexes.get(indexName);
+        if (index == null) {
+            throw Errors.validation("The table does not have the specified index: " + indexName);
+        }
+        return index;
+    }
+
+    private static Map<String, AttributeValue> returnValues(String returnValues, Map<String, AttributeValue> before,
+                                                            Map<String, AttributeValue> after,
+                                                            Set<String> updatedNames) {
+        if (returnValues == null || ReturnValue.NONE.toString().equals(returnValues)) {
+            return null;
+        }
+        switch (ReturnValue.fromValue(returnValues)) {
+            case ALL_OLD:
+                return before == null ? null : AttributeValues.copyItem(before);
+            case ALL_NEW:
+                return AttributeValues.copyItem(after);
+            case UPDATED_OLD:
+                return before == null ? null
+                        : AttributeValues.copyItem(AttributeValues.project(before, new ArrayList<>(updatedNames)));
+            case UPDATED_NEW:
+                return AttributeValues.copyItem(AttributeValues.project(after, new ArrayList<>(updatedNames)));
+            default:
+                return null;
+        }
+    }
+
+    private static Expressions.Condition filterOf(String filterExpression, Map<String, String> names,
+                                                  Map<String, AttributeValue> values,
+                                                  Map<String, Condition> legacy,
+                                                  String conditionalOperator) {
+        if (filterExpression != null) {
+            return Expressions.parseCondition(filterExpression, names, values);
+        }
+        if (legacy != null) {
+            return LegacyConditions.conditions(legacy, conditionalOperator);
+        }
+        return item -> true;
+    }
+
+    private static long[] segmentRange(Integer segment, Integer totalSegments) {
+        if (segment == null || totalSegments == null) {
+            return new long[]{0, TOKEN_SPACE};
+        }
+        if (totalSegments < 1 || segment < 0 || segment >= totalSegments) {
+            throw Errors.validation("The Segment parameter is invalid: " + segment + " of " + totalSegments);
+        }
+        return new long[]{TOKEN_SPACE * segment / totalSegments, TOKEN_SPACE * (segment + 1) / totalSegments};
+    }
+
+    private static ProvisionedThroughputDescription throughput(ProvisionedThroughput throughput) {
+        if (throughput == null) {
+            return null;
+        }
+        return new ProvisionedThroughputDescription()
+                .withReadCapacityUnits(throughput.getReadCapacityUnits())
+                .withWriteCapacityUnits(throughput.getWriteCapacityUnits())
+                .withNumberOfDecreasesToday(0L);
+    }
+
+    private static final class Page {
+        private final List<Map<String, AttributeValue>> items = new ArrayList<>();
+        private int count;
+        private int scannedCount;
+        private long bytesRead;
+        private Map<String, AttributeValue> lastEvaluatedKey;
+    }
+
+    /**
+     * Hash and optional range key names of the table or of one index.
+     */
+    static final class KeySchema {
+
+        final String hashKeyName;
+        final String rangeKeyName;
+
+        KeySchema(List<KeySchemaElement> elements) {
+            String hash = null;
+            String range = null;
+            for (KeySchemaElement element : elements) {
+                if (KeyType.HASH.toString().equals(element.getKeyType())) {
+                    hash = element.getAttributeName();
+                } else {
+                    range = element.getAttributeName();
+                }
+            }
+            this.hashKeyName = hash;
+            this.rangeKeyName = range;
+        }
+
+        List<String> names() {
+            return rangeKeyName == null ? List.of(hashKeyName) : List.of(hashKeyName, rangeKeyName);
+        }
+
+        boolean hasKey(Map<String, AttributeValue> item) {
+            return item.get(hashKeyName) != null && (rangeKeyName == null || item.get(rangeKeyName) != null);
+        }
+
+        Key keyOf(Map<String, AttributeValue> attributes, boolean exact) {
+            if (attributes == null || attributes.get(hashKeyName) == null
+                    || (rangeKeyName != null && attributes.get(rangeKeyName) == null)) {
+                throw Errors.validation("One or more parameter values were invalid: Missing the key "
+                        + (attributes == null || attributes.get(hashKeyName) == null ? hashKeyName : rangeKeyName)
+                        + " in the item");
+            }
+            if (exact && attributes.size() != names().size()) {
+                throw Errors.validation("The provided key element does not match the schema");
+            }
+            return Key.of(attributes.get(hashKeyName), rangeKeyName == null ? null : attributes.get(rangeKeyName));
+        }
+    }
+
+    /**
+     * Position of an item or index entry: partition token first, then hash
+     * value, then range value. Boundary keys carry a {@code null} value and
+     * an edge of -1 or +1 so they sort before or after everything they bound.
+     */
+    static final class Key implements Comparable<Key> {
+
+        final long token;
+        final AttributeValue hashValue;
+        final AttributeValue rangeValue;
+        private final int hashEdge;
+        private final int rangeEdge;
+
+        private Key(long token, AttributeValue hashValue, int hashEdge, AttributeValue rangeValue, int rangeEdge) {
+            this.token = token;
+            this.hashValue = hashValue;
+            this.hashEdge = hashEdge;
+            this.rangeValue = rangeValue;
+            this.rangeEdge = rangeEdge;
+        }
+
+        static Key of(AttributeValue hashValue, AttributeValue rangeValue) {
+            return new Key(tokenOf(hashValue), hashValue, 0, rangeValue, 0);
+        }
+
+        static Key token(long token) {
+            return new Key(token, null, -1, null, -1);
+        }
+
+        static Key lowest(AttributeValue hashValue) {
+            return new Key(tokenOf(hashValue), hashValue, 0, null, -1);
+        }
+
+        static Key highest(AttributeValue hashValue) {
+            return new Key(tokenOf(hashValue), hashValue, 0, null, 1);
+        }
+
+        static Key lowest(AttributeValue hashValue, AttributeValue rangeValue) {
+            return new Key(tokenOf(hashValue), hashValue, 0, rangeValue, -1);
+        }
+
+        static Key highest(AttributeValue hashValue, AttributeValue rangeValue) {
+            return new Key(tokenOf(hashValue), hashValue, 0, rangeValue, 1);
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int result = Long.compare(token, other.token);
+            if (result != 0) {
+                return result;
+            }
+            result = compareComponent(hashValue, hashEdge, other.hashValue, other.hashEdge);
+            if (result != 0 || hashValue == null || other.hashValue == null) {
+                return result;
+            }
+            return compareComponent(rangeValue, rangeEdge, other.rangeValue, other.rangeEdge);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Key && compareTo((Key) other) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(token);
+        }
+
+        private static int compareComponent(AttributeValue left, int leftEdge, AttributeValue right, int rightEdge) {
+            if (left == null && right == null) {
+                return Integer.compare(leftEdge, rightEdge);
+            }
+            if (left == null) {
+                return leftEdge;
+            }
+            if (right == null) {
+                return -rightEdge;
+            }
+            int result = AttributeValues.compare(left, right);
+            return result != 0 ? result : Integer.compare(leftEdge, rightEdge);
+        }
+
+        /**
+         * Spreads partition key values over a 32-bit token space, standing in
+         * for the internal hash that decides scan order and segments.
+         */
+        static long tokenOf(AttributeValue hashValue) {
+            byte[] bytes;
+            if (hashValue.getS() != null) {
+                bytes = hashValue.getS().getBytes(StandardCharsets.UTF_8);
+            } else if (hashValue.getN() != null) {
+                bytes = new BigDecimal(hashValue.getN()).stripTrailingZeros().toPlainString()
+                        .getBytes(StandardCharsets.UTF_8);
+            } else {
+                bytes = AttributeValues.toBytes(hashValue.getB());
+            }
+            int hash = 0x811c9dc5;
+            for (byte b : bytes) {
+                hash ^= b & 0xff;
+                hash *= 0x01000193;
+            }
+            hash ^= hash >>> 16;
+            hash *= 0x85ebca6b;
+            hash ^= hash >>> 13;
+            return hash & 0xffffffffL;
+        }
+    }
+
+    /**
+     * Equality on the hash key plus the optional range key term, with the
+     * bounds needed to seek straight to the first and last matching entries.
+     */
+    static final class KeyCondition {
+
+        final AttributeValue hashValue;
+        private final String rangeKeyName;
+        private final ComparisonOperator rangeOperator;
+        private final List<AttributeValue> rangeValues;
+
+        private KeyCondition(AttributeValue hashValue, String rangeKeyName,
+                             ComparisonOperator rangeOperator, List<AttributeValue> rangeValues) {
+            this.hashValue = hashValue;
+            this.rangeKeyName = rangeKeyName;
+            this.rangeOperator = rangeOperator;
+            this.rangeValues = rangeValues;
+        }
+
+        static KeyCondition of(KeySchema schema, QueryRequest request) {
+            List<Expressions.KeyTerm> terms = new ArrayList<>();
+            if (request.getKeyConditionExpression() != null) {
+                terms.addAll(Expressions.parseKeyCondition(request.getKeyConditionExpression(),
+                        request.getExpressionAttributeNames(), request.getExpressionAttributeValues()));
+            } else if (request.getKeyConditions() != null) {
+                request.getKeyConditions().forEach((name, condition) -> terms.add(new Expressions.KeyTerm(name,
+                        ComparisonOperator.fromValue(condition.getComparisonOperator()),
+                        condition.getAttributeValueList())));
+            }
+            AttributeValue hashValue = null;
+            Expressions.KeyTerm rangeTerm = null;
+            for (Expressions.KeyTerm term : terms) {
+                if (term.attributeName.equals(schema.hashKeyName) && term.operator == ComparisonOperator.EQ) {
+                    hashValue = term.values.get(0);
+                } else if (term.attributeName.equals(schema.rangeKeyName)) {
+                    rangeTerm = term;
+                } else {
+                    throw Errors.validation("Query condition missed key schema element: " + schema.hashKeyName);
+                }
+            }
+            if (hashValue == null) {
+                throw Errors.validation("Query condition missed key schema element: " + schema.hashKeyName);
+            }
+            return rangeTerm == null ? new KeyCondition(hashValue, null, null, Collections.emptyList())
+                    : new KeyCondition(hashValue, rangeTerm.attributeName, rangeTerm.operator, rangeTerm.values);
+        }
+
+        AttributeValue lowerBound() {
+            if (rangeOperator == null) {
+                return null;
+            }
+            switch (rangeOperator) {
+                case EQ:
+                case GE:
+                case GT:
+                case BETWEEN:
+                case BEGINS_WITH:
+                    return rangeValues.get(0);
+                default:
+                    return null;
+            }
+        }
+
+        AttributeValue upperBound() {
+            if (rangeOperator == null) {
+                return null;
+            }
+            switch (rangeOperator) {
+                case EQ:
+                case LE:
+                case LT:
+                    return rangeValues.get(0);
+                case BETWEEN:
+                    return rangeValues.get(1);
+                case BEGINS_WITH:
+                    AttributeValue prefix = rangeValues.get(0);
+                    if (prefix.getS() != null && !prefix.getS().isEmpty()) {
+                        String value = prefix.getS();
+                        char last = value.charAt(value.length() - 1);
+                        if (last < Character.MAX_VALUE && !Character.isSurrogate(last)) {
+                            return new AttributeValue().withS(value.substring(0, value.length() - 1) + (char) (last + 1));
+                        }
+                    }
+                    return null;
+                default:
+                    return null;
+            }
+        }
+
+        boolean rangeMatches(Map<String, AttributeValue> item) {
+            return rangeOperator == null
+                    || LegacyConditions.matches(item.get(rangeKeyName), rangeOperator.toString(), rangeValues);
+        }
+
+        /**
+         * True once an ordered walk has moved beyond every possible match, so
+         * the caller can stop instead of reading the rest of the partition.
+         */
+        boolean pastRange(Map<String, AttributeValue> item, boolean forward) {
+            AttributeValue value = rangeOperator == null ? null : item.get(rangeKeyName);
+            if (value == null) {
+                return false;
+            }
+            if (forward) {
+                AttributeValue upper = upperBound();
+                if (upper == null || !AttributeValues.isComparable(value, upper)) {
+                    return false;
+                }
+                int difference = AttributeValues.compare(value, upper);
+                return difference > 0 || (difference == 0 && rangeOperator == ComparisonOperator.BEGINS_WITH);
+            }
+            AttributeValue lower = lowerBound();
+            return lower != null && AttributeValues.isComparable(value, lower)
+                    && AttributeValues.compare(value, lower) < 0;
+        }
+    }
+}
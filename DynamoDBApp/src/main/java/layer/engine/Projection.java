@@ -0,0 +1,44 @@
+package layer.engine;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Attribute selection requested by a read, from a
+ * {@code ProjectionExpression} or the legacy {@code AttributesToGet}.
+ * Returned items are always copies so callers never share engine state.
+ */
+final class Projection {
+
+    private static final Projection ALL = new Projection(null, null);
+
+    private final List<Expressions.Path> paths;
+    private final List<String> attributeNames;
+
+    private Projection(List<Expressions.Path> paths, List<String> attributeNames) {
+        this.paths = paths;
+        this.attributeNames = attributeNames;
+    }
+
+    static Projection of(String projectionExpression, Map<String, String> names, List<String> attributesToGet) {
+        if (projectionExpression != null) {
+            return new Projection(Expressions.parseProjection(projectionExpression, names), null);
+        }
+        if (attributesToGet != null && !attributesToGet.isEmpty()) {
+            return new Projection(null, attributesToGet);
+        }
+        return ALL;
+    }
+
+    Map<String, AttributeValue> apply(Map<String, AttributeValue> item) {
+        if (paths != null) {
+            return AttributeValues.copyItem(Expressions.project(item, paths));
+        }
+        if (attributeNames != null) {
+            return AttributeValues.copyItem(AttributeValues.project(item, attributeNames));
+        }
+        return AttributeValues.copyItem(item);
+    }
+}
@@ -0,0 +1,35 @@
+package layer.engine;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ExpectedAttributeValue;
+
+import java.util.Map;
+
+/**
+ * Resolves the guard of a put, update or delete from either a
+ * {@code ConditionExpression} or the legacy {@code Expected} map.
+ */
+final class WriteCondition {
+
+    private static final Expressions.Condition ALWAYS = item -> true;
+
+    private WriteCondition() {
+    }
+
+    static Expressions.Condition of(String conditionExpression, Map<String, String> names,
+                                    Map<String, AttributeValue> values,
+                                    Map<String, ExpectedAttributeValue> expected, String conditionalOperator) {
+        if (conditionExpression != null) {
+            if (expected != null && !expected.isEmpty()) {
+                throw Errors.validation("Can not use both expression and non-expression parameters in the same "
+                        + "request: Non-expression parameters: {Expected} Expression parameters: "
+                        + "{ConditionExpression}");
+            }
+            return Expressions.parseCondition(conditionExpression, names, values);
+        }
+        if (expected != null && !expected.isEmpty()) {
+            return LegacyConditions.expected(expected, conditionalOperator);
+        }
+        return ALWAYS;
+    }
+}
@@ -0,0 +1,308 @@
+package layer.model;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTypeConverter;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import layer.service.Configuration;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The stored form of the bulky {@link User} attributes, smaller than what
+ * the mapper writes by default so a profile fits in fewer read and write
+ * units. The JSON of the API is unchanged:
+ * <ul>
+ * <li>{@code privacy} is a number, two bits per name of
+ * {@link #PRIVACY_NAMES} (present, value);</li>
+ * <li>{@code social_media} is a list indexed by the position of the name
+ * in {@link #SOCIAL_MEDIA_NAMES}, with NULL for a missing one;</li>
+ * <li>{@code about} and {@code interests} of at least
+ * {@code COMPACT_ITEMS_COMPRESSION_THRESHOLD_BYTES} are deflated into a
+ * binary attribute, when that is smaller.</li>
+ * </ul>
+ * Both forms are read, told apart by their attribute type, so items written
+ * before stay readable and are rewritten compactly with their next update.
+ * A value the compact form cannot hold (a name not in the lists) is written
+ * the old way. {@code COMPACT_ITEMS_ENABLED=false} writes the old form, for
+ * rolling out readers of both before the first compact write. The name
+ * lists can only be appended to.
+ */
+public final class CompactUserEncoding {
+
+    public static final String ENABLED_VARIABLE = "COMPACT_ITEMS_ENABLED";
+    public static final String COMPRESSION_THRESHOLD_VARIABLE = "COMPACT_ITEMS_COMPRESSION_THRESHOLD_BYTES";
+    public static final int DEFAULT_COMPRESSION_THRESHOLD_BYTES = 512;
+    public static final List<String> SOCIAL_MEDIA_NAMES =
+            List.of("linkedin", "telegram", "skype", "instagram", "facebook");
+    public static final List<String> PRIVACY_NAMES = List.of("description", "location", "account", "age",
+            "email", "birthday", "avatar", "about", "interests", "socialMedia", "registration", "name");
+
+    private static final boolean ENABLED = Configuration.getBoolean(ENABLED_VARIABLE, true);
+    private static final int COMPRESSION_THRESHOLD_BYTES = Configuration.getInt(COMPRESSION_THRESHOLD_VARIABLE,
+            DEFAULT_COMPRESSION_THRESHOLD_BYTES);
+    /**
+     * First byte of a binary attribute, so the format can change later.
+     */
+    private static final byte DEFLATED = 1;
+    /**
+     * The most bytes {@link DataOutputStream#writeUTF(String)} takes.
+     */
+    private static final int MAX_UTF_LENGTH = 65_535;
+
+    private CompactUserEncoding() {
+    }
+
+    public static class PrivacyConverter implements DynamoDBTypeConverter<AttributeValue, HashMap<String, Boolean>> {
+
+        @Override
+        public AttributeValue convert(HashMap<String, Boolean> privacy) {
+            AttributeValue compact = ENABLED ? toCompact(privacy) : null;
+            return compact != null ? compact : toLegacy(privacy);
+        }
+
+        @Override
+        public HashMap<String, Boolean> unconvert(AttributeValue value) {
+            HashMap<String, Boolean> privacy = new HashMap<>();
+            if (value.getN() != null) {
+                long bits = Long.parseLong(value.getN());
+                for (int i = 0; i < PRIVACY_NAMES.size(); i++) {
+                    if ((bits & 1L << 2 * i) != 0) {
+                        privacy.put(PRIVACY_NAMES.get(i), (bits & 1L << 2 * i + 1) != 0);
+                    }
+                }
+            } else if (value.getM() != null) {
+                value.getM().forEach((name, flag) -> privacy.put(name, flag.getBOOL() != null
+                        ? flag.getBOOL() : flag.getN() != null ? !"0".equals(flag.getN()) : null));
+            }
+            return privacy;
+        }
+
+        /**
+         * The bitmask, or null if a name is not in {@link #PRIVACY_NAMES} or a
+         * value is null.
+         */
+        public static AttributeValue toCompact(Map<String, Boolean> privacy) {
+            long bits = 0;
+            for (Map.Entry<String, Boolean> flag : privacy.entrySet()) {
+                int position = PRIVACY_NAMES.indexOf(flag.getKey());
+                if (position < 0 || flag.getValue() == null) {
+                    return null;
+                }
+                bits |= 1L << 2 * position | (flag.getValue() ? 1L << 2 * position + 1 : 0);
+            }
+            return new AttributeValue().withN(Long.toString(bits));
+        }
+
+        public static AttributeValue toLegacy(Map<String, Boolean> privacy) {
+            Map<String, AttributeValue> flags = new LinkedHashMap<>();
+            privacy.forEach((name, flag) -> flags.put(name, flag == null
+                    ? new AttributeValue().withNULL(true) : new AttributeValue().withN(flag ? "1" : "0")));
+            return new AttributeValue().withM(flags);
+        }
+    }
+
+    public static class SocialMediaConverter implements DynamoDBTypeConverter<AttributeValue, HashMap<String, String>> {
+
+        @Override
+        public AttributeValue convert(HashMap<String, String> socialMedia) {
+            AttributeValue compact = ENABLED ? toCompact(socialMedia) : null;
+            return compact != null ? compact : toLegacy(socialMedia);
+        }
+
+        @Override
+        public HashMap<String, String> unconvert(AttributeValue value) {
+            HashMap<String, String> socialMedia = new HashMap<>();
+            if (value.getL() != null) {
+                List<AttributeValue> links = value.getL();
+                for (int i = 0; i < links.size() && i < SOCIAL_MEDIA_NAMES.size(); i++) {
+                    if (links.get(i).getS() != null) {
+                        socialMedia.put(SOCIAL_MEDIA_NAMES.get(i), links.get(i).getS());
+                    }
+                }
+            } else if (value.getM() != null) {
+                value.getM().forEach((name, link) -> socialMedia.put(name, link.getS()));
+            }
+            return socialMedia;
+        }
+
+        /**
+         * The links by position, or null if a name is not in
+         * {@link #SOCIAL_MEDIA_NAMES} or a link is null.
+         */
+        public static AttributeValue toCompact(Map<String, String> socialMedia) {
+            AttributeValue[] links = new AttributeValue[SOCIAL_MEDIA_NAMES.size()];
+            int length = 0;
+            for (Map.Entry<String, String> link : socialMedia.entrySet()) {
+                int position = SOCIAL_MEDIA_NAMES.indexOf(link.getKey());
+                if (position < 0 || link.getValue() == null) {
+                    return null;
+                }
+                links[position] = new AttributeValue().withS(link.getValue());
+                length = Math.max(length, position + 1);
+            }
+            List<AttributeValue> list = new ArrayList<>(length);
+            for (int i = 0; i < length; i++) {
+                list.add(links[i] != null ? links[i] : new AttributeValue().withNULL(true));
+            }
+            return new AttributeValue().withL(list);
+        }
+
+        public static AttributeValue toLegacy(Map<String, String> socialMedia) {
+            Map<String, AttributeValue> links = new LinkedHashMap<>();
+            socialMedia.forEach((name, link) -> links.put(name, link == null
+                    ? new AttributeValue().withNULL(true) : new AttributeValue().withS(link)));
+            return new AttributeValue().withM(links);
+        }
+    }
+
+    public static class TextConverter implements DynamoDBTypeConverter<AttributeValue, String> {
+
+        @Override
+        public AttributeValue convert(String text) {
+            AttributeValue compact = ENABLED ? toCompact(text) : null;
+            return compact != null ? compact : toLegacy(text);
+        }
+
+        @Override
+        public String unconvert(AttributeValue value) {
+            if (value.getB() == null) {
+                return value.getS();
+            }
+            return new String(inflate(value.getB()), StandardCharsets.UTF_8);
+        }
+
+        /**
+         * The deflated text, or null if it is under the threshold or does not
+         * get smaller.
+         */
+        public static AttributeValue toCompact(String text) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            return bytes.length < COMPRESSION_THRESHOLD_BYTES ? null : deflate(bytes, bytes.length);
+        }
+
+        public static AttributeValue toLegacy(String text) {
+            return new AttributeValue().withS(text);
+        }
+    }
+
+    public static class StringListConverter implements DynamoDBTypeConverter<AttributeValue, List<String>> {
+
+        @Override
+        public AttributeValue convert(List<String> strings) {
+            AttributeValue compact = ENABLED ? toCompact(strings) : null;
+            return compact != null ? compact : toLegacy(strings);
+        }
+
+        @Override
+        public List<String> unconvert(AttributeValue value) {
+            if (value.getB() == null) {
+                List<String> strings = new ArrayList<>();
+                if (value.getL() != null) {
+                    value.getL().forEach(string -> strings.add(string.getS()));
+                } else if (value.getSS() != null) {
+                    strings.addAll(value.getSS());
+                }
+                return strings;
+            }
+            try (DataInputStream input = new DataInputStream(new ByteArrayInputStream(inflate(value.getB())))) {
+                int size = input.readInt();
+                List<String> strings = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    strings.add(input.readBoolean() ? input.readUTF() : null);
+                }
+                return strings;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * The deflated strings, or null if they are under the threshold or do
+         * not get smaller.
+         */
+        public static AttributeValue toCompact(List<String> strings) {
+            int legacySize = 3;
+            for (String string : strings) {
+                if (string != null && string.length() > MAX_UTF_LENGTH / 3) {
+                    return null;
+                }
+                legacySize += string == null ? 1 : string.getBytes(StandardCharsets.UTF_8).length + 1;
+            }
+            if (legacySize < COMPRESSION_THRESHOLD_BYTES) {
+                return null;
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(legacySize + 4);
+            try (DataOutputStream output = new DataOutputStream(bytes)) {
+                output.writeInt(strings.size());
+                for (String string : strings) {
+                    output.writeBoolean(string != null);
+                    if (string != null) {
+                        output.writeUTF(string);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return deflate(bytes.toByteArray(), legacySize);
+        }
+
+        public static AttributeValue toLegacy(List<String> strings) {
+            List<AttributeValue> list = new ArrayList<>(strings.size());
+            strings.forEach(string -> list.add(string == null
+                    ? new AttributeValue().withNULL(true) : new AttributeValue().withS(string)));
+            return new AttributeValue().withL(list);
+        }
+    }
+
+    /**
+     * The deflated bytes behind a format byte, or null if that is not
+     * smaller than {@code legacySize}.
+     */
+    private static AttributeValue deflate(byte[] bytes, int legacySize) {
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream(bytes.length / 2 + 16);
+        deflated.write(DEFLATED);
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try (DeflaterOutputStream output = new DeflaterOutputStream(deflated, deflater)) {
+            output.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deflater.end();
+        }
+        return deflated.size() >= legacySize ? null
+                : new AttributeValue().withB(ByteBuffer.wrap(deflated.toByteArray()));
+    }
+
+    private static byte[] inflate(ByteBuffer value) {
+        ByteBuffer buffer = value.duplicate();
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        if (bytes.length == 0 || bytes[0] != DEFLATED) {
+            throw new IllegalArgumentException("Unknown compressed attribute format");
+        }
+        Inflater inflater = new Inflater(true);
+        try (InflaterInputStream input = new InflaterInputStream(
+                new ByteArrayInputStream(bytes, 1, bytes.length - 1), inflater)) {
+            return input.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
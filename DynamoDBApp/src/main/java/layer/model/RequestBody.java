@@ -22,4 +22,5 @@ public class RequestBody implements Serializable {
     private String location;
     private List<String> ageLimits;
     private String sorting;
+    private List<String> fields;
 }
@@ -6,6 +6,8 @@ import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBHashKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIndexHashKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIndexRangeKey;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTypeConverted;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBVersionAttribute;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Getter;
@@ -56,15 +58,28 @@ public class User {
     private String avatar;
 
     @DynamoDBAttribute(attributeName = "about")
+    @DynamoDBTypeConverted(converter = CompactUserEncoding.TextConverter.class)
     private String about;
 
     @DynamoDBAttribute(attributeName = "interests")
+    @DynamoDBTypeConverted(converter = CompactUserEncoding.StringListConverter.class)
     private List<String> interests;
 
     @DynamoDBAttribute(attributeName = "social_media")
+    @DynamoDBTypeConverted(converter = CompactUserEncoding.SocialMediaConverter.class)
     private HashMap<String, String> socialMedia;
 
     @DynamoDBAttribute(attributeName = "privacy")
+    @DynamoDBTypeConverted(converter = CompactUserEncoding.PrivacyConverter.class)
     private HashMap<String, Boolean> privacy;
 
+    /**
+     * Incremented by every write, and the entity tag of the user. It is
+     * transient to Gson, so it is never in the JSON and a version sent in a
+     * body is not even read; clients only see it as the {@code ETag}. Users
+     * written before it existed have none until their next update.
+     */
+    @DynamoDBVersionAttribute(attributeName = "version")
+    private transient Long version;
+
 }
\ No newline at end of file
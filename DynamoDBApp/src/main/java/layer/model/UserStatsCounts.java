@@ -0,0 +1,27 @@
+package layer.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * The number of users in every non-empty bucket of one dimension, e.g. per
+ * location or per year of birth.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@RequiredArgsConstructor
+@Builder
+@ToString
+public class UserStatsCounts implements Serializable {
+
+    private String dimension;
+    private Map<String, Long> counts;
+}
@@ -0,0 +1,32 @@
+package layer.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.io.Serializable;
+
+/**
+ * Outcome of one user of a bulk request, reported at its position in the
+ * request.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@RequiredArgsConstructor
+@Builder
+@ToString
+public class UserWriteResult implements Serializable {
+
+    public static final String CREATED = "created";
+    public static final String REJECTED = "rejected";
+    public static final String FAILED = "failed";
+
+    private Integer index;
+    private String email;
+    private String status;
+    private String message;
+}
@@ -0,0 +1,28 @@
+package layer.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.io.Serializable;
+
+/**
+ * One page of a paginated list. {@code cursor} is passed back as the
+ * {@code cursor} query parameter to get the next page and is absent on the
+ * last one. A list that is not paginated is a single page whose items may
+ * be read while they are iterated, and then only once.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@RequiredArgsConstructor
+@Builder
+@ToString
+public class UsersPage implements Serializable {
+
+    private Iterable<User> items;
+    private String cursor;
+}
@@ -2,8 +2,28 @@ package layer.service;
 
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+
 public interface APIGatewayService {
 
     APIGatewayProxyResponseEvent getApiGatewayProxyResponseEvent(String output, int statusCode1);
 
+    APIGatewayProxyResponseEvent getApiGatewayProxyResponseEvent(String output, int statusCode,
+                                                                 Map<String, String> headers);
+
+    APIGatewayProxyResponseEvent getApiGatewayProxyResponseEvent(ResponseBodyWriter body, int statusCode,
+                                                                 Map<String, String> headers, String acceptEncoding)
+            throws IOException;
+
+    void writeApiGatewayProxyResponseEvent(OutputStream outputStream, ResponseBodyWriter body, int statusCode)
+            throws IOException;
+
+    void writeApiGatewayProxyResponseEvent(OutputStream outputStream, ResponseBodyWriter body, int statusCode,
+                                           Map<String, String> headers) throws IOException;
+
+    void writeApiGatewayProxyResponseEvent(OutputStream outputStream, ResponseBodyWriter body, int statusCode,
+                                           Map<String, String> headers, String acceptEncoding) throws IOException;
+
 }
@@ -1,16 +1,133 @@
 package layer.service;
 
 import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.google.gson.stream.JsonWriter;
 
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
+/**
+ * Builds the proxy responses. The headers every response shares are built
+ * once; a body is gzipped when the request accepts it and it is long enough
+ * (see {@link ResponseCompression}), in which case it is base64 encoded as
+ * the gateway requires and carries {@code Content-Encoding}.
+ */
 public class APIGatewayServiceImpl implements APIGatewayService {
 
+    private static final Map<String, String> HEADERS = getCommonHeaders();
+    private static final Map<String, String> COMPRESSED_HEADERS = withHeaders(HEADERS,
+            Map.of("Content-Encoding", ResponseCompression.GZIP));
 
     @Override
     public APIGatewayProxyResponseEvent getApiGatewayProxyResponseEvent(String output, int statusCode) {
 
+        return getApiGatewayProxyResponseEvent(output, statusCode, Collections.emptyMap());
+    }
+
+    @Override
+    public APIGatewayProxyResponseEvent getApiGatewayProxyResponseEvent(String output, int statusCode,
+                                                                        Map<String, String> headers) {
+
+        return new APIGatewayProxyResponseEvent()
+                .withStatusCode(statusCode)
+                .withHeaders(withHeaders(HEADERS, headers))
+                .withBody(output);
+    }
+
+    /**
+     * Serializes the body into the response, through the compressor if the
+     * {@code Accept-Encoding} of the request allows and the body is long
+     * enough.
+     */
+    @Override
+    public APIGatewayProxyResponseEvent getApiGatewayProxyResponseEvent(ResponseBodyWriter body, int statusCode,
+                                                                        Map<String, String> headers,
+                                                                        String acceptEncoding) throws IOException {
+
+        StringWriter output = new StringWriter();
+        if (ResponseCompression.negotiate(acceptEncoding) == null) {
+            body.writeTo(output);
+            return getApiGatewayProxyResponseEvent(output.toString(), statusCode, headers);
+        }
+        ByteArrayOutputStream compressedOutput = new ByteArrayOutputStream();
+        ResponseCompression.BodyWriter bodyWriter = new ResponseCompression.BodyWriter(output, compressedOutput);
+        body.writeTo(bodyWriter);
+        if (!bodyWriter.finish()) {
+            return getApiGatewayProxyResponseEvent(output.toString(), statusCode, headers);
+        }
+        return new APIGatewayProxyResponseEvent()
+                .withStatusCode(statusCode)
+                .withHeaders(withHeaders(COMPRESSED_HEADERS, headers))
+                .withIsBase64Encoded(true)
+                .withBody(compressedOutput.toString(StandardCharsets.US_ASCII));
+    }
+
+    @Override
+    public void writeApiGatewayProxyResponseEvent(OutputStream outputStream, ResponseBodyWriter body,
+                                                  int statusCode) throws IOException {
+
+        writeApiGatewayProxyResponseEvent(outputStream, body, statusCode, Collections.emptyMap());
+    }
+
+    @Override
+    public void writeApiGatewayProxyResponseEvent(OutputStream outputStream, ResponseBodyWriter body,
+                                                  int statusCode, Map<String, String> headers) throws IOException {
+
+        writeApiGatewayProxyResponseEvent(outputStream, body, statusCode, headers, null);
+    }
+
+    /**
+     * Writes the proxy response envelope directly to the Lambda output stream
+     * and lets the body serialize itself into the escaped "body" string, so
+     * the payload never exists as a whole String. A compressed body is
+     * written as base64 straight to the stream. The headers follow the body,
+     * since whether it was compressed is only known once it is written.
+     */
+    @Override
+    public void writeApiGatewayProxyResponseEvent(OutputStream outputStream, ResponseBodyWriter body,
+                                                  int statusCode, Map<String, String> headers,
+                                                  String acceptEncoding) throws IOException {
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+        JsonWriter envelope = new JsonWriter(writer);
+
+        envelope.beginObject();
+        envelope.name("statusCode").value(statusCode);
+        envelope.name("body").jsonValue("\"");
+
+        boolean compressed = false;
+        JsonStringWriter plain = new JsonStringWriter(writer);
+        if (ResponseCompression.negotiate(acceptEncoding) == null) {
+            body.writeTo(plain);
+        } else {
+            ResponseCompression.BodyWriter bodyWriter = new ResponseCompression.BodyWriter(plain, outputStream);
+            body.writeTo(bodyWriter);
+            compressed = bodyWriter.finish();
+        }
+
+        writer.write("\"");
+        envelope.name("isBase64Encoded").value(compressed);
+        envelope.name("headers").beginObject();
+        for (Map.Entry<String, String> header : withHeaders(compressed ? COMPRESSED_HEADERS : HEADERS,
+                headers).entrySet()) {
+            envelope.name(header.getKey()).value(header.getValue());
+        }
+        envelope.endObject();
+        envelope.endObject();
+        writer.flush();
+    }
+
+    private static Map<String, String> getCommonHeaders() {
+
         Map<String, String> headers = new HashMap<>();
 
         headers.put("Content-Type", "application/json");
@@ -18,10 +135,23 @@ public class APIGatewayServiceImpl implements APIGatewayService {
         headers.put("Access-Control-Allow-Origin", "*");
         headers.put("Access-Control-Allow-Headers", "*");
         headers.put("Access-Control-Allow-Methods", "*");
+        if (ResponseCompression.isEnabled()) {
+            headers.put("Vary", "Accept-Encoding");
+        }
 
-        return new APIGatewayProxyResponseEvent()
-                .withStatusCode(statusCode)
-                .withHeaders(headers)
-                .withBody(output);
+        return Map.copyOf(headers);
+    }
+
+    /**
+     * The common headers, copied only when a response adds its own.
+     */
+    private static Map<String, String> withHeaders(Map<String, String> headers, Map<String, String> extraHeaders) {
+
+        if (extraHeaders.isEmpty()) {
+            return headers;
+        }
+        Map<String, String> merged = new HashMap<>(headers);
+        merged.putAll(extraHeaders);
+        return merged;
     }
 }
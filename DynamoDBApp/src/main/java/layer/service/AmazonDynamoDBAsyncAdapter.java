@@ -0,0 +1,125 @@
+package layer.service;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AbstractAmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemResult;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableRequest;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableResult;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Function;
+
+/**
+ * The asynchronous operations the service uses, on top of a client that only
+ * has the synchronous ones (e.g. the in-process engine): every call runs on
+ * a bounded executor, which is also how the SDK's own asynchronous client
+ * works.
+ */
+final class AmazonDynamoDBAsyncAdapter extends AbstractAmazonDynamoDBAsync {
+
+    private final AmazonDynamoDB amazonDynamoDB;
+    private final ThreadPoolExecutor executor;
+
+    AmazonDynamoDBAsyncAdapter(AmazonDynamoDB amazonDynamoDB, int concurrency) {
+        this.amazonDynamoDB = amazonDynamoDB;
+        this.executor = WorkerThreads.newBoundedExecutor("dynamodb-async", concurrency);
+    }
+
+    @Override
+    public Future<GetItemResult> getItemAsync(GetItemRequest request,
+                                              AsyncHandler<GetItemRequest, GetItemResult> asyncHandler) {
+        return submit(request, asyncHandler, amazonDynamoDB::getItem);
+    }
+
+    @Override
+    public Future<PutItemResult> putItemAsync(PutItemRequest request,
+                                              AsyncHandler<PutItemRequest, PutItemResult> asyncHandler) {
+        return submit(request, asyncHandler, amazonDynamoDB::putItem);
+    }
+
+    @Override
+    public Future<UpdateItemResult> updateItemAsync(UpdateItemRequest request,
+                                                    AsyncHandler<UpdateItemRequest, UpdateItemResult> asyncHandler) {
+        return submit(request, asyncHandler, amazonDynamoDB::updateItem);
+    }
+
+    @Override
+    public Future<DeleteItemResult> deleteItemAsync(DeleteItemRequest request,
+                                                    AsyncHandler<DeleteItemRequest, DeleteItemResult> asyncHandler) {
+        return submit(request, asyncHandler, amazonDynamoDB::deleteItem);
+    }
+
+    @Override
+    public Future<QueryResult> queryAsync(QueryRequest request,
+                                          AsyncHandler<QueryRequest, QueryResult> asyncHandler) {
+        return submit(request, asyncHandler, amazonDynamoDB::query);
+    }
+
+    @Override
+    public Future<ScanResult> scanAsync(ScanRequest request, AsyncHandler<ScanRequest, ScanResult> asyncHandler) {
+        return submit(request, asyncHandler, amazonDynamoDB::scan);
+    }
+
+    @Override
+    public Future<BatchGetItemResult> batchGetItemAsync(
+            BatchGetItemRequest request, AsyncHandler<BatchGetItemRequest, BatchGetItemResult> asyncHandler) {
+        return submit(request, asyncHandler, amazonDynamoDB::batchGetItem);
+    }
+
+    @Override
+    public Future<BatchWriteItemResult> batchWriteItemAsync(
+            BatchWriteItemRequest request, AsyncHandler<BatchWriteItemRequest, BatchWriteItemResult> asyncHandler) {
+        return submit(request, asyncHandler, amazonDynamoDB::batchWriteItem);
+    }
+
+    @Override
+    public Future<DescribeTableResult> describeTableAsync(
+            DescribeTableRequest request, AsyncHandler<DescribeTableRequest, DescribeTableResult> asyncHandler) {
+        return submit(request, asyncHandler, amazonDynamoDB::describeTable);
+    }
+
+    /**
+     * Stops the executor; the wrapped client is left to its owner.
+     */
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private <Q extends AmazonWebServiceRequest, R> Future<R> submit(Q request, AsyncHandler<Q, R> asyncHandler,
+                                                                     Function<Q, R> operation) {
+        return executor.submit(() -> {
+            R result;
+            try {
+                result = operation.apply(request);
+            } catch (Exception e) {
+                if (asyncHandler != null) {
+                    asyncHandler.onError(e);
+                }
+                throw e;
+            }
+            if (asyncHandler != null) {
+                asyncHandler.onSuccess(request, result);
+            }
+            return result;
+        });
+    }
+}
@@ -1,19 +1,210 @@
 package layer.service;
 
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.retry.PredefinedRetryPolicies;
+import com.amazonaws.retry.RetryPolicy;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
-import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClientBuilder;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsyncClientBuilder;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
-import lombok.Getter;
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndex;
+import com.amazonaws.services.dynamodbv2.model.Projection;
+import com.amazonaws.services.dynamodbv2.model.ProjectionType;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
+import com.amazonaws.services.dynamodbv2.model.StreamSpecification;
+import com.amazonaws.services.dynamodbv2.model.StreamViewType;
+import layer.engine.LocalDynamoDB;
+import layer.model.User;
+import org.crac.Context;
+import org.crac.Core;
+import org.crac.Resource;
 
-@Getter
-public class AmazonDynamoDBConnect {
+import java.util.function.Supplier;
 
-    private DynamoDBMapper dynamoDBMapper;
+/**
+ * Owns the DynamoDB clients and mapper. They are built lazily on first use,
+ * and the connection is registered as a CRaC resource so a checkpointed
+ * container (e.g. Lambda SnapStart) closes its pooled connections before
+ * the snapshot and opens fresh ones after restore.
+ * <p>
+ * The service is reached through one asynchronous client, which is also the
+ * synchronous client the mapper uses, so both share one connection pool. A
+ * client that is only synchronous (the in-process engine) gets its
+ * asynchronous operations from {@link AmazonDynamoDBAsyncAdapter}.
+ * <p>
+ * SDK v1's asynchronous client is not non-blocking: it runs each call as a
+ * blocking HTTP request on a thread of its executor. The caller's thread is
+ * free while the call is in flight, but every call in flight holds one of
+ * {@link #MAX_CONCURRENCY} threads, so that is also how far a request can fan
+ * out; further calls queue for a thread. Requests
+ * are paced by a {@link CapacityLimiter}, which is off for the in-process
+ * engine unless {@code CAPACITY_LIMITER_ENABLED} says otherwise.
+ */
+public class AmazonDynamoDBConnect implements Resource {
+
+    /**
+     * Selects the storage engine: {@code remote} (default) talks to the
+     * DynamoDB service, {@code local} uses the in-process engine shared by
+     * every handler in the JVM. See {@link Configuration}.
+     */
+    public static final String STORAGE_ENGINE_VARIABLE = "DYNAMODB_ENGINE";
+    public static final String STORAGE_ENGINE_PROPERTY = Configuration.getPropertyName(STORAGE_ENGINE_VARIABLE);
+    public static final String LOCAL_STORAGE_ENGINE = "local";
+
+    /**
+     * Requests in flight at once: the threads of the asynchronous client,
+     * one per call, and the size of its HTTP connection pool.
+     */
+    public static final int MAX_CONCURRENCY = 50;
+
+    private final Supplier<AmazonDynamoDB> clientFactory;
+    private final boolean ownsClient;
+    private volatile Connection connection;
 
     public AmazonDynamoDBConnect() {
+        this(() -> isLocalStorageEngine() ? createLocalClient() : createAsyncClient(), true);
+    }
+
+    /**
+     * Connects through a client the caller owns. It is never shut down here:
+     * a checkpoint only stops the executor put in front of it, and the
+     * connection is rebuilt around the same client after restore.
+     */
+    public AmazonDynamoDBConnect(AmazonDynamoDB amazonDynamoDB) {
+        this(() -> amazonDynamoDB, false);
+    }
+
+    private AmazonDynamoDBConnect(Supplier<AmazonDynamoDB> clientFactory, boolean ownsClient) {
+        this.clientFactory = clientFactory;
+        this.ownsClient = ownsClient;
+        Core.getGlobalContext().register(this);
+    }
+
+    public AmazonDynamoDB getAmazonDynamoDB() {
+        return getConnection().amazonDynamoDB;
+    }
+
+    public AmazonDynamoDBAsync getAmazonDynamoDBAsync() {
+        return getConnection().amazonDynamoDBAsync;
+    }
+
+    AsyncDynamoDBClient getAsyncClient() {
+        return getConnection().asyncClient;
+    }
+
+    public DynamoDBMapper getDynamoDBMapper() {
+        return getConnection().dynamoDBMapper;
+    }
+
+    public boolean isConnected() {
+        return connection != null;
+    }
+
+    @Override
+    public void beforeCheckpoint(Context<? extends Resource> context) {
+        Connection current = connection;
+        connection = null;
+        if (current == null) {
+            return;
+        }
+        if (current.amazonDynamoDBAsync instanceof AmazonDynamoDBAsyncAdapter || ownsClient) {
+            current.amazonDynamoDBAsync.shutdown();
+        }
+        if (ownsClient && current.amazonDynamoDB != current.amazonDynamoDBAsync) {
+            current.amazonDynamoDB.shutdown();
+        }
+    }
+
+    @Override
+    public void afterRestore(Context<? extends Resource> context) {
+        getConnection();
+    }
+
+    private Connection getConnection() {
+        Connection current = connection;
+        if (current == null) {
+            synchronized (this) {
+                current = connection;
+                if (current == null) {
+                    current = new Connection(clientFactory.get());
+                    connection = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    public static boolean isLocalStorageEngine() {
+        return LOCAL_STORAGE_ENGINE.equalsIgnoreCase(Configuration.getString(STORAGE_ENGINE_VARIABLE));
+    }
+
+    /**
+     * Builds the client for the service; its calls and callbacks run on a
+     * bounded pool of daemon threads, one per connection. It retries like the SDK's
+     * DynamoDB default except for throttling, which
+     * {@link AsyncDynamoDBClient} retries against its capacity limiter.
+     */
+    private static AmazonDynamoDBAsync createAsyncClient() {
+        RetryPolicy retryPolicy = new RetryPolicy(
+                (request, exception, retriesAttempted) -> !AsyncDynamoDBClient.isThrottling(exception)
+                        && PredefinedRetryPolicies.DEFAULT_RETRY_CONDITION.shouldRetry(request, exception,
+                        retriesAttempted),
+                PredefinedRetryPolicies.DYNAMODB_DEFAULT_BACKOFF_STRATEGY,
+                PredefinedRetryPolicies.DYNAMODB_DEFAULT_MAX_ERROR_RETRY, true);
+        return AmazonDynamoDBAsyncClientBuilder.standard()
+                .withClientConfiguration(new ClientConfiguration()
+                        .withMaxConnections(MAX_CONCURRENCY)
+                        .withRetryPolicy(retryPolicy))
+                .withExecutorFactory(() -> WorkerThreads.newBoundedExecutor("dynamodb", MAX_CONCURRENCY))
+                .build();
+    }
+
+    /**
+     * Returns the shared in-process engine with the user table created and
+     * its stream feeding the {@link UserStats} table.
+     */
+    public static LocalDynamoDB createLocalClient() {
+        return UserStats.connectLocalStream(createUserTable(LocalDynamoDB.getDefaultInstance()));
+    }
+
+    /**
+     * Creates the user table the way create-tables/create-table.json defines
+     * it: key schema and GSIs from the {@link User} annotations, projection
+     * ALL, provisioned at 5/5 for the table and 1/1 for every index, with a
+     * stream of new and old images.
+     */
+    public static LocalDynamoDB createUserTable(LocalDynamoDB localDynamoDB) {
+        CreateTableRequest createTableRequest = new DynamoDBMapper(localDynamoDB)
+                .generateCreateTableRequest(User.class)
+                .withProvisionedThroughput(new ProvisionedThroughput(5L, 5L))
+                .withStreamSpecification(new StreamSpecification()
+                        .withStreamEnabled(true)
+                        .withStreamViewType(StreamViewType.NEW_AND_OLD_IMAGES));
+        for (GlobalSecondaryIndex index : createTableRequest.getGlobalSecondaryIndexes()) {
+            index.setProjection(new Projection().withProjectionType(ProjectionType.ALL));
+            index.setProvisionedThroughput(new ProvisionedThroughput(1L, 1L));
+        }
+        localDynamoDB.createTableIfNotExists(createTableRequest);
+        return localDynamoDB;
+    }
+
+    private static final class Connection {
 
-        final AmazonDynamoDB client = AmazonDynamoDBClientBuilder.standard().build();
+        private final AmazonDynamoDB amazonDynamoDB;
+        private final AmazonDynamoDBAsync amazonDynamoDBAsync;
+        private final AsyncDynamoDBClient asyncClient;
+        private final DynamoDBMapper dynamoDBMapper;
 
-        this.dynamoDBMapper = new DynamoDBMapper(client);
+        private Connection(AmazonDynamoDB amazonDynamoDB) {
+            this.amazonDynamoDB = amazonDynamoDB;
+            this.amazonDynamoDBAsync = amazonDynamoDB instanceof AmazonDynamoDBAsync
+                    ? (AmazonDynamoDBAsync) amazonDynamoDB
+                    : new AmazonDynamoDBAsyncAdapter(amazonDynamoDB, MAX_CONCURRENCY);
+            this.asyncClient = new AsyncDynamoDBClient(amazonDynamoDBAsync,
+                    CapacityLimiter.create(!(amazonDynamoDB instanceof LocalDynamoDB)), new RetryBudget(),
+                    new CircuitBreaker());
+            this.dynamoDBMapper = new DynamoDBMapper(amazonDynamoDB);
+        }
     }
 }
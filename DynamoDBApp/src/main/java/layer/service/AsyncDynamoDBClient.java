@@ -0,0 +1,334 @@
+package layer.service;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.SdkBaseException;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.retry.RetryUtils;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemResult;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableRequest;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableResult;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+/**
+ * The operations of the asynchronous DynamoDB client the service uses, with
+ * the SDK's {@link AsyncHandler} callbacks bridged to
+ * {@link CompletableFuture}. Every request asks for
+ * {@code ReturnConsumedCapacity=INDEXES} and is recorded in the
+ * {@link OperationMetrics} of the operation it is part of and in the
+ * {@link CapacityLimiter}, which paces scans and queries. Throttled requests
+ * are retried with decorrelated jitter while the {@link RetryBudget} allows;
+ * the SDK client leaves throttling to this class.
+ * <p>
+ * While the {@link CircuitBreaker} is open, requests fail at once with a
+ * {@link CircuitOpenException}. With hedging enabled, a {@code GetItem},
+ * {@code Query} or {@code Scan} still running after the latency its
+ * {@link LatencyTracker} reports is sent once more and whichever attempt
+ * finishes first completes the call. These reads are idempotent, so the only
+ * cost of a hedge is the capacity it consumes.
+ */
+final class AsyncDynamoDBClient {
+
+    private final AmazonDynamoDBAsync amazonDynamoDB;
+    private final CapacityLimiter capacityLimiter;
+    private final RetryBudget retryBudget;
+    private final CircuitBreaker circuitBreaker;
+    private final LatencyTracker getItemLatency;
+    private final LatencyTracker queryLatency;
+    private final LatencyTracker scanLatency;
+
+    AsyncDynamoDBClient(AmazonDynamoDBAsync amazonDynamoDB) {
+        this(amazonDynamoDB, CapacityLimiter.UNLIMITED, new RetryBudget(), new CircuitBreaker());
+    }
+
+    AsyncDynamoDBClient(AmazonDynamoDBAsync amazonDynamoDB, CapacityLimiter capacityLimiter,
+                        RetryBudget retryBudget, CircuitBreaker circuitBreaker) {
+        this.amazonDynamoDB = amazonDynamoDB;
+        this.capacityLimiter = capacityLimiter;
+        this.retryBudget = retryBudget;
+        this.circuitBreaker = circuitBreaker;
+        this.getItemLatency = LatencyTracker.createForHedging();
+        this.queryLatency = LatencyTracker.createForHedging();
+        this.scanLatency = LatencyTracker.createForHedging();
+    }
+
+    CompletableFuture<GetItemResult> getItem(GetItemRequest request, OperationMetrics metrics) {
+        return call(amazonDynamoDB::getItemAsync, request.withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES),
+                capacityLimiter.getBucket(request.getTableName(), null, false), false, getItemLatency, metrics,
+                (operationMetrics, limiter, result) -> {
+                    int items = result.getItem() == null ? 0 : 1;
+                    limiter.consume(result.getConsumedCapacity(), false);
+                    operationMetrics.callCompleted(false, result.getConsumedCapacity(), items, items);
+                });
+    }
+
+    CompletableFuture<PutItemResult> putItem(PutItemRequest request, OperationMetrics metrics) {
+        return call(amazonDynamoDB::putItemAsync, request.withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES),
+                capacityLimiter.getBucket(request.getTableName(), null, true), false, null, metrics,
+                (operationMetrics, limiter, result) -> {
+                    limiter.consume(result.getConsumedCapacity(), true);
+                    operationMetrics.callCompleted(true, result.getConsumedCapacity(), 0, 0);
+                });
+    }
+
+    CompletableFuture<UpdateItemResult> updateItem(UpdateItemRequest request, OperationMetrics metrics) {
+        return call(amazonDynamoDB::updateItemAsync,
+                request.withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES),
+                capacityLimiter.getBucket(request.getTableName(), null, true), false, null, metrics,
+                (operationMetrics, limiter, result) -> {
+                    limiter.consume(result.getConsumedCapacity(), true);
+                    operationMetrics.callCompleted(true, result.getConsumedCapacity(), 0, 0);
+                });
+    }
+
+    CompletableFuture<DeleteItemResult> deleteItem(DeleteItemRequest request, OperationMetrics metrics) {
+        return call(amazonDynamoDB::deleteItemAsync,
+                request.withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES),
+                capacityLimiter.getBucket(request.getTableName(), null, true), false, null, metrics,
+                (operationMetrics, limiter, result) -> {
+                    limiter.consume(result.getConsumedCapacity(), true);
+                    operationMetrics.callCompleted(true, result.getConsumedCapacity(), 0, 0);
+                });
+    }
+
+    CompletableFuture<QueryResult> query(QueryRequest request, OperationMetrics metrics) {
+        return call(amazonDynamoDB::queryAsync, request.withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES),
+                capacityLimiter.getBucket(request.getTableName(), request.getIndexName(), false), true, queryLatency,
+                metrics,
+                (operationMetrics, limiter, result) -> {
+                    limiter.consume(result.getConsumedCapacity(), false);
+                    operationMetrics.callCompleted(false, result.getConsumedCapacity(),
+                            getCount(result.getScannedCount()), getCount(result.getCount()));
+                });
+    }
+
+    /**
+     * A query nobody waits on, such as one page of rebuilding an in-memory
+     * index: it first waits for as long as its bucket is in debt, not just
+     * up to the maximum wait, so it only spends capacity that requests in
+     * the foreground left unused.
+     */
+    CompletableFuture<QueryResult> queryInBackground(QueryRequest request, OperationMetrics metrics) {
+        CapacityLimiter.Bucket bucket = capacityLimiter.getBucket(request.getTableName(), request.getIndexName(),
+                false);
+        long delayMillis = bucket == null ? 0 : bucket.getDebtMillis();
+        if (delayMillis == 0) {
+            return query(request, metrics);
+        }
+        return CompletableFuture.runAsync(() -> { }, CompletableFutures.delayed(delayMillis))
+                .thenCompose(ignored -> query(request, metrics));
+    }
+
+    CompletableFuture<ScanResult> scan(ScanRequest request, OperationMetrics metrics) {
+        return call(amazonDynamoDB::scanAsync, request.withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES),
+                capacityLimiter.getBucket(request.getTableName(), request.getIndexName(), false), true, scanLatency,
+                metrics,
+                (operationMetrics, limiter, result) -> {
+                    limiter.consume(result.getConsumedCapacity(), false);
+                    operationMetrics.callCompleted(false, result.getConsumedCapacity(),
+                            getCount(result.getScannedCount()), getCount(result.getCount()));
+                });
+    }
+
+    /**
+     * Batch requests are not paced: their unprocessed items are already
+     * resent with backoff by {@link BatchReader} and {@link BatchWriter}.
+     */
+    CompletableFuture<BatchGetItemResult> batchGetItem(BatchGetItemRequest request, OperationMetrics metrics) {
+        return call(amazonDynamoDB::batchGetItemAsync,
+                request.withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES), null, false, null, metrics,
+                (operationMetrics, limiter, result) -> {
+                    int items = 0;
+                    if (result.getResponses() != null) {
+                        for (List<Map<String, AttributeValue>> tableItems : result.getResponses().values()) {
+                            items += tableItems.size();
+                        }
+                    }
+                    limiter.consume(result.getConsumedCapacity(), false);
+                    operationMetrics.callCompleted(false, result.getConsumedCapacity(), items, items);
+                });
+    }
+
+    CompletableFuture<BatchWriteItemResult> batchWriteItem(BatchWriteItemRequest request,
+                                                           OperationMetrics metrics) {
+        return call(amazonDynamoDB::batchWriteItemAsync,
+                request.withReturnConsumedCapacity(ReturnConsumedCapacity.INDEXES), null, false, null, metrics,
+                (operationMetrics, limiter, result) -> {
+                    limiter.consume(result.getConsumedCapacity(), true);
+                    operationMetrics.callCompleted(true, result.getConsumedCapacity(), 0, 0);
+                });
+    }
+
+    /**
+     * Reads the description of a table, e.g. its approximate item count. It
+     * consumes no capacity, so it is neither paced nor hedged.
+     */
+    CompletableFuture<DescribeTableResult> describeTable(String tableName, OperationMetrics metrics) {
+        return call(amazonDynamoDB::describeTableAsync, new DescribeTableRequest().withTableName(tableName), null,
+                false, null, metrics,
+                (operationMetrics, limiter, result) -> operationMetrics.callCompleted(false, (ConsumedCapacity) null,
+                        0, 0));
+    }
+
+    /**
+     * Whether DynamoDB rejected the request for exceeding the provisioned
+     * throughput or an account limit.
+     */
+    static boolean isThrottling(Throwable throwable) {
+        return throwable instanceof ProvisionedThroughputExceededException
+                || throwable instanceof SdkBaseException
+                && RetryUtils.isThrottlingException((SdkBaseException) throwable);
+    }
+
+    private static int getCount(Integer count) {
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Sends the request and completes the returned future with its result. A
+     * paced request waits for its bucket first; a request with a latency
+     * tracker may be hedged.
+     */
+    private <Q extends AmazonWebServiceRequest, R> CompletableFuture<R> call(AsyncOperation<Q, R> operation,
+                                                                             Q request, CapacityLimiter.Bucket bucket,
+                                                                             boolean paced,
+                                                                             LatencyTracker latencyTracker,
+                                                                             OperationMetrics metrics,
+                                                                             CallRecorder<R> recorder) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        if (!circuitBreaker.tryAcquire()) {
+            future.completeExceptionally(circuitBreaker.getOpenException());
+            return future;
+        }
+        long delayMillis = paced && bucket != null ? bucket.getDelayMillis() : 0;
+        if (delayMillis > 0) {
+            CompletableFutures.delayed(delayMillis).execute(() ->
+                    sendHedged(operation, request, bucket, latencyTracker, metrics, recorder, future));
+        } else {
+            sendHedged(operation, request, bucket, latencyTracker, metrics, recorder, future);
+        }
+        return future;
+    }
+
+    /**
+     * Sends the request and, once its latency tracker has enough samples,
+     * schedules a copy of it for when the call takes longer than usual. The
+     * copy is not sent if the call has finished by then or the circuit is no
+     * longer closed.
+     */
+    @SuppressWarnings("unchecked")
+    private <Q extends AmazonWebServiceRequest, R> void sendHedged(AsyncOperation<Q, R> operation, Q request,
+                                                                   CapacityLimiter.Bucket bucket,
+                                                                   LatencyTracker latencyTracker,
+                                                                   OperationMetrics metrics, CallRecorder<R> recorder,
+                                                                   CompletableFuture<R> future) {
+        long hedgeDelayMillis = latencyTracker == null ? -1 : latencyTracker.getHedgeDelayMillis();
+        send(operation, request, bucket, latencyTracker, metrics, recorder, future, 1, 0);
+        if (hedgeDelayMillis >= 0 && !future.isDone()) {
+            CompletableFutures.delayed(hedgeDelayMillis).execute(() -> {
+                if (!future.isDone() && circuitBreaker.isClosed()) {
+                    send(operation, (Q) request.clone(), bucket, latencyTracker, metrics, recorder, future, 1, 0);
+                }
+            });
+        }
+    }
+
+    /**
+     * Sends one attempt with a handler that records the call in
+     * {@code metrics} and the circuit breaker and completes {@code future},
+     * or schedules the next attempt if the request was throttled. A request
+     * the client rejects outright fails the future too. Nothing is sent once
+     * the future is complete, which ends the retries of a hedge that lost.
+     */
+    private <Q extends AmazonWebServiceRequest, R> void send(AsyncOperation<Q, R> operation, Q request,
+                                                             CapacityLimiter.Bucket bucket,
+                                                             LatencyTracker latencyTracker, OperationMetrics metrics,
+                                                             CallRecorder<R> recorder, CompletableFuture<R> future,
+                                                             int attempt, long previousBackoffMillis) {
+        if (future.isDone()) {
+            return;
+        }
+        metrics.callStarted();
+        long startNanos = latencyTracker == null ? 0 : System.nanoTime();
+        try {
+            operation.send(request, new AsyncHandler<>() {
+                @Override
+                public void onError(Exception exception) {
+                    metrics.callFailed();
+                    circuitBreaker.onFailure(exception);
+                    if (!isThrottling(exception)) {
+                        future.completeExceptionally(exception);
+                        return;
+                    }
+                    if (bucket != null) {
+                        bucket.throttled();
+                    }
+                    if (attempt == Backoff.MAX_ATTEMPTS || !retryBudget.tryAcquireRetry()) {
+                        future.completeExceptionally(exception);
+                        return;
+                    }
+                    long backoffMillis = Backoff.getDecorrelatedBackoffMillis(previousBackoffMillis);
+                    CompletableFutures.delayed(backoffMillis).execute(() -> send(operation, request, bucket,
+                            latencyTracker, metrics, recorder, future, attempt + 1, backoffMillis));
+                }
+
+                @Override
+                public void onSuccess(Q completedRequest, R result) {
+                    if (latencyTracker != null) {
+                        latencyTracker.record(System.nanoTime() - startNanos);
+                    }
+                    circuitBreaker.onSuccess();
+                    retryBudget.onSuccess();
+                    recorder.record(metrics, capacityLimiter, result);
+                    future.complete(result);
+                }
+            });
+        } catch (RuntimeException e) {
+            metrics.callFailed();
+            circuitBreaker.onFailure(e);
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * An {@code xxxAsync(request, asyncHandler)} method of the client.
+     */
+    @FunctionalInterface
+    private interface AsyncOperation<Q extends AmazonWebServiceRequest, R> {
+
+        Future<R> send(Q request, AsyncHandler<Q, R> asyncHandler);
+    }
+
+    /**
+     * Records a successful call; the implementations capture nothing, so
+     * recording allocates no lambda per call.
+     */
+    @FunctionalInterface
+    private interface CallRecorder<R> {
+
+        void record(OperationMetrics metrics, CapacityLimiter capacityLimiter, R result);
+    }
+}
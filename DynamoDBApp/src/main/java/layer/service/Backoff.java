@@ -0,0 +1,37 @@
+package layer.service;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Delays between attempts: exponential backoff with full jitter for a batch
+ * request whose items or keys were returned unprocessed, and decorrelated
+ * jitter for a request that was throttled.
+ */
+final class Backoff {
+
+    static final int MAX_ATTEMPTS = 8;
+    static final long BASE_BACKOFF_MILLIS = 25;
+    static final long MAX_BACKOFF_MILLIS = 2_000;
+
+    private Backoff() {
+    }
+
+    /**
+     * Full jitter: a uniformly random delay up to the exponential bound.
+     */
+    static long getBackoffMillis(int attempt) {
+        long bound = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempt, 20));
+        return ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+
+    /**
+     * Decorrelated jitter: a random delay between the base and three times
+     * the previous delay, capped. Unlike full jitter it grows from the delay
+     * actually waited, so concurrent retries spread out instead of moving in
+     * step.
+     */
+    static long getDecorrelatedBackoffMillis(long previousBackoffMillis) {
+        long bound = Math.min(MAX_BACKOFF_MILLIS, Math.max(BASE_BACKOFF_MILLIS, previousBackoffMillis) * 3);
+        return BASE_BACKOFF_MILLIS + ThreadLocalRandom.current().nextLong(bound - BASE_BACKOFF_MILLIS + 1);
+    }
+}
@@ -0,0 +1,96 @@
+package layer.service;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperTableModel;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Loads items by key with {@code BatchGetItem}: the keys are split into
+ * 100-key requests that are all sent at once. {@code UnprocessedKeys} are
+ * resent with {@link Backoff}; keys still unprocessed after
+ * {@link Backoff#MAX_ATTEMPTS} fail the load, like the mapper's
+ * {@code batchLoad} does.
+ */
+final class BatchReader {
+
+    static final int MAX_BATCH_GET_KEYS = 100;
+
+    private BatchReader() {
+    }
+
+    /**
+     * Completes with the items found for the keys, in no particular order.
+     * Each key is an item with only its key attributes set.
+     */
+    static <T> CompletableFuture<List<T>> loadItems(AsyncDynamoDBClient asyncClient,
+                                                    DynamoDBMapperTableModel<T> tableModel, String tableName,
+                                                    List<T> keys, OperationMetrics metrics) {
+        List<Map<String, AttributeValue>> convertedKeys = new ArrayList<>(keys.size());
+        for (T key : keys) {
+            convertedKeys.add(tableModel.convertKey(key));
+        }
+        return loadItems(asyncClient, tableName, convertedKeys, metrics).thenApply(found -> {
+            List<T> items = new ArrayList<>(found.size());
+            for (Map<String, AttributeValue> item : found) {
+                items.add(tableModel.unconvert(item));
+            }
+            return items;
+        });
+    }
+
+    /**
+     * Completes with the attributes of the items found for the keys, in no
+     * particular order.
+     */
+    static CompletableFuture<List<Map<String, AttributeValue>>> loadItems(
+            AsyncDynamoDBClient asyncClient, String tableName, List<Map<String, AttributeValue>> keys,
+            OperationMetrics metrics) {
+        List<CompletableFuture<List<Map<String, AttributeValue>>>> chunks = new ArrayList<>();
+        for (int from = 0; from < keys.size(); from += MAX_BATCH_GET_KEYS) {
+            List<Map<String, AttributeValue>> chunk = new ArrayList<>(
+                    keys.subList(from, Math.min(keys.size(), from + MAX_BATCH_GET_KEYS)));
+            chunks.add(loadChunk(asyncClient, tableName, new KeysAndAttributes().withKeys(chunk),
+                    new ArrayList<>(), 0, metrics));
+        }
+
+        return CompletableFutures.allOf(chunks).thenApply(chunkItems -> {
+            List<Map<String, AttributeValue>> items = new ArrayList<>(keys.size());
+            for (List<Map<String, AttributeValue>> chunk : chunkItems) {
+                items.addAll(chunk);
+            }
+            return items;
+        });
+    }
+
+    private static CompletableFuture<List<Map<String, AttributeValue>>> loadChunk(
+            AsyncDynamoDBClient asyncClient, String tableName, KeysAndAttributes pending,
+            List<Map<String, AttributeValue>> items, int attempt, OperationMetrics metrics) {
+        if (pending == null || pending.getKeys() == null || pending.getKeys().isEmpty()) {
+            return CompletableFuture.completedFuture(items);
+        } else if (attempt == Backoff.MAX_ATTEMPTS) {
+            return CompletableFuture.failedFuture(new IllegalStateException(
+                    pending.getKeys().size() + " keys not processed after " + Backoff.MAX_ATTEMPTS + " attempts"));
+        }
+        BatchGetItemRequest request = new BatchGetItemRequest().withRequestItems(Map.of(tableName, pending));
+        CompletableFuture<Void> delay = attempt == 0 ? CompletableFuture.completedFuture(null)
+                : CompletableFuture.runAsync(() -> { }, CompletableFutures.delayed(Backoff.getBackoffMillis(attempt)));
+        return delay
+                .thenCompose(ignored -> asyncClient.batchGetItem(request, metrics))
+                .thenCompose(result -> {
+                    List<Map<String, AttributeValue>> responses = result.getResponses() == null
+                            ? null : result.getResponses().get(tableName);
+                    if (responses != null) {
+                        items.addAll(responses);
+                    }
+                    KeysAndAttributes unprocessed = result.getUnprocessedKeys() == null
+                            ? null : result.getUnprocessedKeys().get(tableName);
+                    return loadChunk(asyncClient, tableName, unprocessed, items, attempt + 1, metrics);
+                });
+    }
+}
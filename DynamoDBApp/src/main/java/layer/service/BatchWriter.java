@@ -0,0 +1,88 @@
+package layer.service;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Puts items with {@code BatchWriteItem} in chunks of 25 that are all sent
+ * at once. {@code UnprocessedItems} are resent with {@link Backoff} until
+ * {@link Backoff#MAX_ATTEMPTS} is reached; whatever is still unprocessed
+ * then, or belongs to a chunk whose request failed, is reported back by key
+ * instead of failing the whole write.
+ */
+final class BatchWriter {
+
+    static final int MAX_BATCH_WRITE_ITEMS = 25;
+
+    private BatchWriter() {
+    }
+
+    /**
+     * Writes the items and completes with an error message for every key
+     * (the value of {@code keyName}) that could not be written.
+     */
+    static CompletableFuture<Map<String, String>> putItems(AsyncDynamoDBClient asyncClient, String tableName,
+                                                           String keyName, List<Map<String, AttributeValue>> items,
+                                                           OperationMetrics metrics) {
+        List<CompletableFuture<Map<String, String>>> chunks = new ArrayList<>();
+        for (int from = 0; from < items.size(); from += MAX_BATCH_WRITE_ITEMS) {
+            List<WriteRequest> chunk = new ArrayList<>(MAX_BATCH_WRITE_ITEMS);
+            for (Map<String, AttributeValue> item : items.subList(from,
+                    Math.min(items.size(), from + MAX_BATCH_WRITE_ITEMS))) {
+                chunk.add(new WriteRequest().withPutRequest(new PutRequest().withItem(item)));
+            }
+            chunks.add(putChunk(asyncClient, tableName, keyName, chunk, 0, metrics));
+        }
+
+        return CompletableFutures.allOf(chunks).thenApply(chunkFailures -> {
+            Map<String, String> failures = new HashMap<>();
+            chunkFailures.forEach(failures::putAll);
+            return failures;
+        });
+    }
+
+    private static CompletableFuture<Map<String, String>> putChunk(AsyncDynamoDBClient asyncClient,
+                                                                   String tableName, String keyName,
+                                                                   List<WriteRequest> pending, int attempt,
+                                                                   OperationMetrics metrics) {
+        if (pending.isEmpty()) {
+            return CompletableFuture.completedFuture(Map.of());
+        } else if (attempt == Backoff.MAX_ATTEMPTS) {
+            return CompletableFuture.completedFuture(getFailures(keyName, pending,
+                    "Not processed after " + Backoff.MAX_ATTEMPTS + " attempts"));
+        }
+        BatchWriteItemRequest request = new BatchWriteItemRequest().withRequestItems(Map.of(tableName, pending));
+        CompletableFuture<Void> delay = attempt == 0 ? CompletableFuture.completedFuture(null)
+                : CompletableFuture.runAsync(() -> { }, CompletableFutures.delayed(Backoff.getBackoffMillis(attempt)));
+        return delay
+                .thenCompose(ignored -> asyncClient.batchWriteItem(request, metrics))
+                .handle((result, e) -> {
+                    if (e != null) {
+                        Throwable cause = CompletableFutures.unwrap(e);
+                        return CompletableFuture.completedFuture(getFailures(keyName, pending,
+                                cause.getClass().getSimpleName() + ": " + cause.getMessage()));
+                    }
+                    List<WriteRequest> unprocessed = result.getUnprocessedItems() == null
+                            ? null : result.getUnprocessedItems().get(tableName);
+                    return putChunk(asyncClient, tableName, keyName,
+                            unprocessed == null ? List.of() : unprocessed, attempt + 1, metrics);
+                })
+                .thenCompose(failures -> failures);
+    }
+
+    private static Map<String, String> getFailures(String keyName, List<WriteRequest> pending, String error) {
+        Map<String, String> failures = new HashMap<>();
+        for (WriteRequest writeRequest : pending) {
+            failures.put(writeRequest.getPutRequest().getItem().get(keyName).getS(), error);
+        }
+        return failures;
+    }
+}
@@ -0,0 +1,197 @@
+package layer.service;
+
+import com.amazonaws.services.dynamodbv2.model.Capacity;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client-side token buckets, one for the reads and one for the writes of
+ * the table and of every index. A bucket refills at the provisioned capacity
+ * and is drained by the capacity each response reports, so it may go into
+ * debt. Like DynamoDB's burst capacity, it holds at most
+ * {@code CAPACITY_BURST_SECONDS} of unused capacity.
+ * <p>
+ * Only scans and queries wait for their bucket to be out of debt, and for
+ * at most {@code CAPACITY_MAX_WAIT_MILLIS} per request. A long scan therefore
+ * paces itself while point reads and writes are never held back. A throttled
+ * request empties its bucket, which also accounts for capacity that other
+ * containers used.
+ * <p>
+ * The capacity comes from {@code TABLE_READ_CAPACITY_UNITS},
+ * {@code TABLE_WRITE_CAPACITY_UNITS}, {@code INDEX_READ_CAPACITY_UNITS} and
+ * {@code INDEX_WRITE_CAPACITY_UNITS}. The defaults are the provisioned
+ * throughput of create-tables/create-table.json. Each container has its own
+ * buckets, so with many warm containers these are best set to a share of it.
+ */
+final class CapacityLimiter {
+
+    static final String ENABLED_VARIABLE = "CAPACITY_LIMITER_ENABLED";
+    static final String TABLE_READ_UNITS_VARIABLE = "TABLE_READ_CAPACITY_UNITS";
+    static final String TABLE_WRITE_UNITS_VARIABLE = "TABLE_WRITE_CAPACITY_UNITS";
+    static final String INDEX_READ_UNITS_VARIABLE = "INDEX_READ_CAPACITY_UNITS";
+    static final String INDEX_WRITE_UNITS_VARIABLE = "INDEX_WRITE_CAPACITY_UNITS";
+    static final String BURST_SECONDS_VARIABLE = "CAPACITY_BURST_SECONDS";
+    static final String MAX_WAIT_VARIABLE = "CAPACITY_MAX_WAIT_MILLIS";
+    static final int DEFAULT_TABLE_UNITS = 5;
+    static final int DEFAULT_INDEX_UNITS = 1;
+    static final int DEFAULT_BURST_SECONDS = 300;
+    static final long DEFAULT_MAX_WAIT_MILLIS = 1_000;
+
+    /**
+     * Never makes a request wait.
+     */
+    static final CapacityLimiter UNLIMITED = new CapacityLimiter(false, 0, 0, 0, 0, 0, 0);
+
+    private final boolean enabled;
+    private final double tableReadUnits;
+    private final double tableWriteUnits;
+    private final double indexReadUnits;
+    private final double indexWriteUnits;
+    private final int burstSeconds;
+    private final long maxWaitMillis;
+    private final Map<String, Bucket> readBuckets = new ConcurrentHashMap<>();
+    private final Map<String, Bucket> writeBuckets = new ConcurrentHashMap<>();
+
+    CapacityLimiter(boolean enabled, double tableReadUnits, double tableWriteUnits, double indexReadUnits,
+                    double indexWriteUnits, int burstSeconds, long maxWaitMillis) {
+        this.enabled = enabled;
+        this.tableReadUnits = tableReadUnits;
+        this.tableWriteUnits = tableWriteUnits;
+        this.indexReadUnits = indexReadUnits;
+        this.indexWriteUnits = indexWriteUnits;
+        this.burstSeconds = burstSeconds;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    /**
+     * The limiter as configured; {@code enabledByDefault} applies when
+     * {@code CAPACITY_LIMITER_ENABLED} is not set.
+     */
+    static CapacityLimiter create(boolean enabledByDefault) {
+        if (!Configuration.getBoolean(ENABLED_VARIABLE, enabledByDefault)) {
+            return UNLIMITED;
+        }
+        return new CapacityLimiter(true,
+                Configuration.getInt(TABLE_READ_UNITS_VARIABLE, DEFAULT_TABLE_UNITS),
+                Configuration.getInt(TABLE_WRITE_UNITS_VARIABLE, DEFAULT_TABLE_UNITS),
+                Configuration.getInt(INDEX_READ_UNITS_VARIABLE, DEFAULT_INDEX_UNITS),
+                Configuration.getInt(INDEX_WRITE_UNITS_VARIABLE, DEFAULT_INDEX_UNITS),
+                Math.max(1, Configuration.getInt(BURST_SECONDS_VARIABLE, DEFAULT_BURST_SECONDS)),
+                Math.max(0, Configuration.getLong(MAX_WAIT_VARIABLE, DEFAULT_MAX_WAIT_MILLIS)));
+    }
+
+    /**
+     * The bucket of the table, or of the index when {@code indexName} is set;
+     * null when the limiter is disabled.
+     */
+    Bucket getBucket(String tableName, String indexName, boolean write) {
+        if (!enabled || tableName == null) {
+            return null;
+        }
+        return indexName == null ? getBucket(tableName, false, write) : getBucket(indexName, true, write);
+    }
+
+    /**
+     * Drains the buckets of the table and of every index by what the
+     * response reports.
+     */
+    void consume(ConsumedCapacity consumedCapacity, boolean write) {
+        if (!enabled || consumedCapacity == null || consumedCapacity.getTableName() == null) {
+            return;
+        }
+        if (consumedCapacity.getTable() != null || consumedCapacity.getGlobalSecondaryIndexes() != null) {
+            consume(getBucket(consumedCapacity.getTableName(), false, write), consumedCapacity.getTable());
+            if (consumedCapacity.getGlobalSecondaryIndexes() != null) {
+                for (Map.Entry<String, Capacity> index : consumedCapacity.getGlobalSecondaryIndexes().entrySet()) {
+                    consume(getBucket(index.getKey(), true, write), index.getValue());
+                }
+            }
+        } else if (consumedCapacity.getCapacityUnits() != null) {
+            getBucket(consumedCapacity.getTableName(), false, write).consume(consumedCapacity.getCapacityUnits());
+        }
+    }
+
+    void consume(List<ConsumedCapacity> consumedCapacity, boolean write) {
+        if (consumedCapacity != null) {
+            for (ConsumedCapacity tableCapacity : consumedCapacity) {
+                consume(tableCapacity, write);
+            }
+        }
+    }
+
+    private static void consume(Bucket bucket, Capacity capacity) {
+        if (capacity != null && capacity.getCapacityUnits() != null) {
+            bucket.consume(capacity.getCapacityUnits());
+        }
+    }
+
+    private Bucket getBucket(String name, boolean index, boolean write) {
+        Map<String, Bucket> buckets = write ? writeBuckets : readBuckets;
+        Bucket bucket = buckets.get(name);
+        if (bucket == null) {
+            double unitsPerSecond = index ? (write ? indexWriteUnits : indexReadUnits)
+                    : (write ? tableWriteUnits : tableReadUnits);
+            bucket = buckets.computeIfAbsent(name, ignored -> new Bucket(unitsPerSecond, burstSeconds,
+                    maxWaitMillis));
+        }
+        return bucket;
+    }
+
+    static final class Bucket {
+
+        private final double unitsPerSecond;
+        private final double maxUnits;
+        private final long maxWaitMillis;
+        private double units;
+        private long refilledNanos = System.nanoTime();
+
+        private Bucket(double unitsPerSecond, int burstSeconds, long maxWaitMillis) {
+            this.unitsPerSecond = Math.max(unitsPerSecond, 0.1);
+            this.maxUnits = this.unitsPerSecond * burstSeconds;
+            this.maxWaitMillis = maxWaitMillis;
+            this.units = maxUnits;
+        }
+
+        /**
+         * How long to wait before the bucket is out of debt, at most the
+         * maximum wait.
+         */
+        synchronized long getDelayMillis() {
+            return Math.min(maxWaitMillis, getDebtMillis());
+        }
+
+        /**
+         * How long until the bucket is out of debt, however long that is.
+         */
+        synchronized long getDebtMillis() {
+            refill();
+            if (units >= 0) {
+                return 0;
+            }
+            return (long) Math.ceil(-units / unitsPerSecond * 1_000);
+        }
+
+        synchronized void consume(double consumedUnits) {
+            refill();
+            units -= consumedUnits;
+        }
+
+        /**
+         * DynamoDB has no capacity left for this bucket, whatever it holds.
+         */
+        synchronized void throttled() {
+            refill();
+            units = Math.min(units, 0);
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            units = Math.min(maxUnits, units + (now - refilledNanos) * unitsPerSecond / TimeUnit.SECONDS.toNanos(1));
+            refilledNanos = now;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package layer.service;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stops sending requests to DynamoDB while it is unhealthy. After
+ * {@code CIRCUIT_FAILURE_THRESHOLD} consecutive failed attempts the circuit
+ * opens and every request fails at once with a
+ * {@link CircuitOpenException} for {@code CIRCUIT_OPEN_MILLIS}. Then a single
+ * probe request is let through: its success closes the circuit, its failure
+ * opens it again. Only server errors and network failures count; a
+ * rejected condition, a validation error or throttling says nothing about
+ * the health of the backend.
+ */
+final class CircuitBreaker {
+
+    static final String FAILURE_THRESHOLD_VARIABLE = "CIRCUIT_FAILURE_THRESHOLD";
+    static final String OPEN_MILLIS_VARIABLE = "CIRCUIT_OPEN_MILLIS";
+    static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    static final long DEFAULT_OPEN_MILLIS = 5_000;
+
+    private enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedNanos;
+    private boolean probeInFlight;
+
+    CircuitBreaker() {
+        this(Configuration.getInt(FAILURE_THRESHOLD_VARIABLE, DEFAULT_FAILURE_THRESHOLD),
+                Configuration.getLong(OPEN_MILLIS_VARIABLE, DEFAULT_OPEN_MILLIS));
+    }
+
+    CircuitBreaker(int failureThreshold, long openMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, openMillis));
+    }
+
+    /**
+     * Whether a request may be sent now; in the half-open state only the
+     * probe may.
+     */
+    synchronized boolean tryAcquire() {
+        if (state == State.OPEN && System.nanoTime() - openedNanos >= openNanos) {
+            state = State.HALF_OPEN;
+            probeInFlight = false;
+        }
+        if (state == State.HALF_OPEN && !probeInFlight) {
+            probeInFlight = true;
+            return true;
+        }
+        return state == State.CLOSED;
+    }
+
+    synchronized boolean isClosed() {
+        return state == State.CLOSED;
+    }
+
+    synchronized void onSuccess() {
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+        probeInFlight = false;
+    }
+
+    synchronized void onFailure(Throwable failure) {
+        if (!isBackendFailure(failure)) {
+            if (state == State.HALF_OPEN) {
+                onSuccess();
+            }
+            return;
+        }
+        if (state == State.HALF_OPEN || ++consecutiveFailures >= failureThreshold) {
+            state = State.OPEN;
+            openedNanos = System.nanoTime();
+            probeInFlight = false;
+        }
+    }
+
+    /**
+     * The failure to answer a request with while the circuit is open.
+     */
+    synchronized CircuitOpenException getOpenException() {
+        long remainingNanos = state == State.OPEN ? openNanos - (System.nanoTime() - openedNanos) : openNanos;
+        return new CircuitOpenException(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remainingNanos)));
+    }
+
+    private static boolean isBackendFailure(Throwable failure) {
+        if (AsyncDynamoDBClient.isThrottling(failure)) {
+            return false;
+        } else if (failure instanceof AmazonServiceException) {
+            return ((AmazonServiceException) failure).getStatusCode() >= 500;
+        } else return failure instanceof AmazonClientException;
+    }
+}
@@ -0,0 +1,22 @@
+package layer.service;
+
+/**
+ * A request that was not sent because DynamoDB is considered unhealthy; see
+ * {@link CircuitBreaker}.
+ */
+public class CircuitOpenException extends RuntimeException {
+
+    private final long retryAfterMillis;
+
+    public CircuitOpenException(long retryAfterMillis) {
+        super("DynamoDB is unavailable, retry after " + retryAfterMillis + " ms");
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * How long until the circuit lets a request through again.
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -0,0 +1,91 @@
+package layer.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Helpers for composing {@link CompletableFuture}s of DynamoDB requests, and
+ * for getting back to plain exceptions for callers that block on the result.
+ */
+final class CompletableFutures {
+
+    private CompletableFutures() {
+    }
+
+    /**
+     * Starts an asynchronous operation, turning an exception thrown before it
+     * returns its future (e.g. an unparsable body) into a failed future.
+     */
+    static <T> CompletableFuture<T> start(Supplier<CompletableFuture<T>> operation) {
+        try {
+            return operation.get();
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Completes with the results in the order of the futures once all of
+     * them have, or exceptionally as soon as one of them fails.
+     */
+    static <T> CompletableFuture<List<T>> allOf(List<CompletableFuture<T>> futures) {
+        CompletableFuture<List<T>> all = CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> {
+                    List<T> results = new ArrayList<>(futures.size());
+                    for (CompletableFuture<T> future : futures) {
+                        results.add(future.join());
+                    }
+                    return results;
+                });
+        for (CompletableFuture<T> future : futures) {
+            future.whenComplete((result, e) -> {
+                if (e != null) {
+                    all.completeExceptionally(unwrap(e));
+                }
+            });
+        }
+        return all;
+    }
+
+    /**
+     * An executor that runs its tasks after the delay, without holding a
+     * thread while waiting.
+     */
+    static Executor delayed(long delayMillis) {
+        return CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Waits for the result, rethrowing a failure as the exception that caused
+     * it so a blocking caller sees the same exceptions a synchronous call
+     * would throw.
+     */
+    static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = unwrap(e);
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    static Throwable unwrap(Throwable throwable) {
+        Throwable cause = throwable;
+        while ((cause instanceof CompletionException || cause instanceof ExecutionException)
+                && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause;
+    }
+}
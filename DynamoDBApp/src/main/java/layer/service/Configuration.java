@@ -0,0 +1,59 @@
+package layer.service;
+
+import java.util.Locale;
+
+/**
+ * Function settings. Each is read from an environment variable such as
+ * {@code SCAN_SEGMENTS}, falling back to the system property of the same
+ * name in lower case with dots ({@code scan.segments}) for local runs.
+ */
+public final class Configuration {
+
+    private Configuration() {
+    }
+
+    public static String getString(String variable) {
+        String value = System.getenv(variable);
+        if (value == null) {
+            value = System.getProperty(getPropertyName(variable));
+        }
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+
+    public static int getInt(String variable, int defaultValue) {
+        String value = getString(variable);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public static long getLong(String variable, long defaultValue) {
+        String value = getString(variable);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public static boolean getBoolean(String variable, boolean defaultValue) {
+        String value = getString(variable);
+        if ("true".equalsIgnoreCase(value)) {
+            return true;
+        } else if ("false".equalsIgnoreCase(value)) {
+            return false;
+        } else return defaultValue;
+    }
+
+    public static String getPropertyName(String variable) {
+        return variable.toLowerCase(Locale.ROOT).replace('_', '.');
+    }
+}
@@ -8,11 +8,29 @@ public interface DynamoDBService {
 
     String getUsersListByQueryResponse(Map<String, String> queryParameters, String inputBody);
 
+    ResponseBodyWriter getUsersListResponseWriter(Map<String, String> queryParameters);
+
+    ResponseBodyWriter getUsersListByQueryResponseWriter(Map<String, String> queryParameters, String inputBody);
+
     String createUser(String inputBody);
 
+    String createUsers(String inputBody);
+
     String updateUser(Map<String, String> pathParameters, String inputBody);
 
+    ResponseBodyWriter updateUserResponseWriter(Map<String, String> pathParameters, String inputBody, String ifMatch);
+
     String deleteUser(Map<String, String> pathParameters);
 
     String findUser(Map<String, String> pathParameters);
+
+    ResponseBodyWriter findUserResponseWriter(Map<String, String> pathParameters);
+
+    String findUsers(String inputBody);
+
+    String getNameSuggestions(Map<String, String> queryParameters);
+
+    String getUserStats(Map<String, String> pathParameters);
+
+    void prime();
 }
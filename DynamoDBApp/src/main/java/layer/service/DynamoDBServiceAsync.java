@@ -0,0 +1,44 @@
+package layer.service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link DynamoDBService} with every operation returning a future, so a
+ * caller can compose the calls instead of blocking on each of them.
+ */
+public interface DynamoDBServiceAsync {
+
+    CompletableFuture<String> getUsersListResponseAsync(Map<String, String> queryParameters);
+
+    CompletableFuture<String> getUsersListByQueryResponseAsync(Map<String, String> queryParameters,
+                                                               String inputBody);
+
+    CompletableFuture<ResponseBodyWriter> getUsersListResponseWriterAsync(Map<String, String> queryParameters);
+
+    CompletableFuture<ResponseBodyWriter> getUsersListByQueryResponseWriterAsync(Map<String, String> queryParameters,
+                                                                                 String inputBody);
+
+    CompletableFuture<String> createUserAsync(String inputBody);
+
+    CompletableFuture<String> createUsersAsync(String inputBody);
+
+    CompletableFuture<String> updateUserAsync(Map<String, String> pathParameters, String inputBody);
+
+    CompletableFuture<ResponseBodyWriter> updateUserResponseWriterAsync(Map<String, String> pathParameters,
+                                                                        String inputBody, String ifMatch);
+
+    CompletableFuture<String> deleteUserAsync(Map<String, String> pathParameters);
+
+    CompletableFuture<String> findUserAsync(Map<String, String> pathParameters);
+
+    CompletableFuture<ResponseBodyWriter> findUserResponseWriterAsync(Map<String, String> pathParameters);
+
+    CompletableFuture<String> findUsersAsync(String inputBody);
+
+    CompletableFuture<String> getNameSuggestionsAsync(Map<String, String> queryParameters);
+
+    CompletableFuture<String> getUserStatsAsync(Map<String, String> pathParameters);
+
+    void prime();
+}
@@ -1,25 +1,58 @@
 package layer.service;
 
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
-import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBQueryExpression;
-import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBScanExpression;
-import com.amazonaws.services.dynamodbv2.datamodeling.QueryResultPage;
-import com.amazonaws.services.dynamodbv2.datamodeling.ScanResultPage;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperTableModel;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.ReturnValue;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
 import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
+import layer.model.CompactUserEncoding;
 import layer.model.RequestBody;
 import layer.model.ResponseMessage;
 import layer.model.User;
-
-import java.text.MessageFormat;
+import layer.model.UserWriteResult;
+import layer.model.UsersPage;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
-
-public class DynamoDBServiceImpl implements DynamoDBService {
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Implements both service interfaces: every operation is composed from
+ * requests of the asynchronous client, and the synchronous methods wait for
+ * the asynchronous ones. Lists that are not paginated are read page by page
+ * while they are written, after their first page. Each operation is recorded
+ * in {@link Metrics} and emitted once its response is complete.
+ */
+public class DynamoDBServiceImpl implements DynamoDBService, DynamoDBServiceAsync {
 
     public static final String TABLE_PARTITION_KEY = "email";
     public static final String INDEX_PARTITION_KEY = "country";
@@ -27,460 +60,1301 @@ public class DynamoDBServiceImpl implements DynamoDBService {
     public static final String COUNTRY_NAME_INDEX = "country-name-index";
     public static final String COUNTRY_LOCATION_INDEX = "country-location-index";
     public static final String COUNTRY_BIRTHDAY_INDEX = "country-birthday-index";
+    public static final String COUNTRY_REGISTRATION_INDEX = "country-registration-index";
     public static final String LIMIT_QUERY_PARAMETER = "limit";
-    public static final String HASH_KEY_QUERY_PARAMETER = "hashkey";
-    public static final String RANGE_KEY_QUERY_PARAMETER = "rangekey";
-    public static final Set<String> SOCIAL_MEDIA_NAMES =
-            Set.of("linkedin", "telegram", "skype", "instagram", "facebook");
+    public static final String CURSOR_QUERY_PARAMETER = "cursor";
+    public static final String FIELDS_QUERY_PARAMETER = "fields";
+    public static final String PREFIX_QUERY_PARAMETER = "prefix";
+    public static final int DEFAULT_SUGGESTIONS_LIMIT = 10;
+    public static final int MAX_SUGGESTIONS_LIMIT = 100;
+    public static final String DIMENSION_PATH_PARAMETER = "dimension";
+    public static final String VERSION_ATTRIBUTE = "version";
+    public static final Set<String> SOCIAL_MEDIA_NAMES = Set.copyOf(CompactUserEncoding.SOCIAL_MEDIA_NAMES);
     public static final String NAME_BODY_PARAMETER = "name";
     public static final String LOCATION_BODY_PARAMETER = "location";
     public static final String BIRTHDAY_BODY_PARAMETER = "birthday";
+    public static final String REGISTRATION_BODY_PARAMETER = "registration";
+    public static final String AGE_SORTING = "age";
+    public static final String DESCENDING_SORTING = "desc";
+    public static final String ASCENDING_SORTING = "asc";
     public static final int MAX_AGE = 150;
     public static final int MIN_AGE = 0;
+    public static final String PRIMING_VARIABLE = "DYNAMODB_PRIMING";
+    public static final String PRIMING_EMAIL = "priming@it-marathon.invalid";
+    public static final String BULK_CREATE_MAX_USERS_VARIABLE = "BULK_CREATE_MAX_USERS";
+    public static final int DEFAULT_BULK_CREATE_MAX_USERS = 10_000;
+    public static final String BATCH_GET_MAX_EMAILS_VARIABLE = "BATCH_GET_MAX_EMAILS";
+    public static final int DEFAULT_BATCH_GET_MAX_EMAILS = 500;
+
+    private static final Gson gson = new Gson();
+    private static final String TABLE_NAME = User.class.getAnnotation(DynamoDBTable.class).tableName();
+    private static final String TABLE_PARTITION_KEY_LABEL = "#" + TABLE_PARTITION_KEY;
+    private static final String VERSION_ATTRIBUTE_LABEL = "#" + VERSION_ATTRIBUTE;
+    private static final UserProjection SUGGESTION_PROJECTION = UserProjection.of(
+            List.of(TABLE_PARTITION_KEY, NAME_BODY_PARAMETER));
+    private static final int LIST_CONCURRENCY = 16;
+    private static final ThreadPoolExecutor executor = WorkerThreads.newBoundedExecutor("user-list",
+            LIST_CONCURRENCY);
+
+    private final AmazonDynamoDBConnect amazonDynamoDBConnect;
+    private final ParallelScanner parallelScanner = new ParallelScanner();
+    private final MatchPlanner matchPlanner;
+    private final UserCache userCache;
+    private final Metrics metrics;
+    private final NameAutocomplete nameAutocomplete = new NameAutocomplete();
+    private final UserStats userStats;
+
+    public DynamoDBServiceImpl() {
+        this(new AmazonDynamoDBConnect());
+    }
 
     /**
-     * Instance of a mapper class that provides methods for performing create, read,
-     * update, and delete (CRUD) operations on a DynamoDB table.
-     * A mapper can also perform query and scan operations to retrieve data from the table.
+     * Creates the service on top of any storage engine the connection is bound
+     * to, e.g. the in-process {@link layer.engine.LocalDynamoDB}. The client is
+     * not built until the first request or {@link #prime()}.
      */
-    private static final DynamoDBMapper dynamoDBMapper = new AmazonDynamoDBConnect().getDynamoDBMapper();
+    public DynamoDBServiceImpl(AmazonDynamoDBConnect amazonDynamoDBConnect) {
+        this(amazonDynamoDBConnect, new UserCache());
+    }
 
-    @Override
-    public String createUser(String inputBody) {
+    public DynamoDBServiceImpl(AmazonDynamoDBConnect amazonDynamoDBConnect, UserCache userCache) {
+        this(amazonDynamoDBConnect, userCache, new Metrics());
+    }
 
-        User user = new Gson().fromJson(inputBody, User.class);
-        user.setCountry(INDEX_PARTITION_KEY_VALUE);
+    /**
+     * @param metrics where the metrics of every operation go, e.g. a
+     *                {@link LocalMetricsSink} in tests
+     */
+    public DynamoDBServiceImpl(AmazonDynamoDBConnect amazonDynamoDBConnect, UserCache userCache, Metrics metrics) {
+        this.amazonDynamoDBConnect = amazonDynamoDBConnect;
+        this.userCache = userCache;
+        this.metrics = metrics;
+        this.matchPlanner = new MatchPlanner(TABLE_NAME, TABLE_PARTITION_KEY, INDEX_PARTITION_KEY,
+                INDEX_PARTITION_KEY_VALUE, List.of(NAME_BODY_PARAMETER, LOCATION_BODY_PARAMETER,
+                BIRTHDAY_BODY_PARAMETER), metrics);
+        this.userStats = new UserStats(amazonDynamoDBConnect, metrics);
+    }
 
-        User existingUser = dynamoDBMapper.load(User.class, user.getEmail());
-        if (existingUser == null) {
-            if (isValidSocialMedia(user.getSocialMedia())) {
+    /**
+     * The read-through cache behind {@link #findUser(Map)}; its counters are
+     * what to size {@code USER_CACHE_MAX_ENTRIES} against the function memory.
+     */
+    public UserCache getUserCache() {
+        return userCache;
+    }
 
-                dynamoDBMapper.save(user);
-                return getJsonResponse("User created: " + user.getEmail());
+    /**
+     * The prefix index behind {@link #getNameSuggestions(Map)}.
+     */
+    public NameAutocomplete getNameAutocomplete() {
+        return nameAutocomplete;
+    }
 
-            } else return getJsonResponse("User with such social media links cannot be created");
+    /**
+     * Pays the one-off costs of the first request during the init phase: Gson
+     * type adapters for the models, the mapper's table model for {@link User},
+     * and a GetItem that resolves credentials and opens the TLS connection.
+     * GetItem rather than DescribeTable because it is the one action every
+     * function's policy allows. Failures are ignored, the request that
+     * follows will surface them.
+     */
+    @Override
+    public void prime() {
+        if (!isPrimingEnabled()) {
+            return;
+        }
+        try {
+            User user = gson.fromJson(gson.toJson(getPrimingUser()), User.class);
+            gson.fromJson(gson.toJson(new RequestBody()), RequestBody.class);
+            getJsonResponse("");
 
-        } else return getJsonResponse("User with this email already exists");
+            DynamoDBMapperTableModel<User> tableModel = getUserTableModel();
+            tableModel.unconvert(tableModel.convert(user));
+
+            CompletableFutures.join(asyncClient().getItem(new GetItemRequest()
+                    .withTableName(TABLE_NAME)
+                    .withKey(getTableKeyMap(PRIMING_EMAIL)), OperationMetrics.DISABLED));
+        } catch (Exception e) {
+            // priming is best effort
+        }
     }
 
     @Override
-    public String findUser(Map<String, String> pathParameters) {
+    public String createUser(String inputBody) {
+        return CompletableFutures.join(createUserAsync(inputBody));
+    }
 
-        User user = new User();
-        user.setEmail(pathParameters.get(TABLE_PARTITION_KEY));
+    @Override
+    public String createUsers(String inputBody) {
+        return CompletableFutures.join(createUsersAsync(inputBody));
+    }
 
-        User existingUser = dynamoDBMapper.load(User.class, user.getEmail());
-        if (existingUser != null) {
-            return new Gson().toJson(existingUser);
-        } else {
-            return getJsonResponse("User not found");
-        }
+    @Override
+    public String findUser(Map<String, String> pathParameters) {
+        return CompletableFutures.join(findUserAsync(pathParameters));
+    }
+
+    @Override
+    public String findUsers(String inputBody) {
+        return CompletableFutures.join(findUsersAsync(inputBody));
     }
 
     @Override
     public String updateUser(Map<String, String> pathParameters, String inputBody) {
+        return CompletableFutures.join(updateUserAsync(pathParameters, inputBody));
+    }
 
-        //TODO Implement a record update by Id
-        /*
-        Add code that accepts parameters, finds required record by Id,
-        and update it in the table record according to provided parameters.
-        Returns a text message as operation result.
-        */
+    @Override
+    public ResponseBodyWriter findUserResponseWriter(Map<String, String> pathParameters) {
+        return CompletableFutures.join(findUserResponseWriterAsync(pathParameters));
+    }
 
-		User userToUpdate = new Gson().fromJson(inputBody, User.class);
-        userToUpdate.setEmail(pathParameters.get(TABLE_PARTITION_KEY));
+    @Override
+    public ResponseBodyWriter updateUserResponseWriter(Map<String, String> pathParameters, String inputBody,
+                                                       String ifMatch) {
+        return CompletableFutures.join(updateUserResponseWriterAsync(pathParameters, inputBody, ifMatch));
+    }
 
-        User existingUser = dynamoDBMapper.load(User.class, userToUpdate.getEmail());
-        if (existingUser != null) {
-            if (isValidSocialMedia(user.getSocialMedia())) {
+    @Override
+    public String deleteUser(Map<String, String> pathParameters) {
+        return CompletableFutures.join(deleteUserAsync(pathParameters));
+    }
 
-                dynamoDBMapper.save(existingUser);
-                return getJsonResponse("User updated: " + existingUser.getEmail());
-			}
+    @Override
+    public String getUsersListResponse(Map<String, String> queryParameters) {
+        return CompletableFutures.join(getUsersListResponseAsync(queryParameters));
+    }
 
-        } else {
-            return getJsonResponse("User not found");
-        }
-		
+    @Override
+    public String getUsersListByQueryResponse(Map<String, String> queryParameters, String inputBody) {
+        return CompletableFutures.join(getUsersListByQueryResponseAsync(queryParameters, inputBody));
     }
 
     @Override
-    public String deleteUser(Map<String, String> pathParameters) {
+    public String getNameSuggestions(Map<String, String> queryParameters) {
+        return CompletableFutures.join(getNameSuggestionsAsync(queryParameters));
+    }
 
-        User userToDelete = new User();
-        userToDelete.setEmail(pathParameters.get(TABLE_PARTITION_KEY));
+    @Override
+    public String getUserStats(Map<String, String> pathParameters) {
+        return CompletableFutures.join(getUserStatsAsync(pathParameters));
+    }
 
-        User existingUser = dynamoDBMapper.load(User.class, userToDelete.getEmail());
-        if (existingUser != null) {
-            dynamoDBMapper.delete(existingUser);
-            return getJsonResponse("User deleted: " + existingUser.getEmail());
-        } else {
-            return getJsonResponse("User not found");
-        }
+    @Override
+    public ResponseBodyWriter getUsersListResponseWriter(Map<String, String> queryParameters) {
+        return CompletableFutures.join(getUsersListResponseWriterAsync(queryParameters));
     }
 
     @Override
-    public String getUsersListResponse(Map<String, String> queryParameters) {
-        return getNotFilteredUsersList(queryParameters);
+    public ResponseBodyWriter getUsersListByQueryResponseWriter(Map<String, String> queryParameters,
+                                                                String inputBody) {
+        return CompletableFutures.join(getUsersListByQueryResponseWriterAsync(queryParameters, inputBody));
     }
 
+    /**
+     * Puts the user in one request, conditional on the email being new; the
+     * condition failing is what answers "already exists". A rejected user
+     * fails the future with {@link UserExistsException} or
+     * {@link InvalidUserException}, so only a created user completes it.
+     */
     @Override
-    public String getUsersListByQueryResponse(Map<String, String> queryParameters, String inputBody) {
-        if (inputBody != null) {
-            RequestBody bodyParameters = extractRequestBodyParameters(inputBody);
-            if (bodyParameters != null) {
-                if (isValidNameParameter(bodyParameters)) {
-                    return getFilteredUsersList(queryParameters, COUNTRY_NAME_INDEX, NAME_BODY_PARAMETER,
-                            bodyParameters.getName());
-                } else if (isValidLocationParameter(bodyParameters)) {
-                    return getFilteredUsersList(queryParameters, COUNTRY_LOCATION_INDEX, LOCATION_BODY_PARAMETER,
-                            bodyParameters.getLocation());
-                } else if (isValidAgeParameter(bodyParameters)) {
-                    return getFilteredUsersList(queryParameters, BIRTHDAY_BODY_PARAMETER,
-                            bodyParameters.getAgeLimits().get(0), bodyParameters.getAgeLimits().get(1),
-                            COUNTRY_BIRTHDAY_INDEX);
+    public CompletableFuture<String> createUserAsync(String inputBody) {
+        OperationMetrics operationMetrics = metrics.start("createUser");
+        return operationMetrics.emitOnCompletion(CompletableFutures.start(() -> {
+            long parseStart = operationMetrics.parseStarted();
+            User user = gson.fromJson(inputBody, User.class);
+            operationMetrics.parseCompleted(parseStart);
+            user.setCountry(INDEX_PARTITION_KEY_VALUE);
+            user.setVersion(1L);
+            if (user.getEmail() == null) {
+                user.setEmail(UUID.randomUUID().toString());
+            }
+
+            if (user.getSocialMedia() == null || isValidSocialMedia(user.getSocialMedia())) {
+                PutItemRequest putItemRequest = new PutItemRequest()
+                        .withTableName(TABLE_NAME)
+                        .withItem(getUserTableModel().convert(user))
+                        .withConditionExpression("attribute_not_exists(" + TABLE_PARTITION_KEY_LABEL + ")")
+                        .withExpressionAttributeNames(Map.of(TABLE_PARTITION_KEY_LABEL, TABLE_PARTITION_KEY));
+                return asyncClient().putItem(putItemRequest, operationMetrics)
+                        .handle((putItemResult, e) -> {
+                            if (e != null) {
+                                if (CompletableFutures.unwrap(e) instanceof ConditionalCheckFailedException) {
+                                    userCache.invalidate(user.getEmail());
+                                    throw new UserExistsException("User with this email already exists");
+                                }
+                                throw new CompletionException(CompletableFutures.unwrap(e));
+                            }
+                            long serializeStart = operationMetrics.serializeStarted();
+                            userCache.put(user.getEmail(), gson.toJson(user), user.getVersion());
+                            operationMetrics.serializeCompleted(serializeStart);
+                            nameAutocomplete.put(user.getEmail(), user.getName());
+                            return getJsonResponse("User created: " + user.getEmail(), operationMetrics);
+                        });
+
+            } else throw new InvalidUserException("User with such social media links cannot be created");
+        }));
+    }
+
+    /**
+     * Creates many users at once: the body is a JSON array of users or one
+     * user per line (NDJSON). Every user is validated like in
+     * {@link #createUser(String)} up front, existing emails are found with one
+     * batch lookup, and the rest is written with {@code BatchWriteItem}. The
+     * response lists the outcome of every user in request order.
+     */
+    @Override
+    public CompletableFuture<String> createUsersAsync(String inputBody) {
+        OperationMetrics operationMetrics = metrics.start("createUsers");
+        return operationMetrics.emitOnCompletion(CompletableFutures.start(() -> {
+            List<UserWriteResult> results = new ArrayList<>();
+            Map<String, Integer> positions = new HashMap<>();
+            List<User> users = new ArrayList<>();
+            long parseStart = operationMetrics.parseStarted();
+            List<JsonElement> elements = extractBulkElements(inputBody);
+            operationMetrics.parseCompleted(parseStart);
+            if (elements == null) {
+                return CompletableFuture.completedFuture(getJsonResponse("Users cannot be parsed", operationMetrics));
+            } else if (elements.size() > getBulkCreateMaxUsers()) {
+                return CompletableFuture.completedFuture(getJsonResponse(
+                        "At most " + getBulkCreateMaxUsers() + " users can be created at once", operationMetrics));
+            }
+
+            for (int index = 0; index < elements.size(); index++) {
+                parseStart = operationMetrics.parseStarted();
+                User user = extractUser(elements.get(index));
+                operationMetrics.parseCompleted(parseStart);
+                UserWriteResult result = UserWriteResult.builder().index(index).build();
+                results.add(result);
+                if (user == null) {
+                    rejectUser(result, "User cannot be parsed");
+                    continue;
+                }
+                if (user.getEmail() == null) {
+                    user.setEmail(UUID.randomUUID().toString());
+                }
+                user.setCountry(INDEX_PARTITION_KEY_VALUE);
+                user.setVersion(1L);
+                result.setEmail(user.getEmail());
+                if (user.getSocialMedia() != null && !isValidSocialMedia(user.getSocialMedia())) {
+                    rejectUser(result, "User with such social media links cannot be created");
+                } else if (positions.putIfAbsent(user.getEmail(), index) != null) {
+                    rejectUser(result, "User with this email is already in the request");
+                } else {
+                    users.add(user);
                 }
             }
-        }
-        return getNotFilteredUsersList(queryParameters);
+
+            DynamoDBMapperTableModel<User> tableModel = getUserTableModel();
+            CompletableFuture<List<User>> existingUsers = users.isEmpty()
+                    ? CompletableFuture.completedFuture(List.of())
+                    : BatchReader.loadItems(asyncClient(), tableModel, TABLE_NAME, users, operationMetrics);
+            return existingUsers.thenCompose(existing -> {
+                for (User existingUser : existing) {
+                    rejectUser(results.get(positions.get(existingUser.getEmail())),
+                            "User with this email already exists");
+                }
+                users.removeIf(user -> UserWriteResult.REJECTED.equals(results.get(positions.get(user.getEmail()))
+                        .getStatus()));
+
+                List<Map<String, AttributeValue>> items = new ArrayList<>(users.size());
+                for (User user : users) {
+                    items.add(tableModel.convert(user));
+                }
+                return BatchWriter.putItems(asyncClient(), TABLE_NAME, TABLE_PARTITION_KEY, items, operationMetrics);
+            }).thenApply(failures -> {
+                long serializeStart = operationMetrics.serializeStarted();
+                for (User user : users) {
+                    UserWriteResult result = results.get(positions.get(user.getEmail()));
+                    String failure = failures.get(user.getEmail());
+                    if (failure == null) {
+                        result.setStatus(UserWriteResult.CREATED);
+                        result.setMessage("User created: " + user.getEmail());
+                        userCache.put(user.getEmail(), gson.toJson(user), user.getVersion());
+                        nameAutocomplete.put(user.getEmail(), user.getName());
+                    } else {
+                        result.setStatus(UserWriteResult.FAILED);
+                        result.setMessage(failure);
+                    }
+                }
+                String resultsJson = gson.toJson(results);
+                operationMetrics.serializeCompleted(serializeStart);
+                return resultsJson;
+            });
+        }));
     }
 
-    private static void updateUsersNotNullAttributes(User existingUser, User inputUser) {
-        if (inputUser.getCountry() != null) {
-            existingUser.setLocation(inputUser.getCountry());
-        }
-        if (inputUser.getName() != null) {
-            existingUser.setName(inputUser.getName());
-        }
-        if (inputUser.getLocation() != null) {
-            existingUser.setLocation(inputUser.getLocation());
-        }
-        if (inputUser.getBirthday() != null) {
-            existingUser.setBirthday(inputUser.getBirthday());
-        }
-        if (inputUser.getRegistration() != null) {
-            existingUser.setRegistration(inputUser.getRegistration());
-        }
-        if (inputUser.getAvatar() != null) {
-            existingUser.setAvatar(inputUser.getAvatar());
-        }
-        if (inputUser.getAbout() != null) {
-            existingUser.setAbout(inputUser.getAbout());
-        }
-        if (inputUser.getInterests() != null) {
-            existingUser.setInterests(inputUser.getInterests());
-        }
-        if (inputUser.getSocialMedia() != null) {
-            existingUser.setSocialMedia(inputUser.getSocialMedia());
-        }
-        if (inputUser.getPrivacy() != null) {
-            existingUser.setPrivacy(inputUser.getPrivacy());
-        }
+    @Override
+    public CompletableFuture<String> findUserAsync(Map<String, String> pathParameters) {
+        return findUserResponseWriterAsync(pathParameters).thenApply(DynamoDBServiceImpl::toJson);
     }
 
-    private RequestBody extractRequestBodyParameters(String inputBody) {
-        try {
-            return new Gson().fromJson(inputBody, RequestBody.class);
-        } catch (Exception e) {
-            return null;
-        }
+    /**
+     * The user, tagged with its version, from the cache or one
+     * {@code GetItem}. A user not found has no tag.
+     */
+    @Override
+    public CompletableFuture<ResponseBodyWriter> findUserResponseWriterAsync(Map<String, String> pathParameters) {
+        OperationMetrics operationMetrics = metrics.start("findUser");
+        return operationMetrics.emitOnCompletion(CompletableFutures.start(() -> {
+            String email = pathParameters.get(TABLE_PARTITION_KEY);
+
+            UserCache.Entry cachedUser = userCache.get(email);
+            if (cachedUser != null) {
+                return CompletableFuture.completedFuture(cachedUser.isFound()
+                        ? getUserWriter(cachedUser.getUserJson(), cachedUser.getVersion())
+                        : getMessageWriter("User not found", operationMetrics));
+            }
+
+            GetItemRequest getItemRequest = new GetItemRequest()
+                    .withTableName(TABLE_NAME)
+                    .withKey(getTableKeyMap(email));
+            return asyncClient().getItem(getItemRequest, operationMetrics)
+                    .thenApply(getItemResult -> {
+                        if (getItemResult.getItem() != null) {
+                            User existingUser = getUserTableModel().unconvert(getItemResult.getItem());
+                            long serializeStart = operationMetrics.serializeStarted();
+                            String userJson = gson.toJson(existingUser);
+                            operationMetrics.serializeCompleted(serializeStart);
+                            userCache.put(existingUser.getEmail(), userJson, existingUser.getVersion());
+                            return getUserWriter(userJson, existingUser.getVersion());
+                        } else {
+                            userCache.putNotFound(email);
+                            return getMessageWriter("User not found", operationMetrics);
+                        }
+                    });
+        }));
     }
 
-    private String getNotFilteredUsersList(Map<String, String> queryParameters) {
-        if (hasValidLimit(queryParameters)) {
-            return getPaginatedNotFilteredUsersList(queryParameters);
-        } else {
-            return getNotPaginatedNotFilteredUsersList();
-        }
+    /**
+     * Looks up many users at once: the body is a JSON array of emails. Users
+     * not in the cache are loaded with concurrent 100-key batch gets. The
+     * response has one element per requested email, in request order, with
+     * {@code found} false for misses.
+     */
+    @Override
+    public CompletableFuture<String> findUsersAsync(String inputBody) {
+        OperationMetrics operationMetrics = metrics.start("findUsers");
+        return operationMetrics.emitOnCompletion(CompletableFutures.start(() -> {
+            long parseStart = operationMetrics.parseStarted();
+            List<String> emails = extractEmails(inputBody);
+            operationMetrics.parseCompleted(parseStart);
+            if (emails == null) {
+                return CompletableFuture.completedFuture(getJsonResponse("Emails cannot be parsed", operationMetrics));
+            } else if (emails.size() > getBatchGetMaxEmails()) {
+                return CompletableFuture.completedFuture(getJsonResponse(
+                        "At most " + getBatchGetMaxEmails() + " users can be found at once", operationMetrics));
+            }
+
+            Map<String, String> userJsons = new HashMap<>();
+            List<User> keys = new ArrayList<>();
+            for (String email : emails) {
+                if (email == null || userJsons.containsKey(email)) {
+                    continue;
+                }
+                UserCache.Entry cachedUser = userCache.get(email);
+                if (cachedUser != null) {
+                    userJsons.put(email, cachedUser.getUserJson());
+                } else {
+                    userJsons.put(email, null);
+                    User key = new User();
+                    key.setEmail(email);
+                    keys.add(key);
+                }
+            }
+
+            CompletableFuture<List<User>> existingUsers = keys.isEmpty()
+                    ? CompletableFuture.completedFuture(List.of())
+                    : BatchReader.loadItems(asyncClient(), getUserTableModel(), TABLE_NAME, keys, operationMetrics);
+            return existingUsers.thenApply(existing -> {
+                long serializeStart = operationMetrics.serializeStarted();
+                for (User existingUser : existing) {
+                    String userJson = gson.toJson(existingUser);
+                    userJsons.put(existingUser.getEmail(), userJson);
+                    userCache.put(existingUser.getEmail(), userJson, existingUser.getVersion());
+                }
+                for (User key : keys) {
+                    if (userJsons.get(key.getEmail()) == null) {
+                        userCache.putNotFound(key.getEmail());
+                    }
+                }
+                String foundUsersJson = getFoundUsersJson(emails, userJsons);
+                operationMetrics.serializeCompleted(serializeStart);
+                return foundUsersJson;
+            });
+        }));
     }
 
-    private String getFilteredUsersList(Map<String, String> queryParameters, String indexName,
-                                        String queryParameter, String parameterValue) {
-        if (hasValidLimit(queryParameters)) {
-            return getPaginatedFilteredUsersList(queryParameters,
-                    indexName, queryParameter, parameterValue);
-        } else {
-            return getNotPaginatedFilteredUsersList(indexName, queryParameter, parameterValue);
-        }
+    @Override
+    public CompletableFuture<String> updateUserAsync(Map<String, String> pathParameters, String inputBody) {
+        return updateUserResponseWriterAsync(pathParameters, inputBody, null).thenApply(DynamoDBServiceImpl::toJson);
     }
 
-    private String getFilteredUsersList(Map<String, String> queryParameters, String queryParameter,
-                                        String parameterLowValue, String parameterUpValue, String indexName) {
-        if (hasValidLimit(queryParameters)) {
-            return getPaginatedFilteredUsersList(queryParameters, indexName, queryParameter,
-                    parameterLowValue, parameterUpValue);
-        } else {
-            return getNotPaginatedFilteredUsersList(indexName, queryParameter, parameterLowValue, parameterUpValue);
-        }
+    /**
+     * Sets the non-null attributes of the body and increments the version in
+     * one {@code UpdateItem}, conditional on the user existing and, with an
+     * {@code If-Match} header, on its version being one of the tags; a
+     * mismatch fails with {@link PreconditionFailedException}. The returned
+     * new image is cached and tags the response.
+     */
+    @Override
+    public CompletableFuture<ResponseBodyWriter> updateUserResponseWriterAsync(Map<String, String> pathParameters,
+                                                                               String inputBody, String ifMatch) {
+        OperationMetrics operationMetrics = metrics.start("updateUser");
+        return operationMetrics.emitOnCompletion(CompletableFutures.start(() -> {
+            long parseStart = operationMetrics.parseStarted();
+            User userToUpdate = gson.fromJson(inputBody, User.class);
+            operationMetrics.parseCompleted(parseStart);
+            userToUpdate.setEmail(pathParameters.get(TABLE_PARTITION_KEY));
+            List<Long> expectedVersions = ifMatch == null ? null : EntityTags.getVersions(ifMatch);
+            if (expectedVersions != null && expectedVersions.isEmpty()) {
+                throw new PreconditionFailedException("If-Match does not match the current version of the user");
+            }
+
+            if (userToUpdate.getSocialMedia() == null || isValidSocialMedia(userToUpdate.getSocialMedia())) {
+                return asyncClient().updateItem(getUpdateUserRequest(userToUpdate, expectedVersions), operationMetrics)
+                        .handle((updateItemResult, e) -> {
+                            if (e != null) {
+                                if (CompletableFutures.unwrap(e) instanceof ConditionalCheckFailedException) {
+                                    if (ifMatch != null) {
+                                        userCache.invalidate(userToUpdate.getEmail());
+                                        throw new PreconditionFailedException(
+                                                "If-Match does not match the current version of the user");
+                                    }
+                                    userCache.putNotFound(userToUpdate.getEmail());
+                                    return getMessageWriter("User not found", operationMetrics);
+                                }
+                                throw new CompletionException(CompletableFutures.unwrap(e));
+                            }
+                            User updatedUser = getUserTableModel().unconvert(updateItemResult.getAttributes());
+                            long serializeStart = operationMetrics.serializeStarted();
+                            userCache.put(updatedUser.getEmail(), gson.toJson(updatedUser), updatedUser.getVersion());
+                            operationMetrics.serializeCompleted(serializeStart);
+                            nameAutocomplete.put(updatedUser.getEmail(), updatedUser.getName());
+                            return ResponseBodyWriter.withEntityTag(
+                                    getMessageWriter("User updated: " + updatedUser.getEmail(), operationMetrics),
+                                    EntityTags.of(updatedUser.getVersion()));
+                        });
+
+            } else return CompletableFuture.completedFuture(getMessageWriter(
+                    "User with such social media links cannot be updated", operationMetrics));
+        }));
     }
 
-    private String getNotPaginatedNotFilteredUsersList() {
-        List<User> users = dynamoDBMapper.scan(User.class, new DynamoDBScanExpression());
-        return new Gson().toJson(users);
+    /**
+     * Deletes the user in one request, conditional on it existing.
+     */
+    @Override
+    public CompletableFuture<String> deleteUserAsync(Map<String, String> pathParameters) {
+        OperationMetrics operationMetrics = metrics.start("deleteUser");
+        return operationMetrics.emitOnCompletion(CompletableFutures.start(() -> {
+            String email = pathParameters.get(TABLE_PARTITION_KEY);
+
+            DeleteItemRequest deleteItemRequest = new DeleteItemRequest()
+                    .withTableName(TABLE_NAME)
+                    .withKey(getTableKeyMap(email))
+                    .withConditionExpression("attribute_exists(" + TABLE_PARTITION_KEY_LABEL + ")")
+                    .withExpressionAttributeNames(Map.of(TABLE_PARTITION_KEY_LABEL, TABLE_PARTITION_KEY))
+                    .withReturnValues(ReturnValue.ALL_OLD);
+            return asyncClient().deleteItem(deleteItemRequest, operationMetrics)
+                    .handle((deleteItemResult, e) -> {
+                        if (e != null) {
+                            if (CompletableFutures.unwrap(e) instanceof ConditionalCheckFailedException) {
+                                userCache.putNotFound(email);
+                                return getJsonResponse("User not found", operationMetrics);
+                            }
+                            throw new CompletionException(CompletableFutures.unwrap(e));
+                        }
+                        User deletedUser = getUserTableModel().unconvert(deleteItemResult.getAttributes());
+                        userCache.putNotFound(deletedUser.getEmail());
+                        nameAutocomplete.remove(deletedUser.getEmail());
+                        return getJsonResponse("User deleted: " + deletedUser.getEmail(), operationMetrics);
+                    });
+        }));
     }
 
-    private String getPaginatedNotFilteredUsersList(Map<String, String> stringParameters) {
+    @Override
+    public CompletableFuture<String> getUsersListResponseAsync(Map<String, String> queryParameters) {
+        OperationMetrics operationMetrics = metrics.start("getUsersList");
+        UserProjection projection = getProjection(queryParameters, null);
+        return operationMetrics.emitOnCompletion(CompletableFutures.start(() -> getNotFilteredUsersList(
+                queryParameters, projection, operationMetrics))
+                .thenApply(usersPage -> getUsersJson(usersPage, projection, queryParameters, operationMetrics)));
+    }
 
-        String lastKey = extractHashKey(stringParameters);
+    @Override
+    public CompletableFuture<String> getUsersListByQueryResponseAsync(Map<String, String> queryParameters,
+                                                                      String inputBody) {
+        OperationMetrics operationMetrics = metrics.start("getUsersListByQuery");
+        return operationMetrics.emitOnCompletion(CompletableFutures.start(() -> {
+            RequestBody bodyParameters = getRequestBody(inputBody, operationMetrics);
+            UserProjection projection = getProjection(queryParameters, bodyParameters);
+            return getUsersListByQuery(queryParameters, bodyParameters, projection, operationMetrics)
+                    .thenApply(usersPage -> getUsersJson(usersPage, projection, queryParameters, operationMetrics));
+        }));
+    }
 
-        HashMap<String, AttributeValue> startKey = getTableStartKeyMap(lastKey);
+    /**
+     * Suggests users whose name has a word starting with the {@code prefix}
+     * query parameter, up to {@code limit} of them, from the
+     * {@link NameAutocomplete} index. A stale index is rebuilt in the
+     * background; until the first build completes, the suggestions come from
+     * a {@code begins_with} query on the name index, which is case sensitive
+     * and only matches the start of the name.
+     */
+    @Override
+    public CompletableFuture<String> getNameSuggestionsAsync(Map<String, String> queryParameters) {
+        OperationMetrics operationMetrics = metrics.start("getNameSuggestions");
+        return operationMetrics.emitOnCompletion(CompletableFutures.start(() -> {
+            String prefix = queryParameters != null ? queryParameters.get(PREFIX_QUERY_PARAMETER) : null;
+            Integer limit = queryParameters != null && extractLimit(queryParameters) != null
+                    ? getIntegerValue(extractLimit(queryParameters)) : Integer.valueOf(DEFAULT_SUGGESTIONS_LIMIT);
+            if (prefix == null || NameAutocomplete.normalize(prefix).isEmpty()) {
+                return CompletableFuture.completedFuture(getJsonResponse("Prefix cannot be empty", operationMetrics));
+            } else if (!isValidLimit(limit) || limit > MAX_SUGGESTIONS_LIMIT) {
+                return CompletableFuture.completedFuture(getJsonResponse(
+                        "Limit must be between 1 and " + MAX_SUGGESTIONS_LIMIT, operationMetrics));
+            }
 
-        DynamoDBScanExpression scanExpression = new DynamoDBScanExpression()
-                .withConsistentRead(false)
-                .withLimit(getIntegerValue(extractLimit(stringParameters)))
-                .withExclusiveStartKey(startKey);
+            refreshNameAutocomplete();
+            List<User> suggestions = nameAutocomplete.suggest(prefix, limit);
+            if (suggestions != null) {
+                operationMetrics.setIndexName("autocomplete");
+                return CompletableFuture.completedFuture(getSuggestionsJson(suggestions, operationMetrics));
+            }
+            return getMatchedUsersList(Map.of(LIMIT_QUERY_PARAMETER, limit.toString()),
+                    List.of(MatchCriterion.beginsWith(COUNTRY_NAME_INDEX, NAME_BODY_PARAMETER, prefix.trim())), null,
+                    SUGGESTION_PROJECTION, operationMetrics)
+                    .thenApply(usersPage -> getSuggestionsJson(usersPage.getItems(), operationMetrics));
+        }));
+    }
 
-        ScanResultPage<User> scanResultPage = dynamoDBMapper.scanPage(User.class, scanExpression);
+    /**
+     * Counts of users per {@code location}, {@code birthYear}, {@code age},
+     * {@code registrationDate} or in total ({@code users}), read from the
+     * aggregates {@link UserStats} keeps from the table's stream rather than
+     * by scanning the users.
+     */
+    @Override
+    public CompletableFuture<String> getUserStatsAsync(Map<String, String> pathParameters) {
+        return userStats.getStatsAsync(pathParameters != null ? pathParameters.get(DIMENSION_PATH_PARAMETER) : null);
+    }
 
-        List<User> users = scanResultPage.getResults();
+    /**
+     * A list that is not paginated is read while the writer writes it, on the
+     * thread that does; only its first page is read before the future
+     * completes. The metrics are emitted once the writer is done.
+     */
+    @Override
+    public CompletableFuture<ResponseBodyWriter> getUsersListResponseWriterAsync(
+            Map<String, String> queryParameters) {
+        OperationMetrics operationMetrics = metrics.start("getUsersList");
+        UserProjection projection = getProjection(queryParameters, null);
+        return operationMetrics.emitOnFailure(CompletableFutures.start(() -> getNotFilteredUsersList(
+                queryParameters, projection, operationMetrics))
+                .thenApply(usersPage -> getUsersWriter(usersPage, projection, queryParameters,
+                        getVariant(queryParameters, null), operationMetrics)));
+    }
 
-        return new Gson().toJson(users);
+    @Override
+    public CompletableFuture<ResponseBodyWriter> getUsersListByQueryResponseWriterAsync(
+            Map<String, String> queryParameters, String inputBody) {
+        OperationMetrics operationMetrics = metrics.start("getUsersListByQuery");
+        return operationMetrics.emitOnFailure(CompletableFutures.start(() -> {
+            RequestBody bodyParameters = getRequestBody(inputBody, operationMetrics);
+            UserProjection projection = getProjection(queryParameters, bodyParameters);
+            return getUsersListByQuery(queryParameters, bodyParameters, projection, operationMetrics)
+                    .thenApply(usersPage -> getUsersWriter(usersPage, projection, queryParameters,
+                            getVariant(queryParameters, inputBody), operationMetrics));
+        }));
     }
 
-    private String getNotPaginatedFilteredUsersList(String indexName, String sortKeyName, String sortKeyValue) {
+    private DynamoDBMapper dynamoDBMapper() {
+        return amazonDynamoDBConnect.getDynamoDBMapper();
+    }
 
-        String partitionKeyAlias = "partAlias";
-        String sortKeyAlias = "sortAlias";
+    private AmazonDynamoDB amazonDynamoDB() {
+        return amazonDynamoDBConnect.getAmazonDynamoDB();
+    }
 
-        String partitionKeyLabel = "#" + INDEX_PARTITION_KEY;
-        String sortKeyLabel = "#" + sortKeyName;
+    private AsyncDynamoDBClient asyncClient() {
+        return amazonDynamoDBConnect.getAsyncClient();
+    }
 
-        HashMap<String, AttributeValue> expressionAttributeValues = getExpressionAttributeValuesMap(
-                sortKeyValue, partitionKeyAlias, sortKeyAlias);
+    private DynamoDBMapperTableModel<User> getUserTableModel() {
+        return dynamoDBMapper().getTableModel(User.class);
+    }
 
-        String conditionExpression = MessageFormat.format(
-                "{0} = :{1} and begins_with ({2}, :{3})",
-                partitionKeyLabel, partitionKeyAlias,
-                sortKeyLabel, sortKeyAlias);
+    private RequestBody getRequestBody(String inputBody, OperationMetrics operationMetrics) {
+        long parseStart = operationMetrics.parseStarted();
+        RequestBody bodyParameters = inputBody != null ? extractRequestBodyParameters(inputBody) : null;
+        operationMetrics.parseCompleted(parseStart);
+        return bodyParameters;
+    }
 
-        Map<String, String> expressionAttributeNames = getExpressionAttributeNamesMap(
-                sortKeyName, partitionKeyLabel, sortKeyLabel);
+    private CompletableFuture<UsersPage> getUsersListByQuery(Map<String, String> queryParameters,
+                                                             RequestBody bodyParameters, UserProjection projection,
+                                                             OperationMetrics operationMetrics) {
+        List<MatchCriterion> criteria = bodyParameters != null ? getMatchCriteria(bodyParameters) : List.of();
+        UserSorting sorting = bodyParameters != null ? getSorting(bodyParameters.getSorting()) : null;
+        if (!criteria.isEmpty() || sorting != null) {
+            return getMatchedUsersList(queryParameters, criteria, sorting, projection, operationMetrics);
+        }
+        return getNotFilteredUsersList(queryParameters, projection, operationMetrics);
+    }
 
-        DynamoDBQueryExpression<User> queryExpression = new DynamoDBQueryExpression<User>()
-                .withIndexName(indexName)
-                .withConsistentRead(false)
-                .withKeyConditionExpression(conditionExpression)
-                .withExpressionAttributeNames(expressionAttributeNames)
-                .withExpressionAttributeValues(expressionAttributeValues);
+    /**
+     * Every valid criterion of the body: a name prefix, a location prefix and
+     * an age range, the latter as a range of birthdays.
+     */
+    private List<MatchCriterion> getMatchCriteria(RequestBody bodyParameters) {
+        List<MatchCriterion> criteria = new ArrayList<>();
+        if (isValidNameParameter(bodyParameters)) {
+            criteria.add(MatchCriterion.beginsWith(COUNTRY_NAME_INDEX, NAME_BODY_PARAMETER,
+                    bodyParameters.getName()));
+        }
+        if (isValidLocationParameter(bodyParameters)) {
+            criteria.add(MatchCriterion.beginsWith(COUNTRY_LOCATION_INDEX, LOCATION_BODY_PARAMETER,
+                    bodyParameters.getLocation()));
+        }
+        if (isValidAgeParameter(bodyParameters)) {
+            long currentTime = Calendar.getInstance().getTimeInMillis() / 1000;
+            long yearValue = getYearTimestampValue();
+            long birthdayLowValue = currentTime - getOptionalIntegerValue(bodyParameters.getAgeLimits().get(1))
+                    .orElse(MAX_AGE) * yearValue;
+            long birthdayUpValue = currentTime - getOptionalIntegerValue(bodyParameters.getAgeLimits().get(0))
+                    .orElse(MIN_AGE) * yearValue;
+            criteria.add(MatchCriterion.between(COUNTRY_BIRTHDAY_INDEX, BIRTHDAY_BODY_PARAMETER,
+                    birthdayLowValue, birthdayUpValue, (MAX_AGE - MIN_AGE) * yearValue));
+        }
+        return criteria;
+    }
 
-        QueryResultPage<User> queryResult = dynamoDBMapper.queryPage(User.class, queryExpression);
-        List<User> users = queryResult.getResults();
+    /**
+     * Parses {@code <field>[:asc|:desc]} where the field is {@code name},
+     * {@code location}, {@code birthday}, {@code age} or
+     * {@code registration}; ascending by default. Age runs opposite to
+     * birthday. Anything else means no sorting.
+     */
+    private static UserSorting getSorting(String sorting) {
+        if (sorting == null || sorting.isBlank()) {
+            return null;
+        }
+        String[] parts = sorting.trim().split(":", 2);
+        boolean ascending;
+        if (parts.length == 1 || parts[1].trim().equalsIgnoreCase(ASCENDING_SORTING)) {
+            ascending = true;
+        } else if (parts[1].trim().equalsIgnoreCase(DESCENDING_SORTING)) {
+            ascending = false;
+        } else return null;
+
+        switch (parts[0].trim()) {
+            case NAME_BODY_PARAMETER:
+                return UserSorting.of(COUNTRY_NAME_INDEX, NAME_BODY_PARAMETER, TABLE_PARTITION_KEY, ascending,
+                        User::getName);
+            case LOCATION_BODY_PARAMETER:
+                return UserSorting.of(COUNTRY_LOCATION_INDEX, LOCATION_BODY_PARAMETER, TABLE_PARTITION_KEY,
+                        ascending, User::getLocation);
+            case BIRTHDAY_BODY_PARAMETER:
+                return UserSorting.of(COUNTRY_BIRTHDAY_INDEX, BIRTHDAY_BODY_PARAMETER, TABLE_PARTITION_KEY,
+                        ascending, User::getBirthday);
+            case AGE_SORTING:
+                return UserSorting.of(COUNTRY_BIRTHDAY_INDEX, BIRTHDAY_BODY_PARAMETER, TABLE_PARTITION_KEY,
+                        !ascending, User::getBirthday);
+            case REGISTRATION_BODY_PARAMETER:
+                return UserSorting.of(COUNTRY_REGISTRATION_INDEX, REGISTRATION_BODY_PARAMETER,
+                        TABLE_PARTITION_KEY, ascending, User::getRegistration);
+            default:
+                return null;
+        }
+    }
 
-        return new Gson().toJson(users);
+    /**
+     * Fields from the body take precedence over the {@code fields} query
+     * parameter; with neither, every attribute is read.
+     */
+    private static UserProjection getProjection(Map<String, String> queryParameters, RequestBody bodyParameters) {
+        if (bodyParameters != null && bodyParameters.getFields() != null) {
+            return UserProjection.of(bodyParameters.getFields());
+        } else if (queryParameters != null) {
+            return UserProjection.of(queryParameters.get(FIELDS_QUERY_PARAMETER));
+        } else return UserProjection.ALL;
     }
 
-    private String getNotPaginatedFilteredUsersList(String indexName, String sortKeyName,
-                                                    String sortKeyLowValue, String sortKeyUpValue) {
+    /**
+     * A paginated request is answered with the page and its cursor, any other
+     * with the bare array of users.
+     */
+    private String getUsersJson(UsersPage usersPage, UserProjection projection, Map<String, String> queryParameters,
+                                OperationMetrics operationMetrics) {
+        long serializeStart = operationMetrics.serializeStarted();
+        String usersJson = toJson(usersPage, projection, hasValidLimit(queryParameters));
+        operationMetrics.serializeCompleted(serializeStart);
+        return usersJson;
+    }
 
-        Calendar cal = Calendar.getInstance();
-        long currentTime = cal.getTimeInMillis() / 1000;
-        long yearValue = getYearTimestampValue();
+    private static String toJson(UsersPage usersPage, UserProjection projection, boolean paginated) {
+        StringWriter usersJson = new StringWriter();
+        try {
+            writeUsers(gson.newJsonWriter(usersJson), usersPage, projection, paginated);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return usersJson.toString();
+    }
 
-        String sortKeyLowValueStr = String.valueOf(currentTime - getOptionalIntegerValue(sortKeyUpValue)
-                .orElse(MAX_AGE) * yearValue);
-        String sortKeyUpValueStr = String.valueOf(currentTime - getOptionalIntegerValue(sortKeyLowValue)
-                .orElse(MIN_AGE) * yearValue);
+    /**
+     * Writes the users as a JSON array one element at a time, so a lazily
+     * iterated scan is never held in memory as a whole; a page is wrapped in
+     * an object with its cursor. Attributes read for the service's own use,
+     * such as keys and versions, are cleared from each user as it is written.
+     */
+    private static void writeUsers(JsonWriter jsonWriter, UsersPage usersPage, UserProjection projection,
+                                   boolean paginated) throws IOException {
+        if (paginated) {
+            jsonWriter.beginObject();
+            jsonWriter.name("items");
+        }
+        jsonWriter.beginArray();
+        for (User user : usersPage.getItems()) {
+            projection.clearUnrequested(user);
+            gson.toJson(user, User.class, jsonWriter);
+        }
+        jsonWriter.endArray();
+        if (paginated) {
+            if (usersPage.getCursor() != null) {
+                jsonWriter.name("cursor").value(usersPage.getCursor());
+            }
+            jsonWriter.endObject();
+        }
+        jsonWriter.flush();
+    }
 
-        String partitionKeyAlias = "partAlias";
-        String sortKeyLowAlias = "sortLowAlias";
-        String sortKeyUpAlias = "sortUpAlias";
+    /**
+     * Writes the users like
+     * {@link #getUsersJson(UsersPage, UserProjection, Map, OperationMetrics)} does, straight to the response.
+     * Pages are tagged weakly by their users' versions and the {@code variant} of the request, before the
+     * projection clears the versions; a whole list is streamed before it is known, so it has no tag.
+     * The operation is over, and its metrics emitted, when the writer is.
+     */
+    private ResponseBodyWriter getUsersWriter(UsersPage usersPage, UserProjection projection,
+                                              Map<String, String> queryParameters, String variant,
+                                              OperationMetrics operationMetrics) {
+        boolean paginated = hasValidLimit(queryParameters);
+        String entityTag = paginated ? EntityTags.of(usersPage.getItems(), usersPage.getCursor(), variant) : null;
+        return new ResponseBodyWriter() {
+            @Override
+            public void writeTo(Writer writer) throws IOException {
+                long serializeStart = operationMetrics.serializeStarted();
+                try {
+                    writeUsers(gson.newJsonWriter(writer), usersPage, projection, paginated);
+                } catch (IOException | RuntimeException e) {
+                    operationMetrics.failed();
+                    throw e;
+                } finally {
+                    operationMetrics.serializeCompleted(serializeStart);
+                    operationMetrics.emit();
+                }
+            }
 
-        String partitionKeyLabel = "#" + INDEX_PARTITION_KEY;
-        String sortKeyLabel = "#" + sortKeyName;
-
-        HashMap<String, AttributeValue> expressionAttributeValues = new HashMap<>();
-        expressionAttributeValues.put(":" + partitionKeyAlias,
-                new AttributeValue().withS(INDEX_PARTITION_KEY_VALUE));
-        expressionAttributeValues.put(":" + sortKeyLowAlias,
-                new AttributeValue().withN(sortKeyLowValueStr));
-        expressionAttributeValues.put(":" + sortKeyUpAlias,
-                new AttributeValue().withN(sortKeyUpValueStr));
-
-        String conditionExpression = MessageFormat.format(
-                "{0} = :{1} and {2} between :{3} and :{4}",
-                partitionKeyLabel, partitionKeyAlias,
-                sortKeyLabel, sortKeyLowAlias, sortKeyUpAlias);
-
-        Map<String, String> expressionAttributeNames = getExpressionAttributeNamesMap(
-                sortKeyName, partitionKeyLabel, sortKeyLabel);
-
-        DynamoDBQueryExpression<User> queryExpression = new DynamoDBQueryExpression<User>()
-                .withIndexName(indexName)
-                .withConsistentRead(false)
-                .withKeyConditionExpression(conditionExpression)
-                .withExpressionAttributeNames(expressionAttributeNames)
-                .withExpressionAttributeValues(expressionAttributeValues);
+            @Override
+            public String getEntityTag() {
+                return entityTag;
+            }
 
-        QueryResultPage<User> queryResult = dynamoDBMapper.queryPage(User.class, queryExpression);
-        List<User> users = queryResult.getResults();
+            @Override
+            public void discard() {
+                operationMetrics.emit();
+            }
+        };
+    }
 
-        return new Gson().toJson(users);
+    /**
+     * What selects and shapes a page besides its users and cursor, for its
+     * entity tag.
+     */
+    private static String getVariant(Map<String, String> queryParameters, String inputBody) {
+        return (queryParameters == null ? "" : new TreeMap<>(queryParameters).toString()) + "\n"
+                + (inputBody == null ? "" : inputBody);
     }
 
-    private String getPaginatedFilteredUsersList(Map<String, String> stringParameters, String indexName,
-                                                 String sortKeyName, String sortKeyValue) {
+    private static String getSuggestionsJson(Iterable<User> suggestions, OperationMetrics operationMetrics) {
+        long serializeStart = operationMetrics.serializeStarted();
+        String suggestionsJson = toJson(getUsersPage(suggestions), SUGGESTION_PROJECTION, false);
+        operationMetrics.serializeCompleted(serializeStart);
+        return suggestionsJson;
+    }
 
-        HashMap<String, AttributeValue> startKey = getIndexStringStartKeyMap(sortKeyName,
-                extractHashKey(stringParameters),
-                extractRangeKey(stringParameters));
+    /**
+     * Rebuilds the name index from every email and name of
+     * {@code country-name-index} if it is missing or stale and no rebuild is
+     * running. The rebuild is not waited for; it is its own operation in the
+     * metrics.
+     */
+    private void refreshNameAutocomplete() {
+        if (!nameAutocomplete.tryStartRefresh()) {
+            return;
+        }
+        long startedNanos = System.nanoTime();
+        OperationMetrics operationMetrics = metrics.start("refreshNameAutocomplete");
+        operationMetrics.setIndexName(COUNTRY_NAME_INDEX);
+        String partitionKeyLabel = "#" + INDEX_PARTITION_KEY;
+        QueryRequest queryRequest = SUGGESTION_PROJECTION
+                .applyTo(new QueryRequest()
+                        .withTableName(TABLE_NAME)
+                        .withIndexName(COUNTRY_NAME_INDEX)
+                        .withConsistentRead(false)
+                        .withKeyConditionExpression(partitionKeyLabel + " = :" + INDEX_PARTITION_KEY)
+                        .withExpressionAttributeNames(Map.of(partitionKeyLabel, INDEX_PARTITION_KEY))
+                        .withExpressionAttributeValues(Map.of(":" + INDEX_PARTITION_KEY,
+                                new AttributeValue(INDEX_PARTITION_KEY_VALUE))));
+        operationMetrics.emitOnCompletion(queryAllUsers(queryRequest, null, new ArrayList<>(), operationMetrics))
+                .whenComplete((users, e) -> {
+                    if (e == null) {
+                        nameAutocomplete.install(users, startedNanos);
+                    } else {
+                        nameAutocomplete.refreshFailed();
+                    }
+                });
+    }
 
-        String partitionKeyAlias = "partAlias";
-        String sortKeyAlias = "sortAlias";
+    /**
+     * Adds the users of every page of the query, one page after another,
+     * each page paced to the capacity the other requests leave unused.
+     */
+    private CompletableFuture<List<User>> queryAllUsers(QueryRequest queryRequest,
+                                                        Map<String, AttributeValue> startKey, List<User> users,
+                                                        OperationMetrics operationMetrics) {
+        return asyncClient().queryInBackground(queryRequest.withExclusiveStartKey(startKey), operationMetrics)
+                .thenCompose(queryResult -> {
+                    DynamoDBMapperTableModel<User> tableModel = getUserTableModel();
+                    for (Map<String, AttributeValue> item : queryResult.getItems()) {
+                        users.add(tableModel.unconvert(item));
+                    }
+                    Map<String, AttributeValue> lastKey = getLastEvaluatedKey(queryResult.getLastEvaluatedKey());
+                    return lastKey == null ? CompletableFuture.completedFuture(users)
+                            : queryAllUsers(queryRequest, lastKey, users, operationMetrics);
+                });
+    }
 
-        String partitionKeyLabel = "#" + INDEX_PARTITION_KEY;
-        String sortKeyLabel = "#" + sortKeyName;
+    private static UsersPage getUsersPage(Iterable<User> users) {
+        return UsersPage.builder().items(users).build();
+    }
 
-        HashMap<String, AttributeValue> expressionAttributeValues = getExpressionAttributeValuesMap(
-                sortKeyValue, partitionKeyAlias, sortKeyAlias);
+    private static UsersPage getUsersPage(String indexName, List<User> users,
+                                          Map<String, AttributeValue> lastEvaluatedKey) {
+        return UsersPage.builder().items(users).cursor(PageCursor.encode(indexName, lastEvaluatedKey)).build();
+    }
 
-        String conditionExpression = MessageFormat.format(
-                "{0} = :{1} and begins_with ({2}, :{3})",
-                partitionKeyLabel, partitionKeyAlias,
-                sortKeyLabel, sortKeyAlias);
+    /**
+     * Builds a SET clause from the non-null attributes of the user (the
+     * table model skips nulls) and an ADD of one to its version, keyed by its
+     * email and returning ALL_NEW. The version of the body is ignored. Unless
+     * {@code expectedVersions} is null, the update also requires the version
+     * to be one of them.
+     */
+    private UpdateItemRequest getUpdateUserRequest(User userToUpdate, List<Long> expectedVersions) {
+        Map<String, AttributeValue> attributes = getUserTableModel().convert(userToUpdate);
+        attributes.remove(TABLE_PARTITION_KEY);
+        attributes.remove(VERSION_ATTRIBUTE);
 
-        Map<String, String> expressionAttributeNames = getExpressionAttributeNamesMap(
-                sortKeyName, partitionKeyLabel, sortKeyLabel);
+        Map<String, String> expressionAttributeNames = new HashMap<>();
+        expressionAttributeNames.put(TABLE_PARTITION_KEY_LABEL, TABLE_PARTITION_KEY);
+        expressionAttributeNames.put(VERSION_ATTRIBUTE_LABEL, VERSION_ATTRIBUTE);
+        Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
+        StringJoiner updateExpression = new StringJoiner(", ", "SET ", "");
+        for (Map.Entry<String, AttributeValue> attribute : attributes.entrySet()) {
+            String alias = "attr" + expressionAttributeValues.size();
+            expressionAttributeNames.put("#" + alias, attribute.getKey());
+            expressionAttributeValues.put(":" + alias, attribute.getValue());
+            updateExpression.add("#" + alias + " = :" + alias);
+        }
+        expressionAttributeValues.put(":one", new AttributeValue().withN("1"));
+
+        String conditionExpression = "attribute_exists(" + TABLE_PARTITION_KEY_LABEL + ")";
+        if (expectedVersions != null) {
+            StringJoiner versions = new StringJoiner(", ", " AND " + VERSION_ATTRIBUTE_LABEL + " IN (", ")");
+            for (int i = 0; i < expectedVersions.size(); i++) {
+                versions.add(":version" + i);
+                expressionAttributeValues.put(":version" + i,
+                        new AttributeValue().withN(expectedVersions.get(i).toString()));
+            }
+            conditionExpression += versions;
+        }
 
-        DynamoDBQueryExpression<User> queryExpression = new DynamoDBQueryExpression<User>()
-                .withIndexName(indexName)
-                .withConsistentRead(false)
-                .withKeyConditionExpression(conditionExpression)
+        return new UpdateItemRequest()
+                .withTableName(TABLE_NAME)
+                .withKey(getTableKeyMap(userToUpdate.getEmail()))
+                .withConditionExpression(conditionExpression)
+                .withUpdateExpression((attributes.isEmpty() ? "" : updateExpression + " ")
+                        + "ADD " + VERSION_ATTRIBUTE_LABEL + " :one")
                 .withExpressionAttributeNames(expressionAttributeNames)
                 .withExpressionAttributeValues(expressionAttributeValues)
-                .withLimit(getIntegerValue(extractLimit(stringParameters)))
-                .withExclusiveStartKey(startKey);
+                .withReturnValues(ReturnValue.ALL_NEW);
+    }
 
-        QueryResultPage<User> queryResult = dynamoDBMapper.queryPage(User.class, queryExpression);
-        List<User> users = queryResult.getResults();
+    private static Map<String, AttributeValue> getTableKeyMap(String email) {
+        Map<String, AttributeValue> key = new HashMap<>();
+        key.put(TABLE_PARTITION_KEY, new AttributeValue().withS(email));
+        return key;
+    }
 
-        return new Gson().toJson(users);
+    /**
+     * One element per requested email, with the user JSON of the found ones.
+     */
+    private static String getFoundUsersJson(List<String> emails, Map<String, String> userJsons) {
+        StringWriter output = new StringWriter();
+        try (JsonWriter jsonWriter = gson.newJsonWriter(output)) {
+            jsonWriter.beginArray();
+            for (String email : emails) {
+                String userJson = email == null ? null : userJsons.get(email);
+                jsonWriter.beginObject();
+                jsonWriter.name("email").value(email);
+                jsonWriter.name("found").value(userJson != null);
+                if (userJson != null) {
+                    jsonWriter.name("user").jsonValue(userJson);
+                }
+                jsonWriter.endObject();
+            }
+            jsonWriter.endArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return output.toString();
     }
 
-    private String getPaginatedFilteredUsersList(Map<String, String> stringParameters, String indexName,
-                                                 String sortKeyName, String sortKeyLowValue, String sortKeyUpValue) {
+    private static List<JsonElement> extractBulkElements(String inputBody) {
+        List<JsonElement> elements = new ArrayList<>();
+        if (inputBody == null || inputBody.isBlank()) {
+            return elements;
+        }
+        String body = inputBody.strip();
+        if (body.startsWith("[")) {
+            try {
+                JsonParser.parseString(body).getAsJsonArray().forEach(elements::add);
+            } catch (JsonParseException | IllegalStateException e) {
+                return null;
+            }
+        } else {
+            for (String line : body.split("\\r?\\n")) {
+                if (!line.isBlank()) {
+                    elements.add(extractJsonLine(line));
+                }
+            }
+        }
+        return elements;
+    }
 
-        Calendar cal = Calendar.getInstance();
-        long currentTime = cal.getTimeInMillis() / 1000;
-        long yearValue = getYearTimestampValue();
+    private static List<String> extractEmails(String inputBody) {
+        try {
+            JsonElement body = JsonParser.parseString(inputBody == null ? "" : inputBody);
+            if (!body.isJsonArray()) {
+                return null;
+            }
+            List<String> emails = new ArrayList<>();
+            for (JsonElement email : body.getAsJsonArray()) {
+                emails.add(email.isJsonPrimitive() ? email.getAsString() : null);
+            }
+            return emails;
+        } catch (JsonParseException e) {
+            return null;
+        }
+    }
 
-        String sortKeyLowValueStr = String.valueOf(currentTime - getOptionalIntegerValue(sortKeyUpValue)
-                .orElse(MAX_AGE) * yearValue);
-        String sortKeyUpValueStr = String.valueOf(currentTime - getOptionalIntegerValue(sortKeyLowValue)
-                .orElse(MIN_AGE) * yearValue);
+    private static int getBatchGetMaxEmails() {
+        return Configuration.getInt(BATCH_GET_MAX_EMAILS_VARIABLE, DEFAULT_BATCH_GET_MAX_EMAILS);
+    }
 
-        HashMap<String, AttributeValue> startKey = getIndexNumericStartKeyMap(sortKeyName,
-                extractHashKey(stringParameters), extractRangeKey(stringParameters));
+    private static JsonElement extractJsonLine(String line) {
+        try {
+            return JsonParser.parseString(line);
+        } catch (JsonParseException e) {
+            return JsonNull.INSTANCE;
+        }
+    }
 
-        String partitionKeyAlias = "partAlias";
-        String sortKeyLowAlias = "sortLowAlias";
-        String sortKeyUpAlias = "sortUpAlias";
+    private static User extractUser(JsonElement element) {
+        if (element == null || !element.isJsonObject()) {
+            return null;
+        }
+        try {
+            return gson.fromJson(element, User.class);
+        } catch (JsonParseException e) {
+            return null;
+        }
+    }
 
-        String partitionKeyLabel = "#" + INDEX_PARTITION_KEY;
-        String sortKeyLabel = "#" + sortKeyName;
-
-        HashMap<String, AttributeValue> expressionAttributeValues = new HashMap<>();
-        expressionAttributeValues.put(":" + partitionKeyAlias,
-                new AttributeValue().withS(INDEX_PARTITION_KEY_VALUE));
-        expressionAttributeValues.put(":" + sortKeyLowAlias,
-                new AttributeValue().withN(sortKeyLowValueStr));
-        expressionAttributeValues.put(":" + sortKeyUpAlias,
-                new AttributeValue().withN(sortKeyUpValueStr));
-
-        String conditionExpression = MessageFormat.format(
-                "{0} = :{1} and {2} between :{3} and :{4}",
-                partitionKeyLabel, partitionKeyAlias,
-                sortKeyLabel, sortKeyLowAlias, sortKeyUpAlias);
-
-        Map<String, String> expressionAttributeNames = getExpressionAttributeNamesMap(
-                sortKeyName, partitionKeyLabel, sortKeyLabel);
-
-        DynamoDBQueryExpression<User> queryExpression = new DynamoDBQueryExpression<User>()
-                .withIndexName(indexName)
-                .withConsistentRead(false)
-                .withKeyConditionExpression(conditionExpression)
-                .withExpressionAttributeNames(expressionAttributeNames)
-                .withExpressionAttributeValues(expressionAttributeValues)
-                .withLimit(getIntegerValue(extractLimit(stringParameters)))
-                .withExclusiveStartKey(startKey);
+    private static void rejectUser(UserWriteResult result, String message) {
+        result.setStatus(UserWriteResult.REJECTED);
+        result.setMessage(message);
+    }
 
-        QueryResultPage<User> queryResult = dynamoDBMapper.queryPage(User.class, queryExpression);
-        List<User> users = queryResult.getResults();
+    private static int getBulkCreateMaxUsers() {
+        return Configuration.getInt(BULK_CREATE_MAX_USERS_VARIABLE, DEFAULT_BULK_CREATE_MAX_USERS);
+    }
 
-        return new Gson().toJson(users);
+    private RequestBody extractRequestBodyParameters(String inputBody) {
+        try {
+            return gson.fromJson(inputBody, RequestBody.class);
+        } catch (Exception e) {
+            return null;
+        }
     }
 
-    private static HashMap<String, AttributeValue> getTableStartKeyMap(String lastHashKey) {
-        HashMap<String, AttributeValue> startKey = new HashMap<>();
-        if (isValidTableLastHashKey(lastHashKey)) {
-            startKey.put(TABLE_PARTITION_KEY, new AttributeValue().withS(lastHashKey));
+    private CompletableFuture<UsersPage> getNotFilteredUsersList(Map<String, String> queryParameters,
+                                                                 UserProjection projection,
+                                                                 OperationMetrics operationMetrics) {
+        boolean paginated = hasValidLimit(queryParameters);
+        operationMetrics.setPaginated(paginated);
+        if (paginated) {
+            return getPaginatedNotFilteredUsersList(queryParameters, projection, operationMetrics);
         } else {
-            startKey = null;
+            return getNotPaginatedNotFilteredUsersList(projection, operationMetrics)
+                    .thenApply(DynamoDBServiceImpl::getUsersPage);
         }
-        return startKey;
     }
 
-    private static HashMap<String, AttributeValue> getIndexStringStartKeyMap(String sortKeyName,
-                                                                             String lastHashKey,
-                                                                             String lastRangeKey) {
-        HashMap<String, AttributeValue> startKey = new HashMap<>();
-        if (isValidIndexHashAndRangeKeys(lastHashKey, lastRangeKey)) {
-            startKey.put(TABLE_PARTITION_KEY, new AttributeValue().withS(lastHashKey));
-            startKey.put(INDEX_PARTITION_KEY, new AttributeValue().withS(INDEX_PARTITION_KEY_VALUE));
-            startKey.put(sortKeyName, new AttributeValue().withS(lastRangeKey));
+    /**
+     * Queries the index {@link MatchPlanner} picks for the criteria. Without a
+     * limit every page of the query is returned; with one, pages are read
+     * until the limit is filled with matches, the index is exhausted, or
+     * {@code MATCH_TIME_BUDGET_MILLIS} is spent. A page cut short by the time
+     * budget still carries a cursor to resume from. A sorted request the plan
+     * does not read in order is sorted by {@link #getTopUsersList}, or read
+     * from the index of its sort attribute after all when it has more matches
+     * than an in-memory sort may read.
+     */
+    private CompletableFuture<UsersPage> getMatchedUsersList(Map<String, String> queryParameters,
+                                                             List<MatchCriterion> criteria, UserSorting sorting,
+                                                             UserProjection projection,
+                                                             OperationMetrics operationMetrics) {
+        boolean paginated = hasValidLimit(queryParameters);
+        operationMetrics.setPaginated(paginated);
+        Integer limit = paginated ? getIntegerValue(extractLimit(queryParameters)) : null;
+        String cursor = paginated ? extractCursor(queryParameters) : null;
+        return matchPlanner.plan(asyncClient(), criteria, sorting, limit, PageCursor.getIndexName(cursor))
+                .thenCompose(matchPlan -> {
+                    if (sorting == null || matchPlan.isSorted()) {
+                        return getMatchedUsersList(matchPlan, sorting, limit, cursor, projection, operationMetrics);
+                    }
+                    operationMetrics.setIndexName(matchPlan.getIndexName());
+                    return CompletableFuture.supplyAsync(() -> getTopUsersList(matchPlan, sorting, limit, cursor,
+                            projection, operationMetrics), executor).thenCompose(usersPage -> usersPage != null
+                            ? CompletableFuture.completedFuture(usersPage)
+                            : matchPlanner.planSorted(asyncClient(), criteria, sorting).thenCompose(sortedPlan ->
+                            getMatchedUsersList(sortedPlan, sorting, limit, cursor, projection, operationMetrics)));
+                });
+    }
+
+    /**
+     * Reads the matches in the order of the plan's index. A cursor of an
+     * in-memory sort is resumed from the sort attribute's index at the
+     * position of its last user.
+     */
+    private CompletableFuture<UsersPage> getMatchedUsersList(MatchPlan matchPlan, UserSorting sorting, Integer limit,
+                                                             String cursor, UserProjection projection,
+                                                             OperationMetrics operationMetrics) {
+        operationMetrics.setIndexName(matchPlan.getIndexName());
+        if (limit == null) {
+            QueryRequest queryRequest = projection.applyTo(matchPlan.getQueryRequest(TABLE_NAME));
+            return getPagedUsers(getQueryPageLoader(queryRequest, operationMetrics))
+                    .thenApply(DynamoDBServiceImpl::getUsersPage);
+        }
+        Map<String, AttributeValue> startKey;
+        if (sorting != null && sorting.getCursorName().equals(PageCursor.getIndexName(cursor))) {
+            startKey = matchPlan.getExclusiveStartKey(getUserTableModel().convert(decodeSortedCursor(sorting, cursor)));
         } else {
-            startKey = null;
+            startKey = PageCursor.decode(matchPlan.getIndexName(), cursor);
         }
-        return startKey;
+        return getPaginatedMatchedUsersList(matchPlan, limit, startKey, projection, operationMetrics);
     }
 
-    private static HashMap<String, AttributeValue> getIndexNumericStartKeyMap(String sortKeyName,
-                                                                              String lastHashKey,
-                                                                              String lastRangeKey) {
-        HashMap<String, AttributeValue> startKey = new HashMap<>();
-        if (isValidIndexHashAndRangeKeys(lastHashKey, lastRangeKey)) {
-            startKey.put(TABLE_PARTITION_KEY, new AttributeValue().withS(lastHashKey));
-            startKey.put(INDEX_PARTITION_KEY, new AttributeValue().withS(INDEX_PARTITION_KEY_VALUE));
-            startKey.put(sortKeyName, new AttributeValue().withN(lastRangeKey));
-        } else {
-            return null;
+    /**
+     * The last user of the page a cursor of an in-memory sort was issued
+     * for, or null without a cursor.
+     */
+    private User decodeSortedCursor(UserSorting sorting, String cursor) {
+        Map<String, AttributeValue> cursorKey = PageCursor.decode(sorting.getCursorName(), cursor);
+        User lastUser = cursorKey == null ? null : getUserTableModel().unconvert(cursorKey);
+        if (lastUser != null && !sorting.hasValue(lastUser)) {
+            throw new InvalidCursorException();
         }
-        return startKey;
+        return lastUser;
     }
 
-    private static Map<String, String> getExpressionAttributeNamesMap(String sortKeyName,
-                                                                      String partitionKeyLabel,
-                                                                      String sortKeyLabel) {
-        Map<String, String> expressionAttributeNames = new HashMap<>();
-        expressionAttributeNames.put(partitionKeyLabel, INDEX_PARTITION_KEY);
-        expressionAttributeNames.put(sortKeyLabel, sortKeyName);
-        return expressionAttributeNames;
+    /**
+     * Sorts on an attribute other than the range key of the queried index:
+     * the query is streamed through a heap of the first {@code limit} users,
+     * so memory grows with the page and not with the matches. The cursor is
+     * the sort key and email of the last user; the next page reruns the query
+     * and skips every user up to it, which is why no more than
+     * {@code MATCH_SORT_MAX_ITEMS} matches are read. Returns null once there
+     * are more, to have the page read from the index instead.
+     */
+    private UsersPage getTopUsersList(MatchPlan matchPlan, UserSorting sorting, Integer limit, String cursor,
+                                      UserProjection requestedProjection, OperationMetrics operationMetrics) {
+        User lastUser = decodeSortedCursor(sorting, cursor);
+        UserProjection projection = requestedProjection.including(
+                List.of(TABLE_PARTITION_KEY, VERSION_ATTRIBUTE, sorting.getAttributeName()));
+        long timeBudgetMillis = MatchPlanner.getTimeBudgetMillis();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeBudgetMillis);
+        int maxItems = MatchPlanner.getSortMaxItems();
+        int items = 0;
+        TopK<User> topUsers = new TopK<>(limit == null ? Integer.MAX_VALUE : limit, sorting.getComparator());
+        QueryRequest queryRequest = projection.applyTo(matchPlan.getQueryRequest(TABLE_NAME));
+        for (User user : CompletableFutures.join(PagedItems.load(getUserTableModel(),
+                getQueryPageLoader(queryRequest, operationMetrics)))) {
+            if (++items > maxItems) {
+                return null;
+            } else if (System.nanoTime() >= deadline) {
+                throw new TimeBudgetExceededException("Sorting", timeBudgetMillis);
+            }
+            if (sorting.hasValue(user) && (lastUser == null || sorting.getComparator().compare(user, lastUser) > 0)) {
+                topUsers.offer(user);
+            }
+        }
+
+        List<User> users = topUsers.toSortedList();
+        Map<String, AttributeValue> lastEvaluatedKey = topUsers.isTruncated()
+                ? sorting.getCursorKey(getUserTableModel().convert(users.get(users.size() - 1))) : null;
+        return limit == null ? getUsersPage(users) : getUsersPage(sorting.getCursorName(), users, lastEvaluatedKey);
     }
 
-    private static HashMap<String, AttributeValue> getExpressionAttributeValuesMap(String sortKeyValue,
-                                                                                   String partitionKeyAlias,
-                                                                                   String sortKeyAlias) {
-        HashMap<String, AttributeValue> expressionAttributeValues = new HashMap<>();
-        expressionAttributeValues.put(":" + partitionKeyAlias,
-                new AttributeValue().withS(INDEX_PARTITION_KEY_VALUE));
-        expressionAttributeValues.put(":" + sortKeyAlias,
-                new AttributeValue().withS(sortKeyValue));
-        return expressionAttributeValues;
+    /**
+     * Each query reads as many index items as the filter is expected to need
+     * for the matches still missing, and the next one is sent when it
+     * completes. When a page yields more matches than that, the page is cut
+     * after the last one kept and the cursor is built from its key, which is
+     * why the key attributes are always read, like the versions the page is
+     * tagged by.
+     */
+    private CompletableFuture<UsersPage> getPaginatedMatchedUsersList(MatchPlan matchPlan, int limit,
+                                                                      Map<String, AttributeValue> startKey,
+                                                                      UserProjection requestedProjection,
+                                                                      OperationMetrics operationMetrics) {
+        List<String> attributeNames = new ArrayList<>(matchPlan.getKeyAttributeNames());
+        attributeNames.add(VERSION_ATTRIBUTE);
+        UserProjection projection = requestedProjection.including(attributeNames);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MatchPlanner.getTimeBudgetMillis());
+        List<User> users = new ArrayList<>(Math.min(limit, MatchPlan.MAX_PAGE_ITEMS));
+        return queryMatchedUsers(matchPlan, limit, startKey, projection, users, deadline, operationMetrics)
+                .thenApply(lastKey -> getUsersPage(matchPlan.getIndexName(), users, lastKey));
     }
 
+    /**
+     * Adds the matches of one query page to {@code users} and continues with
+     * the next page while more are needed; completes with the key to resume
+     * from, or null when the index is exhausted.
+     */
+    private CompletableFuture<Map<String, AttributeValue>> queryMatchedUsers(MatchPlan matchPlan, int limit,
+                                                                             Map<String, AttributeValue> startKey,
+                                                                             UserProjection projection,
+                                                                             List<User> users, long deadline,
+                                                                             OperationMetrics operationMetrics) {
+        int remaining = limit - users.size();
+        QueryRequest queryRequest = projection.applyTo(matchPlan.getQueryRequest(TABLE_NAME)
+                .withLimit(matchPlan.getPageLimit(remaining))
+                .withExclusiveStartKey(startKey));
+        return asyncClient().query(queryRequest, operationMetrics).thenCompose(queryResult -> {
+            List<Map<String, AttributeValue>> items = queryResult.getItems();
+            Map<String, AttributeValue> lastKey;
+            if (items.size() > remaining) {
+                items = items.subList(0, remaining);
+                lastKey = matchPlan.getExclusiveStartKey(items.get(items.size() - 1));
+            } else {
+                lastKey = getLastEvaluatedKey(queryResult.getLastEvaluatedKey());
+            }
+            DynamoDBMapperTableModel<User> tableModel = getUserTableModel();
+            for (Map<String, AttributeValue> item : items) {
+                users.add(tableModel.unconvert(item));
+            }
+            if (lastKey != null && users.size() < limit && System.nanoTime() < deadline) {
+                return queryMatchedUsers(matchPlan, limit, lastKey, projection, users, deadline, operationMetrics);
+            }
+            return CompletableFuture.completedFuture(lastKey);
+        });
+    }
 
-    private static String extractLimit(Map<String, String> queryParameters) {
-        return queryParameters.getOrDefault(LIMIT_QUERY_PARAMETER, null);
+    /**
+     * Small tables are scanned sequentially, larger ones by
+     * {@link ParallelScanner} in segments; either way the users are paged
+     * lazily while they are written.
+     */
+    private CompletableFuture<Iterable<User>> getNotPaginatedNotFilteredUsersList(UserProjection projection,
+                                                                                  OperationMetrics operationMetrics) {
+        ScanRequest scanRequest = projection.applyTo(new ScanRequest().withTableName(TABLE_NAME));
+        return parallelScanner.getTotalSegments(asyncClient(), TABLE_NAME).thenCompose(totalSegments -> {
+            if (totalSegments > 1) {
+                return onListExecutor(parallelScanner.scan(asyncClient(), getUserTableModel(), scanRequest,
+                        totalSegments, operationMetrics));
+            }
+            return getPagedUsers(startKey -> asyncClient().scan(scanRequest.withExclusiveStartKey(startKey),
+                    operationMetrics).thenApply(scanResult -> new PagedItems.Page(scanResult.getItems(),
+                    scanResult.getLastEvaluatedKey())));
+        });
     }
 
-    private static String extractHashKey(Map<String, String> queryParameters) {
-        return queryParameters.getOrDefault(HASH_KEY_QUERY_PARAMETER, null);
+    private CompletableFuture<Iterable<User>> getPagedUsers(PagedItems.PageLoader pageLoader) {
+        return onListExecutor(PagedItems.load(getUserTableModel(), pageLoader));
     }
 
-    private static String extractRangeKey(Map<String, String> queryParameters) {
-        return queryParameters.getOrDefault(RANGE_KEY_QUERY_PARAMETER, null);
+    /**
+     * Lazily paged users, completed on the list executor: a list that is
+     * written inside the future reads its remaining pages there, not on a
+     * thread of the client.
+     */
+    private static CompletableFuture<Iterable<User>> onListExecutor(CompletableFuture<Iterable<User>> pagedUsers) {
+        return pagedUsers.thenApplyAsync(users -> users, executor);
+    }
+
+    /**
+     * Reads the query one page after another; pages are requested in turn,
+     * so the request is reused.
+     */
+    private PagedItems.PageLoader getQueryPageLoader(QueryRequest queryRequest, OperationMetrics operationMetrics) {
+        return startKey -> asyncClient().query(queryRequest.withExclusiveStartKey(startKey), operationMetrics)
+                .thenApply(queryResult -> new PagedItems.Page(queryResult.getItems(),
+                        queryResult.getLastEvaluatedKey()));
+    }
+
+    private CompletableFuture<UsersPage> getPaginatedNotFilteredUsersList(Map<String, String> stringParameters,
+                                                                          UserProjection projection,
+                                                                          OperationMetrics operationMetrics) {
+
+        Map<String, AttributeValue> startKey = PageCursor.decode(null, extractCursor(stringParameters));
+
+        ScanRequest scanRequest = new ScanRequest()
+                .withTableName(TABLE_NAME)
+                .withConsistentRead(false)
+                .withLimit(getIntegerValue(extractLimit(stringParameters)))
+                .withExclusiveStartKey(startKey);
+
+        // the page is tagged by the emails and versions of its users
+        return asyncClient().scan(projection.including(List.of(TABLE_PARTITION_KEY, VERSION_ATTRIBUTE))
+                .applyTo(scanRequest), operationMetrics)
+                .thenApply(scanResult -> {
+                    DynamoDBMapperTableModel<User> tableModel = getUserTableModel();
+                    List<User> users = new ArrayList<>(scanResult.getItems().size());
+                    for (Map<String, AttributeValue> item : scanResult.getItems()) {
+                        users.add(tableModel.unconvert(item));
+                    }
+                    return getUsersPage(null, users, scanResult.getLastEvaluatedKey());
+                });
+    }
+
+    private static Map<String, AttributeValue> getLastEvaluatedKey(Map<String, AttributeValue> lastEvaluatedKey) {
+        return lastEvaluatedKey == null || lastEvaluatedKey.isEmpty() ? null : lastEvaluatedKey;
+    }
+
+    private static String extractLimit(Map<String, String> queryParameters) {
+        return queryParameters.getOrDefault(LIMIT_QUERY_PARAMETER, null);
+    }
+
+    private static String extractCursor(Map<String, String> queryParameters) {
+        return queryParameters.getOrDefault(CURSOR_QUERY_PARAMETER, null);
     }
 
-    private boolean isValidSocialMedia(HashMap<String, String> socialMedia) {
+    static boolean isValidSocialMedia(Map<String, String> socialMedia) {
         for (Map.Entry<String, String> entry : socialMedia.entrySet()) {
             if (!SOCIAL_MEDIA_NAMES.contains(entry.getKey())) {
                 return false;
@@ -510,15 +1384,6 @@ public class DynamoDBServiceImpl implements DynamoDBService {
         return bodyParameters.getName() != null && !bodyParameters.getName().equals("");
     }
 
-    private static boolean isValidTableLastHashKey(String lastHashKey) {
-        return lastHashKey != null && !lastHashKey.equals("");
-    }
-
-    private static boolean isValidIndexHashAndRangeKeys(String lastHashKey, String lastRangeKey) {
-        return lastHashKey != null && lastRangeKey != null &&
-                !lastHashKey.equals("") && !lastRangeKey.equals("");
-    }
-
     private static boolean isValidLimit(Integer limit) {
         return limit != null && limit > 0;
     }
@@ -554,8 +1419,52 @@ public class DynamoDBServiceImpl implements DynamoDBService {
         return nextYearTimestamp - currentTimestamp;
     }
 
+    private static boolean isPrimingEnabled() {
+        return Configuration.getBoolean(PRIMING_VARIABLE, true);
+    }
+
+    private static User getPrimingUser() {
+        User user = new User();
+        user.setEmail(PRIMING_EMAIL);
+        user.setCountry(INDEX_PARTITION_KEY_VALUE);
+        user.setName("Priming");
+        user.setLocation("Kyiv");
+        user.setBirthday(0L);
+        user.setRegistration(0L);
+        user.setInterests(new ArrayList<>(List.of("priming")));
+        user.setSocialMedia(new HashMap<>(Map.of("telegram", "@priming")));
+        user.setPrivacy(new HashMap<>(Map.of("email", true)));
+        return user;
+    }
+
+    private static ResponseBodyWriter getUserWriter(String userJson, Long version) {
+        return ResponseBodyWriter.withEntityTag(writer -> writer.write(userJson), EntityTags.of(version));
+    }
+
+    private static ResponseBodyWriter getMessageWriter(String message, OperationMetrics operationMetrics) {
+        String jsonResponse = getJsonResponse(message, operationMetrics);
+        return writer -> writer.write(jsonResponse);
+    }
+
+    private static String toJson(ResponseBodyWriter body) {
+        StringWriter writer = new StringWriter();
+        try {
+            body.writeTo(writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
     private static String getJsonResponse(String message) {
-        return new Gson().toJson(ResponseMessage.builder()
+        return gson.toJson(ResponseMessage.builder()
                 .message(message).build());
     }
+
+    private static String getJsonResponse(String message, OperationMetrics operationMetrics) {
+        long serializeStart = operationMetrics.serializeStarted();
+        String jsonResponse = getJsonResponse(message);
+        operationMetrics.serializeCompleted(serializeStart);
+        return jsonResponse;
+    }
 }
@@ -0,0 +1,147 @@
+package layer.service;
+
+import layer.model.User;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Entity tags of users and pages of users, and the {@code If-None-Match}
+ * and {@code If-Match} checks against them. A user's tag is its version, a
+ * strong tag since every write increments it. A page's tag is a weak tag
+ * over the emails and versions of its users, its cursor and whatever else
+ * selected it, since the same users can be serialized differently (e.g. a
+ * changed projection of the same version).
+ */
+final class EntityTags {
+
+    private static final String WEAK_PREFIX = "W/";
+    private static final int DIGEST_BYTES = 16;
+
+    private EntityTags() {
+    }
+
+    /**
+     * The strong tag of a version, or null for a user without one.
+     */
+    static String of(Long version) {
+        return version == null ? null : "\"" + version + "\"";
+    }
+
+    /**
+     * The weak tag of a page, or null if one of its users has no version,
+     * since then a change would not change the tag.
+     */
+    static String of(Iterable<User> users, String cursor, String variant) {
+        MessageDigest digest = newDigest();
+        for (User user : users) {
+            if (user.getVersion() == null) {
+                return null;
+            }
+            update(digest, user.getEmail());
+            update(digest, user.getVersion().toString());
+        }
+        update(digest, cursor);
+        update(digest, variant);
+        byte[] hash = digest.digest();
+        return WEAK_PREFIX + "\"" + Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(Arrays.copyOf(hash, DIGEST_BYTES)) + "\"";
+    }
+
+    /**
+     * Whether an {@code If-None-Match} header lists the tag, compared weakly
+     * as for a GET: a match means the client's copy is current.
+     */
+    static boolean isNoneMatchSatisfied(String ifNoneMatch, String entityTag) {
+        if (ifNoneMatch == null || entityTag == null) {
+            return false;
+        }
+        String opaqueTag = getOpaqueTag(entityTag);
+        for (String tag : parse(ifNoneMatch)) {
+            if ("*".equals(tag) || getOpaqueTag(tag).equals(opaqueTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The versions an {@code If-Match} header allows a write to, compared
+     * strongly, so weak tags never match. Null for {@code *}, which only
+     * requires the user to exist; an empty list if no tag is a version.
+     */
+    static List<Long> getVersions(String ifMatch) {
+        List<Long> versions = new ArrayList<>();
+        for (String tag : parse(ifMatch)) {
+            if ("*".equals(tag)) {
+                return null;
+            } else if (!tag.startsWith(WEAK_PREFIX)) {
+                try {
+                    versions.add(Long.parseLong(getOpaqueTag(tag)));
+                } catch (NumberFormatException e) {
+                    // not a tag of this service, so it matches no version
+                }
+            }
+        }
+        return versions;
+    }
+
+    /**
+     * Splits a header into its tags, each as written (quoted, with any
+     * {@code W/}), or {@code *}.
+     */
+    private static List<String> parse(String header) {
+        List<String> tags = new ArrayList<>();
+        int i = 0;
+        while (i < header.length()) {
+            char c = header.charAt(i);
+            if (c == ',' || Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '*') {
+                tags.add("*");
+                i++;
+            } else {
+                int start = i;
+                if (header.startsWith(WEAK_PREFIX, i)) {
+                    i += WEAK_PREFIX.length();
+                }
+                if (i < header.length() && header.charAt(i) == '"') {
+                    int end = header.indexOf('"', i + 1);
+                    i = end < 0 ? header.length() : end + 1;
+                } else {
+                    while (i < header.length() && header.charAt(i) != ',') {
+                        i++;
+                    }
+                }
+                tags.add(header.substring(start, i).trim());
+            }
+        }
+        return tags;
+    }
+
+    private static String getOpaqueTag(String tag) {
+        String opaqueTag = tag.startsWith(WEAK_PREFIX) ? tag.substring(WEAK_PREFIX.length()) : tag;
+        return opaqueTag.length() >= 2 && opaqueTag.startsWith("\"") && opaqueTag.endsWith("\"")
+                ? opaqueTag.substring(1, opaqueTag.length() - 1) : opaqueTag;
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        if (value != null) {
+            digest.update(value.getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
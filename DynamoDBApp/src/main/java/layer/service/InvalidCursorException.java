@@ -0,0 +1,12 @@
+package layer.service;
+
+/**
+ * A {@code cursor} query parameter that is malformed, was tampered with or
+ * was issued for another index or sorting than the request's.
+ */
+public class InvalidCursorException extends IllegalArgumentException {
+
+    public InvalidCursorException() {
+        super("Invalid cursor");
+    }
+}
@@ -0,0 +1,12 @@
+package layer.service;
+
+/**
+ * A user in a request body that fails validation, e.g. with links to social
+ * media the service does not know.
+ */
+public class InvalidUserException extends IllegalArgumentException {
+
+    public InvalidUserException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,81 @@
+package layer.service;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Escapes everything written through it as the contents of a JSON string,
+ * so a serialized body can be nested into the proxy response envelope
+ * while it is being produced.
+ */
+class JsonStringWriter extends Writer {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final Writer out;
+
+    JsonStringWriter(Writer out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        switch (c) {
+            case '"':
+                out.write("\\\"");
+                break;
+            case '\\':
+                out.write("\\\\");
+                break;
+            case '\n':
+                out.write("\\n");
+                break;
+            case '\r':
+                out.write("\\r");
+                break;
+            case '\t':
+                out.write("\\t");
+                break;
+            default:
+                if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                    out.write("\\u");
+                    out.write(HEX_DIGITS[(c >> 12) & 0xf]);
+                    out.write(HEX_DIGITS[(c >> 8) & 0xf]);
+                    out.write(HEX_DIGITS[(c >> 4) & 0xf]);
+                    out.write(HEX_DIGITS[c & 0xf]);
+                } else {
+                    out.write(c);
+                }
+        }
+    }
+
+    @Override
+    public void write(char[] buffer, int offset, int length) throws IOException {
+        int end = offset + length;
+        int plainStart = offset;
+        for (int i = offset; i < end; i++) {
+            char c = buffer[i];
+            if (c == '"' || c == '\\' || c < 0x20 || c == '\u2028' || c == '\u2029') {
+                out.write(buffer, plainStart, i - plainStart);
+                write(c);
+                plainStart = i + 1;
+            }
+        }
+        out.write(buffer, plainStart, end - plainStart);
+    }
+
+    @Override
+    public void write(String value, int offset, int length) throws IOException {
+        write(value.toCharArray(), offset, length);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+}
@@ -0,0 +1,69 @@
+package layer.service;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The recent latencies of one kind of read, for deciding when to hedge it:
+ * a read still running after the {@code HEDGING_PERCENTILE} of the last
+ * {@link #WINDOW} is sent a second time and the first response wins. The
+ * percentile is recomputed every {@link #REFRESH_INTERVAL} samples, so a
+ * read only pays for a lookup. Hedging is off unless {@code HEDGING_ENABLED}
+ * is set, since every hedge is a request that consumes capacity.
+ */
+final class LatencyTracker {
+
+    static final String ENABLED_VARIABLE = "HEDGING_ENABLED";
+    static final String PERCENTILE_VARIABLE = "HEDGING_PERCENTILE";
+    static final String MIN_DELAY_VARIABLE = "HEDGING_MIN_DELAY_MILLIS";
+    static final int DEFAULT_PERCENTILE = 95;
+    static final long DEFAULT_MIN_DELAY_MILLIS = 10;
+    static final int WINDOW = 256;
+    static final int MIN_SAMPLES = 32;
+    static final int REFRESH_INTERVAL = 32;
+
+    private final int percentile;
+    private final long minDelayMillis;
+    private final long[] samples = new long[WINDOW];
+    private int size;
+    private int next;
+    private int sinceRefresh;
+    private long delayMillis = -1;
+
+    LatencyTracker(int percentile, long minDelayMillis) {
+        this.percentile = Math.max(1, Math.min(100, percentile));
+        this.minDelayMillis = Math.max(0, minDelayMillis);
+    }
+
+    /**
+     * A tracker as configured, or null when hedging is disabled.
+     */
+    static LatencyTracker createForHedging() {
+        if (!Configuration.getBoolean(ENABLED_VARIABLE, false)) {
+            return null;
+        }
+        return new LatencyTracker(Configuration.getInt(PERCENTILE_VARIABLE, DEFAULT_PERCENTILE),
+                Configuration.getLong(MIN_DELAY_VARIABLE, DEFAULT_MIN_DELAY_MILLIS));
+    }
+
+    synchronized void record(long latencyNanos) {
+        samples[next] = latencyNanos;
+        next = (next + 1) % WINDOW;
+        size = Math.min(size + 1, WINDOW);
+        if (size >= MIN_SAMPLES && (delayMillis < 0 || ++sinceRefresh >= REFRESH_INTERVAL)) {
+            sinceRefresh = 0;
+            long[] sorted = Arrays.copyOf(samples, size);
+            Arrays.sort(sorted);
+            long percentileNanos = sorted[Math.min(size - 1, (int) Math.ceil(size * percentile / 100.0) - 1)];
+            delayMillis = Math.max(minDelayMillis, TimeUnit.NANOSECONDS.toMillis(percentileNanos));
+        }
+    }
+
+    /**
+     * How long to wait before hedging, or -1 while there are too few
+     * samples to tell.
+     */
+    synchronized long getHedgeDelayMillis() {
+        return delayMillis;
+    }
+}
@@ -0,0 +1,48 @@
+package layer.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the most recent metric lines in memory instead of logging them, for
+ * tests and benchmarks that check what an operation recorded.
+ */
+public class LocalMetricsSink implements MetricsSink {
+
+    public static final int DEFAULT_MAX_LINES = 1_000;
+
+    private final int maxLines;
+    private final ArrayDeque<String> lines = new ArrayDeque<>();
+
+    public LocalMetricsSink() {
+        this(DEFAULT_MAX_LINES);
+    }
+
+    public LocalMetricsSink(int maxLines) {
+        this.maxLines = Math.max(1, maxLines);
+    }
+
+    @Override
+    public synchronized void emit(String line) {
+        if (lines.size() == maxLines) {
+            lines.removeFirst();
+        }
+        lines.addLast(line);
+    }
+
+    /**
+     * The retained lines, oldest first.
+     */
+    public synchronized List<String> getLines() {
+        return new ArrayList<>(lines);
+    }
+
+    public synchronized String getLastLine() {
+        return lines.peekLast();
+    }
+
+    public synchronized void clear() {
+        lines.clear();
+    }
+}
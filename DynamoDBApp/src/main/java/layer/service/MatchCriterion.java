@@ -0,0 +1,107 @@
+package layer.service;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * One predicate of a {@code /match} request on the range key of a GSI:
+ * either a prefix of a string attribute or a range of a number attribute.
+ * The same predicate serves as the key condition when its index is the one
+ * queried, and as a term of the filter expression otherwise.
+ */
+final class MatchCriterion {
+
+    private static final double DEFAULT_PREFIX_SELECTIVITY = 0.1;
+
+    private final String indexName;
+    private final String attributeName;
+    private final AttributeValue lowValue;
+    private final AttributeValue upValue;
+    private final double defaultSelectivity;
+
+    private MatchCriterion(String indexName, String attributeName, AttributeValue lowValue, AttributeValue upValue,
+                           double defaultSelectivity) {
+        this.indexName = indexName;
+        this.attributeName = attributeName;
+        this.lowValue = lowValue;
+        this.upValue = upValue;
+        this.defaultSelectivity = defaultSelectivity;
+    }
+
+    static MatchCriterion beginsWith(String indexName, String attributeName, String prefix) {
+        return new MatchCriterion(indexName, attributeName, new AttributeValue().withS(prefix), null,
+                DEFAULT_PREFIX_SELECTIVITY);
+    }
+
+    /**
+     * @param domainWidth the width of the whole range of the attribute, used
+     *                    to guess the selectivity when there is no sample
+     */
+    static MatchCriterion between(String indexName, String attributeName, long lowValue, long upValue,
+                                  long domainWidth) {
+        double defaultSelectivity = Math.min(1, Math.max(0, (double) (upValue - lowValue) / domainWidth));
+        return new MatchCriterion(indexName, attributeName, new AttributeValue().withN(String.valueOf(lowValue)),
+                new AttributeValue().withN(String.valueOf(upValue)), defaultSelectivity);
+    }
+
+    String getIndexName() {
+        return indexName;
+    }
+
+    String getAttributeName() {
+        return attributeName;
+    }
+
+    /**
+     * Fraction of the items this predicate is guessed to match when no
+     * sample is available.
+     */
+    double getDefaultSelectivity() {
+        return defaultSelectivity;
+    }
+
+    String getExpression() {
+        if (upValue == null) {
+            return "begins_with(" + getNameLabel() + ", " + getValueLabel("") + ")";
+        }
+        return getNameLabel() + " BETWEEN " + getValueLabel("Low") + " AND " + getValueLabel("Up");
+    }
+
+    void addExpressionAttributes(Map<String, String> expressionAttributeNames,
+                                 Map<String, AttributeValue> expressionAttributeValues) {
+        expressionAttributeNames.put(getNameLabel(), attributeName);
+        if (upValue == null) {
+            expressionAttributeValues.put(getValueLabel(""), lowValue);
+        } else {
+            expressionAttributeValues.put(getValueLabel("Low"), lowValue);
+            expressionAttributeValues.put(getValueLabel("Up"), upValue);
+        }
+    }
+
+    /**
+     * Evaluates the predicate against an item the way DynamoDB would; a
+     * missing attribute never matches.
+     */
+    boolean matches(Map<String, AttributeValue> item) {
+        AttributeValue value = item.get(attributeName);
+        if (upValue == null) {
+            return value != null && value.getS() != null && value.getS().startsWith(lowValue.getS());
+        }
+        if (value == null || value.getN() == null) {
+            return false;
+        }
+        BigDecimal number = new BigDecimal(value.getN());
+        return number.compareTo(new BigDecimal(lowValue.getN())) >= 0
+                && number.compareTo(new BigDecimal(upValue.getN())) <= 0;
+    }
+
+    private String getNameLabel() {
+        return "#" + attributeName;
+    }
+
+    private String getValueLabel(String suffix) {
+        return ":" + attributeName + suffix;
+    }
+}
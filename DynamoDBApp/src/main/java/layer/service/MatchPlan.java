@@ -0,0 +1,135 @@
+package layer.service;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * How {@link MatchPlanner} answers a {@code /match} request: a query of one
+ * index within the country partition, narrowed by the criterion on its range
+ * key if there is one, with the other criteria pushed down as a
+ * {@code FilterExpression}. A sorted plan reads the index in the requested
+ * direction, so its results are already in order.
+ */
+final class MatchPlan {
+
+    static final int MAX_PAGE_ITEMS = 1_000;
+
+    private final String partitionKeyName;
+    private final AttributeValue partitionKeyValue;
+    private final String tableKeyName;
+    private final String indexName;
+    private final String rangeKeyName;
+    private final MatchCriterion keyCriterion;
+    private final List<MatchCriterion> filterCriteria;
+    private final double filterSelectivity;
+    private final Boolean scanIndexForward;
+
+    /**
+     * @param keyCriterion     the criterion on {@code rangeKeyName}, or null
+     * @param scanIndexForward the direction of a sorted plan, null if the
+     *                         order does not matter
+     */
+    MatchPlan(String partitionKeyName, AttributeValue partitionKeyValue, String tableKeyName, String indexName,
+              String rangeKeyName, MatchCriterion keyCriterion, List<MatchCriterion> filterCriteria,
+              double filterSelectivity, Boolean scanIndexForward) {
+        this.partitionKeyName = partitionKeyName;
+        this.partitionKeyValue = partitionKeyValue;
+        this.tableKeyName = tableKeyName;
+        this.indexName = indexName;
+        this.rangeKeyName = rangeKeyName;
+        this.keyCriterion = keyCriterion;
+        this.filterCriteria = filterCriteria;
+        this.filterSelectivity = filterSelectivity;
+        this.scanIndexForward = scanIndexForward;
+    }
+
+    String getIndexName() {
+        return indexName;
+    }
+
+    /**
+     * Whether the results come in the order of the index range key.
+     */
+    boolean isSorted() {
+        return scanIndexForward != null;
+    }
+
+    MatchCriterion getKeyCriterion() {
+        return keyCriterion;
+    }
+
+    /**
+     * Estimated fraction of the items read from the index that pass the
+     * filter.
+     */
+    double getFilterSelectivity() {
+        return filterSelectivity;
+    }
+
+    QueryRequest getQueryRequest(String tableName) {
+        String partitionKeyLabel = "#" + partitionKeyName;
+        Map<String, String> expressionAttributeNames = new HashMap<>();
+        Map<String, AttributeValue> expressionAttributeValues = new HashMap<>();
+        expressionAttributeNames.put(partitionKeyLabel, partitionKeyName);
+        expressionAttributeValues.put(":" + partitionKeyName, partitionKeyValue);
+        String keyConditionExpression = partitionKeyLabel + " = :" + partitionKeyName;
+        if (keyCriterion != null) {
+            keyCriterion.addExpressionAttributes(expressionAttributeNames, expressionAttributeValues);
+            keyConditionExpression += " AND " + keyCriterion.getExpression();
+        }
+
+        QueryRequest queryRequest = new QueryRequest()
+                .withTableName(tableName)
+                .withIndexName(indexName)
+                .withConsistentRead(false)
+                .withKeyConditionExpression(keyConditionExpression)
+                .withScanIndexForward(scanIndexForward);
+        if (!filterCriteria.isEmpty()) {
+            StringJoiner filterExpression = new StringJoiner(" AND ");
+            for (MatchCriterion filterCriterion : filterCriteria) {
+                filterCriterion.addExpressionAttributes(expressionAttributeNames, expressionAttributeValues);
+                filterExpression.add(filterCriterion.getExpression());
+            }
+            queryRequest.withFilterExpression(filterExpression.toString());
+        }
+        return queryRequest
+                .withExpressionAttributeNames(expressionAttributeNames)
+                .withExpressionAttributeValues(expressionAttributeValues);
+    }
+
+    /**
+     * How many index items to read for {@code remaining} more matches: enough
+     * that the filter is expected to leave that many, but no fewer than
+     * {@code remaining} and no more than {@link #MAX_PAGE_ITEMS} unless
+     * {@code remaining} itself is larger.
+     */
+    int getPageLimit(int remaining) {
+        double expectedItems = Math.ceil(remaining / Math.max(filterSelectivity, 1e-6));
+        return (int) Math.max(remaining, Math.min(MAX_PAGE_ITEMS, expectedItems));
+    }
+
+    /**
+     * The attributes an {@code ExclusiveStartKey} of the queried index is
+     * made of.
+     */
+    List<String> getKeyAttributeNames() {
+        return List.of(tableKeyName, partitionKeyName, rangeKeyName);
+    }
+
+    /**
+     * The {@code ExclusiveStartKey} that resumes the query right after the
+     * item. The partition is the plan's, so the item need not hold it.
+     */
+    Map<String, AttributeValue> getExclusiveStartKey(Map<String, AttributeValue> item) {
+        Map<String, AttributeValue> exclusiveStartKey = new HashMap<>();
+        exclusiveStartKey.put(tableKeyName, item.get(tableKeyName));
+        exclusiveStartKey.put(partitionKeyName, partitionKeyValue);
+        exclusiveStartKey.put(rangeKeyName, item.get(rangeKeyName));
+        return exclusiveStartKey;
+    }
+}
@@ -0,0 +1,295 @@
+package layer.service;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Chooses the index a {@code /match} request is answered from. Every
+ * criterion can be the key condition of its own GSI; the one expected to
+ * match the fewest items wins and the rest become the filter. Selectivity is
+ * measured on a sample of the table: the first {@code MATCH_SAMPLE_SIZE}
+ * items of a scan, projected to the criteria attributes and refreshed every
+ * ten minutes. The scan goes through the {@link AsyncDynamoDBClient}, so it
+ * is paced and in the metrics, and only one runs at a time: requests wait
+ * for the first sample, and after that keep planning with the old one while
+ * it is refreshed. A failed scan is retried after half a minute. Without a
+ * sample (sampling disabled, an empty table, or no scan succeeded yet) each
+ * criterion falls back to a fixed guess.
+ * <p>
+ * A sorted request is read from the index of the sort attribute in the
+ * requested direction when that is expected to read fewer items than
+ * sorting the matches of the most selective index in memory; with a limit,
+ * the ordered read stops as soon as the page is full. As every page of an
+ * in-memory sort reads all the matches again, it is only planned for at most
+ * {@code MATCH_SORT_MAX_ITEMS} expected matches.
+ */
+final class MatchPlanner {
+
+    static final String SAMPLE_SIZE_VARIABLE = "MATCH_SAMPLE_SIZE";
+    static final String TIME_BUDGET_VARIABLE = "MATCH_TIME_BUDGET_MILLIS";
+    static final int DEFAULT_SAMPLE_SIZE = 1_000;
+    static final String SORT_MAX_ITEMS_VARIABLE = "MATCH_SORT_MAX_ITEMS";
+    static final long DEFAULT_TIME_BUDGET_MILLIS = 10_000;
+    static final int DEFAULT_SORT_MAX_ITEMS = 5_000;
+    private static final long SAMPLE_REFRESH_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final long SAMPLE_RETRY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private static final Sample NO_SAMPLE = new Sample(List.of(), 0);
+
+    private final String tableName;
+    private final String tableKeyName;
+    private final String partitionKeyName;
+    private final AttributeValue partitionKeyValue;
+    private final List<String> sampledAttributeNames;
+    private final Metrics metrics;
+    private final AtomicReference<CompletableFuture<Sample>> refresh = new AtomicReference<>();
+
+    private volatile Sample cachedSample;
+    private volatile long cachedSampleExpiry;
+
+    /**
+     * @param sampledAttributeNames the attributes criteria can be on
+     * @param metrics               where the sample scans are recorded
+     */
+    MatchPlanner(String tableName, String tableKeyName, String partitionKeyName, String partitionKeyValue,
+                 List<String> sampledAttributeNames, Metrics metrics) {
+        this.tableName = tableName;
+        this.tableKeyName = tableKeyName;
+        this.partitionKeyName = partitionKeyName;
+        this.partitionKeyValue = new AttributeValue().withS(partitionKeyValue);
+        this.sampledAttributeNames = sampledAttributeNames;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Plans a query for the criteria; they may only be empty for a sorted
+     * request.
+     *
+     * @param sorting   the requested order, or null
+     * @param limit     the page size, or null for every match
+     * @param indexName the index a cursor of the request was issued for, or
+     *                  null; a matching criterion is kept as the key
+     *                  condition so the cursor stays valid
+     */
+    CompletableFuture<MatchPlan> plan(AsyncDynamoDBClient asyncClient, List<MatchCriterion> criteria,
+                                      UserSorting sorting, Integer limit, String indexName) {
+        return getSample(asyncClient).thenApply(sample -> plan(sample, criteria, sorting, limit, indexName));
+    }
+
+    private MatchPlan plan(Sample sample, List<MatchCriterion> criteria, UserSorting sorting, Integer limit,
+                           String indexName) {
+        MatchCriterion keyCriterion = null;
+        double keySelectivity = Double.MAX_VALUE;
+        for (MatchCriterion criterion : criteria) {
+            if (sorting == null && criterion.getIndexName().equals(indexName)) {
+                keyCriterion = criterion;
+                break;
+            }
+            double selectivity = getSelectivity(sample, List.of(criterion));
+            if (selectivity < keySelectivity) {
+                keyCriterion = criterion;
+                keySelectivity = selectivity;
+            }
+        }
+
+        if (sorting != null) {
+            MatchPlan sortedPlan = getSortedPlan(sample, criteria, sorting);
+            if (keyCriterion == null || sorting.getIndexName().equals(indexName)
+                    || sample.itemCount * keySelectivity > getSortMaxItems()) {
+                return sortedPlan;
+            } else if (indexName == null && isCheaper(sample, sortedPlan, limit, keySelectivity)) {
+                return sortedPlan;
+            }
+        }
+
+        List<MatchCriterion> filterCriteria = new ArrayList<>(criteria);
+        filterCriteria.remove(keyCriterion);
+        return new MatchPlan(partitionKeyName, partitionKeyValue, tableKeyName, keyCriterion.getIndexName(),
+                keyCriterion.getAttributeName(), keyCriterion, filterCriteria,
+                getFilterSelectivity(sample, keyCriterion, filterCriteria), null);
+    }
+
+    /**
+     * Plans the ordered read of the sort attribute's index, for a request
+     * whose in-memory sort turned out to have too many matches.
+     */
+    CompletableFuture<MatchPlan> planSorted(AsyncDynamoDBClient asyncClient, List<MatchCriterion> criteria,
+                                            UserSorting sorting) {
+        return getSample(asyncClient).thenApply(sample -> getSortedPlan(sample, criteria, sorting));
+    }
+
+    static long getTimeBudgetMillis() {
+        return Configuration.getLong(TIME_BUDGET_VARIABLE, DEFAULT_TIME_BUDGET_MILLIS);
+    }
+
+    /**
+     * The most matches an in-memory sort reads.
+     */
+    static int getSortMaxItems() {
+        return Configuration.getInt(SORT_MAX_ITEMS_VARIABLE, DEFAULT_SORT_MAX_ITEMS);
+    }
+
+    /**
+     * Reads the index of the sort attribute in order, narrowed by the
+     * criterion on that attribute if there is one.
+     */
+    private MatchPlan getSortedPlan(Sample sample, List<MatchCriterion> criteria, UserSorting sorting) {
+        MatchCriterion sortCriterion = null;
+        List<MatchCriterion> filterCriteria = new ArrayList<>();
+        for (MatchCriterion criterion : criteria) {
+            if (criterion.getIndexName().equals(sorting.getIndexName())) {
+                sortCriterion = criterion;
+            } else {
+                filterCriteria.add(criterion);
+            }
+        }
+        return new MatchPlan(partitionKeyName, partitionKeyValue, tableKeyName, sorting.getIndexName(),
+                sorting.getAttributeName(), sortCriterion, filterCriteria,
+                getFilterSelectivity(sample, sortCriterion, filterCriteria), sorting.isAscending());
+    }
+
+    /**
+     * Compares the items the ordered read is expected to go through with the
+     * matches of the most selective criterion, which an in-memory sort has to
+     * read in full. Without a table size to estimate either, the ordered read
+     * is taken only when a criterion narrows it.
+     */
+    private static boolean isCheaper(Sample sample, MatchPlan sortedPlan, Integer limit, double keySelectivity) {
+        MatchCriterion sortCriterion = sortedPlan.getKeyCriterion();
+        if (sample.itemCount <= 0) {
+            return sortCriterion != null;
+        }
+        double sortedItems = sample.itemCount
+                * (sortCriterion == null ? 1 : getSelectivity(sample, List.of(sortCriterion)));
+        if (limit != null) {
+            sortedItems = Math.min(sortedItems, limit / sortedPlan.getFilterSelectivity());
+        }
+        return sortedItems <= sample.itemCount * keySelectivity;
+    }
+
+    /**
+     * Fraction of the sample matching all the criteria, with half an item
+     * added so that no criterion is ever estimated to match nothing.
+     */
+    private static double getSelectivity(Sample sample, List<MatchCriterion> criteria) {
+        if (sample.items.isEmpty()) {
+            double selectivity = 1;
+            for (MatchCriterion criterion : criteria) {
+                selectivity *= criterion.getDefaultSelectivity();
+            }
+            return selectivity;
+        }
+        return (countMatches(sample, criteria) + 0.5) / sample.items.size();
+    }
+
+    /**
+     * Fraction of the sampled key matches that the filter keeps, which
+     * accounts for correlated criteria (names and locations are not
+     * independent); when the sample has no key match the criteria are
+     * assumed independent.
+     */
+    private static double getFilterSelectivity(Sample sample, MatchCriterion keyCriterion,
+                                               List<MatchCriterion> filterCriteria) {
+        if (filterCriteria.isEmpty()) {
+            return 1;
+        }
+        List<MatchCriterion> keyCriteria = keyCriterion == null ? List.of() : List.of(keyCriterion);
+        int keyMatches = countMatches(sample, keyCriteria);
+        if (keyMatches == 0) {
+            return Math.min(1, getSelectivity(sample, filterCriteria));
+        }
+        List<MatchCriterion> criteria = new ArrayList<>(filterCriteria);
+        criteria.addAll(keyCriteria);
+        return Math.min(1, (countMatches(sample, criteria) + 0.5) / (keyMatches + 1));
+    }
+
+    private static int countMatches(Sample sample, List<MatchCriterion> criteria) {
+        int matches = 0;
+        for (Map<String, AttributeValue> item : sample.items) {
+            if (criteria.stream().allMatch(criterion -> criterion.matches(item))) {
+                matches++;
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * The current sample, starting a refresh if it has expired and none is
+     * running. Only a caller with no sample at all waits for the refresh.
+     */
+    private CompletableFuture<Sample> getSample(AsyncDynamoDBClient asyncClient) {
+        Sample sample = cachedSample;
+        if (System.currentTimeMillis() < cachedSampleExpiry) {
+            return CompletableFuture.completedFuture(sample == null ? NO_SAMPLE : sample);
+        }
+        CompletableFuture<Sample> started = new CompletableFuture<>();
+        CompletableFuture<Sample> running = refresh.compareAndExchange(null, started);
+        if (running == null) {
+            running = started;
+            OperationMetrics operationMetrics = metrics.start("refreshMatchSample");
+            operationMetrics.emitOnCompletion(readSample(asyncClient, operationMetrics)).whenComplete((read, e) -> {
+                if (e == null) {
+                    cachedSample = read;
+                }
+                cachedSampleExpiry = System.currentTimeMillis()
+                        + (e == null ? SAMPLE_REFRESH_MILLIS : SAMPLE_RETRY_MILLIS);
+                refresh.set(null);
+                Sample current = cachedSample;
+                started.complete(current == null ? NO_SAMPLE : current);
+            });
+        }
+        return sample == null ? running : CompletableFuture.completedFuture(sample);
+    }
+
+    /**
+     * The table size comes from the scan itself when it reached the end of
+     * the table, otherwise from the (approximate) DescribeTable item count.
+     */
+    private CompletableFuture<Sample> readSample(AsyncDynamoDBClient asyncClient,
+                                                 OperationMetrics operationMetrics) {
+        int sampleSize = Configuration.getInt(SAMPLE_SIZE_VARIABLE, DEFAULT_SAMPLE_SIZE);
+        if (sampleSize <= 0) {
+            return CompletableFuture.completedFuture(NO_SAMPLE);
+        }
+        Map<String, String> expressionAttributeNames = new HashMap<>();
+        StringJoiner projectionExpression = new StringJoiner(", ");
+        for (String attributeName : sampledAttributeNames) {
+            expressionAttributeNames.put("#" + attributeName, attributeName);
+            projectionExpression.add("#" + attributeName);
+        }
+        return asyncClient.scan(new ScanRequest()
+                .withTableName(tableName)
+                .withLimit(sampleSize)
+                .withProjectionExpression(projectionExpression.toString())
+                .withExpressionAttributeNames(expressionAttributeNames), operationMetrics)
+                .thenCompose(scanResult -> {
+                    List<Map<String, AttributeValue>> items = scanResult.getItems();
+                    if (scanResult.getLastEvaluatedKey() == null || scanResult.getLastEvaluatedKey().isEmpty()) {
+                        return CompletableFuture.completedFuture(new Sample(items, items.size()));
+                    }
+                    return asyncClient.describeTable(tableName, operationMetrics).handle((result, e) -> {
+                        Long itemCount = e == null ? result.getTable().getItemCount() : null;
+                        return new Sample(items, itemCount == null ? 0 : Math.max(itemCount, items.size()));
+                    });
+                });
+    }
+
+    private static final class Sample {
+
+        private final List<Map<String, AttributeValue>> items;
+        private final long itemCount;
+
+        private Sample(List<Map<String, AttributeValue>> items, long itemCount) {
+            this.items = items;
+            this.itemCount = itemCount;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package layer.service;
+
+/**
+ * Per-operation metrics of the service, written as one CloudWatch embedded
+ * metric format (EMF) line per operation with the dimensions
+ * {@code Operation}, {@code Index} and {@code Paginated}. Recording is on
+ * unless {@code METRICS_ENABLED} is false; the namespace is
+ * {@code METRICS_NAMESPACE}. Everything but the values is formatted once, so
+ * an operation costs a single line of output.
+ */
+public final class Metrics {
+
+    public static final String ENABLED_VARIABLE = "METRICS_ENABLED";
+    public static final String NAMESPACE_VARIABLE = "METRICS_NAMESPACE";
+    public static final String DEFAULT_NAMESPACE = "ITMarathon/Users";
+
+    private static final String MILLISECONDS = "Milliseconds";
+    private static final String COUNT = "Count";
+    private static final String[][] METRIC_DEFINITIONS = {
+            {"Latency", MILLISECONDS},
+            {"ParseTime", MILLISECONDS},
+            {"DynamoDBTime", MILLISECONDS},
+            {"SerializeTime", MILLISECONDS},
+            {"DynamoDBCalls", COUNT},
+            {"ReadCapacityUnits", COUNT},
+            {"WriteCapacityUnits", COUNT},
+            {"IndexCapacityUnits", COUNT},
+            {"ItemsScanned", COUNT},
+            {"ItemsReturned", COUNT},
+            {"Errors", COUNT}
+    };
+    private static final int LINE_CAPACITY = 1_024;
+    private static final double NANOS_PER_MILLISECOND = 1_000_000.0;
+
+    private final MetricsSink sink;
+    private final boolean enabled;
+    private final String directive;
+
+    /**
+     * Writes to standard output, where Lambda hands the lines to CloudWatch.
+     */
+    public Metrics() {
+        this(MetricsSink.STDOUT);
+    }
+
+    public Metrics(MetricsSink sink) {
+        this(sink, Configuration.getBoolean(ENABLED_VARIABLE, true),
+                getNamespace(Configuration.getString(NAMESPACE_VARIABLE)));
+    }
+
+    public Metrics(MetricsSink sink, boolean enabled, String namespace) {
+        this.sink = sink;
+        this.enabled = enabled;
+        this.directive = getDirective(namespace);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts recording an operation; with metrics disabled nothing is
+     * recorded or emitted.
+     */
+    OperationMetrics start(String operation) {
+        return enabled ? new OperationMetrics(this, operation) : OperationMetrics.DISABLED;
+    }
+
+    void emit(OperationMetrics operationMetrics) {
+        StringBuilder line = new StringBuilder(LINE_CAPACITY)
+                .append("{\"_aws\":{\"Timestamp\":").append(System.currentTimeMillis())
+                .append(directive)
+                .append(",\"Operation\":\"").append(operationMetrics.getOperation())
+                .append("\",\"Index\":\"").append(operationMetrics.getIndexName())
+                .append("\",\"Paginated\":\"").append(operationMetrics.isPaginated()).append('"');
+        appendMillis(line, "Latency", operationMetrics.getLatencyNanos());
+        appendMillis(line, "ParseTime", operationMetrics.getParseNanos());
+        appendMillis(line, "DynamoDBTime", operationMetrics.getDynamoDBNanos());
+        appendMillis(line, "SerializeTime", operationMetrics.getSerializeNanos());
+        line.append(",\"DynamoDBCalls\":").append(operationMetrics.getCalls())
+                .append(",\"ReadCapacityUnits\":").append(operationMetrics.getReadCapacityUnits())
+                .append(",\"WriteCapacityUnits\":").append(operationMetrics.getWriteCapacityUnits())
+                .append(",\"IndexCapacityUnits\":").append(operationMetrics.getIndexCapacityUnits())
+                .append(",\"ItemsScanned\":").append(operationMetrics.getItemsScanned())
+                .append(",\"ItemsReturned\":").append(operationMetrics.getItemsReturned())
+                .append(",\"Errors\":").append(operationMetrics.isFailed() ? 1 : 0)
+                .append('}');
+        sink.emit(line.toString());
+    }
+
+    private static void appendMillis(StringBuilder line, String name, long nanos) {
+        line.append(",\"").append(name).append("\":").append(Math.max(0, nanos) / NANOS_PER_MILLISECOND);
+    }
+
+    private static String getNamespace(String namespace) {
+        return namespace == null ? DEFAULT_NAMESPACE : namespace;
+    }
+
+    /**
+     * The rest of the {@code _aws} metadata after the timestamp, which is the
+     * same for every line.
+     */
+    private static String getDirective(String namespace) {
+        StringBuilder directive = new StringBuilder(",\"CloudWatchMetrics\":[{\"Namespace\":\"")
+                .append(namespace.replace("\\", "\\\\").replace("\"", "\\\""))
+                .append("\",\"Dimensions\":[[\"Operation\",\"Index\",\"Paginated\"]],\"Metrics\":[");
+        for (int i = 0; i < METRIC_DEFINITIONS.length; i++) {
+            directive.append(i == 0 ? "" : ",")
+                    .append("{\"Name\":\"").append(METRIC_DEFINITIONS[i][0])
+                    .append("\",\"Unit\":\"").append(METRIC_DEFINITIONS[i][1]).append("\"}");
+        }
+        return directive.append("]}]}").toString();
+    }
+}
@@ -0,0 +1,13 @@
+package layer.service;
+
+/**
+ * Where {@link Metrics} writes its embedded metric format lines. In Lambda
+ * standard output goes to CloudWatch Logs, which extracts the metrics.
+ */
+@FunctionalInterface
+public interface MetricsSink {
+
+    MetricsSink STDOUT = System.out::println;
+
+    void emit(String line);
+}
@@ -0,0 +1,304 @@
+package layer.service;
+
+import layer.model.User;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+/**
+ * In-container prefix index of user names for as-you-type search. Names are
+ * normalized (diacritics stripped, case folded, whitespace collapsed) and
+ * every word of a name is a key, so {@code "petr"} finds "Ivan Petrenko".
+ * The keys are one sorted array: a lookup is a binary search and a walk over
+ * the keys with the prefix, ranked by {@link #RANKING} through a
+ * {@link TopK}.
+ * <p>
+ * The snapshot is rebuilt from {@code country-name-index} once it is older
+ * than {@code AUTOCOMPLETE_REFRESH_MILLIS}, an hour by default, plus up to
+ * a quarter of that at random so that containers started together do not
+ * read the index together. A rebuild reads every user, so it is not worth
+ * doing often; in between, users written by this container are kept in an
+ * overlay that shadows the snapshot, and those written by others show up
+ * with the next rebuild. Until the first snapshot is built there is nothing
+ * to answer from, and {@link #suggest(String, int)} returns null.
+ */
+public class NameAutocomplete {
+
+    public static final String ENABLED_VARIABLE = "AUTOCOMPLETE_ENABLED";
+    public static final String REFRESH_VARIABLE = "AUTOCOMPLETE_REFRESH_MILLIS";
+    public static final long DEFAULT_REFRESH_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * Changes older than this before a rebuild started are expected to be
+     * in the index it read, which is only eventually consistent.
+     */
+    private static final long PROPAGATION_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[\\s\\p{Pd}'\\u2019]+");
+
+    /**
+     * Matches on the first word before later words, then shorter names, then
+     * by name and email.
+     */
+    private static final Comparator<Suggestion> RANKING = Comparator.comparingInt(Suggestion::getWordPosition)
+            .thenComparingInt(suggestion -> suggestion.normalizedName.length())
+            .thenComparing(suggestion -> suggestion.normalizedName)
+            .thenComparing(suggestion -> suggestion.email);
+
+    private final boolean enabled;
+    private final long refreshNanos;
+    private final Map<String, Change> changes = new ConcurrentHashMap<>();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    private volatile Snapshot snapshot;
+
+    public NameAutocomplete() {
+        this(Configuration.getBoolean(ENABLED_VARIABLE, true),
+                Configuration.getLong(REFRESH_VARIABLE, DEFAULT_REFRESH_MILLIS));
+    }
+
+    public NameAutocomplete(boolean enabled, long refreshMillis) {
+        this.enabled = enabled;
+        this.refreshNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, refreshMillis));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isReady() {
+        return snapshot != null;
+    }
+
+    /**
+     * Claims the rebuild when the snapshot is missing or stale; the caller
+     * must follow with {@link #install(List, long)} or
+     * {@link #refreshFailed()}.
+     */
+    public boolean tryStartRefresh() {
+        Snapshot current = snapshot;
+        return enabled && (current == null || System.nanoTime() - current.builtNanos >= current.refreshNanos)
+                && refreshing.compareAndSet(false, true);
+    }
+
+    /**
+     * Replaces the snapshot with the users read by a rebuild that started at
+     * {@code startedNanos}.
+     */
+    public void install(List<User> users, long startedNanos) {
+        snapshot = new Snapshot(users, startedNanos,
+                refreshNanos + ThreadLocalRandom.current().nextLong(refreshNanos / 4 + 1));
+        changes.values().removeIf(change -> startedNanos - change.changedNanos > PROPAGATION_NANOS);
+        refreshing.set(false);
+    }
+
+    public void refreshFailed() {
+        refreshing.set(false);
+    }
+
+    /**
+     * Records a created or updated user. Nothing is recorded while there is
+     * no snapshot to overlay, so the overlay only lives between rebuilds.
+     */
+    public void put(String email, String name) {
+        if (email != null && (snapshot != null || refreshing.get())) {
+            changes.put(email, new Change(email, name, System.nanoTime()));
+        }
+    }
+
+    public void remove(String email) {
+        put(email, null);
+    }
+
+    /**
+     * The first {@code limit} users whose name has a word starting with the
+     * prefix, with only email and name set, or null before the first
+     * snapshot is built.
+     */
+    public List<User> suggest(String prefix, int limit) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            return null;
+        }
+        String normalizedPrefix = normalize(prefix);
+        TopK<Suggestion> suggestions = new TopK<>(limit, RANKING);
+        boolean changed = !changes.isEmpty();
+        for (int i = current.lowerBound(normalizedPrefix); i < current.keys.length; i++) {
+            if (!current.keys[i].startsWith(normalizedPrefix)) {
+                break;
+            }
+            Suggestion suggestion = current.suggestions[i];
+            if (changed && changes.containsKey(suggestion.email)) {
+                continue;
+            }
+            // a name with several matching words is only offered for the first
+            if (getWordPosition(suggestion.normalizedName, normalizedPrefix) == suggestion.wordPosition) {
+                suggestions.offer(suggestion);
+            }
+        }
+        if (changed) {
+            for (Change change : changes.values()) {
+                int wordPosition = change.normalizedName == null ? -1
+                        : getWordPosition(change.normalizedName, normalizedPrefix);
+                if (wordPosition >= 0) {
+                    suggestions.offer(new Suggestion(change.email, change.name, change.normalizedName,
+                            wordPosition));
+                }
+            }
+        }
+
+        List<User> users = new ArrayList<>(Math.min(limit, 64));
+        for (Suggestion suggestion : suggestions.toSortedList()) {
+            User user = new User();
+            user.setEmail(suggestion.email);
+            user.setName(suggestion.name);
+            users.add(user);
+        }
+        return users;
+    }
+
+    public int getSize() {
+        Snapshot current = snapshot;
+        return current == null ? 0 : current.size;
+    }
+
+    /**
+     * Case and accent insensitive form of a name: accents are stripped after
+     * decomposing, so {@code "  Zoe-Chloe"} with accents on the e's becomes
+     * {@code "zoe chloe"}.
+     */
+    static String normalize(String name) {
+        String decomposed = Normalizer.normalize(name, Normalizer.Form.NFD);
+        String folded = MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+        return SEPARATORS.matcher(folded).replaceAll(" ").trim();
+    }
+
+    /**
+     * The position of the first word of the normalized name that starts with
+     * the prefix, or -1 if none does.
+     */
+    private static int getWordPosition(String normalizedName, String normalizedPrefix) {
+        int position = 0;
+        int start = 0;
+        while (true) {
+            if (normalizedName.startsWith(normalizedPrefix, start)) {
+                return position;
+            }
+            start = normalizedName.indexOf(' ', start) + 1;
+            if (start == 0) {
+                return -1;
+            }
+            position++;
+        }
+    }
+
+    private static final class Change {
+
+        private final String email;
+        private final String name;
+        private final String normalizedName;
+        private final long changedNanos;
+
+        private Change(String email, String name, long changedNanos) {
+            this.email = email;
+            this.name = name;
+            this.normalizedName = name == null ? null : normalize(name);
+            this.changedNanos = changedNanos;
+        }
+    }
+
+    private static final class Suggestion {
+
+        private final String email;
+        private final String name;
+        private final String normalizedName;
+        private final int wordPosition;
+
+        private Suggestion(String email, String name, String normalizedName, int wordPosition) {
+            this.email = email;
+            this.name = name;
+            this.normalizedName = normalizedName;
+            this.wordPosition = wordPosition;
+        }
+
+        int getWordPosition() {
+            return wordPosition;
+        }
+    }
+
+    /**
+     * One key per word of every name, sorted, with the suggestion it stands
+     * for in a parallel array; the suggestions are built once, so a lookup
+     * allocates nothing per match.
+     */
+    private static final class Snapshot {
+
+        private final int size;
+        private final String[] keys;
+        private final Suggestion[] suggestions;
+        private final long builtNanos;
+        private final long refreshNanos;
+
+        private Snapshot(List<User> users, long builtNanos, long refreshNanos) {
+            List<String> unsortedKeys = new ArrayList<>(users.size() * 2);
+            List<Suggestion> unsortedSuggestions = new ArrayList<>(users.size() * 2);
+            int named = 0;
+            for (User user : users) {
+                String normalizedName = user.getName() == null ? "" : normalize(user.getName());
+                if (user.getEmail() == null || normalizedName.isEmpty()) {
+                    continue;
+                }
+                named++;
+                int position = 0;
+                int start = 0;
+                do {
+                    unsortedKeys.add(normalizedName.substring(start));
+                    unsortedSuggestions.add(new Suggestion(user.getEmail(), user.getName(), normalizedName,
+                            position++));
+                    start = normalizedName.indexOf(' ', start) + 1;
+                } while (start > 0);
+            }
+
+            Integer[] order = new Integer[unsortedKeys.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparing(unsortedKeys::get));
+            this.size = named;
+            this.keys = new String[order.length];
+            this.suggestions = new Suggestion[order.length];
+            for (int i = 0; i < order.length; i++) {
+                keys[i] = unsortedKeys.get(order[i]);
+                suggestions[i] = unsortedSuggestions.get(order[i]);
+            }
+            this.builtNanos = builtNanos;
+            this.refreshNanos = refreshNanos;
+        }
+
+        /**
+         * The first key not less than the prefix.
+         */
+        int lowerBound(String prefix) {
+            int low = 0;
+            int high = keys.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (keys[middle].compareTo(prefix) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+}
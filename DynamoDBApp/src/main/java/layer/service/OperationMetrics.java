@@ -0,0 +1,270 @@
+package layer.service;
+
+import com.amazonaws.services.dynamodbv2.model.Capacity;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * What one service operation spent, from its start until it is emitted: the
+ * time in each phase, every DynamoDB call with the capacity it consumed, and
+ * the items the reads scanned and returned. Only counters are kept, so
+ * recording allocates nothing; calls of one operation run concurrently,
+ * hence the locking.
+ * <p>
+ * DynamoDB time is the time at least one call was in flight, so concurrent
+ * calls are not counted twice, and the serialization time excludes the calls
+ * a lazily read list makes while it is written.
+ */
+final class OperationMetrics {
+
+    static final String TABLE_INDEX = "table";
+
+    /**
+     * Records nothing, for calls made outside of any operation.
+     */
+    static final OperationMetrics DISABLED = new OperationMetrics(null, null);
+
+    private final Metrics metrics;
+    private final String operation;
+    private final long startNanos = System.nanoTime();
+
+    private String indexName = TABLE_INDEX;
+    private boolean paginated;
+    private int inFlightCalls;
+    private long busyStartNanos;
+    private long busyNanos;
+    private int calls;
+    private double readCapacityUnits;
+    private double writeCapacityUnits;
+    private double indexCapacityUnits;
+    private long itemsScanned;
+    private long itemsReturned;
+    private long parseNanos;
+    private long serializeNanos;
+    private long serializeStartBusyNanos;
+    private boolean failed;
+    private boolean emitted;
+
+    OperationMetrics(Metrics metrics, String operation) {
+        this.metrics = metrics;
+        this.operation = operation;
+    }
+
+    synchronized void setIndexName(String indexName) {
+        if (indexName != null) {
+            this.indexName = indexName;
+        }
+    }
+
+    synchronized void setPaginated(boolean paginated) {
+        this.paginated = paginated;
+    }
+
+    /**
+     * @return the start to pass to {@link #parseCompleted(long)}
+     */
+    long parseStarted() {
+        return metrics == null ? 0 : System.nanoTime();
+    }
+
+    synchronized void parseCompleted(long parseStartNanos) {
+        if (metrics != null) {
+            parseNanos += System.nanoTime() - parseStartNanos;
+        }
+    }
+
+    /**
+     * @return the start to pass to {@link #serializeCompleted(long)}
+     */
+    synchronized long serializeStarted() {
+        if (metrics == null) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        serializeStartBusyNanos = getBusyNanos(now);
+        return now;
+    }
+
+    synchronized void serializeCompleted(long serializeStartNanos) {
+        if (metrics != null) {
+            long now = System.nanoTime();
+            serializeNanos += now - serializeStartNanos - (getBusyNanos(now) - serializeStartBusyNanos);
+        }
+    }
+
+    synchronized void callStarted() {
+        if (metrics != null && inFlightCalls++ == 0) {
+            busyStartNanos = System.nanoTime();
+        }
+    }
+
+    synchronized void callCompleted(boolean write, ConsumedCapacity consumedCapacity, int scanned, int returned) {
+        if (metrics == null) {
+            return;
+        }
+        callCompleted();
+        addCapacity(write, consumedCapacity);
+        itemsScanned += scanned;
+        itemsReturned += returned;
+    }
+
+    synchronized void callCompleted(boolean write, List<ConsumedCapacity> consumedCapacity, int scanned,
+                                    int returned) {
+        if (metrics == null) {
+            return;
+        }
+        callCompleted();
+        if (consumedCapacity != null) {
+            for (ConsumedCapacity tableCapacity : consumedCapacity) {
+                addCapacity(write, tableCapacity);
+            }
+        }
+        itemsScanned += scanned;
+        itemsReturned += returned;
+    }
+
+    synchronized void callFailed() {
+        if (metrics != null) {
+            callCompleted();
+        }
+    }
+
+    synchronized void failed() {
+        failed = true;
+    }
+
+    /**
+     * Emits the metrics when {@code future} completes; a failed future counts
+     * as an error.
+     */
+    <T> CompletableFuture<T> emitOnCompletion(CompletableFuture<T> future) {
+        if (metrics == null) {
+            return future;
+        }
+        return future.whenComplete((result, e) -> {
+            if (e != null) {
+                failed();
+            }
+            emit();
+        });
+    }
+
+    /**
+     * Emits the metrics if {@code future} fails, for an operation that
+     * otherwise ends after the future, e.g. when its response is written.
+     */
+    <T> CompletableFuture<T> emitOnFailure(CompletableFuture<T> future) {
+        if (metrics == null) {
+            return future;
+        }
+        return future.whenComplete((result, e) -> {
+            if (e != null) {
+                failed();
+                emit();
+            }
+        });
+    }
+
+    /**
+     * Emits the metrics once; later calls are ignored.
+     */
+    void emit() {
+        if (metrics == null) {
+            return;
+        }
+        synchronized (this) {
+            if (emitted) {
+                return;
+            }
+            emitted = true;
+        }
+        metrics.emit(this);
+    }
+
+    String getOperation() {
+        return operation;
+    }
+
+    synchronized String getIndexName() {
+        return indexName;
+    }
+
+    synchronized boolean isPaginated() {
+        return paginated;
+    }
+
+    long getLatencyNanos() {
+        return System.nanoTime() - startNanos;
+    }
+
+    synchronized long getParseNanos() {
+        return parseNanos;
+    }
+
+    synchronized long getDynamoDBNanos() {
+        return getBusyNanos(System.nanoTime());
+    }
+
+    synchronized long getSerializeNanos() {
+        return serializeNanos;
+    }
+
+    synchronized int getCalls() {
+        return calls;
+    }
+
+    synchronized double getReadCapacityUnits() {
+        return readCapacityUnits;
+    }
+
+    synchronized double getWriteCapacityUnits() {
+        return writeCapacityUnits;
+    }
+
+    synchronized double getIndexCapacityUnits() {
+        return indexCapacityUnits;
+    }
+
+    synchronized long getItemsScanned() {
+        return itemsScanned;
+    }
+
+    synchronized long getItemsReturned() {
+        return itemsReturned;
+    }
+
+    synchronized boolean isFailed() {
+        return failed;
+    }
+
+    private void callCompleted() {
+        calls++;
+        if (--inFlightCalls == 0) {
+            busyNanos += System.nanoTime() - busyStartNanos;
+        }
+    }
+
+    private void addCapacity(boolean write, ConsumedCapacity consumedCapacity) {
+        if (consumedCapacity == null || consumedCapacity.getCapacityUnits() == null) {
+            return;
+        }
+        if (write) {
+            writeCapacityUnits += consumedCapacity.getCapacityUnits();
+        } else {
+            readCapacityUnits += consumedCapacity.getCapacityUnits();
+        }
+        if (consumedCapacity.getGlobalSecondaryIndexes() != null) {
+            for (Capacity indexCapacity : consumedCapacity.getGlobalSecondaryIndexes().values()) {
+                if (indexCapacity.getCapacityUnits() != null) {
+                    indexCapacityUnits += indexCapacity.getCapacityUnits();
+                }
+            }
+        }
+    }
+
+    private long getBusyNanos(long now) {
+        return inFlightCalls > 0 ? busyNanos + now - busyStartNanos : busyNanos;
+    }
+}
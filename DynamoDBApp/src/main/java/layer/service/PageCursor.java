@@ -0,0 +1,144 @@
+package layer.service;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Opaque continuation token for a paginated scan or query: the full
+ * {@code LastEvaluatedKey} together with the index it belongs to, written
+ * as a versioned binary record and encoded as unpadded URL-safe Base64.
+ * A cursor only resumes the index (or the table) it was issued for.
+ */
+final class PageCursor {
+
+    private static final int VERSION = 1;
+    private static final String TABLE = "";
+
+    private PageCursor() {
+    }
+
+    /**
+     * Returns the cursor for the next page, or null on the last page.
+     *
+     * @param indexName the index that was queried, null for the table
+     */
+    static String encode(String indexName, Map<String, AttributeValue> lastEvaluatedKey) {
+        if (lastEvaluatedKey == null || lastEvaluatedKey.isEmpty()) {
+            return null;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream output = new DataOutputStream(bytes)) {
+            output.writeByte(VERSION);
+            output.writeUTF(indexName == null ? TABLE : indexName);
+            output.writeByte(lastEvaluatedKey.size());
+            for (Map.Entry<String, AttributeValue> attribute : new TreeMap<>(lastEvaluatedKey).entrySet()) {
+                output.writeUTF(attribute.getKey());
+                writeValue(output, attribute.getValue());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    /**
+     * Returns the {@code ExclusiveStartKey} of the cursor, or null for the
+     * first page.
+     *
+     * @throws InvalidCursorException if the cursor is malformed or was
+     *                                issued for another index
+     */
+    static Map<String, AttributeValue> decode(String indexName, String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try (DataInputStream input = new DataInputStream(
+                new ByteArrayInputStream(Base64.getUrlDecoder().decode(cursor)))) {
+            if (input.readUnsignedByte() != VERSION
+                    || !Objects.equals(input.readUTF(), indexName == null ? TABLE : indexName)) {
+                throw getInvalidCursorException();
+            }
+            int attributeCount = input.readUnsignedByte();
+            Map<String, AttributeValue> exclusiveStartKey = new HashMap<>();
+            for (int i = 0; i < attributeCount; i++) {
+                exclusiveStartKey.put(input.readUTF(), readValue(input));
+            }
+            if (input.read() != -1 || exclusiveStartKey.isEmpty()) {
+                throw getInvalidCursorException();
+            }
+            return exclusiveStartKey;
+        } catch (IOException | IllegalArgumentException e) {
+            throw getInvalidCursorException();
+        }
+    }
+
+    /**
+     * Returns the index the cursor was issued for, or null for a table
+     * cursor and for the first page.
+     *
+     * @throws InvalidCursorException if the cursor is malformed
+     */
+    static String getIndexName(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try (DataInputStream input = new DataInputStream(
+                new ByteArrayInputStream(Base64.getUrlDecoder().decode(cursor)))) {
+            if (input.readUnsignedByte() != VERSION) {
+                throw getInvalidCursorException();
+            }
+            String indexName = input.readUTF();
+            return TABLE.equals(indexName) ? null : indexName;
+        } catch (IOException | IllegalArgumentException e) {
+            throw getInvalidCursorException();
+        }
+    }
+
+    private static void writeValue(DataOutputStream output, AttributeValue value) throws IOException {
+        if (value.getS() != null) {
+            output.writeByte('S');
+            output.writeUTF(value.getS());
+        } else if (value.getN() != null) {
+            output.writeByte('N');
+            output.writeUTF(value.getN());
+        } else if (value.getB() != null) {
+            ByteBuffer buffer = value.getB().duplicate();
+            byte[] binary = new byte[buffer.remaining()];
+            buffer.get(binary);
+            output.writeByte('B');
+            output.writeShort(binary.length);
+            output.write(binary);
+        } else {
+            throw new IllegalArgumentException("Key attributes can only be strings, numbers or binary");
+        }
+    }
+
+    private static AttributeValue readValue(DataInputStream input) throws IOException {
+        int type = input.readUnsignedByte();
+        if (type == 'S') {
+            return new AttributeValue().withS(input.readUTF());
+        } else if (type == 'N') {
+            return new AttributeValue().withN(input.readUTF());
+        } else if (type == 'B') {
+            byte[] binary = new byte[input.readUnsignedShort()];
+            input.readFully(binary);
+            return new AttributeValue().withB(ByteBuffer.wrap(binary));
+        } else throw getInvalidCursorException();
+    }
+
+    private static InvalidCursorException getInvalidCursorException() {
+        return new InvalidCursorException();
+    }
+}
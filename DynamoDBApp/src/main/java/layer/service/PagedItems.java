@@ -0,0 +1,148 @@
+package layer.service;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperTableModel;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Every page of a scan or query as one sequence that is read while it is
+ * iterated, like the mapper's {@code ITERATION_ONLY} lists: the first page is
+ * loaded up front, each next one when the iterator reaches it, on the
+ * iterating thread. Only one page is held at a time, so the items can be
+ * iterated once and have no size; they are an {@link Iterable} and not a
+ * {@link List} for that reason.
+ * <p>
+ * The pages of several loaders, e.g. the segments of a parallel scan, are
+ * taken from each loader in turn. Every loader reads its next page while the
+ * current one is iterated, so at most one page per loader is buffered.
+ */
+final class PagedItems<T> implements Iterable<T> {
+
+    private final DynamoDBMapperTableModel<T> tableModel;
+    private Deque<Source> sources;
+
+    private PagedItems(DynamoDBMapperTableModel<T> tableModel, Deque<Source> sources) {
+        this.tableModel = tableModel;
+        this.sources = sources;
+    }
+
+    /**
+     * Completes with the items once their first page is loaded.
+     */
+    static <T> CompletableFuture<Iterable<T>> load(DynamoDBMapperTableModel<T> tableModel, PageLoader pageLoader) {
+        return load(tableModel, List.of(pageLoader));
+    }
+
+    /**
+     * Completes with the items of the pages of every loader once the first
+     * page of each is loaded, or exceptionally as soon as one fails.
+     */
+    static <T> CompletableFuture<Iterable<T>> load(DynamoDBMapperTableModel<T> tableModel,
+                                               List<PageLoader> pageLoaders) {
+        List<CompletableFuture<Page>> firstPages = new ArrayList<>(pageLoaders.size());
+        for (PageLoader pageLoader : pageLoaders) {
+            firstPages.add(pageLoader.load(null));
+        }
+        return CompletableFutures.allOf(firstPages).thenApply(ignored -> {
+            Deque<Source> sources = new ArrayDeque<>(pageLoaders.size());
+            for (int i = 0; i < pageLoaders.size(); i++) {
+                sources.add(new Source(pageLoaders.get(i), firstPages.get(i)));
+            }
+            return new PagedItems<>(tableModel, sources);
+        });
+    }
+
+    @Override
+    public synchronized Iterator<T> iterator() {
+        if (sources == null) {
+            throw new IllegalStateException("Paged items can only be iterated once");
+        }
+        Deque<Source> iterated = sources;
+        sources = null;
+        return new PageIterator(iterated);
+    }
+
+    /**
+     * Reads the page that starts after {@code exclusiveStartKey}, or the
+     * first one when it is null.
+     */
+    @FunctionalInterface
+    interface PageLoader {
+
+        CompletableFuture<Page> load(Map<String, AttributeValue> exclusiveStartKey);
+    }
+
+    static final class Page {
+
+        private final List<Map<String, AttributeValue>> items;
+        private final Map<String, AttributeValue> lastEvaluatedKey;
+
+        Page(List<Map<String, AttributeValue>> items, Map<String, AttributeValue> lastEvaluatedKey) {
+            this.items = items;
+            this.lastEvaluatedKey = lastEvaluatedKey == null || lastEvaluatedKey.isEmpty() ? null : lastEvaluatedKey;
+        }
+    }
+
+    /**
+     * A loader and the page it is reading next.
+     */
+    private static final class Source {
+
+        private final PageLoader pageLoader;
+        private CompletableFuture<Page> nextPage;
+
+        private Source(PageLoader pageLoader, CompletableFuture<Page> nextPage) {
+            this.pageLoader = pageLoader;
+            this.nextPage = nextPage;
+        }
+    }
+
+    private final class PageIterator implements Iterator<T> {
+
+        private final Deque<Source> sources;
+        private List<Map<String, AttributeValue>> items = List.of();
+        private int position;
+
+        private PageIterator(Deque<Source> sources) {
+            this.sources = sources;
+        }
+
+        /**
+         * Takes the page of the next source in turn and, unless it was the
+         * last of that source, starts reading the one after it.
+         */
+        @Override
+        public boolean hasNext() {
+            while (position == items.size()) {
+                Source source = sources.poll();
+                if (source == null) {
+                    return false;
+                }
+                Page page = CompletableFutures.join(source.nextPage);
+                if (page.lastEvaluatedKey != null) {
+                    source.nextPage = source.pageLoader.load(page.lastEvaluatedKey);
+                    sources.add(source);
+                }
+                items = page.items;
+                position = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return tableModel.unconvert(items.get(position++));
+        }
+    }
+}
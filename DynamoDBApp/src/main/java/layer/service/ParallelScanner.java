@@ -0,0 +1,137 @@
+package layer.service;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperTableModel;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.DescribeTableResult;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Full-table scan split into {@code TotalSegments} segments that are read
+ * concurrently, each as a chain of asynchronous scan pages. The segments are
+ * merged by {@link PagedItems}, a page of each in turn, with the next page of
+ * every segment read while the current one is iterated, so memory grows with
+ * the segment count and not with the table. The segment count is
+ * {@code SCAN_SEGMENTS} when set, otherwise one segment per
+ * {@code SCAN_ITEMS_PER_SEGMENT} items of the table's (approximate,
+ * DescribeTable) item count, capped at {@link #MAX_SEGMENTS}. No page is
+ * requested once {@code SCAN_TIME_BUDGET_MILLIS} is spent, so the scan fails
+ * inside the function timeout instead of being killed by it.
+ */
+final class ParallelScanner {
+
+    static final String SEGMENTS_VARIABLE = "SCAN_SEGMENTS";
+    static final String ITEMS_PER_SEGMENT_VARIABLE = "SCAN_ITEMS_PER_SEGMENT";
+    static final String TIME_BUDGET_VARIABLE = "SCAN_TIME_BUDGET_MILLIS";
+    static final int MAX_SEGMENTS = 16;
+    static final int DEFAULT_ITEMS_PER_SEGMENT = 5_000;
+    static final long DEFAULT_TIME_BUDGET_MILLIS = 15_000;
+    private static final long ITEM_COUNT_REFRESH_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final long ITEM_COUNT_RETRY_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    private final AtomicReference<CompletableFuture<Integer>> refresh = new AtomicReference<>();
+    private volatile int cachedSegments = 1;
+    private volatile long cachedSegmentsExpiry;
+
+    /**
+     * Number of segments to scan the table with; 1 means the scan is not
+     * worth parallelizing. The item count is read with one DescribeTable at
+     * a time: until the first one completes, callers wait for it, and after
+     * that an expired count is used while it is refreshed. A failed read
+     * counts as one segment and is retried after a few seconds.
+     */
+    CompletableFuture<Integer> getTotalSegments(AsyncDynamoDBClient asyncClient, String tableName) {
+        int configured = Configuration.getInt(SEGMENTS_VARIABLE, 0);
+        if (configured > 0) {
+            return CompletableFuture.completedFuture(Math.min(configured, MAX_SEGMENTS));
+        }
+        long expiry = cachedSegmentsExpiry;
+        if (expiry != 0 && System.currentTimeMillis() < expiry) {
+            return CompletableFuture.completedFuture(cachedSegments);
+        }
+        CompletableFuture<Integer> started = new CompletableFuture<>();
+        CompletableFuture<Integer> running = refresh.compareAndExchange(null, started);
+        if (running == null) {
+            running = started;
+            asyncClient.describeTable(tableName, OperationMetrics.DISABLED).whenComplete((result, e) -> {
+                cachedSegments = e == null ? getSegmentsForItemCount(result) : 1;
+                cachedSegmentsExpiry = System.currentTimeMillis()
+                        + (e == null ? ITEM_COUNT_REFRESH_MILLIS : ITEM_COUNT_RETRY_MILLIS);
+                refresh.set(null);
+                started.complete(cachedSegments);
+            });
+        }
+        return expiry == 0 ? running : CompletableFuture.completedFuture(cachedSegments);
+    }
+
+    /**
+     * Scans with the table, projection and filter of {@code template}; its
+     * segment and start key settings are ignored. Completes once the first
+     * page of every segment is read.
+     */
+    <T> CompletableFuture<Iterable<T>> scan(AsyncDynamoDBClient asyncClient,
+                                            DynamoDBMapperTableModel<T> tableModel, ScanRequest template,
+                                            int totalSegments, OperationMetrics metrics) {
+        long timeBudgetMillis = Configuration.getLong(TIME_BUDGET_VARIABLE, DEFAULT_TIME_BUDGET_MILLIS);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeBudgetMillis);
+
+        List<PagedItems.PageLoader> segments = new ArrayList<>(totalSegments);
+        for (int segment = 0; segment < totalSegments; segment++) {
+            int index = segment;
+            segments.add(startKey -> scanPage(asyncClient, template, index, totalSegments, startKey, deadline,
+                    timeBudgetMillis, metrics));
+        }
+        return PagedItems.load(tableModel, segments);
+    }
+
+    private static CompletableFuture<PagedItems.Page> scanPage(
+            AsyncDynamoDBClient asyncClient, ScanRequest template, int segment, int totalSegments,
+            Map<String, AttributeValue> startKey, long deadline, long timeBudgetMillis, OperationMetrics metrics) {
+        long remainingNanos = deadline - System.nanoTime();
+        if (remainingNanos <= 0) {
+            return CompletableFuture.failedFuture(getTimeBudgetExceededException(timeBudgetMillis));
+        }
+        ScanRequest scanRequest = new ScanRequest()
+                .withTableName(template.getTableName())
+                .withProjectionExpression(template.getProjectionExpression())
+                .withFilterExpression(template.getFilterExpression())
+                .withExpressionAttributeNames(template.getExpressionAttributeNames())
+                .withExpressionAttributeValues(template.getExpressionAttributeValues())
+                .withConsistentRead(false)
+                .withSegment(segment)
+                .withTotalSegments(totalSegments)
+                .withExclusiveStartKey(startKey);
+        return asyncClient.scan(scanRequest, metrics)
+                .orTimeout(remainingNanos, TimeUnit.NANOSECONDS)
+                .handle((scanResult, e) -> {
+                    if (e != null) {
+                        Throwable cause = CompletableFutures.unwrap(e);
+                        throw new CompletionException(cause instanceof TimeoutException
+                                ? getTimeBudgetExceededException(timeBudgetMillis) : cause);
+                    }
+                    return new PagedItems.Page(scanResult.getItems(), scanResult.getLastEvaluatedKey());
+                });
+    }
+
+    private static int getSegmentsForItemCount(DescribeTableResult describeTableResult) {
+        Long itemCount = describeTableResult.getTable().getItemCount();
+        if (itemCount == null) {
+            return 1;
+        }
+        long itemsPerSegment = Math.max(1, Configuration.getInt(ITEMS_PER_SEGMENT_VARIABLE,
+                DEFAULT_ITEMS_PER_SEGMENT));
+        return (int) Math.max(1, Math.min(MAX_SEGMENTS, (itemCount + itemsPerSegment - 1) / itemsPerSegment));
+    }
+
+    private static TimeBudgetExceededException getTimeBudgetExceededException(long timeBudgetMillis) {
+        return new TimeBudgetExceededException("Parallel scan", timeBudgetMillis);
+    }
+}
@@ -0,0 +1,12 @@
+package layer.service;
+
+/**
+ * A conditional write whose {@code If-Match} entity tag is not the current
+ * version of the user, or whose user does not exist.
+ */
+public class PreconditionFailedException extends RuntimeException {
+
+    public PreconditionFailedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,119 @@
+package layer.service;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.reflect.TypeToken;
+import lombok.Getter;
+
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+
+/**
+ * The parts of an API Gateway proxy request event that the handlers use,
+ * read from the raw invocation payload without binding the whole event.
+ */
+@Getter
+public class ProxyRequest {
+
+    private static final Gson gson = new Gson();
+    private static final Type STRING_MAP_TYPE = new TypeToken<Map<String, String>>() {
+    }.getType();
+
+    private final String httpMethod;
+    private final String resource;
+    private final String path;
+    private final Map<String, String> headers;
+    private final Map<String, String> pathParameters;
+    private final Map<String, String> queryStringParameters;
+    private final String body;
+
+    private ProxyRequest(JsonObject event) {
+        this.httpMethod = getString(event, "httpMethod");
+        this.resource = getString(event, "resource");
+        this.path = getString(event, "path");
+        this.headers = getStringMap(event, "headers");
+        this.pathParameters = getStringMap(event, "pathParameters");
+        this.queryStringParameters = getStringMap(event, "queryStringParameters");
+        String rawBody = getString(event, "body");
+        JsonElement base64Encoded = event.get("isBase64Encoded");
+        if (rawBody != null && base64Encoded != null && !base64Encoded.isJsonNull() && base64Encoded.getAsBoolean()) {
+            rawBody = new String(Base64.getDecoder().decode(rawBody), StandardCharsets.UTF_8);
+        }
+        this.body = rawBody;
+    }
+
+    private ProxyRequest(APIGatewayProxyRequestEvent event) {
+        this.httpMethod = event.getHttpMethod();
+        this.resource = event.getResource();
+        this.path = event.getPath();
+        this.headers = event.getHeaders();
+        this.pathParameters = event.getPathParameters();
+        this.queryStringParameters = event.getQueryStringParameters();
+        this.body = event.getIsBase64Encoded() != null && event.getIsBase64Encoded() && event.getBody() != null
+                ? new String(Base64.getDecoder().decode(event.getBody()), StandardCharsets.UTF_8)
+                : event.getBody();
+    }
+
+    private ProxyRequest(ProxyRequest request, Map<String, String> pathParameters) {
+        this.httpMethod = request.httpMethod;
+        this.resource = request.resource;
+        this.path = request.path;
+        this.headers = request.headers;
+        this.pathParameters = pathParameters;
+        this.queryStringParameters = request.queryStringParameters;
+        this.body = request.body;
+    }
+
+    /**
+     * Wraps an event that the runtime has already bound, for the handlers
+     * that are not stream handlers.
+     */
+    public static ProxyRequest of(APIGatewayProxyRequestEvent event) {
+        return new ProxyRequest(event);
+    }
+
+    public static ProxyRequest read(InputStream inputStream) {
+        JsonElement event = JsonParser.parseReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+        return new ProxyRequest(event.isJsonObject() ? event.getAsJsonObject() : new JsonObject());
+    }
+
+    /**
+     * A header of the request, its name matched without regard to case.
+     */
+    public String getHeader(String name) {
+        if (headers == null) {
+            return null;
+        }
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A copy with the path parameters taken from the path instead of the
+     * event.
+     */
+    public ProxyRequest withPathParameters(Map<String, String> pathParameters) {
+        return new ProxyRequest(this, pathParameters);
+    }
+
+    private static String getString(JsonObject event, String name) {
+        JsonElement element = event.get(name);
+        return element == null || element.isJsonNull() ? null : element.getAsString();
+    }
+
+    private static Map<String, String> getStringMap(JsonObject event, String name) {
+        JsonElement element = event.get(name);
+        return element == null || element.isJsonNull() ? null : gson.fromJson(element, STRING_MAP_TYPE);
+    }
+}
@@ -0,0 +1,335 @@
+package layer.service;
+
+import com.google.gson.Gson;
+import layer.model.ResponseMessage;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Front controller for every API route, so one function can serve them all
+ * from a shared pool of warm containers. The route table is built once:
+ * requests are looked up by {@code httpMethod} and API Gateway
+ * {@code resource} in a hash map, and only a request without a known
+ * resource (a direct invocation, a {@code {proxy+}} resource) is matched
+ * against the precompiled path templates, literal segments first.
+ * <p>
+ * Routes compose the futures of {@link DynamoDBServiceAsync}; a failed
+ * future is answered like an exception thrown by the route. A request routed
+ * with the remaining time of its invocation is answered with 503 once that
+ * time, less {@code DEADLINE_MARGIN_MILLIS} for writing the response, has
+ * passed, rather than letting Lambda time the invocation out. That 503, the
+ * 503 of an open circuit and the 429 of a throttled request carry a
+ * {@code Retry-After} header. A read that runs out of its time budget is
+ * answered with 504 and none, as it would only run out again.
+ * <p>
+ * A created user is answered with 201, and a user that cannot be created
+ * with 409 if its email is taken or 400 if it is invalid.
+ * <p>
+ * A body with an entity tag is sent with an {@code ETag} header; a GET whose
+ * {@code If-None-Match} lists the tag is answered with 304 and no body, and
+ * an update whose {@code If-Match} does not match with 412.
+ */
+public class RequestRouter {
+
+    public static final String GET_USER_LIST = "GET /users";
+    public static final String CREATE_USER = "POST /users";
+    public static final String CREATE_USERS = "POST /users/bulk";
+    public static final String GET_USERS = "POST /users/batch-get";
+    public static final String GET_USER = "GET /users/{email}";
+    public static final String UPDATE_USER = "PUT /users/{email}";
+    public static final String DELETE_USER = "DELETE /users/{email}";
+    public static final String GET_USER_LIST_BY_QUERY = "POST /match";
+    public static final String GET_NAME_SUGGESTIONS = "GET /users/autocomplete";
+    public static final String GET_USER_STATS = "GET /stats/{dimension}";
+
+    static final String DEADLINE_MARGIN_VARIABLE = "DEADLINE_MARGIN_MILLIS";
+    static final long DEFAULT_DEADLINE_MARGIN_MILLIS = 1_000;
+
+    private static final Gson gson = new Gson();
+
+    private final Map<String, Route> routes = new HashMap<>();
+    private final List<PathTemplate> pathTemplates = new ArrayList<>();
+    private final long deadlineMarginMillis = Configuration.getLong(DEADLINE_MARGIN_VARIABLE,
+            DEFAULT_DEADLINE_MARGIN_MILLIS);
+
+    public RequestRouter(DynamoDBServiceAsync dynamoDBService) {
+        add(GET_USER_LIST, request -> dynamoDBService.getUsersListResponseWriterAsync(
+                request.getQueryStringParameters()).thenApply(body -> Response.conditional(request, body)));
+        add(CREATE_USER, request -> dynamoDBService.createUserAsync(request.getBody())
+                .thenApply(output -> Response.of(201, output)));
+        add(CREATE_USERS, request -> dynamoDBService.createUsersAsync(request.getBody())
+                .thenApply(output -> Response.of(200, output)));
+        add(GET_USERS, request -> dynamoDBService.findUsersAsync(request.getBody())
+                .thenApply(output -> Response.of(200, output)));
+        add(GET_USER, request -> dynamoDBService.findUserResponseWriterAsync(request.getPathParameters())
+                .thenApply(body -> Response.conditional(request, body)));
+        add(UPDATE_USER, request -> dynamoDBService.updateUserResponseWriterAsync(request.getPathParameters(),
+                request.getBody(), request.getHeader("If-Match")).thenApply(body -> Response.tagged(200, body)));
+        add(DELETE_USER, request -> dynamoDBService.deleteUserAsync(request.getPathParameters())
+                .thenApply(output -> Response.of(200, output)));
+        add(GET_USER_LIST_BY_QUERY, request -> dynamoDBService.getUsersListByQueryResponseWriterAsync(
+                request.getQueryStringParameters(), request.getBody())
+                .thenApply(body -> Response.conditional(request, body)));
+        add(GET_NAME_SUGGESTIONS, request -> dynamoDBService.getNameSuggestionsAsync(
+                request.getQueryStringParameters()).thenApply(output -> Response.of(200, output)));
+        add(GET_USER_STATS, request -> dynamoDBService.getUserStatsAsync(request.getPathParameters())
+                .thenApply(output -> Response.of(200, output)));
+        pathTemplates.sort(Comparator.comparingInt(PathTemplate::getParameterCount));
+    }
+
+    public CompletableFuture<Response> route(ProxyRequest request) {
+        return route(request, 0);
+    }
+
+    /**
+     * Routes by the method and resource (or path) of the request. Unknown
+     * routes are answered with 404, known paths with another method with
+     * 405. A positive {@code remainingTimeMillis} bounds the response time.
+     */
+    public CompletableFuture<Response> route(ProxyRequest request, long remainingTimeMillis) {
+        String method = request.getHttpMethod();
+        if (request.getResource() != null && routes.containsKey(method + " " + request.getResource())) {
+            return route(method + " " + request.getResource(), request, remainingTimeMillis);
+        }
+
+        boolean pathFound = false;
+        if (request.getPath() != null) {
+            String[] segments = getSegments(request.getPath());
+            for (PathTemplate pathTemplate : pathTemplates) {
+                Map<String, String> pathParameters = pathTemplate.match(segments);
+                if (pathParameters == null) {
+                    continue;
+                }
+                pathFound = true;
+                if (pathTemplate.getMethods().containsKey(method)) {
+                    return invoke(pathTemplate.getMethods().get(method), request.withPathParameters(pathParameters),
+                            remainingTimeMillis);
+                }
+            }
+        }
+        return CompletableFuture.completedFuture(pathFound
+                ? Response.message(405, "Method not allowed") : Response.message(404, "Route not found"));
+    }
+
+    /**
+     * Invokes one route regardless of the method and resource of the request,
+     * for the handlers that serve a single route.
+     */
+    public CompletableFuture<Response> route(String routeKey, ProxyRequest request) {
+        return route(routeKey, request, 0);
+    }
+
+    public CompletableFuture<Response> route(String routeKey, ProxyRequest request, long remainingTimeMillis) {
+        return invoke(routes.get(routeKey), request, remainingTimeMillis);
+    }
+
+    /**
+     * Routes that stream their body complete once the first page is read,
+     * so the deadline bounds the time to the first byte, not the whole body.
+     */
+    private CompletableFuture<Response> invoke(Route route, ProxyRequest request, long remainingTimeMillis) {
+        CompletableFuture<Response> response;
+        try {
+            response = route.handle(request);
+        } catch (Exception e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+        if (remainingTimeMillis > 0) {
+            response = response.orTimeout(Math.max(1, remainingTimeMillis - deadlineMarginMillis),
+                    TimeUnit.MILLISECONDS);
+        }
+        return response.exceptionally(e -> {
+            Throwable cause = CompletableFutures.unwrap(e);
+            if (cause instanceof InvalidCursorException || cause instanceof InvalidUserException) {
+                return Response.message(400, cause.getMessage());
+            } else if (cause instanceof UserExistsException) {
+                return Response.message(409, cause.getMessage());
+            } else if (cause instanceof PreconditionFailedException) {
+                return Response.message(412, cause.getMessage());
+            } else if (cause instanceof CircuitOpenException) {
+                return Response.message(503, "Service temporarily unavailable, try again later")
+                        .withRetryAfter(((CircuitOpenException) cause).getRetryAfterMillis());
+            } else if (cause instanceof TimeoutException) {
+                return Response.message(503, "The request did not complete in time, try again later")
+                        .withRetryAfter(1_000);
+            } else if (cause instanceof TimeBudgetExceededException) {
+                return Response.message(504, "The request reads too many users to be answered in time, "
+                        + "narrow it down");
+            } else if (AsyncDynamoDBClient.isThrottling(cause)) {
+                return Response.message(429, "Too many requests, try again later").withRetryAfter(1_000);
+            }
+            return Response.of(503, "An error occurred while executing the lambda function: "
+                    + cause.getClass() + "; message: " + cause.getMessage());
+        });
+    }
+
+    private void add(String routeKey, Route route) {
+        routes.put(routeKey, route);
+        String[] methodAndPath = routeKey.split(" ", 2);
+        String[] segments = getSegments(methodAndPath[1]);
+        for (PathTemplate pathTemplate : pathTemplates) {
+            if (pathTemplate.hasSegments(segments)) {
+                pathTemplate.getMethods().put(methodAndPath[0], route);
+                return;
+            }
+        }
+        PathTemplate pathTemplate = new PathTemplate(segments);
+        pathTemplate.getMethods().put(methodAndPath[0], route);
+        pathTemplates.add(pathTemplate);
+    }
+
+    private static String[] getSegments(String path) {
+        String trimmed = path.replaceAll("^/+|/+$", "");
+        return trimmed.isEmpty() ? new String[0] : trimmed.split("/+");
+    }
+
+    @FunctionalInterface
+    private interface Route {
+
+        CompletableFuture<Response> handle(ProxyRequest request) throws Exception;
+    }
+
+    /**
+     * A status code, the headers to add to the common ones and a body that is
+     * serialized when it is written.
+     */
+    public static final class Response {
+
+        private final int statusCode;
+        private final ResponseBodyWriter body;
+        private final Map<String, String> headers;
+
+        public Response(int statusCode, ResponseBodyWriter body) {
+            this(statusCode, body, Collections.emptyMap());
+        }
+
+        public Response(int statusCode, ResponseBodyWriter body, Map<String, String> headers) {
+            this.statusCode = statusCode;
+            this.body = body;
+            this.headers = headers;
+        }
+
+        static Response of(int statusCode, String output) {
+            return new Response(statusCode, writer -> writer.write(output));
+        }
+
+        /**
+         * The body with its entity tag, if any, as the {@code ETag} header.
+         */
+        static Response tagged(int statusCode, ResponseBodyWriter body) {
+            String entityTag = body.getEntityTag();
+            return entityTag == null ? new Response(statusCode, body)
+                    : new Response(statusCode, body, Map.of("ETag", entityTag));
+        }
+
+        /**
+         * 200 with the body, or 304 without it if the {@code If-None-Match}
+         * of the request lists the entity tag of the body.
+         */
+        static Response conditional(ProxyRequest request, ResponseBodyWriter body) {
+            String entityTag = body.getEntityTag();
+            if (EntityTags.isNoneMatchSatisfied(request.getHeader("If-None-Match"), entityTag)) {
+                body.discard();
+                return new Response(304, writer -> {
+                }, Map.of("ETag", entityTag));
+            }
+            return tagged(200, body);
+        }
+
+        static Response message(int statusCode, String message) {
+            return of(statusCode, gson.toJson(ResponseMessage.builder().message(message).build()));
+        }
+
+        /**
+         * This response with a {@code Retry-After} of the given time, rounded
+         * up to whole seconds.
+         */
+        Response withRetryAfter(long retryAfterMillis) {
+            long seconds = Math.max(1, (retryAfterMillis + 999) / 1_000);
+            return new Response(statusCode, body, Map.of("Retry-After", Long.toString(seconds)));
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public ResponseBodyWriter getBody() {
+            return body;
+        }
+
+        public Map<String, String> getHeaders() {
+            return headers;
+        }
+    }
+
+    /**
+     * A path such as {@code /users/{email}} split into segments, with the
+     * routes of every method registered for it.
+     */
+    private static final class PathTemplate {
+
+        private final String[] segments;
+        private final int parameterCount;
+        private final Map<String, Route> methods = new LinkedHashMap<>();
+
+        private PathTemplate(String[] segments) {
+            this.segments = segments;
+            int parameters = 0;
+            for (String segment : segments) {
+                if (isParameter(segment)) {
+                    parameters++;
+                }
+            }
+            this.parameterCount = parameters;
+        }
+
+        int getParameterCount() {
+            return parameterCount;
+        }
+
+        Map<String, Route> getMethods() {
+            return methods;
+        }
+
+        boolean hasSegments(String[] otherSegments) {
+            return Arrays.equals(segments, otherSegments);
+        }
+
+        /**
+         * Returns the path parameters if the path matches, null otherwise.
+         * Segments are percent-decoded like API Gateway does, keeping
+         * {@code +} as is since it is valid in an email.
+         */
+        Map<String, String> match(String[] pathSegments) {
+            if (pathSegments.length != segments.length) {
+                return null;
+            }
+            Map<String, String> pathParameters = parameterCount == 0 ? Collections.emptyMap() : new HashMap<>();
+            for (int i = 0; i < segments.length; i++) {
+                if (isParameter(segments[i])) {
+                    pathParameters.put(segments[i].substring(1, segments[i].length() - 1),
+                            URLDecoder.decode(pathSegments[i].replace("+", "%2B"), StandardCharsets.UTF_8));
+                } else if (!segments[i].equals(pathSegments[i])) {
+                    return null;
+                }
+            }
+            return pathParameters;
+        }
+
+        private static boolean isParameter(String segment) {
+            return segment.startsWith("{") && segment.endsWith("}");
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package layer.service;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * A response body whose data has already been fetched and which is
+ * serialized straight into the response stream when it is written.
+ */
+@FunctionalInterface
+public interface ResponseBodyWriter {
+
+    void writeTo(Writer writer) throws IOException;
+
+    /**
+     * The entity tag of the body as it goes in the {@code ETag} header,
+     * quoted and {@code W/} prefixed if weak, or null if it has none.
+     */
+    default String getEntityTag() {
+        return null;
+    }
+
+    /**
+     * Called instead of {@link #writeTo(Writer)} when the body is not sent,
+     * e.g. for a {@code 304 Not Modified}, so whatever writing would have
+     * finished (the metrics of the operation) is finished without it.
+     */
+    default void discard() {
+    }
+
+    static ResponseBodyWriter withEntityTag(ResponseBodyWriter body, String entityTag) {
+        return new ResponseBodyWriter() {
+            @Override
+            public void writeTo(Writer writer) throws IOException {
+                body.writeTo(writer);
+            }
+
+            @Override
+            public String getEntityTag() {
+                return entityTag;
+            }
+
+            @Override
+            public void discard() {
+                body.discard();
+            }
+        };
+    }
+}
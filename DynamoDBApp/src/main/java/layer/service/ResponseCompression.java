@@ -0,0 +1,164 @@
+package layer.service;
+
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip compression of response bodies the client accepts it for. A body is
+ * compressed while it is serialized: the first
+ * {@code RESPONSE_COMPRESSION_MIN_LENGTH} characters are held back, and a
+ * body that ends before that is written as it is, since compressing it
+ * would not pay for the base64 encoding the gateway needs. A longer one is
+ * gzipped and base64 encoded on the way to the response.
+ */
+final class ResponseCompression {
+
+    static final String ENABLED_VARIABLE = "RESPONSE_COMPRESSION_ENABLED";
+    static final String MIN_LENGTH_VARIABLE = "RESPONSE_COMPRESSION_MIN_LENGTH";
+    static final int DEFAULT_MIN_LENGTH = 1_024;
+    static final String GZIP = "gzip";
+
+    private static final boolean ENABLED = Configuration.getBoolean(ENABLED_VARIABLE, true);
+    private static final int MIN_LENGTH = Math.max(0, Configuration.getInt(MIN_LENGTH_VARIABLE, DEFAULT_MIN_LENGTH));
+    private static final int BUFFER_SIZE = 8_192;
+
+    private ResponseCompression() {
+    }
+
+    static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * The content coding to use for an {@code Accept-Encoding} header, or
+     * null for none: gzip, unless it (or {@code *} without gzip) is listed
+     * with {@code q=0}.
+     */
+    static String negotiate(String acceptEncoding) {
+        if (!ENABLED || acceptEncoding == null) {
+            return null;
+        }
+        Boolean gzip = null;
+        Boolean any = null;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            String name = parameters[0].trim().toLowerCase(Locale.ROOT);
+            boolean accepted = true;
+            for (int i = 1; i < parameters.length; i++) {
+                String parameter = parameters[i].trim();
+                if (parameter.startsWith("q=")) {
+                    accepted = isPositive(parameter.substring(2).trim());
+                }
+            }
+            if (GZIP.equals(name) || "x-gzip".equals(name)) {
+                gzip = accepted;
+            } else if ("*".equals(name)) {
+                any = accepted;
+            }
+        }
+        return (gzip != null ? gzip : any != null && any) ? GZIP : null;
+    }
+
+    private static boolean isPositive(String quality) {
+        try {
+            return Double.parseDouble(quality) > 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes the held back characters to {@code plain} if the body stays
+     * short, otherwise everything, gzipped and base64 encoded, to
+     * {@code compressed}. {@link #finish()} tells which one it was.
+     */
+    static final class BodyWriter extends Writer {
+
+        private final char[] pending = new char[MIN_LENGTH];
+        private final Writer plain;
+        private final OutputStream compressedOutput;
+        private int pendingLength;
+        private Writer compressed;
+
+        /**
+         * @param plain            where a short body goes, as characters
+         * @param compressedOutput where a long body goes, as base64 text;
+         *                         it is not closed
+         */
+        BodyWriter(Writer plain, OutputStream compressedOutput) {
+            this.plain = plain;
+            this.compressedOutput = compressedOutput;
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            if (compressed == null && pendingLength + length <= pending.length) {
+                System.arraycopy(buffer, offset, pending, pendingLength, length);
+                pendingLength += length;
+                return;
+            }
+            if (compressed == null) {
+                compressed = openCompressed();
+                compressed.write(pending, 0, pendingLength);
+            }
+            compressed.write(buffer, offset, length);
+        }
+
+        @Override
+        public void write(String string, int offset, int length) throws IOException {
+            if (compressed != null) {
+                compressed.write(string, offset, length);
+            } else {
+                super.write(string, offset, length);
+            }
+        }
+
+        @Override
+        public void flush() {
+            // a body is written whole by finish()
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+        }
+
+        /**
+         * Completes the body and reports whether it was compressed.
+         */
+        boolean finish() throws IOException {
+            if (compressed == null) {
+                plain.write(pending, 0, pendingLength);
+                pendingLength = 0;
+                return false;
+            }
+            compressed.close();
+            return true;
+        }
+
+        private Writer openCompressed() throws IOException {
+            plain.flush();
+            OutputStream base64 = Base64.getEncoder().wrap(new FilterOutputStream(compressedOutput) {
+                @Override
+                public void write(byte[] bytes, int offset, int length) throws IOException {
+                    out.write(bytes, offset, length);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    out.flush();
+                }
+            });
+            return new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(base64, BUFFER_SIZE),
+                    StandardCharsets.UTF_8), BUFFER_SIZE);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package layer.service;
+
+/**
+ * Caps retries of throttled requests across the container: every retry
+ * costs {@link #RETRY_COST} tokens and every successful request returns one,
+ * up to {@code THROTTLE_RETRY_BUDGET}. While DynamoDB keeps throttling, the
+ * budget runs dry and requests fail at once instead of multiplying the load
+ * that got them throttled.
+ */
+final class RetryBudget {
+
+    static final String CAPACITY_VARIABLE = "THROTTLE_RETRY_BUDGET";
+    static final int DEFAULT_CAPACITY = 100;
+    static final int RETRY_COST = 5;
+
+    private final int capacity;
+    private int tokens;
+
+    RetryBudget() {
+        this(Configuration.getInt(CAPACITY_VARIABLE, DEFAULT_CAPACITY));
+    }
+
+    RetryBudget(int capacity) {
+        this.capacity = Math.max(0, capacity);
+        this.tokens = this.capacity;
+    }
+
+    /**
+     * Takes the cost of one retry, if the budget still has it.
+     */
+    synchronized boolean tryAcquireRetry() {
+        if (tokens < RETRY_COST) {
+            return false;
+        }
+        tokens -= RETRY_COST;
+        return true;
+    }
+
+    synchronized void onSuccess() {
+        if (tokens < capacity) {
+            tokens++;
+        }
+    }
+}
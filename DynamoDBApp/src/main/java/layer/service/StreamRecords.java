@@ -0,0 +1,92 @@
+package layer.service;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
+import com.amazonaws.services.lambda.runtime.events.DynamodbEvent;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts the stream records Lambda delivers, which have their own model
+ * in the events library, to the SDK model the engine and
+ * {@link UserStats} work with.
+ */
+public final class StreamRecords {
+
+    private StreamRecords() {
+    }
+
+    public static List<Record> of(DynamodbEvent event) {
+        // the last invocation of a tumbling window may come without records
+        if (event.getRecords() == null) {
+            return List.of();
+        }
+        List<Record> records = new ArrayList<>(event.getRecords().size());
+        for (DynamodbEvent.DynamodbStreamRecord eventRecord : event.getRecords()) {
+            records.add(toRecord(eventRecord));
+        }
+        return records;
+    }
+
+    private static Record toRecord(DynamodbEvent.DynamodbStreamRecord eventRecord) {
+        com.amazonaws.services.lambda.runtime.events.models.dynamodb.StreamRecord eventStreamRecord =
+                eventRecord.getDynamodb();
+        StreamRecord streamRecord = eventStreamRecord == null ? null : new StreamRecord()
+                .withApproximateCreationDateTime(eventStreamRecord.getApproximateCreationDateTime())
+                .withKeys(toItem(eventStreamRecord.getKeys()))
+                .withNewImage(toItem(eventStreamRecord.getNewImage()))
+                .withOldImage(toItem(eventStreamRecord.getOldImage()))
+                .withSequenceNumber(eventStreamRecord.getSequenceNumber())
+                .withSizeBytes(eventStreamRecord.getSizeBytes())
+                .withStreamViewType(eventStreamRecord.getStreamViewType());
+        return new Record()
+                .withEventID(eventRecord.getEventID())
+                .withEventName(eventRecord.getEventName())
+                .withEventSource(eventRecord.getEventSource())
+                .withEventVersion(eventRecord.getEventVersion())
+                .withAwsRegion(eventRecord.getAwsRegion())
+                .withDynamodb(streamRecord);
+    }
+
+    private static Map<String, AttributeValue> toItem(
+            Map<String, com.amazonaws.services.lambda.runtime.events.models.dynamodb.AttributeValue> eventItem) {
+        if (eventItem == null) {
+            return null;
+        }
+        Map<String, AttributeValue> item = new LinkedHashMap<>();
+        eventItem.forEach((name, value) -> item.put(name, toAttributeValue(value)));
+        return item;
+    }
+
+    private static AttributeValue toAttributeValue(
+            com.amazonaws.services.lambda.runtime.events.models.dynamodb.AttributeValue eventValue) {
+        AttributeValue value = new AttributeValue()
+                .withS(eventValue.getS())
+                .withN(eventValue.getN())
+                .withB(eventValue.getB())
+                .withBOOL(eventValue.getBOOL())
+                .withNULL(eventValue.getNULL());
+        if (eventValue.getSS() != null) {
+            value.setSS(eventValue.getSS());
+        }
+        if (eventValue.getNS() != null) {
+            value.setNS(eventValue.getNS());
+        }
+        if (eventValue.getBS() != null) {
+            value.setBS(eventValue.getBS());
+        }
+        if (eventValue.getM() != null) {
+            value.setM(toItem(eventValue.getM()));
+        }
+        if (eventValue.getL() != null) {
+            List<AttributeValue> list = new ArrayList<>(eventValue.getL().size());
+            eventValue.getL().forEach(element -> list.add(toAttributeValue(element)));
+            value.setL(list);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,20 @@
+package layer.service;
+
+/**
+ * A read that was given up because it did not finish within its time budget
+ * (e.g. {@code MATCH_TIME_BUDGET_MILLIS}); it reads too many users to be
+ * answered before the function times out.
+ */
+public class TimeBudgetExceededException extends RuntimeException {
+
+    private final long timeBudgetMillis;
+
+    public TimeBudgetExceededException(String operation, long timeBudgetMillis) {
+        super(operation + " did not finish within " + timeBudgetMillis + " ms");
+        this.timeBudgetMillis = timeBudgetMillis;
+    }
+
+    public long getTimeBudgetMillis() {
+        return timeBudgetMillis;
+    }
+}
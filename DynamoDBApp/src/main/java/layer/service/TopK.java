@@ -0,0 +1,50 @@
+package layer.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the first {@code k} of a stream of items in the order of a
+ * comparator, in O(k) memory: a heap whose head is the last item kept, so
+ * an item after it is rejected with one comparison.
+ */
+final class TopK<T> {
+
+    private final int k;
+    private final Comparator<? super T> comparator;
+    private final PriorityQueue<T> heap;
+    private boolean truncated;
+
+    TopK(int k, Comparator<? super T> comparator) {
+        this.k = k;
+        this.comparator = comparator;
+        this.heap = new PriorityQueue<>(Math.min(k, 1_024) + 1, comparator.reversed());
+    }
+
+    void offer(T item) {
+        if (heap.size() < k) {
+            heap.add(item);
+        } else if (comparator.compare(item, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(item);
+            truncated = true;
+        } else {
+            truncated = true;
+        }
+    }
+
+    /**
+     * Whether any item offered was left out.
+     */
+    boolean isTruncated() {
+        return truncated;
+    }
+
+    List<T> toSortedList() {
+        List<T> items = new ArrayList<>(heap);
+        items.sort(comparator);
+        return items;
+    }
+}
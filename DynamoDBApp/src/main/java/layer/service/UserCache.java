@@ -0,0 +1,167 @@
+package layer.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-container read-through cache of user JSON keyed by email. Entries are
+ * evicted least recently used once {@code USER_CACHE_MAX_ENTRIES} is reached
+ * and expire after {@code USER_CACHE_TTL_MILLIS}; "not found" is cached too,
+ * for {@code USER_CACHE_NEGATIVE_TTL_MILLIS}. A max size of 0 disables it.
+ * Values are the serialized user, so callers can never mutate a cached copy.
+ */
+public class UserCache {
+
+    public static final String MAX_ENTRIES_VARIABLE = "USER_CACHE_MAX_ENTRIES";
+    public static final String TTL_VARIABLE = "USER_CACHE_TTL_MILLIS";
+    public static final String NEGATIVE_TTL_VARIABLE = "USER_CACHE_NEGATIVE_TTL_MILLIS";
+    public static final int DEFAULT_MAX_ENTRIES = 1_000;
+    public static final long DEFAULT_TTL_MILLIS = 10_000;
+    public static final long DEFAULT_NEGATIVE_TTL_MILLIS = 2_000;
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final Map<String, Entry> entries;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong expirationCount = new AtomicLong();
+
+    public UserCache() {
+        this(Configuration.getInt(MAX_ENTRIES_VARIABLE, DEFAULT_MAX_ENTRIES),
+                Configuration.getLong(TTL_VARIABLE, DEFAULT_TTL_MILLIS),
+                Configuration.getLong(NEGATIVE_TTL_VARIABLE, DEFAULT_NEGATIVE_TTL_MILLIS));
+    }
+
+    public UserCache(int maxEntries, long ttlMillis, long negativeTtlMillis) {
+        this.maxEntries = Math.max(0, maxEntries);
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.negativeTtlNanos = TimeUnit.MILLISECONDS.toNanos(negativeTtlMillis);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > UserCache.this.maxEntries) {
+                    evictionCount.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public boolean isEnabled() {
+        return maxEntries > 0;
+    }
+
+    /**
+     * Returns the cached lookup for the email, or null on a miss. A cached
+     * "not found" is returned as {@link Entry#isFound()} false.
+     */
+    public synchronized Entry get(String email) {
+        if (!isEnabled() || email == null) {
+            return null;
+        }
+        Entry entry = entries.get(email);
+        if (entry != null && System.nanoTime() - entry.expiresAt >= 0) {
+            entries.remove(email);
+            expirationCount.incrementAndGet();
+            entry = null;
+        }
+        if (entry == null) {
+            missCount.incrementAndGet();
+        } else {
+            hitCount.incrementAndGet();
+        }
+        return entry;
+    }
+
+    public void put(String email, String userJson) {
+        put(email, userJson, null);
+    }
+
+    /**
+     * @param version the version of the user, for its entity tag; null if
+     *                it has none
+     */
+    public synchronized void put(String email, String userJson, Long version) {
+        if (isEnabled() && email != null) {
+            entries.put(email, new Entry(userJson, version, System.nanoTime() + ttlNanos));
+        }
+    }
+
+    public synchronized void putNotFound(String email) {
+        if (isEnabled() && email != null && negativeTtlNanos > 0) {
+            entries.put(email, new Entry(null, null, System.nanoTime() + negativeTtlNanos));
+        }
+    }
+
+    public synchronized void invalidate(String email) {
+        if (email != null) {
+            entries.remove(email);
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    public long getExpirationCount() {
+        return expirationCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "UserCache{size=" + getSize() + ", maxEntries=" + maxEntries + ", hits=" + getHitCount()
+                + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount()
+                + ", expirations=" + getExpirationCount() + "}";
+    }
+
+    public static final class Entry {
+
+        private final String userJson;
+        private final Long version;
+        private final long expiresAt;
+
+        private Entry(String userJson, Long version, long expiresAt) {
+            this.userJson = userJson;
+            this.version = version;
+            this.expiresAt = expiresAt;
+        }
+
+        public boolean isFound() {
+            return userJson != null;
+        }
+
+        public String getUserJson() {
+            return userJson;
+        }
+
+        public Long getVersion() {
+            return version;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package layer.service;
+
+/**
+ * A user that cannot be created because a user with its email already
+ * exists.
+ */
+public class UserExistsException extends RuntimeException {
+
+    public UserExistsException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,269 @@
+package layer.service;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperTableModel;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.google.gson.Gson;
+import layer.model.User;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports the user table to NDJSON files, one user per line in the JSON of
+ * the API, with a segmented scan whose segments are read concurrently. Every
+ * segment writes its own file, {@code users-SS-of-TT.ndjson} (or
+ * {@code .ndjson.gz}), one scan page at a time, so memory stays at a page
+ * per segment whatever the table size.
+ * <p>
+ * After every page the file is flushed and {@code export-checkpoint.json}
+ * records its length and the page's last key. An interrupted export run
+ * again into the same directory truncates every file to its checkpoint and
+ * continues from there, with the segment count and compression it was
+ * started with. Each gzipped page is a gzip member of its own, so a
+ * truncated file is still valid. A scan is not a snapshot: users written
+ * while it runs may or may not be in the export.
+ */
+public class UserExport {
+
+    public static final String CHECKPOINT_FILE = "export-checkpoint.json";
+
+    private static final Gson gson = new Gson();
+    private static final String TABLE_NAME = User.class.getAnnotation(DynamoDBTable.class).tableName();
+    private static final int BUFFER_SIZE = 64 * 1_024;
+
+    private final AmazonDynamoDB amazonDynamoDB;
+    private final DynamoDBMapperTableModel<User> tableModel;
+    private final Path directory;
+    private Checkpoint checkpoint;
+
+    public UserExport(AmazonDynamoDB amazonDynamoDB, Path directory) {
+        this.amazonDynamoDB = amazonDynamoDB;
+        this.tableModel = new DynamoDBMapper(amazonDynamoDB).getTableModel(User.class);
+        this.directory = directory;
+    }
+
+    /**
+     * Exports every segment not yet done and returns the number of users in
+     * the export. {@code totalSegments} and {@code gzip} only apply to a new
+     * export; a resumed one keeps those of its checkpoint.
+     */
+    public long run(int totalSegments, boolean gzip) throws IOException, InterruptedException {
+        Files.createDirectories(directory);
+        checkpoint = readCheckpoint();
+        if (checkpoint == null) {
+            checkpoint = new Checkpoint(Math.max(1, totalSegments), gzip);
+            writeCheckpoint();
+        }
+
+        ExecutorService executor = WorkerThreads.newBoundedExecutor("user-export", checkpoint.totalSegments);
+        try {
+            List<Future<?>> segments = new ArrayList<>(checkpoint.totalSegments);
+            for (int segment = 0; segment < checkpoint.totalSegments; segment++) {
+                int index = segment;
+                segments.add(executor.submit(() -> {
+                    exportSegment(index);
+                    return null;
+                }));
+            }
+            for (Future<?> segment : segments) {
+                segment.get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        } finally {
+            executor.shutdownNow();
+        }
+        return checkpoint.getItems();
+    }
+
+    /**
+     * The file one segment of an export writes.
+     */
+    public static String getFileName(int segment, int totalSegments, boolean gzip) {
+        return String.format("users-%02d-of-%02d.ndjson%s", segment, totalSegments, gzip ? ".gz" : "");
+    }
+
+    private void exportSegment(int segment) throws IOException, InterruptedException {
+        SegmentCheckpoint state = checkpoint.getSegment(segment);
+        if (state.done) {
+            return;
+        }
+        Path file = directory.resolve(getFileName(segment, checkpoint.totalSegments, checkpoint.gzip));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // whatever was written after the last checkpoint is written again
+            channel.truncate(state.bytes);
+            channel.position(state.bytes);
+            OutputStream output = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+            Map<String, AttributeValue> startKey = toKey(state.lastEvaluatedKey);
+            do {
+                ScanResult page = scan(new ScanRequest()
+                        .withTableName(TABLE_NAME)
+                        .withSegment(segment)
+                        .withTotalSegments(checkpoint.totalSegments)
+                        .withExclusiveStartKey(startKey));
+                try (Writer writer = new OutputStreamWriter(openPage(output), StandardCharsets.UTF_8)) {
+                    for (Map<String, AttributeValue> item : page.getItems()) {
+                        gson.toJson(tableModel.unconvert(item), User.class, writer);
+                        writer.write('\n');
+                    }
+                }
+                channel.force(false);
+                startKey = page.getLastEvaluatedKey() == null || page.getLastEvaluatedKey().isEmpty()
+                        ? null : page.getLastEvaluatedKey();
+                synchronized (this) {
+                    state.bytes = channel.position();
+                    state.items += page.getItems().size();
+                    state.lastEvaluatedKey = fromKey(startKey);
+                    state.done = startKey == null;
+                    writeCheckpoint();
+                }
+            } while (startKey != null);
+        }
+    }
+
+    /**
+     * A stream for one page over {@code output} that flushes it, instead of
+     * closing it, when the page is closed.
+     */
+    private OutputStream openPage(OutputStream output) throws IOException {
+        OutputStream page = new FilterOutputStream(output) {
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                out.write(bytes, offset, length);
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.flush();
+            }
+        };
+        return checkpoint.gzip ? new GZIPOutputStream(page, BUFFER_SIZE) : page;
+    }
+
+    /**
+     * Scans a page, retrying throttled requests with backoff; other errors
+     * are retried by the client.
+     */
+    private ScanResult scan(ScanRequest scanRequest) throws InterruptedException {
+        long backoffMillis = 0;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return amazonDynamoDB.scan(scanRequest);
+            } catch (RuntimeException e) {
+                if (!AsyncDynamoDBClient.isThrottling(e) || attempt == Backoff.MAX_ATTEMPTS) {
+                    throw e;
+                }
+                backoffMillis = Backoff.getDecorrelatedBackoffMillis(backoffMillis);
+                Thread.sleep(backoffMillis);
+            }
+        }
+    }
+
+    private Checkpoint readCheckpoint() throws IOException {
+        Path file = directory.resolve(CHECKPOINT_FILE);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return gson.fromJson(reader, Checkpoint.class);
+        }
+    }
+
+    /**
+     * Replaces the checkpoint file in one move, so it is never half written.
+     */
+    private void writeCheckpoint() {
+        Path file = directory.resolve(CHECKPOINT_FILE);
+        Path temporary = directory.resolve(CHECKPOINT_FILE + ".tmp");
+        try {
+            Files.writeString(temporary, gson.toJson(checkpoint), StandardCharsets.UTF_8);
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * The key attributes of the user table are strings, so a key is kept as
+     * their values.
+     */
+    private static Map<String, AttributeValue> toKey(Map<String, String> values) {
+        if (values == null) {
+            return null;
+        }
+        Map<String, AttributeValue> key = new HashMap<>();
+        values.forEach((name, value) -> key.put(name, new AttributeValue(value)));
+        return key;
+    }
+
+    private static Map<String, String> fromKey(Map<String, AttributeValue> key) {
+        if (key == null) {
+            return null;
+        }
+        Map<String, String> values = new HashMap<>();
+        key.forEach((name, value) -> values.put(name, value.getS()));
+        return values;
+    }
+
+    private static final class Checkpoint {
+
+        private final int totalSegments;
+        private final boolean gzip;
+        private final List<SegmentCheckpoint> segments;
+
+        private Checkpoint(int totalSegments, boolean gzip) {
+            this.totalSegments = totalSegments;
+            this.gzip = gzip;
+            this.segments = new ArrayList<>(totalSegments);
+            for (int i = 0; i < totalSegments; i++) {
+                segments.add(new SegmentCheckpoint());
+            }
+        }
+
+        SegmentCheckpoint getSegment(int segment) {
+            return segments.get(segment);
+        }
+
+        long getItems() {
+            return segments.stream().mapToLong(segment -> segment.items).sum();
+        }
+    }
+
+    private static final class SegmentCheckpoint {
+
+        private long bytes;
+        private long items;
+        private Map<String, String> lastEvaluatedKey;
+        private boolean done;
+    }
+}
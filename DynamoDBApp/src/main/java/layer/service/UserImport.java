@@ -0,0 +1,349 @@
+package layer.service;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapper;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBMapperTableModel;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputDescription;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import layer.engine.LocalDynamoDB;
+import layer.model.User;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Imports NDJSON users, as {@link UserExport} writes them, into the user
+ * table. Lines are parsed and validated like a bulk create on the calling
+ * thread and go in batches of 25 through a bounded queue to
+ * {@code concurrency} writer threads, so reading never runs ahead of writing
+ * by more than a few batches. Each batch is one {@code BatchWriteItem}, whose
+ * unprocessed items are resent with {@link Backoff}. Users are written as
+ * they are: an existing user with the same email is replaced, and of two
+ * lines with the same email either may be the one that stays.
+ * <p>
+ * Writers take their write units from a {@link CapacityLimiter} bucket that
+ * refills at the budget, charging every item its size in 1 KB units each
+ * time it is sent. A throttled batch empties the bucket. The budget defaults
+ * to the provisioned write capacity of the table, so the table, not the
+ * client, sets the pace; a table without one is written as fast as the
+ * writers go. Index writes are not charged, so with indexes provisioned
+ * lower than the table a budget of what they allow throttles less.
+ */
+public class UserImport {
+
+    public static final int DEFAULT_CONCURRENCY = 8;
+    public static final int MAX_MESSAGES = 100;
+
+    private static final Gson gson = new Gson();
+    private static final String TABLE_NAME = User.class.getAnnotation(DynamoDBTable.class).tableName();
+    private static final List<Map<String, AttributeValue>> END_OF_INPUT = Collections.emptyList();
+    private static final int WRITE_UNIT_BYTES = 1_024;
+    private static final long MAX_WAIT_MILLIS = 1_000;
+    private static final int BUFFER_SIZE = 64 * 1_024;
+
+    private final AmazonDynamoDB amazonDynamoDB;
+    private final DynamoDBMapperTableModel<User> tableModel;
+    private final int concurrency;
+    private final CapacityLimiter.Bucket bucket;
+    private final Result result = new Result();
+
+    /**
+     * @param writeUnitsPerSecond the write budget; 0 or less for the
+     *                            provisioned write capacity of the table
+     */
+    public UserImport(AmazonDynamoDB amazonDynamoDB, int concurrency, double writeUnitsPerSecond) {
+        this.amazonDynamoDB = amazonDynamoDB;
+        this.tableModel = new DynamoDBMapper(amazonDynamoDB).getTableModel(User.class);
+        this.concurrency = Math.max(1, concurrency);
+        double budget = writeUnitsPerSecond > 0 ? writeUnitsPerSecond : getProvisionedWriteUnits();
+        this.bucket = budget > 0
+                ? new CapacityLimiter(true, 0, budget, 0, 0, 1, MAX_WAIT_MILLIS).getBucket(TABLE_NAME, null, true)
+                : null;
+        result.writeUnitsPerSecond = budget;
+    }
+
+    /**
+     * The files of a path: the path itself, or the {@code .ndjson} and
+     * {@code .ndjson.gz} files of a directory in name order.
+     */
+    public static List<Path> getFiles(Path path) throws IOException {
+        if (!Files.isDirectory(path)) {
+            return List.of(path);
+        }
+        try (Stream<Path> files = Files.list(path)) {
+            return files.filter(file -> file.getFileName().toString().matches(".*\\.ndjson(\\.gz)?"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Imports the files one after another and returns what became of their
+     * users.
+     */
+    public Result run(List<Path> files) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        BlockingQueue<List<Map<String, AttributeValue>>> batches = new ArrayBlockingQueue<>(concurrency * 2);
+        ExecutorService writers = WorkerThreads.newBoundedExecutor("user-import", concurrency);
+        List<Future<?>> writerFutures = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            writerFutures.add(writers.submit(() -> {
+                for (List<Map<String, AttributeValue>> batch = batches.take(); batch != END_OF_INPUT;
+                     batch = batches.take()) {
+                    write(batch);
+                }
+                return null;
+            }));
+        }
+        try {
+            for (Path file : files) {
+                read(file, batches);
+            }
+        } finally {
+            for (int i = 0; i < concurrency; i++) {
+                batches.put(END_OF_INPUT);
+            }
+            try {
+                for (Future<?> writer : writerFutures) {
+                    writer.get();
+                }
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            } finally {
+                writers.shutdownNow();
+            }
+        }
+        result.elapsedNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    private void read(Path file, BlockingQueue<List<Map<String, AttributeValue>>> batches)
+            throws IOException, InterruptedException {
+        try (BufferedReader reader = open(file)) {
+            List<Map<String, AttributeValue>> batch = new ArrayList<>(BatchWriter.MAX_BATCH_WRITE_ITEMS);
+            Set<String> emails = new HashSet<>();
+            int lineNumber = 0;
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                User user;
+                try {
+                    user = gson.fromJson(line, User.class);
+                } catch (JsonParseException e) {
+                    user = null;
+                }
+                String error = validate(user);
+                if (error != null) {
+                    result.rejected(file.getFileName() + ":" + lineNumber + ": " + error);
+                    continue;
+                }
+                // a batch cannot put the same key twice
+                if (!emails.add(user.getEmail()) || batch.size() == BatchWriter.MAX_BATCH_WRITE_ITEMS) {
+                    batches.put(batch);
+                    batch = new ArrayList<>(BatchWriter.MAX_BATCH_WRITE_ITEMS);
+                    emails.clear();
+                    emails.add(user.getEmail());
+                }
+                batch.add(tableModel.convert(user));
+            }
+            if (!batch.isEmpty()) {
+                batches.put(batch);
+            }
+        }
+    }
+
+    /**
+     * The reason the user cannot be imported, or null; a user without a
+     * country gets the one every user is created with. An export holds no
+     * versions, so every imported user starts at 1, like a created one.
+     */
+    private static String validate(User user) {
+        if (user == null) {
+            return "User cannot be parsed";
+        } else if (user.getEmail() == null || user.getEmail().isEmpty()) {
+            return "User has no email";
+        } else if (user.getSocialMedia() != null && !DynamoDBServiceImpl.isValidSocialMedia(user.getSocialMedia())) {
+            return "User with such social media links cannot be created";
+        }
+        if (user.getCountry() == null) {
+            user.setCountry(DynamoDBServiceImpl.INDEX_PARTITION_KEY_VALUE);
+        }
+        user.setVersion(1L);
+        return null;
+    }
+
+    private void write(List<Map<String, AttributeValue>> batch) throws InterruptedException {
+        List<WriteRequest> pending = new ArrayList<>(batch.size());
+        for (Map<String, AttributeValue> item : batch) {
+            pending.add(new WriteRequest().withPutRequest(new PutRequest().withItem(item)));
+        }
+        long throttledBackoffMillis = 0;
+        for (int attempt = 0; !pending.isEmpty(); attempt++) {
+            if (attempt == Backoff.MAX_ATTEMPTS) {
+                result.failed(pending, "Not processed after " + Backoff.MAX_ATTEMPTS + " attempts");
+                return;
+            }
+            acquire(pending);
+            BatchWriteItemResult batchResult;
+            try {
+                batchResult = amazonDynamoDB.batchWriteItem(new BatchWriteItemRequest()
+                        .withRequestItems(Map.of(TABLE_NAME, pending)));
+            } catch (RuntimeException e) {
+                if (!AsyncDynamoDBClient.isThrottling(e)) {
+                    result.failed(pending, e.getClass().getSimpleName() + ": " + e.getMessage());
+                    return;
+                }
+                if (bucket != null) {
+                    bucket.throttled();
+                }
+                throttledBackoffMillis = Backoff.getDecorrelatedBackoffMillis(throttledBackoffMillis);
+                Thread.sleep(throttledBackoffMillis);
+                continue;
+            }
+            List<WriteRequest> unprocessed = batchResult.getUnprocessedItems() == null
+                    ? null : batchResult.getUnprocessedItems().get(TABLE_NAME);
+            int unprocessedCount = unprocessed == null ? 0 : unprocessed.size();
+            result.written.addAndGet(pending.size() - unprocessedCount);
+            pending = unprocessedCount == 0 ? List.of() : unprocessed;
+            if (!pending.isEmpty()) {
+                Thread.sleep(Backoff.getBackoffMillis(attempt + 1));
+            }
+        }
+    }
+
+    /**
+     * Waits for the bucket to be out of debt, then charges it for the items.
+     */
+    private void acquire(List<WriteRequest> writeRequests) throws InterruptedException {
+        long units = 0;
+        for (WriteRequest writeRequest : writeRequests) {
+            units += (LocalDynamoDB.getItemSize(writeRequest.getPutRequest().getItem()) + WRITE_UNIT_BYTES - 1)
+                    / WRITE_UNIT_BYTES;
+        }
+        result.writeUnits.addAndGet(units);
+        if (bucket == null) {
+            return;
+        }
+        for (long delay = bucket.getDelayMillis(); delay > 0; delay = bucket.getDelayMillis()) {
+            Thread.sleep(delay);
+        }
+        bucket.consume(units);
+    }
+
+    private double getProvisionedWriteUnits() {
+        ProvisionedThroughputDescription throughput = amazonDynamoDB.describeTable(TABLE_NAME).getTable()
+                .getProvisionedThroughput();
+        return throughput == null || throughput.getWriteCapacityUnits() == null
+                ? 0 : throughput.getWriteCapacityUnits();
+    }
+
+    private static BufferedReader open(Path file) throws IOException {
+        InputStream input = Files.newInputStream(file);
+        if (file.getFileName().toString().endsWith(".gz")) {
+            // reads every member of a file that UserExport wrote page by page
+            input = new GZIPInputStream(input, BUFFER_SIZE);
+        }
+        return new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    /**
+     * The users written, rejected before writing and failed to write, with
+     * the first {@link #MAX_MESSAGES} reasons for the last two.
+     */
+    public static final class Result {
+
+        private final AtomicLong written = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong writeUnits = new AtomicLong();
+        private final List<String> messages = Collections.synchronizedList(new ArrayList<>());
+        private volatile double writeUnitsPerSecond;
+        private volatile long elapsedNanos;
+
+        private void rejected(String message) {
+            rejected.incrementAndGet();
+            addMessage(message);
+        }
+
+        private void failed(List<WriteRequest> writeRequests, String message) {
+            failed.addAndGet(writeRequests.size());
+            for (WriteRequest writeRequest : writeRequests) {
+                addMessage(writeRequest.getPutRequest().getItem().get(DynamoDBServiceImpl.TABLE_PARTITION_KEY).getS()
+                        + ": " + message);
+            }
+        }
+
+        private void addMessage(String message) {
+            synchronized (messages) {
+                if (messages.size() < MAX_MESSAGES) {
+                    messages.add(message);
+                }
+            }
+        }
+
+        public long getWritten() {
+            return written.get();
+        }
+
+        public long getRejected() {
+            return rejected.get();
+        }
+
+        public long getFailed() {
+            return failed.get();
+        }
+
+        /**
+         * The write units charged, counting every time an item was sent.
+         */
+        public long getWriteUnits() {
+            return writeUnits.get();
+        }
+
+        /**
+         * The budget the import was paced at; 0 if it was not.
+         */
+        public double getWriteUnitsPerSecond() {
+            return writeUnitsPerSecond;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public List<String> getMessages() {
+            synchronized (messages) {
+                return new ArrayList<>(messages);
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package layer.service;
+
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBAttribute;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBHashKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIndexHashKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBIndexRangeKey;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBVersionAttribute;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import layer.model.User;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * The {@link User} fields a list response is limited to, as a DynamoDB
+ * {@code ProjectionExpression}. Fields are named as in the JSON (e.g.
+ * {@code socialMedia}) and mapped to their attribute names; unknown names
+ * are ignored, and no known name means every attribute. Attributes that are
+ * not read stay null on the user and are left out of the JSON by Gson.
+ */
+final class UserProjection {
+
+    static final UserProjection ALL = new UserProjection(Collections.emptyMap(), List.of());
+
+    private static final Map<String, Field> FIELDS = getFields();
+    private static final Map<String, String> ATTRIBUTE_NAMES = getAttributeNames();
+
+    private final Map<String, String> expressionAttributeNames;
+    private final List<Field> unrequestedFields;
+    private final String projectionExpression;
+
+    private UserProjection(Map<String, String> expressionAttributeNames, List<Field> unrequestedFields) {
+        this.expressionAttributeNames = expressionAttributeNames;
+        this.unrequestedFields = unrequestedFields;
+        StringJoiner projection = new StringJoiner(", ");
+        expressionAttributeNames.keySet().forEach(projection::add);
+        this.projectionExpression = expressionAttributeNames.isEmpty() ? null : projection.toString();
+    }
+
+    /**
+     * Parses a comma separated list such as {@code name,avatar,location}.
+     */
+    static UserProjection of(String fields) {
+        return fields == null ? ALL : of(Arrays.asList(fields.split(",")));
+    }
+
+    static UserProjection of(Collection<String> fields) {
+        if (fields == null) {
+            return ALL;
+        }
+        Map<String, String> expressionAttributeNames = new LinkedHashMap<>();
+        for (String field : fields) {
+            String attributeName = field == null ? null : ATTRIBUTE_NAMES.get(field.trim());
+            if (attributeName != null && !expressionAttributeNames.containsValue(attributeName)) {
+                expressionAttributeNames.put("#field" + expressionAttributeNames.size(), attributeName);
+            }
+        }
+        if (expressionAttributeNames.isEmpty()) {
+            return ALL;
+        }
+        List<Field> unrequestedFields = new ArrayList<>();
+        for (Map.Entry<String, Field> field : FIELDS.entrySet()) {
+            if (!expressionAttributeNames.containsValue(field.getKey())) {
+                unrequestedFields.add(field.getValue());
+            }
+        }
+        return new UserProjection(expressionAttributeNames, unrequestedFields);
+    }
+
+    boolean isAll() {
+        return projectionExpression == null;
+    }
+
+    /**
+     * This projection widened by attributes the service needs itself, e.g.
+     * the key attributes a cursor is built from. The fields read only because
+     * of that are still cleared by {@link #clearUnrequested(User)}.
+     */
+    UserProjection including(Collection<String> attributeNames) {
+        if (isAll()) {
+            return this;
+        }
+        Map<String, String> names = new LinkedHashMap<>(expressionAttributeNames);
+        for (String attributeName : attributeNames) {
+            if (!names.containsValue(attributeName)) {
+                names.put("#field" + names.size(), attributeName);
+            }
+        }
+        return new UserProjection(names, unrequestedFields);
+    }
+
+    /**
+     * Clears every field that was not asked for, so it is left out of the
+     * JSON; a user read with every attribute is left alone.
+     */
+    void clearUnrequested(User user) {
+        try {
+            for (Field field : unrequestedFields) {
+                field.set(user, null);
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    ScanRequest applyTo(ScanRequest scanRequest) {
+        if (isAll()) {
+            return scanRequest;
+        }
+        return scanRequest
+                .withProjectionExpression(projectionExpression)
+                .withExpressionAttributeNames(merge(scanRequest.getExpressionAttributeNames()));
+    }
+
+    QueryRequest applyTo(QueryRequest queryRequest) {
+        if (isAll()) {
+            return queryRequest;
+        }
+        return queryRequest
+                .withProjectionExpression(projectionExpression)
+                .withExpressionAttributeNames(merge(queryRequest.getExpressionAttributeNames()));
+    }
+
+    private Map<String, String> merge(Map<String, String> existingNames) {
+        Map<String, String> names = existingNames == null ? new HashMap<>() : new HashMap<>(existingNames);
+        names.putAll(expressionAttributeNames);
+        return names;
+    }
+
+    private static Map<String, String> getAttributeNames() {
+        Map<String, String> attributeNames = new HashMap<>();
+        for (Map.Entry<String, Field> field : FIELDS.entrySet()) {
+            attributeNames.put(field.getValue().getName(), field.getKey());
+        }
+        return Collections.unmodifiableMap(attributeNames);
+    }
+
+    /**
+     * The mapped fields of {@link User} by attribute name.
+     */
+    private static Map<String, Field> getFields() {
+        Map<String, Field> fields = new HashMap<>();
+        for (Field field : User.class.getDeclaredFields()) {
+            String attributeName = null;
+            if (field.isAnnotationPresent(DynamoDBHashKey.class)) {
+                attributeName = field.getAnnotation(DynamoDBHashKey.class).attributeName();
+            } else if (field.isAnnotationPresent(DynamoDBIndexHashKey.class)) {
+                attributeName = field.getAnnotation(DynamoDBIndexHashKey.class).attributeName();
+            } else if (field.isAnnotationPresent(DynamoDBIndexRangeKey.class)) {
+                attributeName = field.getAnnotation(DynamoDBIndexRangeKey.class).attributeName();
+            } else if (field.isAnnotationPresent(DynamoDBAttribute.class)) {
+                attributeName = field.getAnnotation(DynamoDBAttribute.class).attributeName();
+            } else if (field.isAnnotationPresent(DynamoDBVersionAttribute.class)) {
+                attributeName = field.getAnnotation(DynamoDBVersionAttribute.class).attributeName();
+            }
+            if (attributeName != null) {
+                field.setAccessible(true);
+                fields.put(attributeName.isEmpty() ? field.getName() : attributeName, field);
+            }
+        }
+        return Collections.unmodifiableMap(fields);
+    }
+}
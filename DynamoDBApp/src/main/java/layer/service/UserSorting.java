@@ -0,0 +1,82 @@
+package layer.service;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import layer.model.User;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The order of a sorted {@code /match} response: an attribute that is the
+ * range key of a GSI and a direction, ties broken by email in the same
+ * direction, which is the order the index is read in. Only users that have
+ * the attribute are listed, as only they are in the (sparse) index.
+ */
+final class UserSorting {
+
+    private final String indexName;
+    private final String attributeName;
+    private final String emailAttributeName;
+    private final boolean ascending;
+    private final Function<User, ?> sortKey;
+    private final Comparator<User> comparator;
+
+    private UserSorting(String indexName, String attributeName, String emailAttributeName, boolean ascending,
+                        Function<User, ?> sortKey, Comparator<User> comparator) {
+        this.indexName = indexName;
+        this.attributeName = attributeName;
+        this.emailAttributeName = emailAttributeName;
+        this.ascending = ascending;
+        this.sortKey = sortKey;
+        this.comparator = comparator;
+    }
+
+    static <T extends Comparable<? super T>> UserSorting of(String indexName, String attributeName,
+                                                            String emailAttributeName, boolean ascending,
+                                                            Function<User, T> sortKey) {
+        Comparator<User> order = Comparator.comparing(sortKey).thenComparing(User::getEmail);
+        return new UserSorting(indexName, attributeName, emailAttributeName, ascending, sortKey,
+                ascending ? order : order.reversed());
+    }
+
+    String getIndexName() {
+        return indexName;
+    }
+
+    String getAttributeName() {
+        return attributeName;
+    }
+
+    boolean isAscending() {
+        return ascending;
+    }
+
+    Comparator<User> getComparator() {
+        return comparator;
+    }
+
+    boolean hasValue(User user) {
+        return user.getEmail() != null && sortKey.apply(user) != null;
+    }
+
+    /**
+     * The name cursors of an in-memory sort are issued for, distinct from
+     * every index name so they are never mistaken for a key of one.
+     */
+    String getCursorName() {
+        return "sorted:" + attributeName + (ascending ? ":asc" : ":desc");
+    }
+
+    /**
+     * The position of an item in this order, to resume after it, either in
+     * memory or from the index.
+     */
+    Map<String, AttributeValue> getCursorKey(Map<String, AttributeValue> item) {
+        Map<String, AttributeValue> cursorKey = new HashMap<>();
+        cursorKey.put(attributeName, item.get(attributeName));
+        cursorKey.put(emailAttributeName, item.get(emailAttributeName));
+        return cursorKey;
+    }
+}
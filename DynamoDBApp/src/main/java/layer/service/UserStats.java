@@ -0,0 +1,529 @@
+package layer.service;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.datamodeling.DynamoDBTable;
+import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.ReturnValue;
+import com.amazonaws.services.dynamodbv2.model.ScalarAttributeType;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.google.gson.Gson;
+import layer.engine.LocalDynamoDB;
+import layer.model.ResponseMessage;
+import layer.model.User;
+import layer.model.UserStatsCounts;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Counts of users by location, year of birth and registration date, kept
+ * up to date from the stream of the user table so that reading them is one
+ * batch read instead of a scan. Each dimension is one item of
+ * {@code USER_STATS_TABLE}, keyed by {@code dimension}, with a number
+ * attribute per bucket; {@code users} holds the {@code total}. Locations
+ * are free text, so that dimension is spread over {@link #LOCATION_SHARDS}
+ * items to stay clear of the item size limit.
+ * <p>
+ * A batch of stream records is folded into per-bucket deltas, the old image
+ * counted out and the new one counted in, so an update that leaves the
+ * buckets alone writes nothing. Every item with a change is one UpdateItem
+ * with {@code ADD}, which commutes, so shards may be applied in any order.
+ * The stream needs {@code NEW_AND_OLD_IMAGES}. Delivery is at least once,
+ * so the same update also stores the sequence number of the last record of
+ * the shard, and is conditional on it being older than the batch: an item
+ * that took a batch the stream then retries, after another item failed,
+ * only adds the records it has not seen.
+ */
+public class UserStats {
+
+    public static final String TABLE_VARIABLE = "USER_STATS_TABLE";
+    public static final String DEFAULT_TABLE_NAME = "it-marathon-v3-user-stats";
+    public static final String DIMENSION_KEY = "dimension";
+    public static final String USERS_DIMENSION = "users";
+    public static final String LOCATION_DIMENSION = "location";
+    public static final String BIRTH_YEAR_DIMENSION = "birthYear";
+    public static final String REGISTRATION_DATE_DIMENSION = "registrationDate";
+    /**
+     * Not stored: read from {@link #BIRTH_YEAR_DIMENSION} as the age reached
+     * this year.
+     */
+    public static final String AGE_DIMENSION = "age";
+    public static final String TOTAL_BUCKET = "total";
+    public static final int LOCATION_SHARDS = 16;
+
+    private static final List<String> STORED_DIMENSIONS = List.of(USERS_DIMENSION, LOCATION_DIMENSION,
+            BIRTH_YEAR_DIMENSION, REGISTRATION_DATE_DIMENSION);
+    private static final String BIRTHDAY_ATTRIBUTE = "birthday";
+    private static final String REGISTRATION_ATTRIBUTE = "registration";
+
+    /**
+     * Starts the names of the bookkeeping attributes, so a bucket cannot
+     * start with it.
+     */
+    private static final String RESERVED_PREFIX = "~";
+    private static final String SEQUENCE_NUMBER_PREFIX = RESERVED_PREFIX + "seq:";
+    private static final String APPLIED_AT_PREFIX = RESERVED_PREFIX + "at:";
+    private static final String LOCAL_SHARD_ID = "local";
+    /**
+     * Stream sequence numbers are up to 40 digits, more than a number
+     * attribute holds, so they are stored as strings padded to this length.
+     */
+    private static final int SEQUENCE_NUMBER_DIGITS = 40;
+    /**
+     * Longer than the stream keeps records, so a shard whose marker is older
+     * has nothing left that could be retried.
+     */
+    private static final long MARKER_EXPIRY_MILLIS = TimeUnit.HOURS.toMillis(48);
+
+    private static final Gson gson = new Gson();
+    private static final String USER_TABLE = User.class.getAnnotation(DynamoDBTable.class).tableName();
+    private static final AtomicBoolean localStreamConnected = new AtomicBoolean();
+
+    private final AmazonDynamoDBConnect amazonDynamoDBConnect;
+    private final Metrics metrics;
+    private final String tableName;
+    private final Object localShardLock = new Object();
+    private long localSequenceNumber;
+    private CompletableFuture<Void> localShard = CompletableFuture.completedFuture(null);
+
+    public UserStats(AmazonDynamoDBConnect amazonDynamoDBConnect) {
+        this(amazonDynamoDBConnect, new Metrics());
+    }
+
+    public UserStats(AmazonDynamoDBConnect amazonDynamoDBConnect, Metrics metrics) {
+        this.amazonDynamoDBConnect = amazonDynamoDBConnect;
+        this.metrics = metrics;
+        this.tableName = getTableName();
+    }
+
+    public static String getTableName() {
+        String tableName = Configuration.getString(TABLE_VARIABLE);
+        return tableName != null && !tableName.isEmpty() ? tableName : DEFAULT_TABLE_NAME;
+    }
+
+    /**
+     * Creates the stats table the way create-tables/create-stats-table.json
+     * defines it and, once per JVM, feeds the stream of the engine's user
+     * table into the stats, as a stream-triggered function would.
+     */
+    public static LocalDynamoDB connectLocalStream(LocalDynamoDB localDynamoDB) {
+        localDynamoDB.createTableIfNotExists(new CreateTableRequest()
+                .withTableName(getTableName())
+                .withKeySchema(new KeySchemaElement(DIMENSION_KEY, KeyType.HASH))
+                .withAttributeDefinitions(new AttributeDefinition(DIMENSION_KEY, ScalarAttributeType.S))
+                .withProvisionedThroughput(new ProvisionedThroughput(1L, 1L)));
+        if (localStreamConnected.compareAndSet(false, true)) {
+            UserStats userStats = new UserStats(new AmazonDynamoDBConnect(localDynamoDB));
+            localDynamoDB.addStreamListener(USER_TABLE, userStats::applyLocal);
+        }
+        return localDynamoDB;
+    }
+
+    /**
+     * Adds a batch of stream records of one shard, in stream order, to the
+     * counts. The future fails if any item could not be updated, for the
+     * stream to retry the batch.
+     */
+    public CompletableFuture<Void> applyAsync(String shardId, List<Record> records) {
+        if (shardId == null || shardId.isEmpty()) {
+            throw new IllegalArgumentException("Stream records are applied per shard, the shard id is missing");
+        }
+        Map<String, Map<String, Long>> deltas = getDeltas(records);
+        if (deltas.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        OperationMetrics operationMetrics = metrics.start("aggregateUserStats");
+        List<CompletableFuture<?>> updates = new ArrayList<>(deltas.size());
+        for (Map.Entry<String, Map<String, Long>> item : deltas.entrySet()) {
+            updates.add(applyToItem(item.getKey(), shardId, records, item.getValue(), operationMetrics));
+        }
+        return operationMetrics.emitOnCompletion(CompletableFuture.allOf(updates.toArray(new CompletableFuture[0])));
+    }
+
+    public void apply(String shardId, List<Record> records) {
+        CompletableFutures.join(applyAsync(shardId, records));
+    }
+
+    /**
+     * Applies a record of the in-process engine, which calls its listeners
+     * concurrently and so out of order: the records are numbered again and
+     * applied one after the other as a single shard. Nothing waits for the
+     * update, which would hold the user item's lock.
+     */
+    private void applyLocal(Record record) {
+        synchronized (localShardLock) {
+            Record numbered = record.clone().withDynamodb(record.getDynamodb().clone()
+                    .withSequenceNumber(Long.toString(++localSequenceNumber)));
+            localShard = localShard
+                    .thenCompose(ignored -> applyAsync(LOCAL_SHARD_ID, List.of(numbered)))
+                    .exceptionally(e -> null);
+        }
+    }
+
+    /**
+     * The counts of one dimension as JSON, buckets in order and empty ones
+     * left out.
+     */
+    public CompletableFuture<String> getStatsAsync(String dimension) {
+        OperationMetrics operationMetrics = metrics.start("getUserStats");
+        return operationMetrics.emitOnCompletion(CompletableFutures.start(() -> {
+            String storedDimension = AGE_DIMENSION.equals(dimension) ? BIRTH_YEAR_DIMENSION : dimension;
+            if (dimension == null || !STORED_DIMENSIONS.contains(storedDimension)) {
+                return CompletableFuture.completedFuture(gson.toJson(ResponseMessage.builder()
+                        .message("Unknown dimension: " + dimension).build()));
+            }
+            List<Map<String, AttributeValue>> keys = new ArrayList<>();
+            for (String itemKey : getItemKeys(storedDimension)) {
+                keys.add(getKey(itemKey));
+            }
+            return BatchReader.loadItems(asyncClient(), tableName, keys, operationMetrics)
+                    .thenApply(items -> {
+                        long serializeStart = operationMetrics.serializeStarted();
+                        String statsJson = gson.toJson(UserStatsCounts.builder()
+                                .dimension(dimension)
+                                .counts(getCounts(dimension, items))
+                                .build());
+                        operationMetrics.serializeCompleted(serializeStart);
+                        return statsJson;
+                    });
+        }));
+    }
+
+    /**
+     * Counts every user again from a scan of the user table and replaces the
+     * buckets of every stats item with the result, to re-seed the counts
+     * after the stream skipped a batch or to backfill users written before
+     * the stream was enabled. The sequence markers of the items are kept, so
+     * batches the stream has applied are not applied again; an item whose
+     * markers change while it is replaced is read and replaced again. The
+     * scan is not a snapshot: a user written while it runs may be counted by
+     * both the scan and the stream, so it is exact only while no users are
+     * written.
+     *
+     * @return the number of users counted
+     */
+    public long recount() {
+        AmazonDynamoDB amazonDynamoDB = amazonDynamoDBConnect.getAmazonDynamoDB();
+        Map<String, Map<String, Long>> counts = new HashMap<>();
+        long users = 0;
+        Map<String, AttributeValue> startKey = null;
+        do {
+            ScanResult page = amazonDynamoDB.scan(new ScanRequest()
+                    .withTableName(USER_TABLE)
+                    .withProjectionExpression("#email, #location, #birthday, #registration")
+                    .withExpressionAttributeNames(Map.of("#email", DynamoDBServiceImpl.TABLE_PARTITION_KEY,
+                            "#location", LOCATION_DIMENSION, "#birthday", BIRTHDAY_ATTRIBUTE,
+                            "#registration", REGISTRATION_ATTRIBUTE))
+                    .withExclusiveStartKey(startKey));
+            for (Map<String, AttributeValue> item : page.getItems()) {
+                count(counts, item, 1);
+            }
+            users += page.getItems().size();
+            startKey = page.getLastEvaluatedKey() == null || page.getLastEvaluatedKey().isEmpty()
+                    ? null : page.getLastEvaluatedKey();
+        } while (startKey != null);
+
+        for (String dimension : STORED_DIMENSIONS) {
+            for (String itemKey : getItemKeys(dimension)) {
+                if (LOCATION_DIMENSION.equals(itemKey)) {
+                    // its counts are in the location items now
+                    amazonDynamoDB.deleteItem(new DeleteItemRequest().withTableName(tableName)
+                            .withKey(getKey(itemKey)));
+                } else {
+                    replaceCounts(amazonDynamoDB, itemKey, counts.getOrDefault(itemKey, Map.of()));
+                }
+            }
+        }
+        return users;
+    }
+
+    private void replaceCounts(AmazonDynamoDB amazonDynamoDB, String itemKey, Map<String, Long> buckets) {
+        while (true) {
+            Map<String, AttributeValue> current = amazonDynamoDB.getItem(new GetItemRequest()
+                    .withTableName(tableName)
+                    .withKey(getKey(itemKey))
+                    .withConsistentRead(true)).getItem();
+            Map<String, AttributeValue> item = new HashMap<>(getKey(itemKey));
+            buckets.forEach((bucket, count) -> item.put(bucket, new AttributeValue().withN(count.toString())));
+            StringJoiner conditionExpression = new StringJoiner(" AND ");
+            Map<String, String> names = new HashMap<>();
+            Map<String, AttributeValue> values = new HashMap<>();
+            if (current == null) {
+                conditionExpression.add("attribute_not_exists(#key)");
+                names.put("#key", DIMENSION_KEY);
+            } else {
+                for (Map.Entry<String, AttributeValue> attribute : current.entrySet()) {
+                    if (attribute.getKey().startsWith(RESERVED_PREFIX)) {
+                        item.put(attribute.getKey(), attribute.getValue());
+                        String alias = "m" + names.size();
+                        conditionExpression.add("#" + alias + " = :" + alias);
+                        names.put("#" + alias, attribute.getKey());
+                        values.put(":" + alias, attribute.getValue());
+                    }
+                }
+            }
+            try {
+                amazonDynamoDB.putItem(new PutItemRequest()
+                        .withTableName(tableName)
+                        .withItem(item)
+                        .withConditionExpression(names.isEmpty() ? null : conditionExpression.toString())
+                        .withExpressionAttributeNames(names.isEmpty() ? null : names)
+                        .withExpressionAttributeValues(values.isEmpty() ? null : values));
+                return;
+            } catch (ConditionalCheckFailedException e) {
+                // the stream updated the item in the meantime
+            }
+        }
+    }
+
+    private AsyncDynamoDBClient asyncClient() {
+        return amazonDynamoDBConnect.getAsyncClient();
+    }
+
+    static Map<String, Map<String, Long>> getDeltas(List<Record> records) {
+        Map<String, Map<String, Long>> deltas = new HashMap<>();
+        for (Record record : records) {
+            StreamRecord streamRecord = record.getDynamodb();
+            if (streamRecord != null) {
+                count(deltas, streamRecord.getOldImage(), -1);
+                count(deltas, streamRecord.getNewImage(), 1);
+            }
+        }
+        deltas.values().forEach(buckets -> buckets.values().removeIf(delta -> delta == 0));
+        deltas.values().removeIf(Map::isEmpty);
+        return deltas;
+    }
+
+    private static void count(Map<String, Map<String, Long>> deltas, Map<String, AttributeValue> image, long delta) {
+        if (image == null) {
+            return;
+        }
+        add(deltas, USERS_DIMENSION, TOTAL_BUCKET, delta);
+        AttributeValue location = image.get(LOCATION_DIMENSION);
+        if (location != null && location.getS() != null && !location.getS().isEmpty()) {
+            add(deltas, LOCATION_DIMENSION, location.getS(), delta);
+        }
+        AttributeValue birthday = image.get(BIRTHDAY_ATTRIBUTE);
+        if (birthday != null && birthday.getN() != null) {
+            add(deltas, BIRTH_YEAR_DIMENSION, Integer.toString(toDate(birthday.getN()).getYear()), delta);
+        }
+        AttributeValue registration = image.get(REGISTRATION_ATTRIBUTE);
+        if (registration != null && registration.getN() != null) {
+            add(deltas, REGISTRATION_DATE_DIMENSION, toDate(registration.getN()).toString(), delta);
+        }
+    }
+
+    private static void add(Map<String, Map<String, Long>> deltas, String dimension, String bucket, long delta) {
+        // neither the key attribute nor a bookkeeping one can be a counter
+        if (!DIMENSION_KEY.equals(bucket) && !bucket.startsWith(RESERVED_PREFIX)) {
+            deltas.computeIfAbsent(getItemKey(dimension, bucket), key -> new HashMap<>())
+                    .merge(bucket, delta, Long::sum);
+        }
+    }
+
+    /**
+     * The key of the item that holds a bucket of a dimension; a location is
+     * held by one of the location items, picked by the hash of its text.
+     */
+    static String getItemKey(String dimension, String bucket) {
+        return LOCATION_DIMENSION.equals(dimension)
+                ? LOCATION_DIMENSION + "#" + Math.floorMod(bucket.hashCode(), LOCATION_SHARDS) : dimension;
+    }
+
+    /**
+     * The items that hold the buckets of a dimension. The unsharded
+     * {@code location} item holds the counts written before locations were
+     * spread, and is added to the rest rather than migrated.
+     */
+    private static List<String> getItemKeys(String dimension) {
+        if (!LOCATION_DIMENSION.equals(dimension)) {
+            return List.of(dimension);
+        }
+        List<String> itemKeys = new ArrayList<>(LOCATION_SHARDS + 1);
+        itemKeys.add(LOCATION_DIMENSION);
+        for (int shard = 0; shard < LOCATION_SHARDS; shard++) {
+            itemKeys.add(LOCATION_DIMENSION + "#" + shard);
+        }
+        return itemKeys;
+    }
+
+    private static LocalDate toDate(String epochSeconds) {
+        return Instant.ofEpochSecond(Long.parseLong(epochSeconds)).atZone(ZoneOffset.UTC).toLocalDate();
+    }
+
+    /**
+     * Adds the buckets of a batch to an item, unless the item has taken
+     * records of the shard from this batch on: then only the records after
+     * the last one it took are added.
+     */
+    private CompletableFuture<Void> applyToItem(String itemKey, String shardId, List<Record> records,
+                                                Map<String, Long> buckets, OperationMetrics operationMetrics) {
+        return asyncClient().updateItem(getUpdateRequest(itemKey, shardId, records, buckets), operationMetrics)
+                .handle((result, e) -> {
+                    if (e == null) {
+                        return pruneMarkers(itemKey, result.getAttributes(), operationMetrics);
+                    }
+                    Throwable cause = CompletableFutures.unwrap(e);
+                    if (!(cause instanceof ConditionalCheckFailedException)) {
+                        throw new CompletionException(cause);
+                    }
+                    return applyRemaining(itemKey, shardId, records, operationMetrics);
+                })
+                .thenCompose(update -> update);
+    }
+
+    private CompletableFuture<Void> applyRemaining(String itemKey, String shardId, List<Record> records,
+                                                   OperationMetrics operationMetrics) {
+        String sequenceNumberName = SEQUENCE_NUMBER_PREFIX + shardId;
+        return asyncClient().getItem(new GetItemRequest()
+                .withTableName(tableName)
+                .withKey(getKey(itemKey))
+                .withProjectionExpression("#seq")
+                .withExpressionAttributeNames(Map.of("#seq", sequenceNumberName))
+                .withConsistentRead(true), operationMetrics)
+                .thenCompose(result -> {
+                    AttributeValue applied = result.getItem() == null ? null
+                            : result.getItem().get(sequenceNumberName);
+                    List<Record> remaining = new ArrayList<>(records.size());
+                    for (Record record : records) {
+                        if (applied == null || getSequenceNumber(record).compareTo(applied.getS()) > 0) {
+                            remaining.add(record);
+                        }
+                    }
+                    Map<String, Long> buckets = getDeltas(remaining).get(itemKey);
+                    return buckets == null ? CompletableFuture.completedFuture(null)
+                            : applyToItem(itemKey, shardId, remaining, buckets, operationMetrics);
+                });
+    }
+
+    /**
+     * Removes the markers of shards that have written nothing to the item
+     * for longer than the stream keeps records, such as shards closed by a
+     * split, so they do not pile up in it. A marker written again in the
+     * meantime is kept.
+     */
+    private CompletableFuture<Void> pruneMarkers(String itemKey, Map<String, AttributeValue> item,
+                                                 OperationMetrics operationMetrics) {
+        if (item == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        long expired = System.currentTimeMillis() - MARKER_EXPIRY_MILLIS;
+        StringJoiner updateExpression = new StringJoiner(", ", "REMOVE ", "");
+        StringJoiner conditionExpression = new StringJoiner(" AND ");
+        Map<String, String> names = new HashMap<>();
+        Map<String, AttributeValue> values = new HashMap<>();
+        int i = 0;
+        for (Map.Entry<String, AttributeValue> attribute : item.entrySet()) {
+            String name = attribute.getKey();
+            if (!name.startsWith(APPLIED_AT_PREFIX) || attribute.getValue().getN() == null
+                    || Long.parseLong(attribute.getValue().getN()) >= expired) {
+                continue;
+            }
+            updateExpression.add("#s" + i).add("#a" + i);
+            conditionExpression.add("#a" + i + " = :a" + i);
+            names.put("#s" + i, SEQUENCE_NUMBER_PREFIX + name.substring(APPLIED_AT_PREFIX.length()));
+            names.put("#a" + i, name);
+            values.put(":a" + i, attribute.getValue());
+            i++;
+        }
+        if (i == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return asyncClient().updateItem(new UpdateItemRequest()
+                .withTableName(tableName)
+                .withKey(getKey(itemKey))
+                .withUpdateExpression(updateExpression.toString())
+                .withConditionExpression(conditionExpression.toString())
+                .withExpressionAttributeNames(names)
+                .withExpressionAttributeValues(values), operationMetrics)
+                // the counts are applied either way; a later batch prunes what this one could not
+                .handle((result, e) -> null);
+    }
+
+    private UpdateItemRequest getUpdateRequest(String itemKey, String shardId, List<Record> records,
+                                               Map<String, Long> buckets) {
+        StringJoiner updateExpression = new StringJoiner(", ", "ADD ", "");
+        Map<String, String> names = new HashMap<>();
+        Map<String, AttributeValue> values = new HashMap<>();
+        int i = 0;
+        for (Map.Entry<String, Long> bucket : buckets.entrySet()) {
+            updateExpression.add("#b" + i + " :b" + i);
+            names.put("#b" + i, bucket.getKey());
+            values.put(":b" + i, new AttributeValue().withN(bucket.getValue().toString()));
+            i++;
+        }
+        names.put("#seq", SEQUENCE_NUMBER_PREFIX + shardId);
+        names.put("#at", APPLIED_AT_PREFIX + shardId);
+        values.put(":first", new AttributeValue(getSequenceNumber(records.get(0))));
+        values.put(":last", new AttributeValue(getSequenceNumber(records.get(records.size() - 1))));
+        values.put(":now", new AttributeValue().withN(Long.toString(System.currentTimeMillis())));
+        return new UpdateItemRequest()
+                .withTableName(tableName)
+                .withKey(getKey(itemKey))
+                .withUpdateExpression(updateExpression + " SET #seq = :last, #at = :now")
+                .withConditionExpression("attribute_not_exists(#seq) OR #seq < :first")
+                .withExpressionAttributeNames(names)
+                .withExpressionAttributeValues(values)
+                .withReturnValues(ReturnValue.ALL_NEW);
+    }
+
+    /**
+     * The sequence number of a record, zero-padded so that strings compare
+     * like the numbers.
+     */
+    private static String getSequenceNumber(Record record) {
+        String sequenceNumber = record.getDynamodb().getSequenceNumber();
+        return "0".repeat(Math.max(0, SEQUENCE_NUMBER_DIGITS - sequenceNumber.length())) + sequenceNumber;
+    }
+
+    private static Map<String, AttributeValue> getKey(String itemKey) {
+        return Map.of(DIMENSION_KEY, new AttributeValue(itemKey));
+    }
+
+    private static Map<String, Long> getCounts(String dimension, List<Map<String, AttributeValue>> items) {
+        Map<String, Long> counts = new TreeMap<>(AGE_DIMENSION.equals(dimension)
+                ? Comparator.comparingInt(Integer::parseInt) : Comparator.naturalOrder());
+        int currentYear = LocalDate.now(ZoneOffset.UTC).getYear();
+        for (Map<String, AttributeValue> item : items) {
+            for (Map.Entry<String, AttributeValue> attribute : item.entrySet()) {
+                String bucket = attribute.getKey();
+                if (bucket.startsWith(RESERVED_PREFIX) || attribute.getValue().getN() == null) {
+                    continue;
+                }
+                long count = Long.parseLong(attribute.getValue().getN());
+                if (AGE_DIMENSION.equals(dimension)) {
+                    counts.merge(Integer.toString(currentYear - Integer.parseInt(bucket)), count, Long::sum);
+                } else {
+                    counts.merge(bucket, count, Long::sum);
+                }
+            }
+        }
+        counts.values().removeIf(count -> count == 0);
+        return counts;
+    }
+}
@@ -0,0 +1,31 @@
+package layer.service;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded, container-wide executors for fanning out DynamoDB requests. The
+ * threads are daemons and time out when idle, so a frozen or finishing
+ * container is never held up by them.
+ */
+final class WorkerThreads {
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private WorkerThreads() {
+    }
+
+    static ThreadPoolExecutor newBoundedExecutor(String name, int threads) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(threads, threads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+        return threadPoolExecutor;
+    }
+}
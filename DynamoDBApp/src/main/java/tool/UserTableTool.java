@@ -0,0 +1,99 @@
+package tool;
+
+import layer.service.AmazonDynamoDBConnect;
+import layer.service.UserExport;
+import layer.service.UserImport;
+import layer.service.UserStats;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Command line export and import of the user table, for backups, seeding
+ * test environments and migrations. It connects like the functions do, with
+ * the default credentials and region, or to the in-process engine with
+ * {@code DYNAMODB_ENGINE=local}.
+ *
+ * <pre>
+ * export &lt;directory&gt; [segments=4] [gzip=false]
+ * import &lt;file or directory&gt; [concurrency=8] [wcu=provisioned]
+ * recount-stats
+ * </pre>
+ *
+ * An export run again into the same directory resumes from its checkpoint.
+ * {@code recount-stats} re-seeds the counts of {@link UserStats} from the
+ * user table.
+ */
+public final class UserTableTool {
+
+    private static final int DEFAULT_SEGMENTS = 4;
+
+    private UserTableTool() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 1 && "recount-stats".equals(args[0])) {
+            long start = System.nanoTime();
+            long users = new UserStats(new AmazonDynamoDBConnect()).recount();
+            System.out.printf("Recounted %d users into %s in %.1f s%n", users, UserStats.getTableName(),
+                    (System.nanoTime() - start) / 1e9);
+            return;
+        } else if (args.length < 2) {
+            usage();
+            return;
+        }
+        Path path = Paths.get(args[1]);
+        Map<String, String> options = parseOptions(args);
+        AmazonDynamoDBConnect amazonDynamoDBConnect = new AmazonDynamoDBConnect();
+
+        long start = System.nanoTime();
+        if ("export".equals(args[0])) {
+            long users = new UserExport(amazonDynamoDBConnect.getAmazonDynamoDB(), path).run(
+                    Integer.parseInt(options.getOrDefault("segments", Integer.toString(DEFAULT_SEGMENTS))),
+                    Boolean.parseBoolean(options.getOrDefault("gzip", "false")));
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Exported %d users to %s in %.1f s%n", users, path.toAbsolutePath(), seconds);
+        } else if ("import".equals(args[0])) {
+            List<Path> files = UserImport.getFiles(path);
+            int concurrency = Integer.parseInt(options.getOrDefault("concurrency",
+                    Integer.toString(UserImport.DEFAULT_CONCURRENCY)));
+            UserImport.Result result = new UserImport(amazonDynamoDBConnect.getAmazonDynamoDB(), concurrency,
+                    Double.parseDouble(options.getOrDefault("wcu", "0"))).run(files);
+            double seconds = result.getElapsedNanos() / 1e9;
+            result.getMessages().forEach(System.err::println);
+            System.out.printf("Imported %d users from %d files in %.1f s (%.0f WCU/s, budget %s); "
+                            + "%d rejected, %d failed%n",
+                    result.getWritten(), files.size(), seconds, result.getWriteUnits() / seconds,
+                    result.getWriteUnitsPerSecond() > 0 ? String.format("%.0f", result.getWriteUnitsPerSecond())
+                            : "none", result.getRejected(), result.getFailed());
+            if (result.getFailed() > 0) {
+                System.exit(1);
+            }
+        } else {
+            usage();
+        }
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 2; i < args.length; i++) {
+            int separator = args[i].indexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Expected name=value: " + args[i]);
+            }
+            options.put(args[i].substring(0, separator), args[i].substring(separator + 1));
+        }
+        return options;
+    }
+
+    private static void usage() {
+        System.err.println("Usage: export <directory> [segments=" + DEFAULT_SEGMENTS + "] [gzip=false]");
+        System.err.println("       import <file or directory> [concurrency=" + UserImport.DEFAULT_CONCURRENCY
+                + "] [wcu=provisioned]");
+        System.err.println("       recount-stats");
+        System.exit(2);
+    }
+}
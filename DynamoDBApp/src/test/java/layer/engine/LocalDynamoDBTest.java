@@ -0,0 +1,279 @@
+package layer.engine;
+
+import com.amazonaws.services.dynamodbv2.model.AmazonDynamoDBException;
+import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GlobalSecondaryIndex;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.Projection;
+import com.amazonaws.services.dynamodbv2.model.ProjectionType;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.ResourceInUseException;
+import com.amazonaws.services.dynamodbv2.model.ResourceNotFoundException;
+import com.amazonaws.services.dynamodbv2.model.ReturnValue;
+import com.amazonaws.services.dynamodbv2.model.ScalarAttributeType;
+import com.amazonaws.services.dynamodbv2.model.ScanRequest;
+import com.amazonaws.services.dynamodbv2.model.ScanResult;
+import com.amazonaws.services.dynamodbv2.model.StreamSpecification;
+import com.amazonaws.services.dynamodbv2.model.StreamViewType;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class LocalDynamoDBTest {
+
+    private static final String TABLE_NAME = "users";
+    private static final String INDEX_NAME = "country-name-index";
+
+    private LocalDynamoDB localDynamoDB;
+
+    @Before
+    public void setUp() {
+        localDynamoDB = new LocalDynamoDB();
+        localDynamoDB.createTable(new CreateTableRequest()
+                .withTableName(TABLE_NAME)
+                .withKeySchema(new KeySchemaElement("email", KeyType.HASH))
+                .withAttributeDefinitions(
+                        new AttributeDefinition("email", ScalarAttributeType.S),
+                        new AttributeDefinition("country", ScalarAttributeType.S),
+                        new AttributeDefinition("name", ScalarAttributeType.S))
+                .withGlobalSecondaryIndexes(new GlobalSecondaryIndex()
+                        .withIndexName(INDEX_NAME)
+                        .withKeySchema(
+                                new KeySchemaElement("country", KeyType.HASH),
+                                new KeySchemaElement("name", KeyType.RANGE))
+                        .withProjection(new Projection().withProjectionType(ProjectionType.ALL))
+                        .withProvisionedThroughput(new ProvisionedThroughput(1L, 1L)))
+                .withStreamSpecification(new StreamSpecification()
+                        .withStreamEnabled(true)
+                        .withStreamViewType(StreamViewType.NEW_AND_OLD_IMAGES))
+                .withProvisionedThroughput(new ProvisionedThroughput(1L, 1L)));
+    }
+
+    @Test
+    public void tableIsDescribedAndListed() {
+        assertEquals(TABLE_NAME, localDynamoDB.describeTable(TABLE_NAME).getTable().getTableName());
+        assertEquals(List.of(TABLE_NAME), localDynamoDB.listTables().getTableNames());
+        assertThrows(ResourceInUseException.class, () -> localDynamoDB.createTable(new CreateTableRequest()
+                .withTableName(TABLE_NAME)
+                .withKeySchema(new KeySchemaElement("email", KeyType.HASH))
+                .withAttributeDefinitions(new AttributeDefinition("email", ScalarAttributeType.S))));
+        assertThrows(ResourceNotFoundException.class, () -> localDynamoDB.describeTable("missing"));
+    }
+
+    @Test
+    public void putItemIsReadBack() {
+        Map<String, AttributeValue> item = user("ivan@example.com", "Ukraine", "Ivan");
+        put(item);
+
+        assertEquals(item, get("ivan@example.com"));
+        assertNull(get("nobody@example.com"));
+    }
+
+    @Test
+    public void conditionalPutFailsOnExistingItem() {
+        put(user("ivan@example.com", "Ukraine", "Ivan"));
+
+        assertThrows(ConditionalCheckFailedException.class, () -> localDynamoDB.putItem(new PutItemRequest()
+                .withTableName(TABLE_NAME)
+                .withItem(user("ivan@example.com", "Ukraine", "Someone else"))
+                .withConditionExpression("attribute_not_exists(email)")));
+        assertEquals(new AttributeValue("Ivan"), get("ivan@example.com").get("name"));
+    }
+
+    @Test
+    public void updateAppliesOnlyWhenTheConditionHolds() {
+        put(user("ivan@example.com", "Ukraine", "Ivan"));
+        UpdateItemRequest update = new UpdateItemRequest()
+                .withTableName(TABLE_NAME)
+                .withKey(Map.of("email", new AttributeValue("ivan@example.com")))
+                .withUpdateExpression("SET #name = :name ADD #version :one")
+                .withConditionExpression("#name = :expected")
+                .withExpressionAttributeNames(Map.of("#name", "name", "#version", "version"))
+                .withExpressionAttributeValues(Map.of(
+                        ":name", new AttributeValue("Ivan Petrenko"),
+                        ":expected", new AttributeValue("Ivan"),
+                        ":one", new AttributeValue().withN("1")))
+                .withReturnValues(ReturnValue.ALL_NEW);
+
+        Map<String, AttributeValue> updated = localDynamoDB.updateItem(update).getAttributes();
+
+        assertEquals(new AttributeValue("Ivan Petrenko"), updated.get("name"));
+        assertEquals(new AttributeValue().withN("1"), updated.get("version"));
+        assertThrows(ConditionalCheckFailedException.class, () -> localDynamoDB.updateItem(update));
+        assertEquals(new AttributeValue().withN("1"), get("ivan@example.com").get("version"));
+    }
+
+    @Test
+    public void indexQueryPagesInRangeOrder() {
+        for (String name : List.of("Olena", "Andriy", "Taras", "Mykola")) {
+            put(user(name.toLowerCase() + "@example.com", "Ukraine", name));
+        }
+        put(user("jan@example.com", "Poland", "Jan"));
+
+        List<String> names = new ArrayList<>();
+        Map<String, AttributeValue> startKey = null;
+        int pages = 0;
+        do {
+            QueryResult result = localDynamoDB.query(new QueryRequest()
+                    .withTableName(TABLE_NAME)
+                    .withIndexName(INDEX_NAME)
+                    .withKeyConditionExpression("country = :country")
+                    .withExpressionAttributeValues(Map.of(":country", new AttributeValue("Ukraine")))
+                    .withLimit(3)
+                    .withExclusiveStartKey(startKey));
+            result.getItems().forEach(item -> names.add(item.get("name").getS()));
+            startKey = result.getLastEvaluatedKey();
+            pages++;
+        } while (startKey != null);
+
+        assertEquals(List.of("Andriy", "Mykola", "Olena", "Taras"), names);
+        assertEquals(2, pages);
+    }
+
+    @Test
+    public void indexQueryAppliesTheRangeCondition() {
+        for (String name : List.of("Olena", "Andriy", "Taras", "Mykola")) {
+            put(user(name.toLowerCase() + "@example.com", "Ukraine", name));
+        }
+
+        QueryResult result = localDynamoDB.query(new QueryRequest()
+                .withTableName(TABLE_NAME)
+                .withIndexName(INDEX_NAME)
+                .withKeyConditionExpression("country = :country AND begins_with(#name, :prefix)")
+                .withExpressionAttributeNames(Map.of("#name", "name"))
+                .withExpressionAttributeValues(Map.of(
+                        ":country", new AttributeValue("Ukraine"),
+                        ":prefix", new AttributeValue("O"))));
+
+        assertEquals(1, result.getItems().size());
+        assertEquals(new AttributeValue("Olena"), result.getItems().get(0).get("name"));
+    }
+
+    @Test
+    public void itemsWithoutTheIndexKeyAreLeftOutOfTheIndex() {
+        put(user("ivan@example.com", "Ukraine", "Ivan"));
+        put(Map.of("email", new AttributeValue("anonymous@example.com")));
+
+        ScanResult result = localDynamoDB.scan(new ScanRequest().withTableName(TABLE_NAME).withIndexName(INDEX_NAME));
+
+        assertEquals(1, result.getItems().size());
+    }
+
+    @Test
+    public void scanSegmentsSplitTheTable() {
+        Set<String> emails = new HashSet<>();
+        for (int i = 0; i < 50; i++) {
+            emails.add(i + "@example.com");
+            put(user(i + "@example.com", "Ukraine", "User " + i));
+        }
+
+        Set<String> scanned = new HashSet<>();
+        int totalSegments = 4;
+        for (int segment = 0; segment < totalSegments; segment++) {
+            Map<String, AttributeValue> startKey = null;
+            do {
+                ScanResult result = localDynamoDB.scan(new ScanRequest()
+                        .withTableName(TABLE_NAME)
+                        .withSegment(segment)
+                        .withTotalSegments(totalSegments)
+                        .withLimit(7)
+                        .withExclusiveStartKey(startKey));
+                for (Map<String, AttributeValue> item : result.getItems()) {
+                    assertTrue(scanned.add(item.get("email").getS()));
+                }
+                startKey = result.getLastEvaluatedKey();
+            } while (startKey != null);
+        }
+
+        assertEquals(emails, scanned);
+        assertThrows(AmazonDynamoDBException.class, () -> localDynamoDB.scan(new ScanRequest()
+                .withTableName(TABLE_NAME).withSegment(4).withTotalSegments(4)));
+    }
+
+    @Test
+    public void batchesAreLimited() {
+        List<WriteRequest> writes = new ArrayList<>();
+        List<Map<String, AttributeValue>> keys = new ArrayList<>();
+        for (int i = 0; i < 26; i++) {
+            writes.add(new WriteRequest(new PutRequest(user(i + "@example.com", "Ukraine", "User " + i))));
+        }
+        for (int i = 0; i < 101; i++) {
+            keys.add(Map.of("email", new AttributeValue(i + "@example.com")));
+        }
+
+        assertThrows(AmazonDynamoDBException.class, () -> localDynamoDB.batchWriteItem(
+                new BatchWriteItemRequest().withRequestItems(Map.of(TABLE_NAME, writes))));
+        assertThrows(AmazonDynamoDBException.class, () -> localDynamoDB.batchGetItem(new BatchGetItemRequest()
+                .withRequestItems(Map.of(TABLE_NAME, new KeysAndAttributes().withKeys(keys)))));
+
+        localDynamoDB.batchWriteItem(new BatchWriteItemRequest()
+                .withRequestItems(Map.of(TABLE_NAME, writes.subList(0, 25))));
+        List<Map<String, AttributeValue>> found = localDynamoDB.batchGetItem(new BatchGetItemRequest()
+                .withRequestItems(Map.of(TABLE_NAME, new KeysAndAttributes().withKeys(keys.subList(0, 100)))))
+                .getResponses().get(TABLE_NAME);
+        assertEquals(25, found.size());
+    }
+
+    @Test
+    public void writesAreStreamedWithBothImages() {
+        List<Record> records = new ArrayList<>();
+        localDynamoDB.addStreamListener(TABLE_NAME, records::add);
+
+        put(user("ivan@example.com", "Ukraine", "Ivan"));
+        put(user("ivan@example.com", "Poland", "Ivan"));
+        localDynamoDB.deleteItem(TABLE_NAME, Map.of("email", new AttributeValue("ivan@example.com")));
+
+        assertEquals(3, records.size());
+        assertEquals("INSERT", records.get(0).getEventName());
+        assertNull(records.get(0).getDynamodb().getOldImage());
+        assertEquals("MODIFY", records.get(1).getEventName());
+        assertEquals(new AttributeValue("Ukraine"), records.get(1).getDynamodb().getOldImage().get("country"));
+        assertEquals(new AttributeValue("Poland"), records.get(1).getDynamodb().getNewImage().get("country"));
+        assertEquals("REMOVE", records.get(2).getEventName());
+        assertNull(records.get(2).getDynamodb().getNewImage());
+    }
+
+    private void put(Map<String, AttributeValue> item) {
+        localDynamoDB.putItem(new PutItemRequest().withTableName(TABLE_NAME).withItem(item));
+    }
+
+    private Map<String, AttributeValue> get(String email) {
+        return localDynamoDB.getItem(new GetItemRequest()
+                .withTableName(TABLE_NAME)
+                .withKey(Map.of("email", new AttributeValue(email)))
+                .withConsistentRead(true))
+                .getItem();
+    }
+
+    private static Map<String, AttributeValue> user(String email, String country, String name) {
+        return Map.of(
+                "email", new AttributeValue(email),
+                "country", new AttributeValue(country),
+                "name", new AttributeValue(name));
+    }
+}
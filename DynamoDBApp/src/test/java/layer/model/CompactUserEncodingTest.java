@@ -0,0 +1,156 @@
+package layer.model;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+public class CompactUserEncodingTest {
+
+    private final CompactUserEncoding.PrivacyConverter privacyConverter = new CompactUserEncoding.PrivacyConverter();
+    private final CompactUserEncoding.SocialMediaConverter socialMediaConverter =
+            new CompactUserEncoding.SocialMediaConverter();
+    private final CompactUserEncoding.TextConverter textConverter = new CompactUserEncoding.TextConverter();
+    private final CompactUserEncoding.StringListConverter stringListConverter =
+            new CompactUserEncoding.StringListConverter();
+
+    @Test
+    public void privacyRoundTripsAsBitmask() {
+        HashMap<String, Boolean> privacy = new HashMap<>(Map.of("email", true, "age", false, "name", true));
+
+        AttributeValue stored = privacyConverter.convert(privacy);
+
+        assertNotNull(stored.getN());
+        assertEquals(privacy, privacyConverter.unconvert(stored));
+    }
+
+    @Test
+    public void privacyWithUnknownNameIsWrittenTheOldWay() {
+        HashMap<String, Boolean> privacy = new HashMap<>(Map.of("email", true, "shoeSize", false));
+
+        AttributeValue stored = privacyConverter.convert(privacy);
+
+        assertNull(CompactUserEncoding.PrivacyConverter.toCompact(privacy));
+        assertNotNull(stored.getM());
+        assertEquals(privacy, privacyConverter.unconvert(stored));
+    }
+
+    @Test
+    public void privacyReadsLegacyMaps() {
+        Map<String, AttributeValue> numbers = Map.of(
+                "email", new AttributeValue().withN("1"),
+                "age", new AttributeValue().withN("0"));
+        Map<String, AttributeValue> booleans = Map.of(
+                "email", new AttributeValue().withBOOL(true),
+                "age", new AttributeValue().withBOOL(false));
+        Map<String, Boolean> expected = Map.of("email", true, "age", false);
+
+        assertEquals(expected, privacyConverter.unconvert(new AttributeValue().withM(numbers)));
+        assertEquals(expected, privacyConverter.unconvert(new AttributeValue().withM(booleans)));
+    }
+
+    @Test
+    public void socialMediaRoundTripsAsList() {
+        HashMap<String, String> socialMedia = new HashMap<>(Map.of(
+                "telegram", "https://t.me/ivan",
+                "facebook", "https://facebook.com/ivan"));
+
+        AttributeValue stored = socialMediaConverter.convert(socialMedia);
+
+        assertEquals(5, stored.getL().size());
+        assertEquals(Boolean.TRUE, stored.getL().get(0).getNULL());
+        assertEquals(socialMedia, socialMediaConverter.unconvert(stored));
+    }
+
+    @Test
+    public void socialMediaWithUnknownNameIsWrittenTheOldWay() {
+        HashMap<String, String> socialMedia = new HashMap<>(Map.of("myspace", "https://myspace.com/ivan"));
+
+        AttributeValue stored = socialMediaConverter.convert(socialMedia);
+
+        assertNotNull(stored.getM());
+        assertEquals(socialMedia, socialMediaConverter.unconvert(stored));
+    }
+
+    @Test
+    public void socialMediaReadsLegacyMaps() {
+        AttributeValue legacy = new AttributeValue().withM(Map.of(
+                "skype", new AttributeValue("live:ivan"),
+                "linkedin", new AttributeValue("https://linkedin.com/in/ivan")));
+
+        assertEquals(Map.of("skype", "live:ivan", "linkedin", "https://linkedin.com/in/ivan"),
+                socialMediaConverter.unconvert(legacy));
+    }
+
+    @Test
+    public void longTextRoundTripsDeflated() {
+        String about = "I like hiking in the Carpathians and reading about distributed systems. ".repeat(20);
+
+        AttributeValue stored = textConverter.convert(about);
+
+        assertNotNull(stored.getB());
+        assertEquals(about, textConverter.unconvert(stored));
+    }
+
+    @Test
+    public void shortTextIsWrittenTheOldWay() {
+        AttributeValue stored = textConverter.convert("Hello");
+
+        assertEquals("Hello", stored.getS());
+        assertEquals("Hello", textConverter.unconvert(stored));
+    }
+
+    @Test
+    public void textReadsLegacyStrings() {
+        assertEquals("About me", textConverter.unconvert(new AttributeValue("About me")));
+    }
+
+    @Test
+    public void unknownBinaryFormatIsRejected() {
+        AttributeValue unknown = new AttributeValue().withB(ByteBuffer.wrap(new byte[] {9, 1, 2}));
+
+        assertThrows(IllegalArgumentException.class, () -> textConverter.unconvert(unknown));
+    }
+
+    @Test
+    public void longStringListRoundTripsDeflatedWithNulls() {
+        List<String> interests = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            interests.add(i % 7 == 0 ? null : "interest number " + i);
+        }
+
+        AttributeValue stored = stringListConverter.convert(interests);
+
+        assertNotNull(stored.getB());
+        assertEquals(interests, stringListConverter.unconvert(stored));
+    }
+
+    @Test
+    public void shortStringListIsWrittenTheOldWay() {
+        List<String> interests = Arrays.asList("chess", null, "go");
+
+        AttributeValue stored = stringListConverter.convert(interests);
+
+        assertEquals(3, stored.getL().size());
+        assertEquals(interests, stringListConverter.unconvert(stored));
+    }
+
+    @Test
+    public void stringListReadsLegacyLists() {
+        AttributeValue list = new AttributeValue().withL(new AttributeValue("chess"), new AttributeValue("go"));
+        AttributeValue set = new AttributeValue().withSS("chess");
+
+        assertEquals(List.of("chess", "go"), stringListConverter.unconvert(list));
+        assertEquals(List.of("chess"), stringListConverter.unconvert(set));
+    }
+}
@@ -0,0 +1,201 @@
+package layer.service;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDBAsync;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.PutItemResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncDynamoDBClientTest {
+
+    private static final long HEDGE_DELAY_MILLIS = 50;
+
+    /**
+     * Every request sent to the fake client, with the handler that answers
+     * it; requests are answered at once while {@link #answerAtOnce} is set.
+     */
+    private final BlockingQueue<Call> calls = new LinkedBlockingQueue<>();
+    private volatile boolean answerAtOnce = true;
+    private CircuitBreaker circuitBreaker;
+    private AsyncDynamoDBClient asyncClient;
+
+    @Before
+    public void setUp() {
+        System.setProperty(Configuration.getPropertyName(LatencyTracker.ENABLED_VARIABLE), "true");
+        System.setProperty(Configuration.getPropertyName(LatencyTracker.MIN_DELAY_VARIABLE),
+                Long.toString(HEDGE_DELAY_MILLIS));
+        circuitBreaker = new CircuitBreaker(1, 60_000);
+        asyncClient = new AsyncDynamoDBClient(createFakeClient(), CapacityLimiter.UNLIMITED, new RetryBudget(),
+                circuitBreaker);
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(Configuration.getPropertyName(LatencyTracker.ENABLED_VARIABLE));
+        System.clearProperty(Configuration.getPropertyName(LatencyTracker.MIN_DELAY_VARIABLE));
+    }
+
+    @Test
+    public void readIsNotHedgedBeforeEnoughLatenciesAreKnown() throws InterruptedException {
+        answerAtOnce = false;
+
+        CompletableFuture<GetItemResult> result = getItem();
+
+        assertNotNull(calls.poll(1, TimeUnit.SECONDS));
+        assertNull(calls.poll(HEDGE_DELAY_MILLIS * 3, TimeUnit.MILLISECONDS));
+        assertFalse(result.isDone());
+    }
+
+    @Test
+    public void slowReadIsHedgedAndTheFirstAnswerWins() throws InterruptedException {
+        warmUp();
+        answerAtOnce = false;
+
+        CompletableFuture<GetItemResult> result = getItem();
+        Call first = calls.poll(1, TimeUnit.SECONDS);
+        Call hedge = calls.poll(1, TimeUnit.SECONDS);
+        assertNotNull(hedge);
+        assertTrue(hedge.request != first.request);
+        hedge.answer("hedge");
+        first.answer("first");
+
+        assertEquals("hedge", result.join().getItem().get("email").getS());
+        assertNull(calls.poll(HEDGE_DELAY_MILLIS * 3, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void fastReadIsNotHedged() throws InterruptedException {
+        warmUp();
+        answerAtOnce = false;
+
+        CompletableFuture<GetItemResult> result = getItem();
+        calls.poll(1, TimeUnit.SECONDS).answer("first");
+
+        assertEquals("first", result.join().getItem().get("email").getS());
+        assertNull(calls.poll(HEDGE_DELAY_MILLIS * 3, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void writeIsNeverHedged() throws InterruptedException {
+        warmUp();
+        for (int i = 0; i < LatencyTracker.MIN_SAMPLES; i++) {
+            asyncClient.putItem(new PutItemRequest().withTableName("users"), OperationMetrics.DISABLED).join();
+            calls.clear();
+        }
+        answerAtOnce = false;
+
+        asyncClient.putItem(new PutItemRequest().withTableName("users"), OperationMetrics.DISABLED);
+
+        assertNotNull(calls.poll(1, TimeUnit.SECONDS));
+        assertNull(calls.poll(HEDGE_DELAY_MILLIS * 3, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void readIsNotHedgedOnceTheCircuitOpens() throws InterruptedException {
+        warmUp();
+        answerAtOnce = false;
+
+        CompletableFuture<GetItemResult> result = getItem();
+        assertNotNull(calls.poll(1, TimeUnit.SECONDS));
+        circuitBreaker.onFailure(serverError());
+
+        assertNull(calls.poll(HEDGE_DELAY_MILLIS * 3, TimeUnit.MILLISECONDS));
+        assertFalse(result.isDone());
+    }
+
+    @Test
+    public void openCircuitFailsRequestsWithoutSendingThem() throws InterruptedException {
+        answerAtOnce = false;
+        getItem();
+        calls.poll(1, TimeUnit.SECONDS).fail(serverError());
+
+        try {
+            getItem().join();
+            fail("Expected CircuitOpenException");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof CircuitOpenException);
+        }
+        assertTrue(calls.isEmpty());
+    }
+
+    /**
+     * Records enough fast reads for the latency tracker to report a hedge
+     * delay, which is then the minimum one.
+     */
+    private void warmUp() {
+        for (int i = 0; i < LatencyTracker.MIN_SAMPLES; i++) {
+            getItem().join();
+        }
+        calls.clear();
+    }
+
+    private CompletableFuture<GetItemResult> getItem() {
+        return asyncClient.getItem(new GetItemRequest().withTableName("users")
+                .withKey(Map.of("email", new AttributeValue("ivan@example.com"))), OperationMetrics.DISABLED);
+    }
+
+    @SuppressWarnings("unchecked")
+    private AmazonDynamoDBAsync createFakeClient() {
+        return (AmazonDynamoDBAsync) Proxy.newProxyInstance(AmazonDynamoDBAsync.class.getClassLoader(),
+                new Class<?>[] {AmazonDynamoDBAsync.class}, (proxy, method, args) -> {
+                    Call call = new Call(method.getName(), (AmazonWebServiceRequest) args[0],
+                            (AsyncHandler<AmazonWebServiceRequest, Object>) args[1]);
+                    calls.add(call);
+                    if (answerAtOnce) {
+                        call.answer("ivan@example.com");
+                    }
+                    return null;
+                });
+    }
+
+    private static AmazonServiceException serverError() {
+        AmazonServiceException exception = new AmazonServiceException("Internal server error");
+        exception.setStatusCode(500);
+        return exception;
+    }
+
+    private static final class Call {
+
+        private final String operation;
+        private final AmazonWebServiceRequest request;
+        private final AsyncHandler<AmazonWebServiceRequest, Object> handler;
+
+        private Call(String operation, AmazonWebServiceRequest request,
+                     AsyncHandler<AmazonWebServiceRequest, Object> handler) {
+            this.operation = operation;
+            this.request = request;
+            this.handler = handler;
+        }
+
+        void answer(String email) {
+            handler.onSuccess(request, "putItemAsync".equals(operation) ? new PutItemResult()
+                    : new GetItemResult().withItem(Map.of("email", new AttributeValue(email))));
+        }
+
+        void fail(Exception exception) {
+            handler.onError(exception);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package layer.service;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.services.dynamodbv2.model.ConditionalCheckFailedException;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void circuitOpensAfterConsecutiveBackendFailures() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(3, 60_000);
+
+        circuitBreaker.onFailure(serverError());
+        circuitBreaker.onFailure(new AmazonClientException("Connection reset"));
+        assertTrue(circuitBreaker.tryAcquire());
+        circuitBreaker.onFailure(serverError());
+
+        assertFalse(circuitBreaker.isClosed());
+        assertFalse(circuitBreaker.tryAcquire());
+        long retryAfterMillis = circuitBreaker.getOpenException().getRetryAfterMillis();
+        assertTrue(retryAfterMillis > 0 && retryAfterMillis <= 60_000);
+    }
+
+    @Test
+    public void successResetsTheFailureCount() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(2, 60_000);
+
+        circuitBreaker.onFailure(serverError());
+        circuitBreaker.onSuccess();
+        circuitBreaker.onFailure(serverError());
+
+        assertTrue(circuitBreaker.isClosed());
+        assertTrue(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void rejectedRequestsDoNotCount() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(1, 60_000);
+
+        circuitBreaker.onFailure(new ConditionalCheckFailedException("The conditional request failed"));
+        circuitBreaker.onFailure(new ProvisionedThroughputExceededException("Slow down"));
+        circuitBreaker.onFailure(new IllegalArgumentException("Invalid"));
+
+        assertTrue(circuitBreaker.isClosed());
+    }
+
+    @Test
+    public void onlyOneProbeIsLetThroughOnceTheCircuitHasBeenOpenLongEnough() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(1, 0);
+        circuitBreaker.onFailure(serverError());
+
+        assertTrue(circuitBreaker.tryAcquire());
+        assertFalse(circuitBreaker.tryAcquire());
+        assertFalse(circuitBreaker.isClosed());
+    }
+
+    @Test
+    public void successfulProbeClosesTheCircuit() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(1, 0);
+        circuitBreaker.onFailure(serverError());
+        circuitBreaker.tryAcquire();
+
+        circuitBreaker.onSuccess();
+
+        assertTrue(circuitBreaker.isClosed());
+        assertTrue(circuitBreaker.tryAcquire());
+        assertTrue(circuitBreaker.tryAcquire());
+    }
+
+    @Test
+    public void probeRejectedByDynamoDBClosesTheCircuit() {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(1, 0);
+        circuitBreaker.onFailure(serverError());
+        circuitBreaker.tryAcquire();
+
+        circuitBreaker.onFailure(new ConditionalCheckFailedException("The conditional request failed"));
+
+        assertTrue(circuitBreaker.isClosed());
+    }
+
+    @Test
+    public void failedProbeOpensTheCircuitAgain() throws InterruptedException {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(5, 50);
+        for (int i = 0; i < 5; i++) {
+            circuitBreaker.onFailure(serverError());
+        }
+        Thread.sleep(60);
+        assertTrue(circuitBreaker.tryAcquire());
+
+        circuitBreaker.onFailure(serverError());
+
+        assertFalse(circuitBreaker.isClosed());
+        assertFalse(circuitBreaker.tryAcquire());
+    }
+
+    private static AmazonServiceException serverError() {
+        AmazonServiceException exception = new AmazonServiceException("Internal server error");
+        exception.setStatusCode(500);
+        return exception;
+    }
+}
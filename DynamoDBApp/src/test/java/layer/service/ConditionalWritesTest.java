@@ -0,0 +1,152 @@
+package layer.service;
+
+import com.google.gson.JsonParser;
+import layer.engine.LocalDynamoDB;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConditionalWritesTest {
+
+    private static final String EMAIL = "ivan@example.com";
+    private static final String USER_BODY = "{\"email\":\"ivan@example.com\",\"name\":\"Ivan\",\"socialMedia\":{}}";
+    private static final Map<String, String> PATH_PARAMETERS = Map.of("email", EMAIL);
+
+    private LocalDynamoDB localDynamoDB;
+    private LocalMetricsSink sink;
+    private DynamoDBServiceImpl dynamoDBService;
+
+    @Before
+    public void setUp() {
+        localDynamoDB = AmazonDynamoDBConnect.createUserTable(new LocalDynamoDB());
+        sink = new LocalMetricsSink();
+        dynamoDBService = createService(new UserCache());
+    }
+
+    @Test
+    public void createIsOneConditionalPut() {
+        assertEquals("{\"message\":\"User created: ivan@example.com\"}",
+                dynamoDBService.createUserAsync(USER_BODY).join());
+
+        assertEquals(1, getLastCalls());
+        String user = dynamoDBService.findUserAsync(PATH_PARAMETERS).join();
+        assertTrue(user, user.contains("\"name\":\"Ivan\""));
+    }
+
+    @Test
+    public void createOfAnExistingEmailKeepsTheUser() {
+        dynamoDBService.createUserAsync(USER_BODY).join();
+
+        assertFailsWith(UserExistsException.class, dynamoDBService.createUserAsync(
+                "{\"email\":\"ivan@example.com\",\"name\":\"Petro\",\"socialMedia\":{}}"));
+
+        assertEquals(1, getLastCalls());
+        assertEquals(1, getLastErrors());
+        String user = dynamoDBService.findUserAsync(PATH_PARAMETERS).join();
+        assertTrue(user, user.contains("\"name\":\"Ivan\""));
+    }
+
+    @Test
+    public void createOfAnExistingEmailDropsACachedNotFound() {
+        assertEquals("{\"message\":\"User not found\"}", dynamoDBService.findUserAsync(PATH_PARAMETERS).join());
+        createService(new UserCache()).createUserAsync(USER_BODY).join();
+
+        assertFailsWith(UserExistsException.class, dynamoDBService.createUserAsync(USER_BODY));
+
+        String user = dynamoDBService.findUserAsync(PATH_PARAMETERS).join();
+        assertTrue(user, user.contains("\"name\":\"Ivan\""));
+    }
+
+    @Test
+    public void concurrentCreatesOfOneEmailCreateItOnce() {
+        List<CompletableFuture<String>> creates = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            creates.add(createService(new UserCache()).createUserAsync(USER_BODY));
+        }
+
+        int created = 0;
+        for (CompletableFuture<String> create : creates) {
+            try {
+                create.join();
+                created++;
+            } catch (CompletionException e) {
+                assertTrue(e.getCause() instanceof UserExistsException);
+            }
+        }
+
+        assertEquals(1, created);
+    }
+
+    @Test
+    public void invalidUserIsNotWritten() {
+        assertFailsWith(InvalidUserException.class, dynamoDBService.createUserAsync(
+                "{\"email\":\"ivan@example.com\",\"socialMedia\":{\"myspace\":\"ivan\"}}"));
+
+        assertEquals(0, getLastCalls());
+        assertEquals("{\"message\":\"User not found\"}", dynamoDBService.findUserAsync(PATH_PARAMETERS).join());
+    }
+
+    @Test
+    public void updateOfAMissingUserCreatesNothing() {
+        assertEquals("{\"message\":\"User not found\"}",
+                dynamoDBService.updateUserAsync(PATH_PARAMETERS, "{\"name\":\"Ivan\"}").join());
+
+        assertEquals(1, getLastCalls());
+        assertEquals("{\"message\":\"User not found\"}",
+                createService(new UserCache()).findUserAsync(PATH_PARAMETERS).join());
+    }
+
+    @Test
+    public void updateIsOneConditionalUpdate() {
+        dynamoDBService.createUserAsync(USER_BODY).join();
+
+        assertEquals("{\"message\":\"User updated: ivan@example.com\"}",
+                dynamoDBService.updateUserAsync(PATH_PARAMETERS, "{\"name\":\"Ivan Petrenko\"}").join());
+
+        assertEquals(1, getLastCalls());
+        String user = createService(new UserCache()).findUserAsync(PATH_PARAMETERS).join();
+        assertTrue(user, user.contains("\"name\":\"Ivan Petrenko\""));
+    }
+
+    @Test
+    public void deleteIsOneConditionalDelete() {
+        dynamoDBService.createUserAsync(USER_BODY).join();
+
+        assertEquals("{\"message\":\"User deleted: ivan@example.com\"}",
+                dynamoDBService.deleteUserAsync(PATH_PARAMETERS).join());
+        assertEquals(1, getLastCalls());
+        assertEquals("{\"message\":\"User not found\"}", dynamoDBService.deleteUserAsync(PATH_PARAMETERS).join());
+        assertEquals(1, getLastCalls());
+    }
+
+    private DynamoDBServiceImpl createService(UserCache userCache) {
+        return new DynamoDBServiceImpl(new AmazonDynamoDBConnect(localDynamoDB), userCache,
+                new Metrics(sink, true, Metrics.DEFAULT_NAMESPACE));
+    }
+
+    private int getLastCalls() {
+        return JsonParser.parseString(sink.getLastLine()).getAsJsonObject().get("DynamoDBCalls").getAsInt();
+    }
+
+    private int getLastErrors() {
+        return JsonParser.parseString(sink.getLastLine()).getAsJsonObject().get("Errors").getAsInt();
+    }
+
+    private static void assertFailsWith(Class<? extends Exception> type, CompletableFuture<String> future) {
+        try {
+            future.join();
+            fail("Expected " + type.getSimpleName());
+        } catch (CompletionException e) {
+            assertTrue(String.valueOf(e.getCause()), type.isInstance(e.getCause()));
+        }
+    }
+}
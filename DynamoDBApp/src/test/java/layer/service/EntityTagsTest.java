@@ -0,0 +1,184 @@
+package layer.service;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import layer.engine.LocalDynamoDB;
+import layer.model.User;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EntityTagsTest {
+
+    private static final String EMAIL = "ivan@example.com";
+    private static final String USER_PATH = "/users/" + EMAIL;
+
+    private RequestRouter requestRouter;
+
+    @Before
+    public void setUp() {
+        requestRouter = new RequestRouter(new DynamoDBServiceImpl(
+                new AmazonDynamoDBConnect(AmazonDynamoDBConnect.createUserTable(new LocalDynamoDB())),
+                new UserCache(), new Metrics(line -> { }, false, Metrics.DEFAULT_NAMESPACE)));
+    }
+
+    @Test
+    public void versionIsAStrongTag() {
+        assertEquals("\"7\"", EntityTags.of(7L));
+        assertNull(EntityTags.of((Long) null));
+    }
+
+    @Test
+    public void pageTagIsWeakAndFollowsTheVersions() {
+        String tag = EntityTags.of(List.of(user(EMAIL, 1L)), "cursor", "limit=10");
+
+        assertTrue(tag.startsWith("W/\""));
+        assertEquals(tag, EntityTags.of(List.of(user(EMAIL, 1L)), "cursor", "limit=10"));
+        assertNotEquals(tag, EntityTags.of(List.of(user(EMAIL, 2L)), "cursor", "limit=10"));
+        assertNotEquals(tag, EntityTags.of(List.of(user(EMAIL, 1L)), null, "limit=10"));
+        assertNotEquals(tag, EntityTags.of(List.of(user(EMAIL, 1L)), "cursor", "limit=20"));
+        assertNull(EntityTags.of(List.of(user(EMAIL, 1L), user("petro@example.com", null)), null, ""));
+    }
+
+    @Test
+    public void ifNoneMatchIsComparedWeakly() {
+        assertTrue(EntityTags.isNoneMatchSatisfied("\"3\"", "\"3\""));
+        assertTrue(EntityTags.isNoneMatchSatisfied("W/\"3\"", "\"3\""));
+        assertTrue(EntityTags.isNoneMatchSatisfied("\"1\", \"3\"", "\"3\""));
+        assertTrue(EntityTags.isNoneMatchSatisfied("*", "\"3\""));
+        assertFalse(EntityTags.isNoneMatchSatisfied("\"4\"", "\"3\""));
+        assertFalse(EntityTags.isNoneMatchSatisfied(null, "\"3\""));
+        assertFalse(EntityTags.isNoneMatchSatisfied("*", null));
+    }
+
+    @Test
+    public void ifMatchListsStrongVersionsOnly() {
+        assertEquals(List.of(3L), EntityTags.getVersions("\"3\""));
+        assertEquals(List.of(1L, 3L), EntityTags.getVersions("\"1\",\"3\""));
+        assertEquals(List.of(3L), EntityTags.getVersions("W/\"2\", \"3\", \"abc\""));
+        assertEquals(List.of(), EntityTags.getVersions("W/\"3\""));
+        assertNull(EntityTags.getVersions("*"));
+    }
+
+    @Test
+    public void versionIsOnlySentAsTheETag() throws IOException {
+        route(request("POST", "/users").withBody("{\"email\":\"ivan@example.com\",\"version\":50,\"socialMedia\":{}}"));
+
+        RequestRouter.Response found = route(request("GET", USER_PATH));
+        RequestRouter.Response page = route(request("GET", "/users")
+                .withQueryStringParameters(Map.of("limit", "10")));
+
+        assertEquals("\"1\"", found.getHeaders().get("ETag"));
+        assertFalse(body(found), body(found).contains("version"));
+        assertTrue(page.getHeaders().get("ETag").startsWith("W/"));
+        assertFalse(body(page), body(page).contains("version"));
+    }
+
+    @Test
+    public void versionInAnUpdateBodyIsIgnored() {
+        route(request("POST", "/users").withBody("{\"email\":\"ivan@example.com\",\"socialMedia\":{}}"));
+
+        RequestRouter.Response updated = route(request("PUT", USER_PATH).withBody("{\"name\":\"Ivan\",\"version\":9}"));
+
+        assertEquals("\"2\"", updated.getHeaders().get("ETag"));
+        assertEquals("\"2\"", route(request("GET", USER_PATH)).getHeaders().get("ETag"));
+    }
+
+    @Test
+    public void currentUserIsAnsweredWith304() throws IOException {
+        route(request("POST", "/users").withBody("{\"email\":\"ivan@example.com\",\"socialMedia\":{}}"));
+
+        RequestRouter.Response notModified = route(request("GET", USER_PATH)
+                .withHeaders(Map.of("If-None-Match", "W/\"1\"")));
+        RequestRouter.Response modified = route(request("GET", USER_PATH)
+                .withHeaders(Map.of("If-None-Match", "\"0\"")));
+
+        assertEquals(304, notModified.getStatusCode());
+        assertEquals("\"1\"", notModified.getHeaders().get("ETag"));
+        assertEquals("", body(notModified));
+        assertEquals(200, modified.getStatusCode());
+    }
+
+    @Test
+    public void currentPageIsAnsweredWith304() {
+        route(request("POST", "/users").withBody("{\"email\":\"ivan@example.com\",\"socialMedia\":{}}"));
+        String pageTag = route(request("GET", "/users").withQueryStringParameters(Map.of("limit", "10")))
+                .getHeaders().get("ETag");
+        route(request("PUT", USER_PATH).withBody("{\"name\":\"Ivan\"}"));
+
+        RequestRouter.Response changed = route(request("GET", "/users")
+                .withQueryStringParameters(Map.of("limit", "10")).withHeaders(Map.of("If-None-Match", pageTag)));
+
+        assertEquals(200, changed.getStatusCode());
+        assertEquals(304, route(request("GET", "/users").withQueryStringParameters(Map.of("limit", "10"))
+                .withHeaders(Map.of("If-None-Match", changed.getHeaders().get("ETag")))).getStatusCode());
+    }
+
+    @Test
+    public void updateWithTheCurrentVersionSucceeds() {
+        route(request("POST", "/users").withBody("{\"email\":\"ivan@example.com\",\"socialMedia\":{}}"));
+
+        RequestRouter.Response updated = route(request("PUT", USER_PATH).withBody("{\"name\":\"Ivan\"}")
+                .withHeaders(Map.of("If-Match", "\"0\", \"1\"")));
+
+        assertEquals(200, updated.getStatusCode());
+        assertEquals("\"2\"", updated.getHeaders().get("ETag"));
+    }
+
+    @Test
+    public void updateWithAStaleVersionIsAnsweredWith412() throws IOException {
+        route(request("POST", "/users").withBody("{\"email\":\"ivan@example.com\",\"socialMedia\":{}}"));
+        route(request("PUT", USER_PATH).withBody("{\"name\":\"Petro\"}"));
+
+        RequestRouter.Response stale = route(request("PUT", USER_PATH).withBody("{\"name\":\"Ivan\"}")
+                .withHeaders(Map.of("If-Match", "\"1\"")));
+        RequestRouter.Response weak = route(request("PUT", USER_PATH).withBody("{\"name\":\"Ivan\"}")
+                .withHeaders(Map.of("If-Match", "W/\"2\"")));
+
+        assertEquals(412, stale.getStatusCode());
+        assertEquals(412, weak.getStatusCode());
+        assertTrue(body(route(request("GET", USER_PATH))).contains("\"name\":\"Petro\""));
+    }
+
+    @Test
+    public void ifMatchAnyOnlyRequiresTheUserToExist() {
+        RequestRouter.Response missing = route(request("PUT", USER_PATH).withBody("{\"name\":\"Ivan\"}")
+                .withHeaders(Map.of("If-Match", "*")));
+        route(request("POST", "/users").withBody("{\"email\":\"ivan@example.com\",\"socialMedia\":{}}"));
+        RequestRouter.Response existing = route(request("PUT", USER_PATH).withBody("{\"name\":\"Ivan\"}")
+                .withHeaders(Map.of("If-Match", "*")));
+
+        assertEquals(412, missing.getStatusCode());
+        assertEquals(200, existing.getStatusCode());
+    }
+
+    private RequestRouter.Response route(APIGatewayProxyRequestEvent event) {
+        return requestRouter.route(ProxyRequest.of(event)).join();
+    }
+
+    private static APIGatewayProxyRequestEvent request(String method, String path) {
+        return new APIGatewayProxyRequestEvent().withHttpMethod(method).withPath(path);
+    }
+
+    private static User user(String email, Long version) {
+        User user = new User();
+        user.setEmail(email);
+        user.setVersion(version);
+        return user;
+    }
+
+    private static String body(RequestRouter.Response response) throws IOException {
+        StringWriter writer = new StringWriter();
+        response.getBody().writeTo(writer);
+        return writer.toString();
+    }
+}
@@ -0,0 +1,151 @@
+package layer.service;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import layer.engine.LocalDynamoDB;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+public class MatchSortingTest {
+
+    private static final String SORTED_BY_AGE = "{\"name\":\"Iv\",\"sorting\":\"birthday:desc\"}";
+    private static final List<String> AGE_ORDER = List.of("ivan4@example.com", "ivan3@example.com",
+            "ivan2@example.com", "ivan1@example.com");
+
+    private RequestRouter requestRouter;
+
+    @Before
+    public void setUp() {
+        requestRouter = new RequestRouter(new DynamoDBServiceImpl(
+                new AmazonDynamoDBConnect(AmazonDynamoDBConnect.createUserTable(new LocalDynamoDB())),
+                new UserCache(), new Metrics(line -> { }, false, Metrics.DEFAULT_NAMESPACE)));
+        // the name criterion matches few enough users that they are sorted in memory
+        createUser("ivan1@example.com", "Ivan", 100);
+        createUser("ivan2@example.com", "Ivan", 200);
+        createUser("ivan3@example.com", "Ivan", 200);
+        createUser("ivan4@example.com", "Ivan", 300);
+        for (int i = 0; i < 16; i++) {
+            createUser("petro" + i + "@example.com", "Petro", 150 + i);
+        }
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(Configuration.getPropertyName(MatchPlanner.SORT_MAX_ITEMS_VARIABLE));
+        System.clearProperty(Configuration.getPropertyName(MatchPlanner.SAMPLE_SIZE_VARIABLE));
+        System.clearProperty(Configuration.getPropertyName(MatchPlanner.TIME_BUDGET_VARIABLE));
+    }
+
+    @Test
+    public void pagesOfAnInMemorySortFollowEachOther() throws IOException {
+        assertEquals(AGE_ORDER, readAllPages(null));
+    }
+
+    @Test
+    public void tooManyExpectedMatchesAreReadFromTheSortIndex() throws IOException {
+        setProperty(MatchPlanner.SORT_MAX_ITEMS_VARIABLE, "3");
+
+        assertEquals(AGE_ORDER, readAllPages(null));
+    }
+
+    @Test
+    public void tooManyMatchesReadSwitchToTheSortIndex() throws IOException {
+        setProperty(MatchPlanner.SAMPLE_SIZE_VARIABLE, "0");
+        setProperty(MatchPlanner.SORT_MAX_ITEMS_VARIABLE, "2");
+
+        assertEquals(AGE_ORDER, readAllPages(null));
+    }
+
+    @Test
+    public void cursorOfAnInMemorySortResumesFromTheSortIndex() throws IOException {
+        JsonObject firstPage = match(null);
+        String cursor = firstPage.get("cursor").getAsString();
+        setProperty(MatchPlanner.SORT_MAX_ITEMS_VARIABLE, "3");
+
+        List<String> emails = getEmails(firstPage);
+        emails.addAll(readAllPages(cursor));
+
+        assertEquals(AGE_ORDER, emails);
+    }
+
+    @Test
+    public void sortThatRunsOutOfTimeIsAnsweredWith504() throws IOException {
+        setProperty(MatchPlanner.TIME_BUDGET_VARIABLE, "0");
+
+        RequestRouter.Response response = route(matchRequest(null));
+
+        assertEquals(504, response.getStatusCode());
+        assertEquals("{\"message\":\"The request reads too many users to be answered in time, narrow it down\"}",
+                body(response));
+    }
+
+    private List<String> readAllPages(String cursor) throws IOException {
+        List<String> emails = new ArrayList<>();
+        do {
+            JsonObject page = match(cursor);
+            emails.addAll(getEmails(page));
+            cursor = page.has("cursor") ? page.get("cursor").getAsString() : null;
+        } while (cursor != null && emails.size() <= AGE_ORDER.size());
+        return emails;
+    }
+
+    private JsonObject match(String cursor) throws IOException {
+        RequestRouter.Response response = route(matchRequest(cursor));
+        assertEquals(200, response.getStatusCode());
+        JsonObject page = JsonParser.parseString(body(response)).getAsJsonObject();
+        assertNotNull(page.get("items"));
+        return page;
+    }
+
+    private static APIGatewayProxyRequestEvent matchRequest(String cursor) {
+        Map<String, String> queryParameters = new HashMap<>();
+        queryParameters.put("limit", "2");
+        if (cursor != null) {
+            queryParameters.put("cursor", cursor);
+        }
+        return new APIGatewayProxyRequestEvent().withHttpMethod("POST").withPath("/match")
+                .withQueryStringParameters(queryParameters).withBody(SORTED_BY_AGE);
+    }
+
+    private static List<String> getEmails(JsonObject page) {
+        List<String> emails = new ArrayList<>();
+        for (JsonElement item : page.getAsJsonArray("items")) {
+            emails.add(item.getAsJsonObject().get("email").getAsString());
+        }
+        return emails;
+    }
+
+    private void createUser(String email, String name, long birthday) {
+        RequestRouter.Response response = route(new APIGatewayProxyRequestEvent().withHttpMethod("POST")
+                .withPath("/users").withBody("{\"email\":\"" + email + "\",\"country\":\"Ukraine\",\"name\":\""
+                        + name + "\",\"birthday\":" + birthday + ",\"socialMedia\":{}}"));
+        assertEquals(201, response.getStatusCode());
+    }
+
+    private RequestRouter.Response route(APIGatewayProxyRequestEvent event) {
+        return requestRouter.route(ProxyRequest.of(event)).join();
+    }
+
+    private static void setProperty(String variable, String value) {
+        System.setProperty(Configuration.getPropertyName(variable), value);
+    }
+
+    private static String body(RequestRouter.Response response) throws IOException {
+        StringWriter writer = new StringWriter();
+        response.getBody().writeTo(writer);
+        return writer.toString();
+    }
+}
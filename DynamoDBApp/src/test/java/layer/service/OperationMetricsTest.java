@@ -0,0 +1,182 @@
+package layer.service;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import layer.engine.LocalDynamoDB;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class OperationMetricsTest {
+
+    private static final List<String> METRIC_NAMES = List.of("Latency", "ParseTime", "DynamoDBTime",
+            "SerializeTime", "DynamoDBCalls", "ReadCapacityUnits", "WriteCapacityUnits", "IndexCapacityUnits",
+            "ItemsScanned", "ItemsReturned", "Errors");
+
+    private LocalMetricsSink sink;
+    private Metrics metrics;
+
+    @Before
+    public void setUp() {
+        sink = new LocalMetricsSink();
+        metrics = new Metrics(sink, true, "Test/Users");
+    }
+
+    @Test
+    public void lineIsAnEmbeddedMetricFormatDocument() {
+        OperationMetrics operationMetrics = metrics.start("getUsersListByQuery");
+        operationMetrics.setIndexName("country-name-index");
+        operationMetrics.setPaginated(true);
+
+        operationMetrics.emit();
+
+        JsonObject line = getLastLine();
+        JsonObject directive = line.getAsJsonObject("_aws").getAsJsonArray("CloudWatchMetrics").get(0)
+                .getAsJsonObject();
+        assertTrue(line.getAsJsonObject("_aws").get("Timestamp").getAsLong() > 0);
+        assertEquals("Test/Users", directive.get("Namespace").getAsString());
+        assertEquals("[[\"Operation\",\"Index\",\"Paginated\"]]", directive.get("Dimensions").toString());
+        List<String> names = new ArrayList<>();
+        for (JsonElement metric : directive.getAsJsonArray("Metrics")) {
+            String name = metric.getAsJsonObject().get("Name").getAsString();
+            names.add(name);
+            assertTrue(name, line.get(name).getAsJsonPrimitive().isNumber());
+        }
+        assertEquals(METRIC_NAMES, names);
+        assertEquals("getUsersListByQuery", line.get("Operation").getAsString());
+        assertEquals("country-name-index", line.get("Index").getAsString());
+        assertEquals("true", line.get("Paginated").getAsString());
+        assertEquals(0, line.get("Errors").getAsInt());
+    }
+
+    @Test
+    public void namespaceIsEscaped() {
+        new Metrics(sink, true, "Test\"Users").start("findUser").emit();
+
+        assertEquals("Test\"Users", getLastLine().getAsJsonObject("_aws").getAsJsonArray("CloudWatchMetrics")
+                .get(0).getAsJsonObject().get("Namespace").getAsString());
+    }
+
+    @Test
+    public void operationIsEmittedOnce() {
+        OperationMetrics operationMetrics = metrics.start("findUser");
+
+        operationMetrics.emit();
+        operationMetrics.emit();
+
+        assertEquals(1, sink.getLines().size());
+    }
+
+    @Test
+    public void successfulFutureIsEmittedOnceWithoutError() {
+        OperationMetrics operationMetrics = metrics.start("findUser");
+
+        operationMetrics.emitOnCompletion(CompletableFuture.completedFuture("found")).join();
+        operationMetrics.emit();
+
+        assertEquals(1, sink.getLines().size());
+        assertEquals(0, getLastLine().get("Errors").getAsInt());
+    }
+
+    @Test
+    public void failedFutureIsEmittedOnceAsAnError() {
+        OperationMetrics operationMetrics = metrics.start("findUser");
+
+        operationMetrics.emitOnCompletion(CompletableFuture.failedFuture(new IllegalStateException()));
+        operationMetrics.emitOnFailure(CompletableFuture.failedFuture(new IllegalStateException()));
+
+        assertEquals(1, sink.getLines().size());
+        assertEquals(1, getLastLine().get("Errors").getAsInt());
+    }
+
+    @Test
+    public void emitOnFailureLeavesASuccessToTheCaller() {
+        OperationMetrics operationMetrics = metrics.start("getUsersList");
+
+        operationMetrics.emitOnFailure(CompletableFuture.completedFuture("page")).join();
+
+        assertEquals(0, sink.getLines().size());
+    }
+
+    @Test
+    public void disabledMetricsEmitNothing() {
+        Metrics disabled = new Metrics(sink, false, Metrics.DEFAULT_NAMESPACE);
+
+        disabled.start("findUser").emitOnCompletion(CompletableFuture.failedFuture(new IllegalStateException()));
+        OperationMetrics.DISABLED.emit();
+
+        assertEquals(0, sink.getLines().size());
+    }
+
+    @Test
+    public void writtenListIsEmittedOnce() throws IOException {
+        RequestRouter requestRouter = createRouterWithOneUser();
+
+        RequestRouter.Response response = requestRouter.route(ProxyRequest.of(listRequest())).join();
+        assertEquals(0, sink.getLines().size());
+        response.getBody().writeTo(new StringWriter());
+
+        assertEquals(200, response.getStatusCode());
+        assertEquals(1, sink.getLines().size());
+        assertEquals("getUsersList", getLastLine().get("Operation").getAsString());
+        assertEquals(0, getLastLine().get("Errors").getAsInt());
+        assertEquals(1, getLastLine().get("ItemsReturned").getAsInt());
+    }
+
+    @Test
+    public void notModifiedListIsEmittedOnce() {
+        RequestRouter requestRouter = createRouterWithOneUser();
+        String entityTag = requestRouter.route(ProxyRequest.of(listRequest())).join().getHeaders().get("ETag");
+        sink.clear();
+
+        RequestRouter.Response response = requestRouter.route(ProxyRequest.of(listRequest()
+                .withHeaders(Map.of("If-None-Match", entityTag)))).join();
+
+        assertEquals(304, response.getStatusCode());
+        assertEquals(1, sink.getLines().size());
+        assertEquals(0, getLastLine().get("Errors").getAsInt());
+    }
+
+    @Test
+    public void failedListIsEmittedOnceAsAnError() {
+        RequestRouter requestRouter = createRouterWithOneUser();
+
+        RequestRouter.Response response = requestRouter.route(ProxyRequest.of(listRequest()
+                .withQueryStringParameters(Map.of("limit", "10", "cursor", "garbage")))).join();
+
+        assertEquals(400, response.getStatusCode());
+        assertEquals(1, sink.getLines().size());
+        assertEquals(1, getLastLine().get("Errors").getAsInt());
+    }
+
+    private RequestRouter createRouterWithOneUser() {
+        RequestRouter requestRouter = new RequestRouter(new DynamoDBServiceImpl(
+                new AmazonDynamoDBConnect(AmazonDynamoDBConnect.createUserTable(new LocalDynamoDB())),
+                new UserCache(), metrics));
+        assertEquals(201, requestRouter.route(ProxyRequest.of(new APIGatewayProxyRequestEvent()
+                .withHttpMethod("POST").withPath("/users")
+                .withBody("{\"email\":\"ivan@example.com\",\"socialMedia\":{}}"))).join().getStatusCode());
+        sink.clear();
+        return requestRouter;
+    }
+
+    private static APIGatewayProxyRequestEvent listRequest() {
+        return new APIGatewayProxyRequestEvent().withHttpMethod("GET").withPath("/users")
+                .withQueryStringParameters(Map.of("limit", "10"));
+    }
+
+    private JsonObject getLastLine() {
+        return JsonParser.parseString(sink.getLastLine()).getAsJsonObject();
+    }
+}
@@ -0,0 +1,100 @@
+package layer.service;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+public class PageCursorTest {
+
+    private static final String INDEX_NAME = "country-name-index";
+    private static final Map<String, AttributeValue> INDEX_KEY = Map.of(
+            "email", new AttributeValue("ivan@example.com"),
+            "country", new AttributeValue("Ukraine"),
+            "name", new AttributeValue("Ivan Petrenko"));
+
+    @Test
+    public void indexKeyRoundTrips() {
+        String cursor = PageCursor.encode(INDEX_NAME, INDEX_KEY);
+
+        assertEquals(INDEX_KEY, PageCursor.decode(INDEX_NAME, cursor));
+        assertEquals(INDEX_NAME, PageCursor.getIndexName(cursor));
+    }
+
+    @Test
+    public void tableKeyRoundTripsWithEveryKeyType() {
+        Map<String, AttributeValue> key = Map.of(
+                "email", new AttributeValue("ivan@example.com"),
+                "score", new AttributeValue().withN("42"),
+                "hash", new AttributeValue().withB(ByteBuffer.wrap(new byte[] {0, 1, (byte) 0xff})));
+
+        String cursor = PageCursor.encode(null, key);
+
+        assertEquals(key, PageCursor.decode(null, cursor));
+        assertNull(PageCursor.getIndexName(cursor));
+    }
+
+    @Test
+    public void cursorIsUrlSafe() {
+        String cursor = PageCursor.encode(INDEX_NAME, INDEX_KEY);
+
+        assertEquals(-1, cursor.indexOf('+'));
+        assertEquals(-1, cursor.indexOf('/'));
+        assertEquals(-1, cursor.indexOf('='));
+    }
+
+    @Test
+    public void lastPageHasNoCursor() {
+        assertNull(PageCursor.encode(INDEX_NAME, null));
+        assertNull(PageCursor.encode(INDEX_NAME, Map.of()));
+    }
+
+    @Test
+    public void firstPageHasNoStartKey() {
+        assertNull(PageCursor.decode(INDEX_NAME, null));
+        assertNull(PageCursor.decode(INDEX_NAME, ""));
+        assertNull(PageCursor.getIndexName(null));
+    }
+
+    @Test
+    public void cursorOfAnotherIndexIsRejected() {
+        String cursor = PageCursor.encode(INDEX_NAME, INDEX_KEY);
+
+        assertThrows(InvalidCursorException.class, () -> PageCursor.decode("age-index", cursor));
+        assertThrows(InvalidCursorException.class, () -> PageCursor.decode(null, cursor));
+    }
+
+    @Test
+    public void garbageIsRejected() {
+        assertThrows(InvalidCursorException.class, () -> PageCursor.decode(null, "not a cursor!"));
+        assertThrows(InvalidCursorException.class, () -> PageCursor.decode(null, "AAAA"));
+        assertThrows(InvalidCursorException.class, () -> PageCursor.getIndexName("%%%"));
+    }
+
+    @Test
+    public void tamperedCursorIsRejected() {
+        byte[] bytes = Base64.getUrlDecoder().decode(PageCursor.encode(INDEX_NAME, INDEX_KEY));
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+
+        byte[] otherVersion = bytes.clone();
+        otherVersion[0]++;
+        byte[] truncated = Arrays.copyOf(bytes, bytes.length - 1);
+        byte[] extended = Arrays.copyOf(bytes, bytes.length + 1);
+
+        assertThrows(InvalidCursorException.class,
+                () -> PageCursor.decode(INDEX_NAME, encoder.encodeToString(otherVersion)));
+        assertThrows(InvalidCursorException.class,
+                () -> PageCursor.getIndexName(encoder.encodeToString(otherVersion)));
+        assertThrows(InvalidCursorException.class,
+                () -> PageCursor.decode(INDEX_NAME, encoder.encodeToString(truncated)));
+        assertThrows(InvalidCursorException.class,
+                () -> PageCursor.decode(INDEX_NAME, encoder.encodeToString(extended)));
+    }
+}
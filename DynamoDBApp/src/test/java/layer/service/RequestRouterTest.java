@@ -0,0 +1,170 @@
+package layer.service;
+
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import layer.engine.LocalDynamoDB;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RequestRouterTest {
+
+    private static final String USER_BODY = "{\"email\":\"ivan@example.com\",\"name\":\"Ivan\",\"socialMedia\":{}}";
+
+    private RequestRouter requestRouter;
+
+    @Before
+    public void setUp() {
+        requestRouter = new RequestRouter(new DynamoDBServiceImpl(
+                new AmazonDynamoDBConnect(AmazonDynamoDBConnect.createUserTable(new LocalDynamoDB())),
+                new UserCache(), new Metrics(line -> { }, false, Metrics.DEFAULT_NAMESPACE)));
+    }
+
+    @Test
+    public void createdUserIsAnsweredWith201() throws IOException {
+        RequestRouter.Response response = route(request("POST", "/users").withBody(USER_BODY));
+
+        assertEquals(201, response.getStatusCode());
+        assertEquals("{\"message\":\"User created: ivan@example.com\"}", body(response));
+    }
+
+    @Test
+    public void existingEmailIsAnsweredWith409() throws IOException {
+        route(request("POST", "/users").withBody(USER_BODY));
+
+        RequestRouter.Response response = route(request("POST", "/users").withBody(USER_BODY));
+
+        assertEquals(409, response.getStatusCode());
+        assertEquals("{\"message\":\"User with this email already exists\"}", body(response));
+    }
+
+    @Test
+    public void unknownSocialMediaIsAnsweredWith400() throws IOException {
+        RequestRouter.Response response = route(request("POST", "/users")
+                .withBody("{\"email\":\"ivan@example.com\",\"socialMedia\":{\"myspace\":\"ivan\"}}"));
+
+        assertEquals(400, response.getStatusCode());
+        assertEquals("{\"message\":\"User with such social media links cannot be created\"}", body(response));
+    }
+
+    @Test
+    public void singleRouteHandlersKeepTheStatusOfTheirRoute() {
+        RequestRouter.Response created = requestRouter.route(RequestRouter.CREATE_USER,
+                ProxyRequest.of(new APIGatewayProxyRequestEvent().withBody(USER_BODY))).join();
+        RequestRouter.Response rejected = requestRouter.route(RequestRouter.CREATE_USER,
+                ProxyRequest.of(new APIGatewayProxyRequestEvent().withBody(USER_BODY))).join();
+
+        assertEquals(201, created.getStatusCode());
+        assertEquals(409, rejected.getStatusCode());
+    }
+
+    @Test
+    public void resourceSelectsTheRoute() throws IOException {
+        route(request("POST", "/users").withBody(USER_BODY));
+
+        RequestRouter.Response response = route(new APIGatewayProxyRequestEvent()
+                .withHttpMethod("GET")
+                .withResource("/users/{email}")
+                .withPath("/ignored")
+                .withPathParameters(Map.of("email", "ivan@example.com")));
+
+        assertEquals(200, response.getStatusCode());
+        assertTrue(body(response).contains("\"name\":\"Ivan\""));
+    }
+
+    @Test
+    public void pathParametersAreDecodedKeepingPlus() throws IOException {
+        route(request("POST", "/users").withBody("{\"email\":\"ivan+test@example.com\",\"socialMedia\":{}}"));
+
+        RequestRouter.Response response = route(request("GET", "/users/ivan+test%40example.com"));
+
+        assertEquals(200, response.getStatusCode());
+        assertTrue(body(response).contains("\"email\":\"ivan+test@example.com\""));
+    }
+
+    @Test
+    public void literalSegmentsWinOverParameters() throws IOException {
+        RequestRouter.Response response = route(request("GET", "/users/autocomplete"));
+
+        assertEquals(200, response.getStatusCode());
+        assertEquals("{\"message\":\"Prefix cannot be empty\"}", body(response));
+    }
+
+    @Test
+    public void unknownPathIsAnsweredWith404AndOtherMethodWith405() {
+        assertEquals(404, route(request("GET", "/accounts")).getStatusCode());
+        assertEquals(404, route(request("GET", "/users/ivan@example.com/friends")).getStatusCode());
+        assertEquals(405, route(request("PATCH", "/users/ivan@example.com")).getStatusCode());
+        assertEquals(405, route(request("DELETE", "/users")).getStatusCode());
+    }
+
+    @Test
+    public void invalidCursorIsAnsweredWith400() {
+        RequestRouter.Response response = route(request("GET", "/users")
+                .withQueryStringParameters(Map.of("limit", "10", "cursor", "garbage")));
+
+        assertEquals(400, response.getStatusCode());
+    }
+
+    @Test
+    public void failuresAreMappedToStatuses() throws IOException {
+        RequestRouter.Response precondition = routeFailing(new PreconditionFailedException("Stale"));
+        RequestRouter.Response circuitOpen = routeFailing(new CircuitOpenException(2_500));
+        RequestRouter.Response throttled = routeFailing(new ProvisionedThroughputExceededException("Slow down"));
+        RequestRouter.Response unexpected = routeFailing(new IllegalStateException("Broken"));
+
+        assertEquals(412, precondition.getStatusCode());
+        assertEquals(503, circuitOpen.getStatusCode());
+        assertEquals("3", circuitOpen.getHeaders().get("Retry-After"));
+        assertEquals(429, throttled.getStatusCode());
+        assertEquals("1", throttled.getHeaders().get("Retry-After"));
+        assertEquals(503, unexpected.getStatusCode());
+        assertTrue(body(unexpected).contains("Broken"));
+    }
+
+    @Test
+    public void routeThatMissesTheDeadlineIsAnsweredWith503() {
+        RequestRouter router = new RequestRouter(service(new CompletableFuture<>()));
+
+        RequestRouter.Response response = router.route(ProxyRequest.of(request("GET", "/users/ivan@example.com")),
+                RequestRouter.DEFAULT_DEADLINE_MARGIN_MILLIS + 50).join();
+
+        assertEquals(503, response.getStatusCode());
+        assertEquals("1", response.getHeaders().get("Retry-After"));
+    }
+
+    private RequestRouter.Response route(APIGatewayProxyRequestEvent event) {
+        return requestRouter.route(ProxyRequest.of(event)).join();
+    }
+
+    private static RequestRouter.Response routeFailing(Throwable failure) {
+        return new RequestRouter(service(CompletableFuture.failedFuture(failure)))
+                .route(ProxyRequest.of(request("GET", "/users/ivan@example.com"))).join();
+    }
+
+    /**
+     * A service whose every operation returns the given future.
+     */
+    private static DynamoDBServiceAsync service(CompletableFuture<?> result) {
+        return (DynamoDBServiceAsync) Proxy.newProxyInstance(DynamoDBServiceAsync.class.getClassLoader(),
+                new Class<?>[] {DynamoDBServiceAsync.class}, (proxy, method, args) -> result);
+    }
+
+    private static APIGatewayProxyRequestEvent request(String method, String path) {
+        return new APIGatewayProxyRequestEvent().withHttpMethod(method).withPath(path);
+    }
+
+    private static String body(RequestRouter.Response response) throws IOException {
+        StringWriter writer = new StringWriter();
+        response.getBody().writeTo(writer);
+        return writer.toString();
+    }
+}
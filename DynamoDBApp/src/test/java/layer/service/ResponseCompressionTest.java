@@ -0,0 +1,144 @@
+package layer.service;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyResponseEvent;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ResponseCompressionTest {
+
+    private static final String SHORT_BODY = "{\"message\":\"User not found\"}";
+    private static final String LONG_BODY = "[" + "{\"email\":\"ivan@example.com\",\"name\":\"Ivan\"},".repeat(100)
+            + "{}]";
+
+    @Test
+    public void gzipIsNegotiatedUnlessRefused() {
+        assertNull(ResponseCompression.negotiate(null));
+        assertNull(ResponseCompression.negotiate(""));
+        assertNull(ResponseCompression.negotiate("deflate, br"));
+        assertEquals("gzip", ResponseCompression.negotiate("gzip"));
+        assertEquals("gzip", ResponseCompression.negotiate("deflate, GZIP, br"));
+        assertEquals("gzip", ResponseCompression.negotiate("x-gzip"));
+        assertEquals("gzip", ResponseCompression.negotiate("br;q=1.0, gzip;q=0.8"));
+        assertEquals("gzip", ResponseCompression.negotiate("gzip ; q=0.001"));
+    }
+
+    @Test
+    public void zeroOrInvalidQualityRefusesGzip() {
+        assertNull(ResponseCompression.negotiate("gzip;q=0"));
+        assertNull(ResponseCompression.negotiate("gzip; q=0.000"));
+        assertNull(ResponseCompression.negotiate("gzip;q=high"));
+    }
+
+    @Test
+    public void wildcardStandsForGzipUnlessGzipIsListed() {
+        assertEquals("gzip", ResponseCompression.negotiate("*"));
+        assertEquals("gzip", ResponseCompression.negotiate("br, *;q=0.1"));
+        assertNull(ResponseCompression.negotiate("*;q=0"));
+        assertNull(ResponseCompression.negotiate("gzip;q=0, *"));
+        assertEquals("gzip", ResponseCompression.negotiate("gzip, *;q=0"));
+    }
+
+    @Test
+    public void shortBodyIsHeldBackAndWrittenPlain() throws IOException {
+        StringWriter plain = new StringWriter();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ResponseCompression.BodyWriter bodyWriter = new ResponseCompression.BodyWriter(plain, compressed);
+
+        bodyWriter.write(SHORT_BODY);
+        assertEquals("", plain.toString());
+
+        assertFalse(bodyWriter.finish());
+        assertEquals(SHORT_BODY, plain.toString());
+        assertEquals(0, compressed.size());
+    }
+
+    @Test
+    public void bodyOfTheMinimumLengthIsWrittenPlain() throws IOException {
+        String body = "x".repeat(ResponseCompression.DEFAULT_MIN_LENGTH);
+        StringWriter plain = new StringWriter();
+        ResponseCompression.BodyWriter bodyWriter = new ResponseCompression.BodyWriter(plain,
+                new ByteArrayOutputStream());
+
+        bodyWriter.write(body);
+
+        assertFalse(bodyWriter.finish());
+        assertEquals(body, plain.toString());
+    }
+
+    @Test
+    public void longBodyIsGzippedAndBase64Encoded() throws IOException {
+        StringWriter plain = new StringWriter();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        ResponseCompression.BodyWriter bodyWriter = new ResponseCompression.BodyWriter(plain, compressed);
+
+        for (int offset = 0; offset < LONG_BODY.length(); offset += 7) {
+            bodyWriter.write(LONG_BODY, offset, Math.min(7, LONG_BODY.length() - offset));
+        }
+
+        assertTrue(bodyWriter.finish());
+        assertEquals("", plain.toString());
+        assertEquals(LONG_BODY, gunzip(compressed.toString(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    public void compressedResponseEventCarriesContentEncoding() throws IOException {
+        APIGatewayServiceImpl apiGatewayService = new APIGatewayServiceImpl();
+
+        APIGatewayProxyResponseEvent plain = apiGatewayService.getApiGatewayProxyResponseEvent(
+                writer -> writer.write(SHORT_BODY), 200, Map.of(), "gzip");
+        APIGatewayProxyResponseEvent compressed = apiGatewayService.getApiGatewayProxyResponseEvent(
+                writer -> writer.write(LONG_BODY), 200, Map.of(), "gzip");
+
+        assertEquals(SHORT_BODY, plain.getBody());
+        assertNull(plain.getIsBase64Encoded());
+        assertNull(plain.getHeaders().get("Content-Encoding"));
+        assertTrue(compressed.getIsBase64Encoded());
+        assertEquals("gzip", compressed.getHeaders().get("Content-Encoding"));
+        assertEquals("Accept-Encoding", compressed.getHeaders().get("Vary"));
+        assertEquals(LONG_BODY, gunzip(compressed.getBody()));
+    }
+
+    @Test
+    public void streamedEnvelopeHoldsThePlainOrCompressedBody() throws IOException {
+        APIGatewayServiceImpl apiGatewayService = new APIGatewayServiceImpl();
+        ByteArrayOutputStream plainOutput = new ByteArrayOutputStream();
+        ByteArrayOutputStream compressedOutput = new ByteArrayOutputStream();
+
+        apiGatewayService.writeApiGatewayProxyResponseEvent(plainOutput, writer -> writer.write(SHORT_BODY), 200,
+                Map.of("ETag", "\"1\""), "gzip");
+        apiGatewayService.writeApiGatewayProxyResponseEvent(compressedOutput, writer -> writer.write(LONG_BODY),
+                200, Map.of(), "gzip");
+
+        JsonObject plain = JsonParser.parseString(plainOutput.toString(StandardCharsets.UTF_8)).getAsJsonObject();
+        JsonObject compressed = JsonParser.parseString(compressedOutput.toString(StandardCharsets.UTF_8))
+                .getAsJsonObject();
+        assertEquals(SHORT_BODY, plain.get("body").getAsString());
+        assertFalse(plain.get("isBase64Encoded").getAsBoolean());
+        assertEquals("\"1\"", plain.getAsJsonObject("headers").get("ETag").getAsString());
+        assertTrue(compressed.get("isBase64Encoded").getAsBoolean());
+        assertEquals("gzip", compressed.getAsJsonObject("headers").get("Content-Encoding").getAsString());
+        assertEquals(LONG_BODY, gunzip(compressed.get("body").getAsString()));
+    }
+
+    private static String gunzip(String base64) throws IOException {
+        try (GZIPInputStream input = new GZIPInputStream(new ByteArrayInputStream(
+                Base64.getDecoder().decode(base64)))) {
+            return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package layer.service;
+
+import com.amazonaws.services.lambda.runtime.events.APIGatewayProxyRequestEvent;
+import layer.engine.LocalDynamoDB;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class UserCacheTest {
+
+    private static final String EMAIL = "ivan@example.com";
+    private static final String USER_BODY = "{\"email\":\"ivan@example.com\",\"name\":\"Ivan\",\"socialMedia\":{}}";
+
+    @Test
+    public void cachedUserIsReturnedWithItsVersion() {
+        UserCache userCache = new UserCache(10, 60_000, 60_000);
+
+        assertNull(userCache.get(EMAIL));
+        userCache.put(EMAIL, USER_BODY, 3L);
+        UserCache.Entry entry = userCache.get(EMAIL);
+
+        assertTrue(entry.isFound());
+        assertEquals(USER_BODY, entry.getUserJson());
+        assertEquals(Long.valueOf(3), entry.getVersion());
+        assertEquals(1, userCache.getHitCount());
+        assertEquals(1, userCache.getMissCount());
+    }
+
+    @Test
+    public void laterPutReplacesTheVersion() {
+        UserCache userCache = new UserCache(10, 60_000, 60_000);
+
+        userCache.put(EMAIL, USER_BODY, 3L);
+        userCache.put(EMAIL, USER_BODY, 4L);
+
+        assertEquals(Long.valueOf(4), userCache.get(EMAIL).getVersion());
+    }
+
+    @Test
+    public void invalidatedUserIsAMiss() {
+        UserCache userCache = new UserCache(10, 60_000, 60_000);
+        userCache.put(EMAIL, USER_BODY, 3L);
+
+        userCache.invalidate(EMAIL);
+
+        assertNull(userCache.get(EMAIL));
+        assertEquals(0, userCache.getSize());
+    }
+
+    @Test
+    public void notFoundIsCachedUntilTheUserIsPut() {
+        UserCache userCache = new UserCache(10, 60_000, 60_000);
+
+        userCache.putNotFound(EMAIL);
+        assertFalse(userCache.get(EMAIL).isFound());
+        userCache.put(EMAIL, USER_BODY, 1L);
+
+        assertTrue(userCache.get(EMAIL).isFound());
+    }
+
+    @Test
+    public void notFoundIsNotCachedWithoutANegativeTtl() {
+        UserCache userCache = new UserCache(10, 60_000, 0);
+
+        userCache.putNotFound(EMAIL);
+
+        assertNull(userCache.get(EMAIL));
+    }
+
+    @Test
+    public void expiredUserIsAMiss() {
+        UserCache userCache = new UserCache(10, 0, 0);
+        userCache.put(EMAIL, USER_BODY, 3L);
+
+        assertNull(userCache.get(EMAIL));
+        assertEquals(1, userCache.getExpirationCount());
+        assertEquals(0, userCache.getSize());
+    }
+
+    @Test
+    public void leastRecentlyUsedUserIsEvicted() {
+        UserCache userCache = new UserCache(2, 60_000, 60_000);
+        userCache.put("a@example.com", "{}", 1L);
+        userCache.put("b@example.com", "{}", 1L);
+        userCache.get("a@example.com");
+
+        userCache.put("c@example.com", "{}", 1L);
+
+        assertNull(userCache.get("b@example.com"));
+        assertTrue(userCache.get("a@example.com").isFound());
+        assertTrue(userCache.get("c@example.com").isFound());
+        assertEquals(1, userCache.getEvictionCount());
+    }
+
+    @Test
+    public void cacheWithoutEntriesIsDisabled() {
+        UserCache userCache = new UserCache(0, 60_000, 60_000);
+
+        userCache.put(EMAIL, USER_BODY, 3L);
+        userCache.putNotFound("petro@example.com");
+
+        assertFalse(userCache.isEnabled());
+        assertNull(userCache.get(EMAIL));
+        assertNull(userCache.get("petro@example.com"));
+    }
+
+    @Test
+    public void updatedUserIsServedWithTheNewVersion() throws IOException {
+        UserCache userCache = new UserCache(10, 60_000, 60_000);
+        RequestRouter requestRouter = createRouter(userCache);
+        route(requestRouter, "POST", "/users", USER_BODY);
+        RequestRouter.Response found = route(requestRouter, "GET", "/users/" + EMAIL, null);
+
+        RequestRouter.Response updated = route(requestRouter, "PUT", "/users/" + EMAIL, "{\"name\":\"Ivan Petrenko\"}");
+        RequestRouter.Response foundAgain = route(requestRouter, "GET", "/users/" + EMAIL, null);
+
+        assertEquals(200, updated.getStatusCode());
+        assertNotEquals(found.getHeaders().get("ETag"), foundAgain.getHeaders().get("ETag"));
+        assertEquals(updated.getHeaders().get("ETag"), foundAgain.getHeaders().get("ETag"));
+        assertTrue(body(foundAgain).contains("\"name\":\"Ivan Petrenko\""));
+        assertEquals(2, userCache.getHitCount());
+    }
+
+    @Test
+    public void createdUserReplacesACachedNotFound() throws IOException {
+        UserCache userCache = new UserCache(10, 60_000, 60_000);
+        RequestRouter requestRouter = createRouter(userCache);
+        assertEquals("{\"message\":\"User not found\"}", body(route(requestRouter, "GET", "/users/" + EMAIL, null)));
+
+        route(requestRouter, "POST", "/users", USER_BODY);
+
+        assertTrue(body(route(requestRouter, "GET", "/users/" + EMAIL, null)).contains("\"name\":\"Ivan\""));
+    }
+
+    @Test
+    public void deletedUserIsNotServedFromTheCache() throws IOException {
+        UserCache userCache = new UserCache(10, 60_000, 60_000);
+        RequestRouter requestRouter = createRouter(userCache);
+        route(requestRouter, "POST", "/users", USER_BODY);
+        route(requestRouter, "GET", "/users/" + EMAIL, null);
+
+        route(requestRouter, "DELETE", "/users/" + EMAIL, null);
+
+        assertEquals("{\"message\":\"User not found\"}", body(route(requestRouter, "GET", "/users/" + EMAIL, null)));
+        assertFalse(userCache.get(EMAIL).isFound());
+    }
+
+    private static RequestRouter createRouter(UserCache userCache) {
+        return new RequestRouter(new DynamoDBServiceImpl(
+                new AmazonDynamoDBConnect(AmazonDynamoDBConnect.createUserTable(new LocalDynamoDB())),
+                userCache, new Metrics(line -> { }, false, Metrics.DEFAULT_NAMESPACE)));
+    }
+
+    private static RequestRouter.Response route(RequestRouter requestRouter, String method, String path,
+                                                String body) {
+        return requestRouter.route(ProxyRequest.of(new APIGatewayProxyRequestEvent()
+                .withHttpMethod(method).withPath(path).withBody(body))).join();
+    }
+
+    private static String body(RequestRouter.Response response) throws IOException {
+        StringWriter writer = new StringWriter();
+        response.getBody().writeTo(writer);
+        return writer.toString();
+    }
+}
@@ -0,0 +1,191 @@
+package layer.service;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
+import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeyType;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
+import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
+import com.amazonaws.services.dynamodbv2.model.Record;
+import com.amazonaws.services.dynamodbv2.model.ScalarAttributeType;
+import com.amazonaws.services.dynamodbv2.model.StreamRecord;
+import layer.engine.LocalDynamoDB;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class UserStatsTest {
+
+    private static final String BIRTHDAY_2000 = "946684800";
+    private static final String REGISTRATION = "1700000000";
+
+    private LocalDynamoDB localDynamoDB;
+    private UserStats userStats;
+
+    @Before
+    public void setUp() {
+        localDynamoDB = AmazonDynamoDBConnect.createUserTable(new LocalDynamoDB());
+        localDynamoDB.createTable(new CreateTableRequest()
+                .withTableName(UserStats.getTableName())
+                .withKeySchema(new KeySchemaElement(UserStats.DIMENSION_KEY, KeyType.HASH))
+                .withAttributeDefinitions(new AttributeDefinition(UserStats.DIMENSION_KEY, ScalarAttributeType.S))
+                .withProvisionedThroughput(new ProvisionedThroughput(1L, 1L)));
+        userStats = new UserStats(new AmazonDynamoDBConnect(localDynamoDB),
+                new Metrics(line -> { }, false, Metrics.DEFAULT_NAMESPACE));
+    }
+
+    @Test
+    public void countsTheOldImageOutAndTheNewImageIn() {
+        userStats.apply("shard-1", List.of(
+                record("1", null, user("a@example.com", "Kyiv")),
+                record("2", null, user("b@example.com", "Kyiv")),
+                record("3", user("b@example.com", "Kyiv"), user("b@example.com", "Lviv")),
+                record("4", user("a@example.com", "Kyiv"), null)));
+
+        assertEquals("{\"dimension\":\"users\",\"counts\":{\"total\":1}}", stats(UserStats.USERS_DIMENSION));
+        assertEquals("{\"dimension\":\"location\",\"counts\":{\"Lviv\":1}}", stats(UserStats.LOCATION_DIMENSION));
+        assertEquals("{\"dimension\":\"birthYear\",\"counts\":{\"2000\":1}}",
+                stats(UserStats.BIRTH_YEAR_DIMENSION));
+        assertEquals("{\"dimension\":\"registrationDate\",\"counts\":{\"2023-11-14\":1}}",
+                stats(UserStats.REGISTRATION_DATE_DIMENSION));
+    }
+
+    @Test
+    public void retriedBatchIsNotCountedTwice() {
+        List<Record> batch = List.of(
+                record("10", null, user("a@example.com", "Kyiv")),
+                record("11", null, user("b@example.com", "Lviv")));
+        userStats.apply("shard-1", batch);
+        userStats.apply("shard-1", batch);
+
+        assertEquals("{\"dimension\":\"users\",\"counts\":{\"total\":2}}", stats(UserStats.USERS_DIMENSION));
+        assertEquals("{\"dimension\":\"location\",\"counts\":{\"Kyiv\":1,\"Lviv\":1}}",
+                stats(UserStats.LOCATION_DIMENSION));
+    }
+
+    @Test
+    public void retriedBatchWithMoreRecordsOnlyAddsTheNewOnes() {
+        userStats.apply("shard-1", List.of(record("10", null, user("a@example.com", "Kyiv"))));
+        userStats.apply("shard-1", List.of(
+                record("10", null, user("a@example.com", "Kyiv")),
+                record("11", null, user("b@example.com", "Kyiv"))));
+
+        assertEquals("{\"dimension\":\"users\",\"counts\":{\"total\":2}}", stats(UserStats.USERS_DIMENSION));
+        assertEquals("{\"dimension\":\"location\",\"counts\":{\"Kyiv\":2}}", stats(UserStats.LOCATION_DIMENSION));
+    }
+
+    @Test
+    public void shardsAreAppliedIndependently() {
+        userStats.apply("shard-1", List.of(record("200", null, user("a@example.com", "Kyiv"))));
+        // sequence numbers of different shards are not comparable
+        userStats.apply("shard-2", List.of(record("100", null, user("b@example.com", "Kyiv"))));
+
+        assertEquals("{\"dimension\":\"users\",\"counts\":{\"total\":2}}", stats(UserStats.USERS_DIMENSION));
+    }
+
+    @Test
+    public void sequenceNumbersCompareAsNumbers() {
+        userStats.apply("shard-1", List.of(record("9", null, user("a@example.com", "Kyiv"))));
+        userStats.apply("shard-1", List.of(record("10", null, user("b@example.com", "Kyiv"))));
+
+        assertEquals("{\"dimension\":\"users\",\"counts\":{\"total\":2}}", stats(UserStats.USERS_DIMENSION));
+    }
+
+    @Test
+    public void locationsAreSpreadOverItems() {
+        assertEquals(UserStats.USERS_DIMENSION, UserStats.getItemKey(UserStats.USERS_DIMENSION, "total"));
+        assertNotEquals(UserStats.getItemKey(UserStats.LOCATION_DIMENSION, "Kyiv"),
+                UserStats.getItemKey(UserStats.LOCATION_DIMENSION, "Lviv"));
+
+        int locations = UserStats.LOCATION_SHARDS * 4;
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < locations; i++) {
+            userStats.apply("shard-1", List.of(record(Integer.toString(i + 1), null,
+                    user(i + "@example.com", "City " + (char) ('A' + i % 26) + i))));
+        }
+        assertEquals("{\"dimension\":\"users\",\"counts\":{\"total\":" + locations + "}}",
+                stats(UserStats.USERS_DIMENSION));
+        String locationStats = stats(UserStats.LOCATION_DIMENSION);
+        for (int i = 0; i < locations; i++) {
+            expected.setLength(0);
+            expected.append("\"City ").append((char) ('A' + i % 26)).append(i).append("\":1");
+            assertTrue(locationStats, locationStats.contains(expected));
+        }
+    }
+
+    @Test
+    public void ageIsReadFromTheBirthYear() {
+        userStats.apply("shard-1", List.of(record("1", null, user("a@example.com", "Kyiv"))));
+
+        int age = LocalDate.now(ZoneOffset.UTC).getYear() - 2000;
+        assertEquals("{\"dimension\":\"age\",\"counts\":{\"" + age + "\":1}}", stats(UserStats.AGE_DIMENSION));
+    }
+
+    @Test
+    public void recountReplacesTheCountsAndKeepsTheMarkers() {
+        List<Record> batch = List.of(
+                record("10", null, user("a@example.com", "Kyiv")),
+                record("11", null, user("gone@example.com", "Odesa")));
+        userStats.apply("shard-1", batch);
+        // a skipped batch: the users are in the table but were never counted
+        put(user("a@example.com", "Kyiv"));
+        put(user("b@example.com", "Lviv"));
+        put(user("c@example.com", "Lviv"));
+
+        assertEquals(3, userStats.recount());
+        userStats.apply("shard-1", batch);
+
+        assertEquals("{\"dimension\":\"users\",\"counts\":{\"total\":3}}", stats(UserStats.USERS_DIMENSION));
+        assertEquals("{\"dimension\":\"location\",\"counts\":{\"Kyiv\":1,\"Lviv\":2}}",
+                stats(UserStats.LOCATION_DIMENSION));
+    }
+
+    @Test
+    public void recountOfAnEmptyTableClearsTheCounts() {
+        userStats.apply("shard-1", List.of(record("1", null, user("a@example.com", "Kyiv"))));
+
+        assertEquals(0, userStats.recount());
+
+        assertEquals("{\"dimension\":\"users\",\"counts\":{}}", stats(UserStats.USERS_DIMENSION));
+        assertEquals("{\"dimension\":\"location\",\"counts\":{}}", stats(UserStats.LOCATION_DIMENSION));
+    }
+
+    private void put(Map<String, AttributeValue> user) {
+        Map<String, AttributeValue> item = new HashMap<>(user);
+        item.put("country", new AttributeValue("Ukraine"));
+        localDynamoDB.putItem(new PutItemRequest().withTableName("it-marathon-v3-user-db").withItem(item));
+    }
+
+    private String stats(String dimension) {
+        return CompletableFutures.join(userStats.getStatsAsync(dimension));
+    }
+
+    private static Record record(String sequenceNumber, Map<String, AttributeValue> oldImage,
+                                 Map<String, AttributeValue> newImage) {
+        return new Record()
+                .withEventName(oldImage == null ? "INSERT" : newImage == null ? "REMOVE" : "MODIFY")
+                .withDynamodb(new StreamRecord()
+                        .withSequenceNumber(sequenceNumber)
+                        .withOldImage(oldImage)
+                        .withNewImage(newImage));
+    }
+
+    private static Map<String, AttributeValue> user(String email, String location) {
+        Map<String, AttributeValue> item = new HashMap<>();
+        item.put("email", new AttributeValue(email));
+        item.put("location", new AttributeValue(location));
+        item.put("birthday", new AttributeValue().withN(BIRTHDAY_2000));
+        item.put("registration", new AttributeValue().withN(REGISTRATION));
+        return item;
+    }
+}